@@ -50,7 +50,7 @@ public class LocationTree {
 	}
 	
 	public boolean hasChildLocation(String locationId, String childLocationId){
-		return locationsHierarchy.getNode(locationId).findChild(childLocationId)!=null;
+		return locationsHierarchy.hasDescendant(locationId, childLocationId);
 	}
 	
 	public Map<String, TreeNode<String, Location>> getLocationsHierarchy() {
@@ -6,11 +6,20 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
+/**
+ * Hierarchy of nodes kept as a map of root nodes, each holding its children. Next to the hierarchy every 
+ * node is indexed by its id, so lookups do not have to search the hierarchy. The index is not serialized 
+ * and is rebuilt from the hierarchy whenever the tree was deserialized.
+ */
 public class Tree<K,T> {
 
 	Map<K, TreeNode<K, T>> map;
 	Map<K, Set<K>> parentChildren;
 	
+	private transient Map<K, TreeNode<K, T>> index;
+	// the root map the index was built from, differs from map after deserialization
+	private transient Map<K, TreeNode<K, T>> indexedMap;
+	
 	public Map<K, TreeNode<K, T>> getTree() {
 		return Collections.unmodifiableMap(map);
 	}
@@ -24,6 +33,29 @@ public class Tree<K,T> {
 		parentChildren = new HashMap<>();
 	}
 	
+	private Map<K, TreeNode<K, T>> index() {
+		if(map == null){
+			map = new HashMap<K, TreeNode<K, T>>();
+		}
+		if(index == null || indexedMap != map){
+			index = new HashMap<>();
+			for (TreeNode<K, T> root : map.values()) {
+				indexSubtree(root);
+			}
+			indexedMap = map;
+		}
+		return index;
+	}
+	
+	private void indexSubtree(TreeNode<K, T> node) {
+		index.put(node.getId(), node);
+		if(node.getChildren() != null){
+			for (TreeNode<K, T> child : node.getChildren().values()) {
+				indexSubtree(child);
+			}
+		}
+	}
+	
 	private void addToParentChildRelation(K parent, K id){
 		if(parentChildren == null){
 			parentChildren = new HashMap<>();
@@ -39,9 +71,7 @@ public class Tree<K,T> {
 	}
 	
 	public void addNode(K id, String label, T node, K parentId) {
-		if(map == null){
-			map = new HashMap<K, TreeNode<K, T>>();
-		}
+		Map<K, TreeNode<K, T>> index = index();
 		
 		// if node exists we should break since user should write optimized code and also tree can not have duplicates
 		if(hasNode(id)){
@@ -49,6 +79,7 @@ public class Tree<K,T> {
 		}
 		
 		TreeNode<K, T> n = makeNode(id, label, node, parentId);
+		index.put(id, n);
 		
 		if(parentId != null){
 			addToParentChildRelation(parentId, id);
@@ -75,7 +106,9 @@ public class Tree<K,T> {
 			for (K kid : kids) {
 				//remove node from it current position and move to parent i.e. node currently being added
 				TreeNode<K, T> kn = removeNode(kid);
-				n.addChild(kn);
+				if(kn != null){
+					n.addChild(kn);
+				}
 			}
 		}
 	}
@@ -89,34 +122,47 @@ public class Tree<K,T> {
 	}
 	
 	public TreeNode<K, T> getNode(K id) {
-		// Check if id is any root node
-		if (map.containsKey(id)) {
-			return map.get(id);
-		}
-		
-		// neither root itself nor parent of root
-		for (TreeNode<K, T> root : map.values()) {
-			TreeNode<K, T> n = root.findChild(id);
-			if(n != null) return n;
-		}
-		return null;
+		return index().get(id);
 	}
 	
+	/**
+	 * Detaches the node with given id from its current position, either the roots or the children of its 
+	 * parent. The node stays indexed as it is always attached again right after.
+	 */
 	private TreeNode<K, T> removeNode(K id) {
 		// Check if id is any root node
 		if (map.containsKey(id)) {
 			return map.remove(id);
 		}
-		// neither root itself nor parent of root
-		for (TreeNode<K, T> root : map.values()) {
-			TreeNode<K, T> n = root.removeChild(id);
-			if(n != null){
-				return n;
-			}
+		TreeNode<K, T> n = getNode(id);
+		if(n == null || n.getParent() == null){
+			return null;
+		}
+		TreeNode<K, T> p = getNode(n.getParent());
+		if(p == null || p.getChildren() == null){
+			return null;
 		}
-		return null;
+		return p.getChildren().remove(id);
 	}
 	
+	/**
+	 * Checks if the node with given descendantId is anywhere below the node with given id by walking up 
+	 * the parents of the descendant, so it runs in time of the depth of the descendant.
+	 */
+	public boolean hasDescendant(K id, K descendantId) {
+		TreeNode<K, T> n = getNode(descendantId);
+		if(n == null || !hasNode(id)){
+			return false;
+		}
+		// bounded by the number of nodes in case of a malformed cyclic hierarchy
+		for (int depth = 0; n != null && n.getParent() != null && depth < index().size(); depth++) {
+			if(n.getParent().equals(id)){
+				return true;
+			}
+			n = getNode(n.getParent());
+		}
+		return false;
+	}
 	
 	public boolean hasNode(K id) {
 		return getNode(id)!=null;
@@ -9,6 +9,8 @@ import org.junit.Test;
 import org.opensrp.api.domain.Location;
 import org.opensrp.api.util.LocationTree;
 
+import com.google.gson.Gson;
+
 public class LocationTest {
 
 	@Test
@@ -104,4 +106,31 @@ public class LocationTest {
     	assertEquals("", ltree.findLocation("7").getParentLocation(), ll.get(6).getParentLocation());
     	assertTrue("", ltree.hasChildLocation("18", "20"));
 	}
+	
+	@Test
+	public void testLocationTreeLookupsWhenChildrenAddedBeforeParents(){
+		Location country = new Location("1", "country", null, null, null, null, null);
+		Location province = new Location("2", "province", null, null, null, null, null).withParentLocation(country);
+		Location city = new Location("3", "city", null, null, null, null, null).withParentLocation(province);
+		Location town = new Location("4", "town", null, null, null, null, null).withParentLocation(city);
+		
+		LocationTree ltree = new LocationTree();
+		ltree.addLocation(town);
+		ltree.addLocation(province);
+		ltree.addLocation(city);
+		ltree.addLocation(country);
+		
+		assertEquals(1, ltree.getLocationsHierarchy().size());
+		assertEquals("town", ltree.findLocation("4").getName());
+		assertTrue(ltree.hasChildLocation("1", "4"));
+		assertTrue(ltree.hasChildLocation("2", "3"));
+		assertFalse(ltree.hasChildLocation("4", "1"));
+		assertFalse(ltree.hasChildLocation("3", "3"));
+		assertFalse(ltree.hasLocation("5"));
+		
+		LocationTree deserialized = new Gson().fromJson(new Gson().toJson(ltree), LocationTree.class);
+		assertEquals(new Gson().toJson(ltree), new Gson().toJson(deserialized));
+		assertTrue(deserialized.hasLocation("4"));
+		assertTrue(deserialized.hasChildLocation("1", "4"));
+	}
 }
@@ -0,0 +1,323 @@
+package org.opensrp.common.audit;
+
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.text.MessageFormat;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps audit messages evicted from the {@link Auditor} ring in append-only files, written by a background
+ * thread so that auditing never waits on the disk. Messages handed over but not yet on disk stay in memory and
+ * are included when reading, up to one file's worth of them: when the disk cannot keep up or cannot be written to,
+ * further messages are dropped and counted instead. A file is closed once it holds the configured number of
+ * messages and a new one is started, and only the latest few files are kept. Every few records the file offset is
+ * remembered, so reads start close to the requested index instead of at the start of a file. The spill files of earlier runs, whose
+ * indexes can no longer be asked for, are removed on start.
+ */
+class AuditMessageSpill {
+    private static final int OFFSET_INTERVAL = 64;
+    private static final String FILE_PREFIX = "audit-";
+    private static final String FILE_EXTENSION = ".log";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static Logger logger = LoggerFactory.getLogger(AuditMessageSpill.class.toString());
+
+    private final File directory;
+    private final long firstIndex;
+    private final int messagesPerFile;
+    private final int filesToKeep;
+    private final ConcurrentLinkedQueue<AuditMessage> pending = new ConcurrentLinkedQueue<>();
+    // the size of the queue, which the queue itself can only count by going through it
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean writeScheduled = new AtomicBoolean(false);
+    // replaced, never changed, by the writer thread so that readers can go through the files without locking
+    private volatile List<SpillFile> files = Collections.emptyList();
+    private DataOutputStream output;
+    private int filesStarted;
+
+    AuditMessageSpill(File directory, long firstIndex, int messagesPerFile, int filesToKeep) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException(MessageFormat.format("Could not create audit spill directory {0}", directory));
+        }
+        this.directory = directory;
+        this.firstIndex = firstIndex;
+        this.messagesPerFile = Math.max(1, messagesPerFile);
+        this.filesToKeep = Math.max(1, filesToKeep);
+        removeFilesOfEarlierRuns();
+        startFile();
+    }
+
+    void add(AuditMessage message) {
+        if (pendingCount.incrementAndGet() > messagesPerFile) {
+            pendingCount.decrementAndGet();
+            long droppedSoFar = dropped.incrementAndGet();
+            if (droppedSoFar == 1 || droppedSoFar % messagesPerFile == 0) {
+                logger.error(MessageFormat.format("Audit spill to {0} is behind by {1} messages, dropped {2} messages so far",
+                        directory, messagesPerFile, droppedSoFar));
+            }
+            return;
+        }
+        pending.add(message);
+        if (writeScheduled.compareAndSet(false, true)) {
+            try {
+                writer.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        writePending();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                logger.warn(MessageFormat.format("Audit spill to {0} is closed, keeping message {1} in memory", directory, message.index()));
+            }
+        }
+    }
+
+    /**
+     * @return the oldest spilled messages, at most limit of them, with an index after {@code afterIndex} and before
+     * {@code beforeIndex}, oldest first and without duplicates. Files after the one in which the limit is reached
+     * are not read.
+     */
+    List<AuditMessage> messagesBetween(long afterIndex, long beforeIndex, int limit) {
+        TreeMap<Long, AuditMessage> found = new TreeMap<>();
+        for (AuditMessage message : pending) {
+            collect(found, message, afterIndex, beforeIndex);
+        }
+        // Read the files only after the pending messages: a message is flushed before it leaves the queue.
+        for (SpillFile spillFile : files) {
+            if (found.size() >= limit && !found.isEmpty() && spillFile.lowestIndex > found.lastKey()) {
+                break;
+            }
+            if (spillFile.highestIndex > afterIndex && spillFile.lowestIndex < beforeIndex) {
+                spillFile.read(found, afterIndex, beforeIndex);
+                while (found.size() > limit) {
+                    found.pollLastEntry();
+                }
+            }
+        }
+        while (found.size() > limit) {
+            found.pollLastEntry();
+        }
+        return new ArrayList<>(found.values());
+    }
+
+    void close() {
+        writer.submit(new Runnable() {
+            @Override
+            public void run() {
+                writePending();
+                closeFile();
+            }
+        });
+        writer.shutdown();
+        try {
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writePending() {
+        writeScheduled.set(false);
+        try {
+            int written = 0;
+            SpillFile current = currentFile();
+            long position = current.length;
+            for (AuditMessage message : pending) {
+                if (current.messages >= messagesPerFile) {
+                    output.flush();
+                    current.length = position;
+                    startFile();
+                    current = currentFile();
+                    position = 0;
+                }
+                if (current.messages % OFFSET_INTERVAL == 0) {
+                    current.offsetsByIndex.put(message.index(), position);
+                }
+                byte[] record = write(message);
+                output.writeInt(record.length);
+                output.write(record);
+                position += 4 + record.length;
+                current.add(message.index());
+                written++;
+            }
+            output.flush();
+            current.length = position;
+            for (int i = 0; i < written; i++) {
+                pending.poll();
+                pendingCount.decrementAndGet();
+            }
+        } catch (IOException e) {
+            logger.error(MessageFormat.format("Could not spill audit messages to {0}: {1}", directory, e));
+        }
+    }
+
+    /**
+     * Closes the current file, starts a new one and deletes the oldest files beyond the number to keep.
+     */
+    private void startFile() throws IOException {
+        closeFile();
+        File file = new File(directory, FILE_PREFIX + firstIndex + "-" + filesStarted + FILE_EXTENSION);
+        output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        filesStarted++;
+        List<SpillFile> started = new ArrayList<>(files);
+        started.add(new SpillFile(file));
+        List<SpillFile> removed = new ArrayList<>();
+        while (started.size() > filesToKeep) {
+            removed.add(started.remove(0));
+        }
+        files = Collections.unmodifiableList(started);
+        for (SpillFile spillFile : removed) {
+            if (!spillFile.file.delete()) {
+                logger.warn(MessageFormat.format("Could not delete audit spill file {0}", spillFile.file));
+            }
+        }
+    }
+
+    private SpillFile currentFile() {
+        List<SpillFile> current = files;
+        return current.get(current.size() - 1);
+    }
+
+    private void closeFile() {
+        if (output == null) {
+            return;
+        }
+        try {
+            output.close();
+        } catch (IOException e) {
+            logger.error(MessageFormat.format("Could not close audit spill file {0}: {1}", currentFile().file, e));
+        }
+        output = null;
+    }
+
+    private void removeFilesOfEarlierRuns() {
+        File[] earlier = directory.listFiles();
+        if (earlier == null) {
+            return;
+        }
+        for (File file : earlier) {
+            String name = file.getName();
+            if (file.isFile() && name.startsWith(FILE_PREFIX) && name.endsWith(FILE_EXTENSION) && !file.delete()) {
+                logger.warn(MessageFormat.format("Could not delete audit spill file {0} of an earlier run", file));
+            }
+        }
+    }
+
+    private static void collect(TreeMap<Long, AuditMessage> found, AuditMessage message, long afterIndex, long beforeIndex) {
+        if (message.index() > afterIndex && message.index() < beforeIndex) {
+            found.put(message.index(), message);
+        }
+    }
+
+    private byte[] write(AuditMessage message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeLong(message.index());
+        record.writeLong(message.time().getMillis());
+        record.writeUTF(message.type().name());
+        record.writeInt(message.data().size());
+        for (Map.Entry<String, String> entry : message.data().entrySet()) {
+            writeString(record, entry.getKey());
+            writeString(record, entry.getValue());
+        }
+        return bytes.toByteArray();
+    }
+
+    private static AuditMessage read(byte[] bytes) throws IOException {
+        DataInputStream record = new DataInputStream(new ByteArrayInputStream(bytes));
+        long index = record.readLong();
+        DateTime time = new DateTime(record.readLong());
+        AuditMessageType type = AuditMessageType.valueOf(record.readUTF());
+        int size = record.readInt();
+        Map<String, String> data = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            data.put(readString(record), readString(record));
+        }
+        return new AuditMessage(time, index, type, data);
+    }
+
+    private void writeString(DataOutputStream record, String value) throws IOException {
+        if (value == null) {
+            record.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        record.writeInt(bytes.length);
+        record.write(bytes);
+    }
+
+    private static String readString(DataInputStream record) throws IOException {
+        int size = record.readInt();
+        if (size < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[size];
+        record.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static void skipFully(DataInputStream input, long count) throws IOException {
+        while (count > 0) {
+            long skipped = input.skip(count);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            count -= skipped;
+        }
+    }
+
+    /**
+     * One spill file, with the range of indexes it holds. Its fields are written by the writer thread only.
+     */
+    private static class SpillFile {
+        private final File file;
+        private final ConcurrentSkipListMap<Long, Long> offsetsByIndex = new ConcurrentSkipListMap<>();
+        private volatile long length;
+        private volatile long lowestIndex = Long.MAX_VALUE;
+        private volatile long highestIndex = Long.MIN_VALUE;
+        private int messages;
+
+        SpillFile(File file) {
+            this.file = file;
+        }
+
+        void add(long index) {
+            lowestIndex = Math.min(lowestIndex, index);
+            highestIndex = Math.max(highestIndex, index);
+            messages++;
+        }
+
+        void read(TreeMap<Long, AuditMessage> found, long afterIndex, long beforeIndex) {
+            long end = length;
+            Map.Entry<Long, Long> start = offsetsByIndex.floorEntry(afterIndex - OFFSET_INTERVAL);
+            long position = start == null ? 0 : start.getValue();
+            try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                skipFully(input, position);
+                while (position < end) {
+                    byte[] record = new byte[input.readInt()];
+                    input.readFully(record);
+                    position += 4 + record.length;
+                    collect(found, AuditMessageSpill.read(record), afterIndex, beforeIndex);
+                }
+            } catch (FileNotFoundException e) {
+                // deleted since, as one of the oldest files
+            } catch (IOException e) {
+                logger.error(MessageFormat.format("Could not read spilled audit messages from {0}: {1}", file, e));
+            }
+        }
+    }
+}
@@ -9,26 +9,69 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.*;
-import java.util.concurrent.locks.ReentrantLock;
-
-import static java.util.Collections.binarySearch;
-import static org.opensrp.common.audit.AuditMessageType.NORMAL;
-
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Holds the latest audit messages in a fixed size ring, indexed by a sequence number so that a reader finds its
+ * position in the ring directly from the index it last saw. Auditing does not take a lock, but a writer whose slot
+ * still holds the message a whole ring earlier, because that message's writer has not set it yet, waits for it:
+ * briefly yielding and then parking, which only happens when more threads audit at once than the ring holds. Readers
+ * get a copy of the messages. When a spill directory is configured, messages pushed out of the ring are kept on disk
+ * and are still returned to readers who ask for them, up to a limit per read from which the reader continues.
+ */
 @Scope("singleton")
 @Component
 public class Auditor {
-    private List<AuditMessage> messages;
+    private final AtomicReferenceArray<AuditMessage> ring;
     private final int numberOfAuditMessagesToHoldOnTo;
-    private static long messageIndex = DateTime.now().getMillis();
-    private static ReentrantLock lock = new ReentrantLock();
+    private final long firstMessageIndex = DateTime.now().getMillis();
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final int spilledMessagesPerRead;
+    private AuditMessageSpill spill;
+    private static final int DEFAULT_SPILL_MESSAGES_PER_FILE = 100000;
+    private static final int DEFAULT_SPILL_FILES_TO_KEEP = 10;
+    private static final int DEFAULT_SPILLED_MESSAGES_PER_READ = 10000;
+    private static final int YIELDS_BEFORE_PARKING = 100;
+    private static final long PARK_NANOS = 100000;
     private static Logger logger = LoggerFactory.getLogger(Auditor.class.toString());
 
+    public Auditor(int numberOfAuditMessagesToHoldOnTo) {
+        this(numberOfAuditMessagesToHoldOnTo, null);
+    }
+
+    public Auditor(int numberOfAuditMessagesToHoldOnTo, String spillDirectory) {
+        this(numberOfAuditMessagesToHoldOnTo, spillDirectory, DEFAULT_SPILL_MESSAGES_PER_FILE, DEFAULT_SPILL_FILES_TO_KEEP,
+                DEFAULT_SPILLED_MESSAGES_PER_READ);
+    }
+
+    /**
+     * @param spillMessagesPerFile a new spill file is started once the current one holds this many messages
+     * @param spillFilesToKeep only this many of the latest spill files are kept
+     * @param spilledMessagesPerRead a reader gets at most this many spilled messages at a time
+     */
     @Autowired
-    public Auditor(@Value("#{opensrp['number.of.audit.messages']}") int numberOfAuditMessagesToHoldOnTo) {
-        this.messages = new ArrayList<>();
-        this.numberOfAuditMessagesToHoldOnTo = numberOfAuditMessagesToHoldOnTo;
+    public Auditor(@Value("#{opensrp['number.of.audit.messages']}") int numberOfAuditMessagesToHoldOnTo,
+                   @Value("#{opensrp['audit.messages.spill.directory']}") String spillDirectory,
+                   @Value("#{opensrp['audit.messages.spill.file.size']}") int spillMessagesPerFile,
+                   @Value("#{opensrp['audit.messages.spill.files']}") int spillFilesToKeep,
+                   @Value("#{opensrp['audit.messages.spill.read.limit']}") int spilledMessagesPerRead) {
+        this.numberOfAuditMessagesToHoldOnTo = Math.max(1, numberOfAuditMessagesToHoldOnTo);
+        this.ring = new AtomicReferenceArray<>(this.numberOfAuditMessagesToHoldOnTo);
+        this.spilledMessagesPerRead = Math.max(1, spilledMessagesPerRead);
+        if (spillDirectory != null && !spillDirectory.trim().isEmpty()) {
+            try {
+                spill = new AuditMessageSpill(new File(spillDirectory.trim()), firstMessageIndex, spillMessagesPerFile, spillFilesToKeep);
+            } catch (IOException e) {
+                logger.error(MessageFormat.format("Not spilling audit messages to {0}: {1}", spillDirectory, e));
+            }
+        }
     }
 
     public AuditMessageBuilder audit(AuditMessageType type) {
@@ -36,39 +79,99 @@ public class Auditor {
     }
 
     public List<AuditMessage> messagesSince(long messageIndex) {
-        if (messageIndex <= 0) {
-            return messages;
+        long next = nextSequence.get();
+        long from = messageIndex <= 0 ? 0 : Math.max(0, messageIndex - firstMessageIndex + 1);
+        long oldestInRing = Math.max(0, next - numberOfAuditMessagesToHoldOnTo);
+
+        List<AuditMessage> recent = new ArrayList<>();
+        for (long sequence = Math.max(from, oldestInRing); sequence < next; sequence++) {
+            AuditMessage message = ring.get(slotOf(sequence));
+            if (message == null || message.index() < firstMessageIndex + sequence) {
+                // Not written yet: stop here so that a reader continuing from the last index does not miss it.
+                break;
+            }
+            if (message.index() == firstMessageIndex + sequence) {
+                recent.add(message);
+            }
         }
 
-        int index = binarySearch(messages, new AuditMessage(DateUtil.now(), messageIndex, NORMAL, null));
-        int position = Math.abs(index + 1);
-
-        if (position >= messages.size()) {
-            return Collections.emptyList();
+        if (spill == null || from >= oldestInRing) {
+            return recent;
         }
-
-        return messages.subList(position, messages.size());
+        long after = firstMessageIndex + from - 1;
+        long before = recent.isEmpty() ? firstMessageIndex + next : recent.get(0).index();
+        // Read the ring before the spill: a message is handed to the spill before it leaves the ring. A message
+        // older than the oldest sequence in the ring stays there until the message which replaces it is written.
+        TreeMap<Long, AuditMessage> older = new TreeMap<>();
+        for (int slot = 0; slot < ring.length(); slot++) {
+            AuditMessage message = ring.get(slot);
+            if (message != null && message.index() > after && message.index() < before) {
+                older.put(message.index(), message);
+            }
+        }
+        List<AuditMessage> spilled = spill.messagesBetween(after, before, spilledMessagesPerRead);
+        for (AuditMessage message : spilled) {
+            older.put(message.index(), message);
+        }
+        if (spilled.size() < spilledMessagesPerRead) {
+            List<AuditMessage> messages = new ArrayList<>(older.values());
+            messages.addAll(recent);
+            return messages;
+        }
+        // The spill stopped at the limit, so the reader continues after the last spilled message it gets.
+        List<AuditMessage> messages = new ArrayList<>();
+        for (AuditMessage message : older.headMap(spilled.get(spilled.size() - 1).index(), true).values()) {
+            if (messages.size() == spilledMessagesPerRead) {
+                break;
+            }
+            messages.add(message);
+        }
+        return messages;
     }
 
-    private void prune() {
-        if (messages.size() > numberOfAuditMessagesToHoldOnTo) {
-            messages.remove(0);
+    @PreDestroy
+    public void shutdown() {
+        if (spill != null) {
+            spill.close();
         }
     }
 
     private void createAuditMessage(AuditMessageType messageType, Map<String, String> data) {
-        lock.lock();
-        try {
-            AuditMessage auditMessage = new AuditMessage(DateUtil.now(), messageIndex, messageType, data);
-            messages.add(auditMessage);
-            messageIndex++;
+        long sequence = nextSequence.getAndIncrement();
+        AuditMessage auditMessage = new AuditMessage(DateUtil.now(), firstMessageIndex + sequence, messageType, data);
+        int slot = slotOf(sequence);
+        long replacedIndex = auditMessage.index() - numberOfAuditMessagesToHoldOnTo;
+        AuditMessage previous = ring.get(slot);
+        // Only the message a whole ring later replaces a message, after waiting for it to be written when its
+        // writer is that far behind, so that each message leaves the ring once and is spilled once. A writer that
+        // far behind has been preempted, so after a few yields the wait parks instead of keeping a core busy.
+        int yields = 0;
+        while (sequence >= numberOfAuditMessagesToHoldOnTo && (previous == null || previous.index() < replacedIndex)) {
+            if (yields < YIELDS_BEFORE_PARKING) {
+                yields++;
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(PARK_NANOS);
+            }
+            previous = ring.get(slot);
+        }
+        spill(previous);
+        ring.set(slot, auditMessage);
+        if (logger.isDebugEnabled()) {
             logger.debug(MessageFormat.format("Added message: {0}", auditMessage));
-            prune();
-        } finally {
-            lock.unlock();
         }
     }
 
+    private void spill(AuditMessage message) {
+        if (spill != null && message != null) {
+            spill.add(message);
+        }
+    }
+
+    private int slotOf(long sequence) {
+        return (int) (sequence % numberOfAuditMessagesToHoldOnTo);
+    }
+
     public static class AuditMessageBuilder {
         private final Auditor auditor;
         private final AuditMessageType type;
@@ -58,7 +58,8 @@ public class HttpAgent {
             entity.setContentEncoding(contentType);
             request.setEntity(entity);
             org.apache.http.HttpResponse response = httpClient.execute(request);
-            return new HttpResponse(response.getStatusLine().getStatusCode() == HttpStatus.SC_OK, IOUtils.toString(response.getEntity().getContent()));
+            int statusCode = response.getStatusLine().getStatusCode();
+            return new HttpResponse(statusCode == HttpStatus.SC_OK, IOUtils.toString(response.getEntity().getContent()), statusCode);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
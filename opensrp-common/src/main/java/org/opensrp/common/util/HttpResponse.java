@@ -3,10 +3,16 @@ package org.opensrp.common.util;
 public class HttpResponse {
     private final boolean isSuccess;
     private final String body;
+    private final int statusCode;
 
     public HttpResponse(boolean isSuccess, String body) {
+        this(isSuccess, body, 0);
+    }
+
+    public HttpResponse(boolean isSuccess, String body, int statusCode) {
         this.isSuccess = isSuccess;
         this.body = body;
+        this.statusCode = statusCode;
     }
 
     public boolean isSuccess() {
@@ -16,4 +22,18 @@ public class HttpResponse {
     public String body() {
         return body;
     }
+
+    /**
+     * @return the HTTP status code of the response, or 0 when it is not known
+     */
+    public int statusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return whether the server rejected the request itself, as opposed to failing to handle it
+     */
+    public boolean isClientError() {
+        return statusCode >= 400 && statusCode < 500;
+    }
 }
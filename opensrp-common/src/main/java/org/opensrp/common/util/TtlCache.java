@@ -0,0 +1,129 @@
+package org.opensrp.common.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread safe in-memory cache whose entries expire a fixed time after they were put. The cache holds at most
+ * maxSize entries; when it grows beyond that the expired entries and then the entries closest to expiry are
+ * evicted. Reads never block each other.
+ */
+public class TtlCache<K, V> {
+    private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final int maxSize;
+    private final long ttlMillis;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public TtlCache(int maxSize, long ttlMillis) {
+        this.maxSize = Math.max(1, maxSize);
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @return the value cached for given key or null if there is none or it has expired
+     */
+    public V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (entry.expiresAt <= DateUtil.millis()) {
+            entries.remove(key, entry);
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    public void put(K key, V value) {
+        entries.put(key, new Entry<>(value, DateUtil.millis() + ttlMillis));
+        if (entries.size() > maxSize) {
+            evict();
+        }
+    }
+
+    public void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long evictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Drops expired entries and, if still too big, the entries expiring first until a tenth of the capacity
+     * is free again, so that a full cache is not scanned on every put.
+     */
+    private synchronized void evict() {
+        if (entries.size() <= maxSize) {
+            return;
+        }
+        long now = DateUtil.millis();
+        List<Map.Entry<K, Entry<V>>> live = new ArrayList<>();
+        for (Map.Entry<K, Entry<V>> e : entries.entrySet()) {
+            if (e.getValue().expiresAt <= now) {
+                if (entries.remove(e.getKey(), e.getValue())) {
+                    evictions.incrementAndGet();
+                }
+            } else {
+                live.add(e);
+            }
+        }
+
+        int target = maxSize - Math.max(1, maxSize / 10);
+        if (live.size() <= target) {
+            return;
+        }
+        Collections.sort(live, new Comparator<Map.Entry<K, Entry<V>>>() {
+            @Override
+            public int compare(Map.Entry<K, Entry<V>> first, Map.Entry<K, Entry<V>> second) {
+                return Long.compare(first.getValue().expiresAt, second.getValue().expiresAt);
+            }
+        });
+        for (int i = 0; i < live.size() - target; i++) {
+            if (entries.remove(live.get(i).getKey(), live.get(i).getValue())) {
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "size=" + size() + ", hits=" + hits() + ", misses=" + misses() + ", evictions=" + evictions();
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -2,21 +2,29 @@ package org.opensrp.common;
 
 import org.hamcrest.Matcher;
 import org.joda.time.DateTime;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.motechproject.testing.utils.BaseUnitTest;
 import org.opensrp.common.audit.AuditMessage;
 import org.opensrp.common.audit.Auditor;
 import org.opensrp.common.audit.ForbiddenFieldInAuditMessage;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.opensrp.common.audit.AuditMessageType.NORMAL;
 
 public class AuditorTest extends BaseUnitTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void shouldHaveOnlyAsManyMessagesAsTheSizeOfTheAuditorLog() {
         Auditor auditor = new Auditor(2);
@@ -179,6 +187,101 @@ public class AuditorTest extends BaseUnitTest {
         assertEquals(10000, auditor.messagesSince(0).size());
     }
 
+    @Test
+    public void shouldGiveACopyOfTheMessagesWhichLaterMessagesDoNotChange() {
+        Auditor auditor = new Auditor(2);
+        audit(auditor, "Message 1");
+        audit(auditor, "Message 2");
+
+        List<AuditMessage> messages = auditor.messagesSince(0);
+        audit(auditor, "Message 3");
+
+        assertThat(messages.size(), is(2));
+        assertData(messages.get(0), is("Message 1"));
+        assertData(messages.get(1), is("Message 2"));
+    }
+
+    @Test
+    public void shouldKeepMessagesWhichOverflowOnDiskWhenSpillDirectoryIsGiven() throws Exception {
+        Auditor auditor = new Auditor(2, folder.newFolder("audit").getPath());
+        audit(auditor, "Message 1");
+        long messageIndexOfFirstMessage = auditor.messagesSince(0).get(0).index();
+        audit(auditor, "Message 2");
+        audit(auditor, "Message 3");
+        audit(auditor, "Message 4");
+
+        List<AuditMessage> messages = auditor.messagesSince(0);
+        assertThat(messages.size(), is(4));
+        assertData(messages.get(0), is("Message 1"));
+        assertData(messages.get(3), is("Message 4"));
+
+        auditor.shutdown();
+        messages = auditor.messagesSince(messageIndexOfFirstMessage);
+        assertThat(messages.size(), is(3));
+        assertData(messages.get(0), is("Message 2"));
+        assertData(messages.get(1), is("Message 3"));
+        assertData(messages.get(2), is("Message 4"));
+    }
+
+    @Test
+    public void shouldKeepOnlyTheLatestSpillFilesAndRemoveTheFilesOfEarlierRuns() throws Exception {
+        File directory = folder.newFolder("audit");
+        File earlierRun = new File(directory, "audit-1-0.log");
+        assertTrue(earlierRun.createNewFile());
+        Auditor auditor = new Auditor(2, directory.getPath(), 2, 2, 100);
+        assertFalse(earlierRun.exists());
+        for (int i = 1; i <= 8; i++) {
+            audit(auditor, "Message " + i);
+        }
+
+        auditor.shutdown();
+        List<AuditMessage> messages = auditor.messagesSince(0);
+
+        assertThat(directory.list().length, is(2));
+        assertThat(messages.size(), is(6));
+        assertData(messages.get(0), is("Message 3"));
+        assertData(messages.get(5), is("Message 8"));
+    }
+
+    @Test
+    public void shouldReturnAtMostTheReadLimitOfSpilledMessagesAndContinueFromTheLastOne() throws Exception {
+        Auditor auditor = new Auditor(2, folder.newFolder("audit").getPath(), 100, 10, 2);
+        for (int i = 1; i <= 6; i++) {
+            audit(auditor, "Message " + i);
+        }
+
+        List<AuditMessage> messages = auditor.messagesSince(0);
+        assertThat(messages.size(), is(2));
+        assertData(messages.get(0), is("Message 1"));
+        assertData(messages.get(1), is("Message 2"));
+
+        messages = auditor.messagesSince(messages.get(1).index());
+        assertThat(messages.size(), is(2));
+        assertData(messages.get(0), is("Message 3"));
+        assertData(messages.get(1), is("Message 4"));
+
+        messages = auditor.messagesSince(messages.get(1).index());
+        assertThat(messages.size(), is(2));
+        assertData(messages.get(0), is("Message 5"));
+        assertData(messages.get(1), is("Message 6"));
+        auditor.shutdown();
+    }
+
+    @Test
+    public void shouldDropMessagesWhichOverflowWhenMoreThanAFileOfThemCannotBeSpilled() throws Exception {
+        Auditor auditor = new Auditor(1, folder.newFolder("audit").getPath(), 2, 10, 100);
+        auditor.shutdown();
+        for (int i = 1; i <= 6; i++) {
+            audit(auditor, "Message " + i);
+        }
+
+        List<AuditMessage> messages = auditor.messagesSince(0);
+        assertThat(messages.size(), is(3));
+        assertData(messages.get(0), is("Message 1"));
+        assertData(messages.get(1), is("Message 2"));
+        assertData(messages.get(2), is("Message 6"));
+    }
+
     private void assertData(AuditMessage message, Matcher<String> expectedDataMatcher) {
         assertThat(message.data().get("data"), expectedDataMatcher);
     }
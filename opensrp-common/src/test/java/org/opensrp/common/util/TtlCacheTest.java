@@ -0,0 +1,53 @@
+package org.opensrp.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.joda.time.LocalDate;
+import org.junit.Test;
+
+public class TtlCacheTest {
+    @Test
+    public void shouldReturnCachedValuesUntilTheyExpire() throws Exception {
+        DateUtil.fakeIt(new LocalDate(2015, 1, 1));
+        TtlCache<String, String> cache = new TtlCache<>(10, 60 * 60 * 1000L);
+
+        cache.put("key", "value");
+        assertEquals("value", cache.get("key"));
+
+        DateUtil.fakeIt(new LocalDate(2015, 1, 2));
+        assertNull(cache.get("key"));
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void shouldEvictEntriesExpiringFirstWhenFull() throws Exception {
+        TtlCache<Integer, Integer> cache = new TtlCache<>(10, 30 * 24 * 60 * 60 * 1000L);
+        for (int i = 0; i <= 10; i++) {
+            DateUtil.fakeIt(new LocalDate(2015, 1, 1).plusDays(i));
+            cache.put(i, i);
+        }
+
+        assertEquals(9, cache.size());
+        assertEquals(2, cache.evictions());
+        assertNull(cache.get(0));
+        assertNull(cache.get(1));
+        assertEquals(Integer.valueOf(10), cache.get(10));
+    }
+
+    @Test
+    public void shouldForgetInvalidatedEntries() throws Exception {
+        TtlCache<String, String> cache = new TtlCache<>(10, 60 * 1000L);
+        cache.put("key", "value");
+        cache.put("other", "value");
+
+        cache.invalidate("key");
+        assertNull(cache.get("key"));
+        assertEquals("value", cache.get("other"));
+
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,74 @@
+package org.opensrp.connector;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request counts, latencies and connection pool usage of the shared client in {@link HttpUtil}.
+ */
+public class HttpClientMetrics {
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+    private volatile int maxConnections;
+    private volatile int maxConnectionsPerRoute;
+    private volatile int connectionsInPool;
+
+    void record(long latencyNanos, boolean failed) {
+        requests.incrementAndGet();
+        if (failed) {
+            failures.incrementAndGet();
+        }
+        totalLatencyNanos.addAndGet(latencyNanos);
+        long max = maxLatencyNanos.get();
+        while (latencyNanos > max && !maxLatencyNanos.compareAndSet(max, latencyNanos)) {
+            max = maxLatencyNanos.get();
+        }
+    }
+
+    void setPoolLimits(int maxConnections, int maxConnectionsPerRoute) {
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    void setConnectionsInPool(int connectionsInPool) {
+        this.connectionsInPool = connectionsInPool;
+    }
+
+    public long requests() {
+        return requests.get();
+    }
+
+    public long failures() {
+        return failures.get();
+    }
+
+    public long averageLatencyInMillis() {
+        long count = requests.get();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalLatencyNanos.get() / count);
+    }
+
+    public long maxLatencyInMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos.get());
+    }
+
+    public int maxConnections() {
+        return maxConnections;
+    }
+
+    public int maxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    public int connectionsInPool() {
+        return connectionsInPool;
+    }
+
+    @Override
+    public String toString() {
+        return "requests=" + requests() + ", failures=" + failures() + ", averageLatencyInMillis=" + averageLatencyInMillis()
+                + ", maxLatencyInMillis=" + maxLatencyInMillis() + ", connectionsInPool=" + connectionsInPool
+                + ", maxConnections=" + maxConnections + ", maxConnectionsPerRoute=" + maxConnectionsPerRoute;
+    }
+}
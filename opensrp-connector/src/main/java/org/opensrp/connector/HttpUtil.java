@@ -1,30 +1,149 @@
-
 package org.opensrp.connector;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.httpclient.HttpStatus;
 import org.apache.commons.io.IOUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.params.CookiePolicy;
+import org.apache.http.client.params.HttpClientParams;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
 import org.opensrp.common.util.HttpResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpMethod;
 import org.springframework.stereotype.Component;
 
 import com.mysql.jdbc.StringUtils;
 
 /**
- * The class is a gateway to connect to external system via http for reading and writing data. All get and post 
+ * The class is a gateway to connect to external system via http for reading and writing data. All get and post
  * requests use Basic Authorization.
+ * <p>
+ * Requests go through a client with a pool of keep-alive connections, so consecutive calls to the same server
+ * reuse open connections instead of setting up a new TCP/TLS connection every time. The pool belongs to the
+ * HttpUtil bean: it is created by {@link #init()}, sized by the openmrs.http.* properties and closed by
+ * {@link #destroy()}. The static methods use the pool of the initialized bean, or a default one when used
+ * outside of Spring. Cookies are ignored, so a session of one user is never reused for another user's request.
+ * Usage and request latencies of the pool are available from {@link #metrics()} and served at /metrics/openmrs-http.
  */
 @Component
 public class HttpUtil {
+    private static final String CHARSET = "UTF-8";
+    private static final Map<String, String> basicAuthorizations = new ConcurrentHashMap<>();
+
+    private static volatile HttpUtil active;
+    private static HttpUtil fallback;
+
+    private final int maxConnections;
+    private final int maxConnectionsPerRoute;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final HttpClientMetrics metrics = new HttpClientMetrics();
+    private ThreadSafeClientConnManager connectionManager;
+    private DefaultHttpClient httpClient;
 
     public HttpUtil() {
+        this(40, 20, 10000, 60000);
+    }
+
+    @Autowired
+    public HttpUtil(@Value("#{opensrp['openmrs.http.max.connections']}") int maxConnections,
+                    @Value("#{opensrp['openmrs.http.max.connections.per.route']}") int maxConnectionsPerRoute,
+                    @Value("#{opensrp['openmrs.http.connect.timeout-ms']}") int connectTimeoutMillis,
+                    @Value("#{opensrp['openmrs.http.read.timeout-ms']}") int readTimeoutMillis) {
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    /**
+     * Creates the connection pool and makes it the one used by the static methods.
+     */
+    @PostConstruct
+    public synchronized void init() {
+        BasicHttpParams params = new BasicHttpParams();
+        HttpConnectionParams.setConnectionTimeout(params, connectTimeoutMillis);
+        HttpConnectionParams.setSoTimeout(params, readTimeoutMillis);
+        HttpConnectionParams.setStaleCheckingEnabled(params, true);
+        HttpClientParams.setCookiePolicy(params, CookiePolicy.IGNORE_COOKIES);
+
+        SchemeRegistry registry = new SchemeRegistry();
+        registry.register(new Scheme("http", 80, PlainSocketFactory.getSocketFactory()));
+        registry.register(new Scheme("https", 443, SSLSocketFactory.getSocketFactory()));
+
+        connectionManager = new ThreadSafeClientConnManager(registry);
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        httpClient = new DefaultHttpClient(connectionManager, params);
+        metrics.setPoolLimits(maxConnections, maxConnectionsPerRoute);
+        HttpUtil previous;
+        synchronized (HttpUtil.class) {
+            previous = fallback;
+            fallback = null;
+            active = this;
+        }
+        if (previous != null) {
+            previous.destroy();
+        }
+    }
+
+    /**
+     * Closes the pooled connections. The static methods fall back to a default pool afterwards.
+     */
+    @PreDestroy
+    public synchronized void destroy() {
+        synchronized (HttpUtil.class) {
+            if (active == this) {
+                active = null;
+            }
+        }
+        if (connectionManager != null) {
+            connectionManager.shutdown();
+        }
+    }
+
+    private static HttpUtil active() {
+        HttpUtil httpUtil = active;
+        if (httpUtil == null) {
+            synchronized (HttpUtil.class) {
+                httpUtil = active;
+                if (httpUtil == null) {
+                    httpUtil = new HttpUtil();
+                    httpUtil.init();
+                    fallback = httpUtil;
+                }
+            }
+        }
+        return httpUtil;
     }
 
     /**
@@ -38,24 +157,12 @@ public class HttpUtil {
      */
     public static HttpResponse post(String url, String payload, String data, String username,String password) {
         try {
-        	HttpURLConnection con = makeConnection(url, payload, HttpMethod.POST, true, username, password);
-        	con.setDoOutput(true);
-        	con.setRequestProperty("Content-Type", "application/json");
-			String charset = "utf-8";
-			PrintWriter writer = new PrintWriter(new OutputStreamWriter(con.getOutputStream(), charset ), true); // true = autoFlush, important!
-
-			// Send normal param.
-		    System.out.println(data);
-		    writer.append(data);
-		    if (writer != null) writer.close();
-
-            return new HttpResponse(con.getResponseCode() == HttpStatus.SC_OK, IOUtils.toString(con.getInputStream()));
-			
+            return execute(makePost(url, payload, data, username, password), false);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
-    
+
     /**
      * Gets the data using Http GET
      * @param url The complete http url of remote server service
@@ -66,11 +173,7 @@ public class HttpUtil {
      */
     public static HttpResponse get(String url, String payload, String username, String password) {
         try {
-            HttpURLConnection con = makeConnection(url, payload, HttpMethod.GET, true, username, password);
-            return new HttpResponse(con.getResponseCode() == HttpStatus.SC_OK, IOUtils.toString(con.getInputStream()));
-        } 
-        catch(FileNotFoundException e){
-        	return new HttpResponse(true, "");
+            return execute(makeGet(url, payload, username, password), true);
         }
         catch (IllegalArgumentException e) {
             throw new IllegalArgumentException(e);
@@ -79,32 +182,168 @@ public class HttpUtil {
             throw new RuntimeException(e);
         }
     }
-    
-    static HttpURLConnection makeConnection(String url, String payload, HttpMethod requestMethod, boolean useBasicAuth, String username, String password) throws IOException {
-    	String charset = "UTF-8";
 
+    /**
+     * Posts the data using Http POST and parses the response straight from the connection into a JSONObject.
+     * @see #post(String, String, String, String, String)
+     */
+    public static JSONObject postJson(String url, String payload, String data, String username, String password) throws JSONException {
+        try {
+            return executeForJson(makePost(url, payload, data, username, password));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Gets the data using Http GET and parses the response straight from the connection into a JSONObject.
+     * @see #get(String, String, String, String)
+     */
+    public static JSONObject getJson(String url, String payload, String username, String password) throws JSONException {
+        try {
+            return executeForJson(makeGet(url, payload, username, password));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static HttpClientMetrics metrics() {
+        HttpUtil httpUtil = active();
+        httpUtil.metrics.setConnectionsInPool(httpUtil.connectionManager.getConnectionsInPool());
+        return httpUtil.metrics;
+    }
+
+    private static HttpGet makeGet(String url, String payload, String username, String password) {
+        HttpGet request = new HttpGet(makeUrl(url, payload));
+        addHeaders(request, username, password);
+        return request;
+    }
+
+    private static HttpPost makePost(String url, String payload, String data, String username, String password) throws IOException {
+        HttpPost request = new HttpPost(makeUrl(url, payload));
+        addHeaders(request, username, password);
+        StringEntity entity = new StringEntity(data, CHARSET);
+        entity.setContentType("application/json");
+        request.setEntity(entity);
+        return request;
+    }
+
+    private static void addHeaders(HttpRequestBase request, String username, String password) {
+        request.setHeader("Accept-Charset", CHARSET);
+        request.setHeader("Accept-Encoding", "gzip");
+        request.setHeader("Authorization", basicAuthorization(username, password));
+    }
+
+    private static HttpResponse execute(HttpRequestBase request, boolean notFoundIsEmpty) throws IOException {
+        HttpUtil httpUtil = active();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            org.apache.http.HttpResponse response = httpUtil.httpClient.execute(request);
+            int status = response.getStatusLine().getStatusCode();
+            InputStream content = content(response);
+            try {
+                if (notFoundIsEmpty && status == HttpStatus.SC_NOT_FOUND) {
+                    failed = false;
+                    return new HttpResponse(true, "");
+                }
+                checkStatus(request, status);
+                failed = false;
+                return new HttpResponse(status == HttpStatus.SC_OK, content == null ? "" : IOUtils.toString(content, CHARSET));
+            } finally {
+                IOUtils.closeQuietly(content);
+            }
+        } finally {
+            httpUtil.metrics.record(System.nanoTime() - start, failed);
+        }
+    }
+
+    private static JSONObject executeForJson(HttpRequestBase request) throws IOException, JSONException {
+        HttpUtil httpUtil = active();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            org.apache.http.HttpResponse response = httpUtil.httpClient.execute(request);
+            InputStream content = content(response);
+            try {
+                checkStatus(request, response.getStatusLine().getStatusCode());
+                if (content == null) {
+                    throw new JSONException("No content in response of " + request.getURI());
+                }
+                Reader reader = new InputStreamReader(content, CHARSET);
+                JSONObject json = new JSONObject(new JSONTokener(reader));
+                failed = false;
+                return json;
+            } finally {
+                IOUtils.closeQuietly(content);
+            }
+        } finally {
+            httpUtil.metrics.record(System.nanoTime() - start, failed);
+        }
+    }
+
+    private static void checkStatus(HttpRequestBase request, int status) throws IOException {
+        if (status >= HttpStatus.SC_BAD_REQUEST) {
+            throw new IOException("Server returned HTTP response code: " + status + " for URL: " + request.getURI());
+        }
+    }
+
+    /**
+     * Returns the response body stream, unzipped if the server gzipped it. Closing the stream hands the
+     * connection back to the pool.
+     */
+    private static InputStream content(org.apache.http.HttpResponse response) throws IOException {
+        HttpEntity entity = response.getEntity();
+        if (entity == null) {
+            return null;
+        }
+        InputStream content = entity.getContent();
+        Header encoding = entity.getContentEncoding();
+        if (encoding != null && "gzip".equalsIgnoreCase(encoding.getValue())) {
+            return new GZIPInputStream(content);
+        }
+        return content;
+    }
+
+    /**
+     * Returns the Basic Authorization header for given credentials. The connectors use a few configured accounts,
+     * so the header is built once per credential pair and reused by later requests.
+     */
+    private static String basicAuthorization(String username, String password) {
+        String credentials = username + ":" + password;
+        String authorization = basicAuthorizations.get(credentials);
+        if (authorization == null) {
+            authorization = "Basic " + new String(Base64.encodeBase64(credentials.getBytes()));
+            basicAuthorizations.put(credentials, authorization);
+        }
+        return authorization;
+    }
+
+    private static String makeUrl(String url, String payload) {
         if(url.endsWith("/")){
         	url = url.substring(0, url.lastIndexOf("/"));
         }
-        url = (url+(StringUtils.isEmptyOrWhitespaceOnly(payload)?"":("?"+payload))).replaceAll(" ", "%20");
-    	URL urlo = new URL(url);
+        return (url+(StringUtils.isEmptyOrWhitespaceOnly(payload)?"":("?"+payload))).replaceAll(" ", "%20");
+    }
+
+    static HttpURLConnection makeConnection(String url, String payload, HttpMethod requestMethod, boolean useBasicAuth, String username, String password) throws IOException {
+    	URL urlo = new URL(makeUrl(url, payload));
 		HttpURLConnection conn = (HttpURLConnection) urlo.openConnection();
-		conn.setRequestProperty("Accept-Charset", charset);
-		
+		conn.setRequestProperty("Accept-Charset", CHARSET);
+
 		if(useBasicAuth){
-			String encoded = new String(Base64.encodeBase64((username+":"+password).getBytes()));
-	        conn.setRequestProperty("Authorization", "Basic "+encoded);
+	        conn.setRequestProperty("Authorization", basicAuthorization(username, password));
 		}
-		
+
 		conn.setRequestMethod(requestMethod.name());
-		
+
 		return conn;
 	}
-    
+
     public static String removeEndingSlash(String str){
 		return str.endsWith("/")?str.substring(0, str.lastIndexOf("/")):str;
 	}
     public static String removeTrailingSlash(String str){
 		return str.startsWith("/")?str.substring(1):str;
 	}
-}
\ No newline at end of file
+}
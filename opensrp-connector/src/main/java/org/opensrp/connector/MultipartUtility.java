@@ -28,6 +28,7 @@ import org.springframework.web.multipart.MultipartFile;
 public class MultipartUtility {
     private final String boundary;
     private static final String LINE_FEED = "\r\n";
+    private static final int CHUNK_SIZE = 64 * 1024;
     private HttpURLConnection httpConn;
     private String charset;
     private OutputStream outputStream;
@@ -52,6 +53,8 @@ public class MultipartUtility {
         httpConn.setUseCaches(false);
         httpConn.setDoOutput(true); // indicates POST method
         httpConn.setDoInput(true);
+        // streams the body as it is written instead of buffering all of it to find its length
+        httpConn.setChunkedStreamingMode(CHUNK_SIZE);
         httpConn.setRequestProperty("Content-Type",
                 "multipart/form-data; boundary=" + boundary);
         httpConn.setRequestProperty("User-Agent", "OpenSRP Agent");
@@ -101,14 +104,14 @@ public class MultipartUtility {
         writer.append(LINE_FEED);
         writer.flush();
  
-        FileInputStream inputStream = new FileInputStream(uploadFile);
-        byte[] buffer = new byte[4096];
+        byte[] buffer = new byte[CHUNK_SIZE];
         int bytesRead = -1;
-        while ((bytesRead = inputStream.read(buffer)) != -1) {
-            outputStream.write(buffer, 0, bytesRead);
+        try (FileInputStream inputStream = new FileInputStream(uploadFile)) {
+            while ((bytesRead = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, bytesRead);
+            }
         }
         outputStream.flush();
-        inputStream.close();
          
         writer.append(LINE_FEED);
         writer.flush();     
@@ -149,6 +152,7 @@ public class MultipartUtility {
             reader.close();
             httpConn.disconnect();
         } else {
+            httpConn.disconnect();
             throw new IOException("Server returned non-OK status: " + status);
         }
  
@@ -7,6 +7,8 @@ package org.opensrp.connector.openmrs.constants;
 public class OpenmrsConstants {
 
 	public static final String SCHEDULER_TRACKER_SYNCER_SUBJECT = "OpenMRS Scheduler Tracker Syncer";
+	public static final String OPENMRS_PUSH_SUBJECT = "OpenMRS Form Submission Push";
+	public static final String LOCATION_CACHE_REFRESH_SUBJECT = "OpenMRS Location Cache Refresh";
 	public static final String ENROLLMENT_TRACK_UUID = "openmrsTrackUuid";
 
 
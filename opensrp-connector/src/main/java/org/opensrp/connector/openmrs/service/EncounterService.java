@@ -11,7 +11,6 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.opensrp.api.domain.Event;
 import org.opensrp.api.domain.Obs;
-import org.opensrp.common.util.HttpResponse;
 import org.opensrp.connector.HttpUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -55,8 +54,8 @@ public class EncounterService extends OpenmrsService{
     {
     	// we have to use this ugly approach because identifier not found throws exception and 
     	// its hard to find whether it was network error or object not found or server error
-    	JSONArray res = new JSONObject(HttpUtil.get(getURL()+"/"+ENCOUNTER__TYPE_URL, "v=full", 
-    			OPENMRS_USER, OPENMRS_PWD).body()).getJSONArray("results");
+    	JSONArray res = HttpUtil.getJson(getURL()+"/"+ENCOUNTER__TYPE_URL, "v=full", 
+    			OPENMRS_USER, OPENMRS_PWD).getJSONArray("results");
     	for (int i = 0; i < res.length(); i++) {
 			if(res.getJSONObject(i).getString("display").equalsIgnoreCase(encounterType)){
 				return res.getJSONObject(i);
@@ -67,7 +66,7 @@ public class EncounterService extends OpenmrsService{
 	
     public JSONObject createEncounterType(String name, String description) throws JSONException{
 		JSONObject o = convertEncounterToOpenmrsJson(name, description);
-		return new JSONObject(HttpUtil.post(getURL()+"/"+ENCOUNTER__TYPE_URL, "", o.toString(), OPENMRS_USER, OPENMRS_PWD).body());
+		return HttpUtil.postJson(getURL()+"/"+ENCOUNTER__TYPE_URL, "", o.toString(), OPENMRS_USER, OPENMRS_PWD);
 	}
     
     public JSONObject convertEncounterToOpenmrsJson(String name, String description) throws JSONException {
@@ -131,8 +130,7 @@ public class EncounterService extends OpenmrsService{
 		}
 		enc.put("obs", obar);
 		
-		HttpResponse op = HttpUtil.post(HttpUtil.removeEndingSlash(OPENMRS_BASE_URL)+"/"+ENCOUNTER_URL, "", enc.toString(), OPENMRS_USER, OPENMRS_PWD);
-		return new JSONObject(op.body());
+		return HttpUtil.postJson(HttpUtil.removeEndingSlash(OPENMRS_BASE_URL)+"/"+ENCOUNTER_URL, "", enc.toString(), OPENMRS_USER, OPENMRS_PWD);
 	}
 	
 	private JSONArray convertObsToJson(Obs o) throws JSONException{
@@ -26,26 +26,26 @@ public class HouseholdService extends OpenmrsService{
 	
 	public JSONObject getRelationshipType(String relationship) throws JSONException
     {
-    	return new JSONObject(HttpUtil.get(getURL()
-    			+"/"+RELATIONSHIP_TYPE_URL+"/"+relationship, "v=full", OPENMRS_USER, OPENMRS_PWD).body());
+    	return HttpUtil.getJson(getURL()
+    			+"/"+RELATIONSHIP_TYPE_URL+"/"+relationship, "v=full", OPENMRS_USER, OPENMRS_PWD);
     }
 	
 	public JSONObject findRelationshipTypeMatching(String relationship) throws JSONException
     {
-    	JSONArray r = new JSONObject(HttpUtil.get(getURL()
-    			+"/"+RELATIONSHIP_TYPE_URL, "v=full&q="+relationship, OPENMRS_USER, OPENMRS_PWD).body())
+    	JSONArray r = HttpUtil.getJson(getURL()
+    			+"/"+RELATIONSHIP_TYPE_URL, "v=full&q="+relationship, OPENMRS_USER, OPENMRS_PWD)
     			.getJSONArray("results");
     	return r.length()>0?r.getJSONObject(0):null;
     }
 	
 	public JSONObject createRelationshipType(String AIsToB, String BIsToA, String description) throws JSONException{
 		JSONObject o = convertRelationshipTypeToOpenmrsJson(AIsToB, BIsToA, description);
-		return new JSONObject(HttpUtil.post(getURL()+"/"+RELATIONSHIP_TYPE_URL, "", o.toString(), OPENMRS_USER, OPENMRS_PWD).body());
+		return HttpUtil.postJson(getURL()+"/"+RELATIONSHIP_TYPE_URL, "", o.toString(), OPENMRS_USER, OPENMRS_PWD);
 	}
 	
 	public JSONObject createRelationship(String clientUuid, String isARelationship, String relativeUuid) throws JSONException{
 		JSONObject o = convertRelationshipToOpenmrsJson(clientUuid, isARelationship, relativeUuid);
-		return new JSONObject(HttpUtil.post(getURL()+"/"+RELATIONSHIP_URL, "", o.toString(), OPENMRS_USER, OPENMRS_PWD).body());
+		return HttpUtil.postJson(getURL()+"/"+RELATIONSHIP_URL, "", o.toString(), OPENMRS_USER, OPENMRS_PWD);
 	}
 	
 	public JSONObject convertRelationshipToOpenmrsJson(String personA, String isARelationship, String personB) throws JSONException {
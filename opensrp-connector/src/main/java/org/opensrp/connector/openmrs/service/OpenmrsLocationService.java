@@ -1,5 +1,13 @@
 package org.opensrp.connector.openmrs.service;
 
+import static java.text.MessageFormat.format;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -7,14 +15,25 @@ import org.opensrp.api.domain.Location;
 import org.opensrp.api.util.LocationTree;
 import org.opensrp.common.util.HttpResponse;
 import org.opensrp.connector.HttpUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import com.mysql.jdbc.StringUtils;
 
+/**
+ * Reads locations and location hierarchies from OpenMRS. The complete hierarchy is kept in memory, loaded in
+ * bulk from the location listing and replaced as a whole by {@link #refreshLocationCache()}, so that the trees
+ * returned by {@link #getLocationTreeOf(String[])} are sliced from memory instead of fetching every location of
+ * the hierarchy separately. Locations not found in memory are still fetched from OpenMRS.
+ */
 @Service
 public class OpenmrsLocationService extends OpenmrsService{
+	private static Logger logger = LoggerFactory.getLogger(OpenmrsLocationService.class.toString());
 	private static final String LOCATION_URL = "ws/rest/v1/location";
 
+	private volatile LocationCache locationCache;
+
 	public OpenmrsLocationService() {	}
 
 	public OpenmrsLocationService(String openmrsUrl, String user, String password) {
@@ -66,42 +85,102 @@ public class OpenmrsLocationService extends OpenmrsService{
 	
 	public LocationTree getLocationTree() throws JSONException {
 		LocationTree ltr = new LocationTree();
-		HttpResponse op = HttpUtil.get(HttpUtil.removeEndingSlash(OPENMRS_BASE_URL)+"/"+LOCATION_URL, "v=full", OPENMRS_USER, OPENMRS_PWD);
-		
-		JSONArray res = new JSONObject(op.body()).getJSONArray("results");
-		if(res.length() == 0){
-			return ltr;
-		}
-		
-		for (int i = 0; i < res.length(); i++) {
-			ltr.addLocation(makeLocation(res.getJSONObject(i)));
+		for (Location l : fetchAllLocations()) {
+			ltr.addLocation(l);
 		}
 		return ltr;
 	}
 	
 	public LocationTree getLocationTreeOf(String locationIdOrName) throws JSONException {
-		LocationTree ltr = new LocationTree();
-		
-		fillTreeWithHierarchy(ltr, locationIdOrName);
-		fillTreeWithUpperHierarchy(ltr, locationIdOrName);
-		
-		return ltr;
+		return getLocationTreeOf(new String[]{locationIdOrName});
 	}
 	
+	/**
+	 * Builds the tree of given locations with all their children and all their parents up to the root. 
+	 * The hierarchy is taken from memory, loading it first if it was never loaded.
+	 */
 	public LocationTree getLocationTreeOf(String[] locationIdsOrNames) throws JSONException {
 		LocationTree ltr = new LocationTree();
+		LocationCache cache = locationCache();
 		
 		for (String loc : locationIdsOrNames) {
-			String locTreeId = fillTreeWithHierarchy(ltr, loc);
-			Location lp = ltr.findLocation(locTreeId).getParentLocation();
-			if(lp != null){
-				fillTreeWithUpperHierarchy(ltr, lp.getLocationId());
+			Location l = cache.find(loc);
+			if(l == null){
+				logger.warn(format("Location {0} is not in location cache. Fetching its hierarchy from OpenMRS", loc));
+				String locTreeId = fillTreeWithHierarchy(ltr, loc);
+				Location lp = ltr.findLocation(locTreeId).getParentLocation();
+				if(lp != null){
+					fillTreeWithUpperHierarchy(ltr, lp.getLocationId());
+				}
+				continue;
+			}
+			// parents first so that every location is added under a node already in the tree
+			for (Location p : cache.ancestorsOf(l.getLocationId())) {
+				ltr.addLocation(p);
+			}
+			for (Location c : cache.subtreeOf(l.getLocationId())) {
+				ltr.addLocation(c);
 			}
 		}		
 		
 		return ltr;
 	}
 	
+	/**
+	 * Reloads all locations from OpenMRS in bulk and swaps them in for the hierarchy in memory. Requests 
+	 * running meanwhile keep reading the previous hierarchy.
+	 * @return the number of locations loaded
+	 */
+	public synchronized int refreshLocationCache() throws JSONException {
+		LocationCache cache = new LocationCache(fetchAllLocations());
+		locationCache = cache;
+		logger.info(format("Loaded {0} locations into location cache", cache.size()));
+		return cache.size();
+	}
+	
+	private LocationCache locationCache() throws JSONException {
+		LocationCache cache = locationCache;
+		if(cache == null){
+			synchronized (this) {
+				if(locationCache == null){
+					refreshLocationCache();
+				}
+				cache = locationCache;
+			}
+		}
+		return cache;
+	}
+	
+	/**
+	 * Fetches all locations with full representation, following the next page links of OpenMRS.
+	 */
+	private List<Location> fetchAllLocations() throws JSONException {
+		List<Location> locations = new ArrayList<>();
+		HttpResponse op = HttpUtil.get(HttpUtil.removeEndingSlash(OPENMRS_BASE_URL)+"/"+LOCATION_URL, "v=full", OPENMRS_USER, OPENMRS_PWD);
+		while (op != null) {
+			JSONObject page = new JSONObject(op.body());
+			JSONArray res = page.getJSONArray("results");
+			for (int i = 0; i < res.length(); i++) {
+				locations.add(makeLocation(res.getJSONObject(i)));
+			}
+			String next = nextPage(page);
+			op = next == null ? null : HttpUtil.get(next, "", OPENMRS_USER, OPENMRS_PWD);
+		}
+		return locations;
+	}
+	
+	private String nextPage(JSONObject page) throws JSONException {
+		if(page.has("links")){
+			JSONArray links = page.getJSONArray("links");
+			for (int i = 0; i < links.length(); i++) {
+				if("next".equalsIgnoreCase(links.getJSONObject(i).optString("rel"))){
+					return links.getJSONObject(i).getString("uri");
+				}
+			}
+		}
+		return null;
+	}
+	
 	private String fillTreeWithHierarchy(LocationTree ltr, String locationIdOrName) throws JSONException{
 		HttpResponse op = HttpUtil.get(HttpUtil.removeEndingSlash(OPENMRS_BASE_URL)+"/"+LOCATION_URL+"/"+(locationIdOrName.replaceAll(" ", "%20")), "v=full", OPENMRS_USER, OPENMRS_PWD);
 
@@ -131,4 +210,74 @@ public class OpenmrsLocationService extends OpenmrsService{
 			fillTreeWithUpperHierarchy(ltr, l.getParentLocation().getLocationId());
 		}
 	}
+
+	/**
+	 * Immutable snapshot of the location hierarchy indexed by uuid, by name and by parent.
+	 */
+	private static class LocationCache {
+		private final Map<String, Location> byId = new HashMap<>();
+		private final Map<String, String> idByName = new HashMap<>();
+		private final Map<String, List<String>> childrenById = new HashMap<>();
+		
+		LocationCache(List<Location> locations) {
+			for (Location l : locations) {
+				byId.put(l.getLocationId(), l);
+				idByName.put(l.getName(), l.getLocationId());
+				if(l.getParentLocation() != null){
+					String parentId = l.getParentLocation().getLocationId();
+					List<String> children = childrenById.get(parentId);
+					if(children == null){
+						children = new ArrayList<>();
+						childrenById.put(parentId, children);
+					}
+					children.add(l.getLocationId());
+				}
+			}
+		}
+		
+		int size() {
+			return byId.size();
+		}
+		
+		Location find(String locationIdOrName) {
+			Location l = byId.get(locationIdOrName);
+			if(l == null && idByName.containsKey(locationIdOrName)){
+				l = byId.get(idByName.get(locationIdOrName));
+			}
+			return l;
+		}
+		
+		/**
+		 * @return the parents of given location, root first
+		 */
+		List<Location> ancestorsOf(String locationId) {
+			List<Location> ancestors = new ArrayList<>();
+			Location l = byId.get(locationId);
+			while (l != null && l.getParentLocation() != null && ancestors.size() < byId.size()) {
+				l = byId.get(l.getParentLocation().getLocationId());
+				if(l != null){
+					ancestors.add(l);
+				}
+			}
+			Collections.reverse(ancestors);
+			return ancestors;
+		}
+		
+		/**
+		 * @return given location followed by all its children level by level
+		 */
+		List<Location> subtreeOf(String locationId) {
+			List<Location> subtree = new ArrayList<>();
+			subtree.add(byId.get(locationId));
+			for (int i = 0; i < subtree.size() && subtree.size() <= byId.size(); i++) {
+				List<String> children = childrenById.get(subtree.get(i).getLocationId());
+				if(children != null){
+					for (String c : children) {
+						subtree.add(byId.get(c));
+					}
+				}
+			}
+			return subtree;
+		}
+	}
 }
@@ -0,0 +1,121 @@
+package org.opensrp.connector.openmrs.service;
+
+import static java.text.MessageFormat.format;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PreDestroy;
+
+import org.opensrp.common.util.DateUtil;
+import org.opensrp.domain.Multimedia;
+import org.opensrp.repository.MultimediaRepository;
+import org.opensrp.service.MultimediaService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Pushes stored multimedia files to OpenMRS as patient images in the background, so that uploads do not wait on
+ * OpenMRS. Files waiting for a push are marked on their {@link Multimedia} record, which keeps them queued across
+ * restarts. A failed push is retried with exponential backoff like the form submission pushes.
+ */
+@Service
+public class OpenmrsMultimediaPushService {
+	private static Logger logger = LoggerFactory.getLogger(OpenmrsMultimediaPushService.class.toString());
+	private static final int MAX_BACKOFF_SHIFT = 10;
+
+	private PatientService patientService;
+	private MultimediaService multimediaService;
+	private MultimediaRepository multimediaRepository;
+	private int maxAttempts;
+	private int batchSize;
+	private long retryBaseMillis;
+	private ExecutorService pusher = Executors.newSingleThreadExecutor();
+	private AtomicBoolean draining = new AtomicBoolean(false);
+
+	@Autowired
+	public OpenmrsMultimediaPushService(PatientService patientService, MultimediaService multimediaService,
+			MultimediaRepository multimediaRepository,
+			@Value("#{opensrp['openmrs.push.max.attempts']}") int maxAttempts,
+			@Value("#{opensrp['openmrs.push.batch.size']}") int batchSize,
+			@Value("#{opensrp['openmrs.push.retry.base-sec']}") int retryBaseSeconds) {
+		this.patientService = patientService;
+		this.multimediaService = multimediaService;
+		this.multimediaRepository = multimediaRepository;
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.batchSize = Math.max(1, batchSize);
+		this.retryBaseMillis = Math.max(1, retryBaseSeconds) * 1000L;
+	}
+
+	/**
+	 * Starts pushing the due files in the background, returning immediately.
+	 */
+	public void pushLater() {
+		pusher.submit(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					drain();
+				}
+				catch (Exception e) {
+					logger.error(format("OpenMRS multimedia push failed with exception {0}", e));
+				}
+			}
+		});
+	}
+
+	/**
+	 * Pushes up to one batch of due files to OpenMRS, one after another. Returns immediately when another drain
+	 * is running.
+	 * @return the number of files pushed successfully
+	 */
+	public int drain() {
+		if (!draining.compareAndSet(false, true)) {
+			return 0;
+		}
+		try {
+			List<Multimedia> due = multimediaRepository.findPendingPush(DateUtil.millis(), batchSize);
+			int pushed = 0;
+			for (Multimedia multimedia : due) {
+				if (push(multimedia)) {
+					pushed++;
+				}
+			}
+			if (!due.isEmpty()) {
+				logger.info(format("Pushed {0} of {1} due multimedia files to OpenMRS", pushed, due.size()));
+			}
+			return pushed;
+		} finally {
+			draining.set(false);
+		}
+	}
+
+	private boolean push(Multimedia multimedia) {
+		File file = multimediaService.fileOf(multimedia);
+		try {
+			patientService.patientImageUpload(multimedia, file);
+			multimediaRepository.update(multimedia.markPushed());
+			return true;
+		} catch (Exception e) {
+			long backoff = retryBaseMillis << Math.min(multimedia.getPushAttempts(), MAX_BACKOFF_SHIFT);
+			multimediaRepository.update(multimedia.markPushFailed(String.valueOf(e), DateUtil.millis() + backoff, maxAttempts));
+			if (multimedia.isPushFailed()) {
+				logger.error(format("Giving up pushing multimedia file {0} of case {1} to OpenMRS after {2} attempts: {3}", file, multimedia.getCaseId(), multimedia.getPushAttempts(), e));
+			} else {
+				logger.warn(format("Push of multimedia file {0} of case {1} to OpenMRS failed, retrying in {2} ms: {3}", file, multimedia.getCaseId(), backoff, e));
+			}
+			return false;
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		pusher.shutdown();
+	}
+}
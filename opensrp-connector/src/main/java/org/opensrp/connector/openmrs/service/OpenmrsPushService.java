@@ -0,0 +1,322 @@
+package org.opensrp.connector.openmrs.service;
+
+import static java.text.MessageFormat.format;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.ektorp.DocumentOperationResult;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.opensrp.api.domain.Client;
+import org.opensrp.api.domain.Event;
+import org.opensrp.common.util.DateUtil;
+import org.opensrp.connector.openmrs.constants.OpenmrsHouseHold;
+import org.opensrp.domain.ErrorTrace;
+import org.opensrp.domain.OpenmrsPushTask;
+import org.opensrp.form.domain.FormSubmission;
+import org.opensrp.repository.AllOpenmrsPushTasks;
+import org.opensrp.service.ErrorTraceService;
+import org.opensrp.service.formSubmission.FormEntityConverter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Durable outbound queue of form submissions to be pushed to OpenMRS. Submissions are stored as
+ * {@link OpenmrsPushTask}s when received and pushed later by {@link #drain()}, so that clients do not
+ * wait on OpenMRS. Tasks of one patient are pushed one after another in the order they were received,
+ * tasks of different patients run in parallel on a bounded worker pool. Pushed tasks are kept for a
+ * retention period, so that a resubmitted form is not pushed again, and then purged.
+ */
+@Service
+public class OpenmrsPushService {
+	private static Logger logger = LoggerFactory.getLogger(OpenmrsPushService.class.toString());
+	private static final int MAX_BACKOFF_SHIFT = 10;
+	private static final String CONFLICT = "conflict";
+
+	private FormEntityConverter formEntityConverter;
+	private PatientService patientService;
+	private EncounterService encounterService;
+	private HouseholdService householdService;
+	private AllOpenmrsPushTasks allOpenmrsPushTasks;
+	private ErrorTraceService errorTraceService;
+	private int maxAttempts;
+	private int batchSize;
+	private long retryBaseMillis;
+	private long doneRetentionMillis;
+	private ExecutorService workers;
+	// pushed tasks whose DONE status could not be stored yet; they must not be pushed again
+	private Map<String, OpenmrsPushTask> unrecordedDone = new ConcurrentHashMap<>();
+	private AtomicBoolean draining = new AtomicBoolean(false);
+
+	@Autowired
+	public OpenmrsPushService(FormEntityConverter formEntityConverter, PatientService patientService,
+			EncounterService encounterService, HouseholdService householdService,
+			AllOpenmrsPushTasks allOpenmrsPushTasks, ErrorTraceService errorTraceService,
+			@Value("#{opensrp['openmrs.push.worker.pool.size']}") int poolSize,
+			@Value("#{opensrp['openmrs.push.max.attempts']}") int maxAttempts,
+			@Value("#{opensrp['openmrs.push.batch.size']}") int batchSize,
+			@Value("#{opensrp['openmrs.push.retry.base-sec']}") int retryBaseSeconds,
+			@Value("#{opensrp['openmrs.push.done.retention-days']}") int doneRetentionDays) {
+		this.formEntityConverter = formEntityConverter;
+		this.patientService = patientService;
+		this.encounterService = encounterService;
+		this.householdService = householdService;
+		this.allOpenmrsPushTasks = allOpenmrsPushTasks;
+		this.errorTraceService = errorTraceService;
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.batchSize = Math.max(1, batchSize);
+		this.retryBaseMillis = Math.max(1, retryBaseSeconds) * 1000L;
+		this.doneRetentionMillis = Math.max(0, doneRetentionDays) * 24L * 60 * 60 * 1000;
+		this.workers = Executors.newFixedThreadPool(Math.max(1, poolSize));
+	}
+
+	/**
+	 * Stores a push task for every submission that is not queued already. Submissions are deduplicated
+	 * by instance id within the given batch, and against the queue by the task's document id.
+	 * @return the number of tasks queued
+	 */
+	public int enqueue(List<FormSubmission> submissions) {
+		Set<String> instanceIds = new HashSet<>();
+		long now = DateUtil.millis();
+		List<OpenmrsPushTask> tasks = new ArrayList<>();
+		for (FormSubmission submission : submissions) {
+			if (!instanceIds.add(submission.instanceId())) {
+				continue;
+			}
+			// keeps the order of the batch when several tasks are created in the same millisecond
+			tasks.add(new OpenmrsPushTask(submission, now + tasks.size()));
+		}
+		if (tasks.isEmpty()) {
+			return 0;
+		}
+
+		List<DocumentOperationResult> failures = allOpenmrsPushTasks.addAll(tasks);
+		for (DocumentOperationResult failure : failures) {
+			if (CONFLICT.equals(failure.getError())) {
+				logger.warn(format("Form submission with instance id {0} is already queued for OpenMRS. Skipping.", failure.getId()));
+			} else {
+				logger.error(format("Could not queue form submission {0} for OpenMRS: {1} {2}", failure.getId(), failure.getError(), failure.getReason()));
+			}
+		}
+		return tasks.size() - failures.size();
+	}
+
+	/**
+	 * Pushes up to one batch of due tasks to OpenMRS. Returns immediately when another drain is running.
+	 * @return the number of tasks pushed successfully
+	 */
+	public int drain() {
+		if (!draining.compareAndSet(false, true)) {
+			return 0;
+		}
+		try {
+			recordUnrecordedDone();
+			long now = DateUtil.millis();
+			purgeDone(now);
+			List<OpenmrsPushTask> due = allOpenmrsPushTasks.findDue(now, batchSize);
+			if (due.isEmpty()) {
+				return 0;
+			}
+
+			List<Future<Integer>> results = new ArrayList<>();
+			for (final List<OpenmrsPushTask> patientTasks : runnableTasksByPatient(due, now).values()) {
+				results.add(workers.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() {
+						return pushInOrder(patientTasks);
+					}
+				}));
+			}
+
+			int pushed = 0;
+			for (Future<Integer> result : results) {
+				try {
+					pushed += result.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				} catch (ExecutionException e) {
+					logger.error(format("OpenMRS push worker failed with exception {0}", e.getCause()));
+				}
+			}
+			logger.info(format("Pushed {0} of {1} due form submissions to OpenMRS", pushed, due.size()));
+			return pushed;
+		} finally {
+			draining.set(false);
+		}
+	}
+
+	/**
+	 * Groups the pending tasks of every patient in the due batch by patient, oldest first. A patient's
+	 * tasks are only runnable up to the first task still waiting for its retry, so a later submission
+	 * never overtakes an earlier one.
+	 */
+	Map<String, List<OpenmrsPushTask>> runnableTasksByPatient(List<OpenmrsPushTask> due, long now) {
+		Set<String> entityIds = new HashSet<>();
+		for (OpenmrsPushTask task : due) {
+			if (task.getEntityId() != null) {
+				entityIds.add(task.getEntityId());
+			}
+		}
+
+		Map<String, List<OpenmrsPushTask>> byPatient = new LinkedHashMap<>();
+		List<OpenmrsPushTask> pending = entityIds.isEmpty() ? new ArrayList<OpenmrsPushTask>()
+				: allOpenmrsPushTasks.findPendingByEntityIds(new ArrayList<>(entityIds));
+		for (OpenmrsPushTask task : pending) {
+			if (!unrecordedDone.containsKey(task.getId())) {
+				groupByPatient(byPatient, task);
+			}
+		}
+		for (OpenmrsPushTask task : due) {
+			if (task.getEntityId() == null && !unrecordedDone.containsKey(task.getId())) {
+				groupByPatient(byPatient, task);
+			}
+		}
+
+		for (List<OpenmrsPushTask> patientTasks : byPatient.values()) {
+			Collections.sort(patientTasks, new Comparator<OpenmrsPushTask>() {
+				@Override
+				public int compare(OpenmrsPushTask first, OpenmrsPushTask second) {
+					return Long.compare(first.getCreatedAt(), second.getCreatedAt());
+				}
+			});
+			int runnable = 0;
+			while (runnable < patientTasks.size() && patientTasks.get(runnable).getNextAttemptAt() <= now) {
+				runnable++;
+			}
+			patientTasks.subList(runnable, patientTasks.size()).clear();
+		}
+		return byPatient;
+	}
+
+	private void groupByPatient(Map<String, List<OpenmrsPushTask>> byPatient, OpenmrsPushTask task) {
+		String key = task.getEntityId() == null ? task.getFormSubmissionId() : task.getEntityId();
+		List<OpenmrsPushTask> patientTasks = byPatient.get(key);
+		if (patientTasks == null) {
+			patientTasks = new ArrayList<>();
+			byPatient.put(key, patientTasks);
+		}
+		patientTasks.add(task);
+	}
+
+	private int pushInOrder(List<OpenmrsPushTask> patientTasks) {
+		int pushed = 0;
+		for (OpenmrsPushTask task : patientTasks) {
+			try {
+				addFormToOpenMRS(task.getFormSubmission());
+			} catch (Exception e) {
+				long backoff = retryBaseMillis << Math.min(task.getAttempts(), MAX_BACKOFF_SHIFT);
+				allOpenmrsPushTasks.update(task.markAttemptFailed(String.valueOf(e), DateUtil.millis() + backoff, maxAttempts));
+				if (!task.isFailed()) {
+					logger.warn(format("Push of form submission {0} to OpenMRS failed, retrying in {1} ms: {2}", task.getFormSubmissionId(), backoff, e));
+					return pushed;
+				}
+				// given up on this one, so it must not hold back the rest of the patient's submissions
+				logger.error(format("Giving up pushing form submission {0} to OpenMRS after {1} attempts", task.getFormSubmissionId(), task.getAttempts()), e);
+				ErrorTrace errorTrace = new ErrorTrace(new Date(), "Parse Exception", "", ExceptionUtils.getStackTrace(e), "Unsolved", task.getFormSubmission().formName());
+				errorTrace.setRecordId(task.getFormSubmissionId());
+				errorTraceService.addError(errorTrace);
+				continue;
+			}
+			pushed++;
+			recordDone(task);
+		}
+		return pushed;
+	}
+
+	/**
+	 * Stores the DONE status of a pushed task. When that fails the task is remembered as pushed, so it is
+	 * not pushed again, and storing its status is retried on the next drain.
+	 */
+	private void recordDone(OpenmrsPushTask task) {
+		try {
+			allOpenmrsPushTasks.update(task.markDone(DateUtil.millis()));
+			unrecordedDone.remove(task.getId());
+		} catch (Exception e) {
+			unrecordedDone.put(task.getId(), task);
+			logger.error(format("Form submission {0} was pushed to OpenMRS but could not be marked done", task.getFormSubmissionId()), e);
+		}
+	}
+
+	private void recordUnrecordedDone() {
+		for (OpenmrsPushTask task : new ArrayList<>(unrecordedDone.values())) {
+			try {
+				// reloaded, as the earlier update may have been stored after all
+				OpenmrsPushTask stored = allOpenmrsPushTasks.get(task.getId());
+				if (!stored.isDone()) {
+					allOpenmrsPushTasks.update(stored.markDone(task.getDoneAt()));
+				}
+				unrecordedDone.remove(task.getId());
+			} catch (Exception e) {
+				logger.error(format("Form submission {0} still could not be marked done", task.getFormSubmissionId()), e);
+			}
+		}
+	}
+
+	private void purgeDone(long now) {
+		List<OpenmrsPushTask> expired = allOpenmrsPushTasks.findDoneBefore(now - doneRetentionMillis, batchSize);
+		if (expired.isEmpty()) {
+			return;
+		}
+		List<DocumentOperationResult> failures = allOpenmrsPushTasks.removeAll(expired);
+		logger.info(format("Purged {0} pushed form submissions from the OpenMRS queue", expired.size() - failures.size()));
+	}
+
+	void addFormToOpenMRS(FormSubmission formSubmission) throws IllegalStateException, JSONException {
+		Client c = formEntityConverter.getClientFromFormSubmission(formSubmission);
+		Event e = formEntityConverter.getEventFromFormSubmission(formSubmission);
+		Map<String, Map<String, Object>> dep = formEntityConverter.getDependentClientsFromFormSubmission(formSubmission);
+
+		if (formSubmission.formName().toLowerCase().contains("household")
+				|| formSubmission.formName().toLowerCase().contains("census")) {
+			OpenmrsHouseHold hh = new OpenmrsHouseHold(c, e);
+			for (Map<String, Object> cm : dep.values()) {
+				hh.addHHMember((Client) cm.get("client"), (Event) cm.get("event"));
+			}
+
+			householdService.saveHH(hh, true);
+		}
+		else {
+			createPatientIfMissing(c);
+			encounterService.createEncounter(e);
+
+			for (Map<String, Object> cm : dep.values()) {
+				createPatientIfMissing((Client) cm.get("client"));
+				encounterService.createEncounter((Event) cm.get("event"));
+			}
+		}
+	}
+
+	private void createPatientIfMissing(Client client) throws JSONException {
+		JSONObject p = patientService.getPatientByIdentifier(client.getBaseEntityId());
+		if (p == null) {
+			patientService.createPatient(client);
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		workers.shutdown();
+	}
+}
@@ -12,6 +12,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.motechproject.scheduletracking.api.domain.Enrollment;
 import org.motechproject.scheduletracking.api.domain.MilestoneFulfillment;
+import org.opensrp.common.util.TtlCache;
 import org.opensrp.connector.HttpUtil;
 import org.opensrp.connector.openmrs.constants.OpenmrsConstants;
 import org.opensrp.scheduler.Action;
@@ -25,9 +26,14 @@ public class OpenmrsSchedulerService extends OpenmrsService{
 	private static final String TRACK_MILESTONE_URL = "ws/rest/v1/scheduletracker/trackmilestone";
 	private static final String SCHEDULE_URL = "ws/rest/v1/scheduletracker/schedule";
 	private static final String MILESTONE_URL = "ws/rest/v1/scheduletracker/milestone";
+	private static final int PERSON_UUID_CACHE_SIZE = 10000;
+	private static final long PERSON_UUID_CACHE_TTL_MILLIS = 24L * 60 * 60 * 1000;
 	
 	private OpenmrsUserService userService;
 	private PatientService patientService;
+	// person uuids never change in OpenMRS, so lookups are kept for a day; the size bounds the memory used
+	private final TtlCache<String, String> beneficiaryUuids = new TtlCache<>(PERSON_UUID_CACHE_SIZE, PERSON_UUID_CACHE_TTL_MILLIS);
+	private final TtlCache<String, String> userPersonUuids = new TtlCache<>(PERSON_UUID_CACHE_SIZE, PERSON_UUID_CACHE_TTL_MILLIS);
 
 	public OpenmrsUserService getUserService() {
 		return userService;
@@ -57,9 +63,8 @@ public class OpenmrsSchedulerService extends OpenmrsService{
 	
 	public JSONObject createTrack(Enrollment e, List<Action> alertActions) throws JSONException, ParseException
 	{
-		JSONObject po = patientService.getPatientByIdentifier(e.getExternalId());
 		JSONObject t = new JSONObject();
-		t.put("beneficiary", po.getJSONObject("person").getString("uuid"));
+		t.put("beneficiary", getBeneficiaryUuid(e.getExternalId()));
 		t.put("beneficiaryRole", alertActions!=null&&alertActions.size()>0?alertActions.get(0).data().get("beneficiaryType"):null);
 		t.put("schedule", e.getScheduleName());
 		String hr = StringUtils.leftPad(e.getPreferredAlertTime().getHour().toString(),2,"0");
@@ -81,7 +86,7 @@ public class OpenmrsSchedulerService extends OpenmrsService{
 		t.put("status", e.getStatus().name());
 		
 		
-		JSONObject to = new JSONObject(HttpUtil.post(getURL()+"/"+TRACK_URL, "", t.toString(), OPENMRS_USER, OPENMRS_PWD).body());
+		JSONObject to = HttpUtil.postJson(getURL()+"/"+TRACK_URL, "", t.toString(), OPENMRS_USER, OPENMRS_PWD);
 		String trackuuid = to.getString("uuid");
 		
 		JSONArray tmarr = new JSONArray();
@@ -89,7 +94,7 @@ public class OpenmrsSchedulerService extends OpenmrsService{
 			if(ac.actionType().equalsIgnoreCase("createAlert")){
 				JSONObject tm = fromActionToTrackMilestone(false, ac, trackuuid, e, alertActions);
 				
-				JSONObject tmo = new JSONObject(HttpUtil.post(getURL()+"/"+TRACK_MILESTONE_URL, "", tm.toString(), OPENMRS_USER, OPENMRS_PWD).body());
+				JSONObject tmo = HttpUtil.postJson(getURL()+"/"+TRACK_MILESTONE_URL, "", tm.toString(), OPENMRS_USER, OPENMRS_PWD);
 			
 				tmarr.put(tmo);
 			}
@@ -98,7 +103,7 @@ public class OpenmrsSchedulerService extends OpenmrsService{
 			if(getCreatedAction(f.getMilestoneName(), alertActions) == null){
 				JSONObject tm = fromMilestoneToTrackMilestone(false, f, trackuuid, e, alertActions);
 				
-				JSONObject tmo = new JSONObject(HttpUtil.post(getURL()+"/"+TRACK_MILESTONE_URL, "", tm.toString(), OPENMRS_USER, OPENMRS_PWD).body());
+				JSONObject tmo = HttpUtil.postJson(getURL()+"/"+TRACK_MILESTONE_URL, "", tm.toString(), OPENMRS_USER, OPENMRS_PWD);
 			
 				tmarr.put(tmo);
 			}
@@ -119,18 +124,18 @@ public class OpenmrsSchedulerService extends OpenmrsService{
 		t.put("status", e.getStatus().name());
 		
 		
-		JSONObject to = new JSONObject(HttpUtil.post(getURL()+"/"+TRACK_URL+"/"+e.getMetadata().get(OpenmrsConstants.ENROLLMENT_TRACK_UUID), "", t.toString(), OPENMRS_USER, OPENMRS_PWD).body());
+		JSONObject to = HttpUtil.postJson(getURL()+"/"+TRACK_URL+"/"+e.getMetadata().get(OpenmrsConstants.ENROLLMENT_TRACK_UUID), "", t.toString(), OPENMRS_USER, OPENMRS_PWD);
 		String trackuuid = to.getString("uuid");
 		
 		JSONArray tmarr = new JSONArray();
 		for (Action ac : alertActions) {
 			if(ac.actionType().equalsIgnoreCase("createAlert")){
 				String milestone = ac.data().get("visitCode");
-				JSONArray j = new JSONObject(HttpUtil.get(getURL()+"/"+TRACK_MILESTONE_URL, "v=full&track="+trackuuid+"&milestone="+milestone, OPENMRS_USER, OPENMRS_PWD).body()).getJSONArray("results");
+				JSONArray j = HttpUtil.getJson(getURL()+"/"+TRACK_MILESTONE_URL, "v=full&track="+trackuuid+"&milestone="+milestone, OPENMRS_USER, OPENMRS_PWD).getJSONArray("results");
 				JSONObject tm = fromActionToTrackMilestone(j.length()>0, ac, trackuuid, e, alertActions);
 	
 				String uuid = j.length()>0?j.getJSONObject(0).getString("uuid"):"";
-				JSONObject tmo = new JSONObject(HttpUtil.post(getURL()+"/"+TRACK_MILESTONE_URL+"/"+uuid, "", tm.toString(), OPENMRS_USER, OPENMRS_PWD).body());
+				JSONObject tmo = HttpUtil.postJson(getURL()+"/"+TRACK_MILESTONE_URL+"/"+uuid, "", tm.toString(), OPENMRS_USER, OPENMRS_PWD);
 			
 				tmarr.put(tmo);
 			}
@@ -138,11 +143,11 @@ public class OpenmrsSchedulerService extends OpenmrsService{
 		for (MilestoneFulfillment f : e.getFulfillments()) {
 			if(getCreatedAction(f.getMilestoneName(), alertActions) == null){
 				String milestone = f.getMilestoneName();
-				JSONArray j = new JSONObject(HttpUtil.get(getURL()+"/"+TRACK_MILESTONE_URL, "v=full&track="+trackuuid+"&milestone="+milestone, OPENMRS_USER, OPENMRS_PWD).body()).getJSONArray("results");
+				JSONArray j = HttpUtil.getJson(getURL()+"/"+TRACK_MILESTONE_URL, "v=full&track="+trackuuid+"&milestone="+milestone, OPENMRS_USER, OPENMRS_PWD).getJSONArray("results");
 				JSONObject tm = fromMilestoneToTrackMilestone(j.length()>0, f, trackuuid, e, alertActions);
 				
 				String uuid = j.length()>0?j.getJSONObject(0).getString("uuid"):"";
-				JSONObject tmo = new JSONObject(HttpUtil.post(getURL()+"/"+TRACK_MILESTONE_URL+"/"+uuid, "", tm.toString(), OPENMRS_USER, OPENMRS_PWD).body());
+				JSONObject tmo = HttpUtil.postJson(getURL()+"/"+TRACK_MILESTONE_URL+"/"+uuid, "", tm.toString(), OPENMRS_USER, OPENMRS_PWD);
 			
 				tmarr.put(tmo);
 			}
@@ -156,10 +161,9 @@ public class OpenmrsSchedulerService extends OpenmrsService{
 		JSONObject tm = new JSONObject();
 		String milestone = ac.data().get("visitCode");
 		if(!isUpdate){
-			JSONObject pr = userService.getPersonByUser(ac.anmIdentifier());
 			tm.put("track", trackUuid);
 			tm.put("milestone", milestone );
-			tm.put("alertRecipient", pr.getString("uuid"));
+			tm.put("alertRecipient", getPersonUuidOfUser(ac.anmIdentifier()));
 			tm.put("alertRecipientRole", "PROVIDER");
 		}
 		Action close = getClosedAction(milestone, alertActions);
@@ -181,10 +185,9 @@ public class OpenmrsSchedulerService extends OpenmrsService{
 	private JSONObject fromMilestoneToTrackMilestone(boolean isUpdate, MilestoneFulfillment m, String trackUuid, Enrollment e, List<Action> alertActions) throws JSONException, ParseException {
 		JSONObject tm = new JSONObject();
 		if(!isUpdate){
-			JSONObject pr = userService.getPersonByUser("daemon");
 			tm.put("track", trackUuid);
 			tm.put("milestone", m.getMilestoneName());
-			tm.put("alertRecipient", pr.getString("uuid"));
+			tm.put("alertRecipient", getPersonUuidOfUser("daemon"));
 			tm.put("alertRecipientRole", "PROVIDER");
 		}
 
@@ -203,6 +206,31 @@ public class OpenmrsSchedulerService extends OpenmrsService{
 		return tm;
 	}
 	
+	/**
+	 * @return uuid of the OpenMRS person of the patient with given identifier
+	 */
+	public String getBeneficiaryUuid(String identifier) throws JSONException {
+		String uuid = beneficiaryUuids.get(identifier);
+		if(uuid == null){
+			JSONObject po = patientService.getPatientByIdentifier(identifier);
+			uuid = po.getJSONObject("person").getString("uuid");
+			beneficiaryUuids.put(identifier, uuid);
+		}
+		return uuid;
+	}
+	
+	/**
+	 * @return uuid of the OpenMRS person linked to the user with given username
+	 */
+	public String getPersonUuidOfUser(String username) throws JSONException {
+		String uuid = userPersonUuids.get(username);
+		if(uuid == null){
+			uuid = userService.getPersonByUser(username).getString("uuid");
+			userPersonUuids.put(username, uuid);
+		}
+		return uuid;
+	}
+	
 	private Action getClosedAction(String milestone, List<Action> actions){
 		for (Action a : actions) {
 			if(a.data().get("visitCode") != null && a.data().get("visitCode").equalsIgnoreCase(milestone)
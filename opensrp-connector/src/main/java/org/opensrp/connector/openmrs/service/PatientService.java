@@ -45,8 +45,8 @@ public class PatientService extends OpenmrsService{
 	
     public JSONObject getPatientByIdentifier(String identifier) throws JSONException
     {
-    	JSONArray p = new JSONObject(HttpUtil.get(getURL()
-    			+"/"+PATIENT_URL, "v=full&identifier="+identifier, OPENMRS_USER, OPENMRS_PWD).body())
+    	JSONArray p = HttpUtil.getJson(getURL()
+    			+"/"+PATIENT_URL, "v=full&identifier="+identifier, OPENMRS_USER, OPENMRS_PWD)
     			.getJSONArray("results");
     	return p.length()>0?p.getJSONObject(0):null;
     }
@@ -55,8 +55,8 @@ public class PatientService extends OpenmrsService{
     {
     	// we have to use this ugly approach because identifier not found throws exception and 
     	// its hard to find whether it was network error or object not found or server error
-    	JSONArray res = new JSONObject(HttpUtil.get(getURL()+"/"+PATIENT_IDENTIFIER_TYPE_URL, "v=full", 
-    			OPENMRS_USER, OPENMRS_PWD).body()).getJSONArray("results");
+    	JSONArray res = HttpUtil.getJson(getURL()+"/"+PATIENT_IDENTIFIER_TYPE_URL, "v=full", 
+    			OPENMRS_USER, OPENMRS_PWD).getJSONArray("results");
     	for (int i = 0; i < res.length(); i++) {
 			if(res.getJSONObject(i).getString("display").equalsIgnoreCase(identifierType)){
 				return res.getJSONObject(i);
@@ -67,7 +67,7 @@ public class PatientService extends OpenmrsService{
 	
     public JSONObject createIdentifierType(String name, String description) throws JSONException{
 		JSONObject o = convertIdentifierToOpenmrsJson(name, description);
-		return new JSONObject(HttpUtil.post(getURL()+"/"+PATIENT_IDENTIFIER_TYPE_URL, "", o.toString(), OPENMRS_USER, OPENMRS_PWD).body());
+		return HttpUtil.postJson(getURL()+"/"+PATIENT_IDENTIFIER_TYPE_URL, "", o.toString(), OPENMRS_USER, OPENMRS_PWD);
 	}
     
 	public JSONObject convertIdentifierToOpenmrsJson(String name, String description) throws JSONException {
@@ -79,14 +79,14 @@ public class PatientService extends OpenmrsService{
 	
     public JSONObject getPersonAttributeType(String attributeName) throws JSONException
     {
-    	JSONArray p = new JSONObject(HttpUtil.get(getURL()+"/"+PERSON_ATTRIBUTE_TYPE_URL, 
-    			"v=full&q="+attributeName, OPENMRS_USER, OPENMRS_PWD).body()).getJSONArray("results");
+    	JSONArray p = HttpUtil.getJson(getURL()+"/"+PERSON_ATTRIBUTE_TYPE_URL, 
+    			"v=full&q="+attributeName, OPENMRS_USER, OPENMRS_PWD).getJSONArray("results");
     	return p.length()>0?p.getJSONObject(0):null;
     }
 	
 	public JSONObject createPerson(BaseEntity be) throws JSONException{
 		JSONObject per = convertBaseEntityToOpenmrsJson(be);
-		return new JSONObject(HttpUtil.post(getURL()+"/"+PERSON_URL, "", per.toString(), OPENMRS_USER, OPENMRS_PWD).body());
+		return HttpUtil.postJson(getURL()+"/"+PERSON_URL, "", per.toString(), OPENMRS_USER, OPENMRS_PWD);
 	}
 	
 	public JSONObject convertBaseEntityToOpenmrsJson(BaseEntity be) throws JSONException {
@@ -207,28 +207,25 @@ public class PatientService extends OpenmrsService{
 		ids.put(jio);
 		
 		p.put("identifiers", ids);
-		return new JSONObject(HttpUtil.post(getURL()+"/"+PATIENT_URL, "", p.toString(), OPENMRS_USER, OPENMRS_PWD).body());
+		return HttpUtil.postJson(getURL()+"/"+PATIENT_URL, "", p.toString(), OPENMRS_USER, OPENMRS_PWD);
 	}
 	public void patientImageUpload(Multimedia multimedia) throws IOException
+	{
+		patientImageUpload(multimedia, new File("/opt"+multimedia.getFilePath()));
+	}
+
+	/**
+	 * Uploads the file of given multimedia record to OpenMRS as a patient image. The file is streamed in the
+	 * request body as it is read.
+	 * @throws IOException if the upload fails or OpenMRS does not accept it
+	 */
+	public void patientImageUpload(Multimedia multimedia, File file) throws IOException
 	{
 	     //String requestURL =  "http://46.101.51.199:8080/openmrs/ws/rest/v1/patientimage/uploadimage";
-		
-		 try {
-			    File convFile = new File("/opt"+multimedia.getFilePath());
-	            MultipartUtility multipart = new MultipartUtility(getURL()+"/"+PATIENT_IMAGE_URL, OPENMRS_USER, OPENMRS_PWD);
-	            multipart.addFormField("patientidentifier", multimedia.getCaseId());
-	            multipart.addFormField("category", multimedia.getFileCategory());
-	            multipart.addFilePart("file", convFile);
-	 
-	            List<String> response = multipart.finish();
-	             
-	            System.out.println("SERVER REPLIED:");
-	             
-	            for (String line : response) {
-	                System.out.println(line);
-	            }
-	        } catch (IOException ex) {
-	            System.err.println(ex);
-	        }
+		MultipartUtility multipart = new MultipartUtility(getURL()+"/"+PATIENT_IMAGE_URL, OPENMRS_USER, OPENMRS_PWD);
+		multipart.addFormField("patientidentifier", multimedia.getCaseId());
+		multipart.addFormField("category", multimedia.getFileCategory());
+		multipart.addFilePart("file", file);
+		multipart.finish();
 	}
 }
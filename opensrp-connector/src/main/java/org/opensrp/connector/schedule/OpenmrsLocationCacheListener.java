@@ -0,0 +1,31 @@
+package org.opensrp.connector.schedule;
+
+import org.motechproject.scheduler.domain.MotechEvent;
+import org.motechproject.server.event.annotations.MotechListener;
+import org.opensrp.connector.openmrs.constants.OpenmrsConstants;
+import org.opensrp.connector.openmrs.service.OpenmrsLocationService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+@Component
+public class OpenmrsLocationCacheListener {
+	private static Logger logger = LoggerFactory.getLogger(OpenmrsLocationCacheListener.class.toString());
+	private OpenmrsLocationService openmrsLocationService;
+
+	@Autowired
+	public OpenmrsLocationCacheListener(OpenmrsLocationService openmrsLocationService) {
+		this.openmrsLocationService = openmrsLocationService;
+	}
+
+	@MotechListener(subjects = OpenmrsConstants.LOCATION_CACHE_REFRESH_SUBJECT)
+	public void refreshLocations(MotechEvent event) {
+		try {
+			openmrsLocationService.refreshLocationCache();
+		}
+		catch (Exception e) {
+			logger.error("Location cache refresh failed, keeping previously loaded locations", e);
+		}
+	}
+}
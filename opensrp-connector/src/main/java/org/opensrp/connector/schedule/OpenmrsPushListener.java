@@ -0,0 +1,40 @@
+package org.opensrp.connector.schedule;
+
+import org.motechproject.scheduler.domain.MotechEvent;
+import org.motechproject.server.event.annotations.MotechListener;
+import org.opensrp.connector.openmrs.constants.OpenmrsConstants;
+import org.opensrp.connector.openmrs.service.OpenmrsMultimediaPushService;
+import org.opensrp.connector.openmrs.service.OpenmrsPushService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+@Component
+public class OpenmrsPushListener {
+	private static Logger logger = LoggerFactory.getLogger(OpenmrsPushListener.class.toString());
+	private OpenmrsPushService openmrsPushService;
+	private OpenmrsMultimediaPushService openmrsMultimediaPushService;
+
+	@Autowired
+	public OpenmrsPushListener(OpenmrsPushService openmrsPushService, OpenmrsMultimediaPushService openmrsMultimediaPushService) {
+		this.openmrsPushService = openmrsPushService;
+		this.openmrsMultimediaPushService = openmrsMultimediaPushService;
+	}
+
+	@MotechListener(subjects = OpenmrsConstants.OPENMRS_PUSH_SUBJECT)
+	public void pushToOpenmrs(MotechEvent event) {
+		try {
+			openmrsPushService.drain();
+		}
+		catch (Exception e) {
+			logger.error("OpenMRS push failed", e);
+		}
+		try {
+			openmrsMultimediaPushService.drain();
+		}
+		catch (Exception e) {
+			logger.error("OpenMRS multimedia push failed", e);
+		}
+	}
+}
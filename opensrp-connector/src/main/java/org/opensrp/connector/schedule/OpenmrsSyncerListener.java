@@ -1,6 +1,17 @@
 package org.opensrp.connector.schedule;
 
+import static java.text.MessageFormat.format;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.joda.time.DateTime;
 import org.json.JSONObject;
@@ -11,31 +22,42 @@ import org.opensrp.connector.openmrs.constants.OpenmrsConstants;
 import org.opensrp.connector.openmrs.constants.OpenmrsConstants.ScheduleTrackerConfig;
 import org.opensrp.connector.openmrs.service.OpenmrsSchedulerService;
 import org.opensrp.domain.AppStateToken;
+import org.opensrp.scheduler.Action;
 import org.opensrp.scheduler.service.ActionService;
 import org.opensrp.scheduler.service.ScheduleService;
 import org.opensrp.service.ConfigService;
 import org.opensrp.service.ErrorTraceService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 @Component
 public class OpenmrsSyncerListener {
+	private static Logger logger = LoggerFactory.getLogger(OpenmrsSyncerListener.class.toString());
 
 	private OpenmrsSchedulerService openmrsSchedulerService;
 	private ScheduleService opensrpScheduleService;
 	private ActionService actionService;
 	private ConfigService config;
 	private ErrorTraceService errorTraceService;
+	private int poolSize;
+	private int batchSize;
 	
 	@Autowired
 	public OpenmrsSyncerListener(OpenmrsSchedulerService openmrsSchedulerService, 
 			ScheduleService opensrpScheduleService, ActionService actionService, 
-			ConfigService config, ErrorTraceService errorTraceService) {
+			ConfigService config, ErrorTraceService errorTraceService,
+			@Value("#{opensrp['openmrs.scheduletracker.syncer.pool.size']}") int poolSize,
+			@Value("#{opensrp['openmrs.scheduletracker.syncer.batch.size']}") int batchSize) {
 		this.openmrsSchedulerService = openmrsSchedulerService;
 		this.opensrpScheduleService = opensrpScheduleService;
 		this.actionService = actionService;
 		this.config = config;
 		this.errorTraceService = errorTraceService;
+		this.poolSize = Math.max(1, poolSize);
+		this.batchSize = Math.max(1, batchSize);
 		try{
 			AppStateToken at = this.config.getAppStateTokenByName(ScheduleTrackerConfig.openmrs_syncer_sync_by_last_update_enrollment);
 			if(at == null){
@@ -48,37 +70,130 @@ public class OpenmrsSyncerListener {
 		}
 	}
 	
-    @MotechListener(subjects = OpenmrsConstants.SCHEDULER_TRACKER_SYNCER_SUBJECT)
+	/**
+	 * Syncs enrollments updated since the last run in batches of batchSize. Actions of a whole batch are fetched
+	 * with one query and the tracks are pushed in parallel. The sync token is moved forward after every batch, so
+	 * a run that breaks off resumes from the last completed batch.
+	 */
+	@MotechListener(subjects = OpenmrsConstants.SCHEDULER_TRACKER_SYNCER_SUBJECT)
 	public void scheduletrackerSyncer(MotechEvent event) {
-    	try{
-    		System.out.println("RUNNING SCHEDULER_TRACKER_SYNCER_SUBJECT");
-	    	AppStateToken lastsync = config.getAppStateTokenByName(ScheduleTrackerConfig.openmrs_syncer_sync_by_last_update_enrollment);
-	    	DateTime start = lastsync==null||lastsync.getValue()==null?new DateTime().minusYears(33):new DateTime(lastsync.stringValue());
+		try{
+			logger.info("RUNNING SCHEDULER_TRACKER_SYNCER_SUBJECT");
+			AppStateToken lastsync = config.getAppStateTokenByName(ScheduleTrackerConfig.openmrs_syncer_sync_by_last_update_enrollment);
+			DateTime start = lastsync==null||lastsync.getValue()==null?new DateTime().minusYears(33):new DateTime(lastsync.stringValue());
 			DateTime end = new DateTime();
 			List<Enrollment> el = opensrpScheduleService.findEnrollmentByLastUpDate(start, end);
-	    	for (Enrollment e : el){
-				DateTime alertstart = e.getStartOfSchedule();
-				DateTime alertend = e.getLastFulfilledDate();
-				if(alertend == null){
-					alertend = e.getCurrentMilestoneStartDate();
+			
+			ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(poolSize, el.size())));
+			try {
+				for (int from = 0; from < el.size(); from += batchSize) {
+					List<Enrollment> batch = el.subList(from, Math.min(from + batchSize, el.size()));
+					syncBatch(batch, executor);
+					
+					// enrollments with same last update as the checkpoint are synced again on resume, which only updates their tracks
+					DateTime checkpoint = lastUpdateOf(batch.get(batch.size() - 1));
+					if(checkpoint != null){
+						config.updateAppStateToken(ScheduleTrackerConfig.openmrs_syncer_sync_by_last_update_enrollment, checkpoint);
+					}
 				}
-	    		try {
-	    			if(e.getMetadata().get(OpenmrsConstants.ENROLLMENT_TRACK_UUID) != null){
-	    				openmrsSchedulerService.updateTrack(e, actionService.findByCaseIdScheduleAndTimeStamp(e.getExternalId(), e.getScheduleName(), alertstart, alertend));
-	    			}
-	    			else{
-	    				JSONObject tr = openmrsSchedulerService.createTrack(e, actionService.findByCaseIdScheduleAndTimeStamp(e.getExternalId(), e.getScheduleName(), alertstart, alertend));
-	    				opensrpScheduleService.updateEnrollmentWithMetadata(e.getId(), OpenmrsConstants.ENROLLMENT_TRACK_UUID, tr.getString("uuid"));
-	    			}
-				} catch (Exception e1) {
-					e1.printStackTrace();
-					errorTraceService.log("ScheduleTracker Syncer Inactive Schedule", Enrollment.class.getName(), e.getId(), e1.getStackTrace().toString(), "");
+			}
+			finally {
+				executor.shutdown();
+			}
+			config.updateAppStateToken(ScheduleTrackerConfig.openmrs_syncer_sync_by_last_update_enrollment, end);
+			logger.info(format("Synced {0} enrollments with OpenMRS", el.size()));
+		}
+		catch(Exception e){
+			logger.error("ScheduleTracker sync with OpenMRS failed", e);
+		}
+	}
+	
+	private void syncBatch(List<Enrollment> batch, ExecutorService executor) throws InterruptedException {
+		List<String> caseIds = new ArrayList<>();
+		List<String> schedules = new ArrayList<>();
+		for (Enrollment e : batch) {
+			caseIds.add(e.getExternalId());
+			schedules.add(e.getScheduleName());
+		}
+		final Map<String, List<Action>> actionsByCaseAndSchedule = new HashMap<>();
+		for (Action a : actionService.findByCaseIdsAndSchedules(caseIds, schedules)) {
+			String key = key(a.caseId(), a.data().get("scheduleName"));
+			List<Action> al = actionsByCaseAndSchedule.get(key);
+			if(al == null){
+				al = new ArrayList<>();
+				actionsByCaseAndSchedule.put(key, al);
+			}
+			al.add(a);
+		}
+		
+		List<Future<?>> results = new ArrayList<>();
+		for (final Enrollment e : batch) {
+			results.add(executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					syncEnrollment(e, actionsByCaseAndSchedule.get(key(e.getExternalId(), e.getScheduleName())));
 				}
-	    	}
-	    	config.updateAppStateToken(ScheduleTrackerConfig.openmrs_syncer_sync_by_last_update_enrollment, end);
-    	}
-    	catch(Exception e){
-    		e.printStackTrace();
-    	}
+			}));
+		}
+		for (Future<?> result : results) {
+			try {
+				result.get();
+			} catch (ExecutionException e) {
+				logger.error("ScheduleTracker sync worker failed", e.getCause());
+			}
+		}
+	}
+	
+	private void syncEnrollment(Enrollment e, List<Action> scheduleActions) {
+		try {
+			DateTime alertstart = e.getStartOfSchedule();
+			DateTime alertend = e.getLastFulfilledDate();
+			if(alertend == null){
+				alertend = e.getCurrentMilestoneStartDate();
+			}
+			List<Action> alertActions = actionsInWindow(scheduleActions, alertstart, alertend);
+			if(e.getMetadata().get(OpenmrsConstants.ENROLLMENT_TRACK_UUID) != null){
+				openmrsSchedulerService.updateTrack(e, alertActions);
+			}
+			else{
+				JSONObject tr = openmrsSchedulerService.createTrack(e, alertActions);
+				opensrpScheduleService.updateEnrollmentWithMetadata(e.getId(), OpenmrsConstants.ENROLLMENT_TRACK_UUID, tr.getString("uuid"));
+			}
+		} catch (Exception e1) {
+			logger.error(format("ScheduleTracker sync failed for enrollment {0}", e.getId()), e1);
+			errorTraceService.log("ScheduleTracker Syncer Inactive Schedule", Enrollment.class.getName(), e.getId(), e1.getStackTrace().toString(), "");
+		}
+	}
+	
+	/**
+	 * Same selection as {@link ActionService#findByCaseIdScheduleAndTimeStamp}: actions after start up to and
+	 * including end, oldest first.
+	 */
+	static List<Action> actionsInWindow(List<Action> actions, DateTime start, DateTime end) {
+		List<Action> inWindow = new ArrayList<>();
+		if(actions == null){
+			return inWindow;
+		}
+		for (Action a : actions) {
+			if(a.timestamp() > start.getMillis() && a.timestamp() <= end.getMillis()){
+				inWindow.add(a);
+			}
+		}
+		Collections.sort(inWindow, new Comparator<Action>() {
+			@Override
+			public int compare(Action first, Action second) {
+				return Long.compare(first.timestamp(), second.timestamp());
+			}
+		});
+		return inWindow;
+	}
+	
+	private static DateTime lastUpdateOf(Enrollment e) {
+		String lastUpdate = e.getMetadata() == null ? null : e.getMetadata().get("lastUpdate");
+		return lastUpdate == null ? null : new DateTime(lastUpdate);
+	}
+	
+	private static String key(String caseId, String scheduleName) {
+		return caseId + "|" + scheduleName;
 	}
 }
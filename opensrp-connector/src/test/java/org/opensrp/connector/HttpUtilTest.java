@@ -0,0 +1,73 @@
+package org.opensrp.connector;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+
+import org.apache.commons.codec.binary.Base64;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpUtilTest {
+    private HttpServer server;
+    private HttpUtil httpUtil;
+    private String sessionUrl;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/ws/rest/v1/session", new SessionHandler());
+        server.start();
+        sessionUrl = "http://localhost:" + server.getAddress().getPort() + "/ws/rest/v1/session";
+        httpUtil = new HttpUtil(4, 2, 1000, 1000);
+        httpUtil.init();
+    }
+
+    @After
+    public void tearDown() {
+        httpUtil.destroy();
+        server.stop(0);
+    }
+
+    @Test
+    public void shouldRejectWrongPasswordAfterASuccessfulCallOfAnotherUser() throws Exception {
+        assertTrue(new JSONObject(HttpUtil.get(sessionUrl, "", "admin", "Admin123").body()).getBoolean("authenticated"));
+
+        assertFalse(new JSONObject(HttpUtil.get(sessionUrl, "", "admin", "wrong").body()).getBoolean("authenticated"));
+        assertFalse(new JSONObject(HttpUtil.get(sessionUrl, "", "provider", "wrong").body()).getBoolean("authenticated"));
+    }
+
+    /**
+     * Authenticates like OpenMRS: a request is authenticated by its session cookie when it has one, otherwise by
+     * its Basic Authorization header, which starts a new session.
+     */
+    private static class SessionHandler implements HttpHandler {
+        private static final String SESSION_COOKIE = "JSESSIONID=admin-session";
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            List<String> cookies = exchange.getRequestHeaders().get("Cookie");
+            boolean authenticated = cookies != null && cookies.toString().contains(SESSION_COOKIE);
+            String credentials = "Basic " + new String(Base64.encodeBase64("admin:Admin123".getBytes()));
+            if (!authenticated && credentials.equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                authenticated = true;
+                exchange.getResponseHeaders().add("Set-Cookie", SESSION_COOKIE + "; Path=/");
+            }
+            byte[] body = ("{\"authenticated\":" + authenticated + "}").getBytes("UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream output = exchange.getResponseBody();
+            output.write(body);
+            output.close();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.opensrp.connector.openmrs.service;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+
+import java.io.IOException;
+
+import org.json.JSONException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.BDDMockito;
+import org.opensrp.api.util.LocationTree;
+import org.opensrp.common.util.HttpResponse;
+import org.opensrp.connector.HttpUtil;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ HttpUtil.class })
+public class OpenmrsLocationCacheTest extends TestResourceLoader{
+
+	public OpenmrsLocationCacheTest() throws IOException {
+		super();
+	}
+
+	OpenmrsLocationService ls;
+
+	@Before
+	public void setup(){
+		PowerMockito.mockStatic(HttpUtil.class);
+		BDDMockito.given(HttpUtil.removeEndingSlash(any(String.class))).willReturn(openmrsOpenmrsUrl);
+		BDDMockito.given(HttpUtil.get(any(String.class), eq("v=full"), any(String.class), any(String.class))).willReturn(new HttpResponse(true, "{\"results\":["
+				+ location("country", "Pakistan", null)+","
+				+ location("province", "Sindh", "country")+","
+				+ location("city", "Karachi", "province")+","
+				+ location("town", "Baldia", "city")+","
+				+ location("other-province", "Punjab", "country")+"]}"));
+		ls = new OpenmrsLocationService(openmrsOpenmrsUrl, openmrsUsername, openmrsPassword);
+	}
+	
+	private String location(String uuid, String name, String parent) {
+		return "{\"uuid\":\""+uuid+"\",\"name\":\""+name+"\",\"tags\":[],\"attributes\":[]"
+				+(parent==null?"":",\"parentLocation\":{\"uuid\":\""+parent+"\",\"display\":\""+parent+"\"}")+"}";
+	}
+	
+	@Test
+	public void shouldSliceTreeOfLocationFromCache() throws JSONException {
+		LocationTree ltr = ls.getLocationTreeOf(new String[]{"province"});
+		
+		assertTrue(ltr.hasLocation("country"));
+		assertTrue(ltr.hasLocation("province"));
+		assertTrue(ltr.hasLocation("town"));
+		assertFalse(ltr.hasLocation("other-province"));
+		assertTrue(ltr.hasChildLocation("country", "town"));
+		assertEquals(1, ltr.getLocationsHierarchy().size());
+	}
+	
+	@Test
+	public void shouldFindLocationByName() throws JSONException {
+		LocationTree ltr = ls.getLocationTreeOf("Karachi");
+		
+		assertTrue(ltr.hasChildLocation("city", "town"));
+		assertFalse(ltr.hasLocation("other-province"));
+	}
+	
+	@Test
+	public void shouldLoadLocationsOnlyOnceForAllTrees() throws JSONException {
+		ls.getLocationTreeOf(new String[]{"province"});
+		ls.getLocationTreeOf(new String[]{"other-province", "town"});
+		
+		PowerMockito.verifyStatic(org.mockito.Mockito.times(1));
+		HttpUtil.get(any(String.class), eq("v=full"), any(String.class), any(String.class));
+	}
+}
@@ -0,0 +1,81 @@
+package org.opensrp.connector.openmrs.service;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.opensrp.domain.Multimedia;
+import org.opensrp.repository.MultimediaRepository;
+import org.opensrp.service.MultimediaService;
+
+public class OpenmrsMultimediaPushServiceTest {
+	@Mock
+	private PatientService patientService;
+	@Mock
+	private MultimediaService multimediaService;
+	@Mock
+	private MultimediaRepository multimediaRepository;
+
+	private OpenmrsMultimediaPushService service;
+
+	@Before
+	public void setUp() throws Exception {
+		initMocks(this);
+		service = new OpenmrsMultimediaPushService(patientService, multimediaService, multimediaRepository, 2, 10, 30);
+	}
+
+	@After
+	public void tearDown() {
+		service.shutdown();
+	}
+
+	@Test
+	public void shouldPushDueFilesAndMarkThemPushed() throws Exception {
+		Multimedia multimedia = multimedia("case 1");
+		File file = new File("/opt/multimedia/demo/images/case 1.jpg");
+		when(multimediaRepository.findPendingPush(anyLong(), anyInt())).thenReturn(asList(multimedia));
+		when(multimediaService.fileOf(multimedia)).thenReturn(file);
+
+		int pushed = service.drain();
+
+		assertEquals(1, pushed);
+		verify(patientService).patientImageUpload(multimedia, file);
+		verify(multimediaRepository).update(multimedia);
+		assertEquals(Multimedia.PUSH_DONE, multimedia.getPushStatus());
+	}
+
+	@Test
+	public void shouldRetryFailedPushWithBackoffAndGiveUpAfterMaxAttempts() throws Exception {
+		Multimedia multimedia = multimedia("case 1");
+		File file = new File("/opt/multimedia/demo/images/case 1.jpg");
+		when(multimediaRepository.findPendingPush(anyLong(), anyInt())).thenReturn(asList(multimedia));
+		when(multimediaService.fileOf(multimedia)).thenReturn(file);
+		doThrow(new IOException("OpenMRS unavailable")).when(patientService).patientImageUpload(multimedia, file);
+
+		assertEquals(0, service.drain());
+		assertEquals(Multimedia.PUSH_PENDING, multimedia.getPushStatus());
+		assertEquals(1, multimedia.getPushAttempts());
+		assertTrue(multimedia.getNextPushAt() > 0);
+
+		assertEquals(0, service.drain());
+		assertTrue(multimedia.isPushFailed());
+	}
+
+	private Multimedia multimedia(String caseId) {
+		return new Multimedia().withCaseId(caseId).withProviderId("demo").withContentType("image/jpeg")
+				.withFilePath("/multimedia/demo/images/" + caseId + ".jpg").withFileCategory("profile").markPushPending(0);
+	}
+}
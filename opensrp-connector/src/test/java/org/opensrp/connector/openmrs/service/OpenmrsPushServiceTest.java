@@ -0,0 +1,193 @@
+package org.opensrp.connector.openmrs.service;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.ektorp.DocumentOperationResult;
+import org.joda.time.LocalDate;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.opensrp.api.domain.Client;
+import org.opensrp.api.domain.Event;
+import org.opensrp.common.util.DateUtil;
+import org.opensrp.domain.ErrorTrace;
+import org.opensrp.domain.OpenmrsPushTask;
+import org.opensrp.form.domain.FormSubmission;
+import org.opensrp.repository.AllOpenmrsPushTasks;
+import org.opensrp.service.ErrorTraceService;
+import org.opensrp.service.formSubmission.FormEntityConverter;
+
+public class OpenmrsPushServiceTest {
+	private static final long DAY_IN_MILLIS = 24L * 60 * 60 * 1000;
+
+	@Mock
+	private FormEntityConverter formEntityConverter;
+	@Mock
+	private PatientService patientService;
+	@Mock
+	private EncounterService encounterService;
+	@Mock
+	private HouseholdService householdService;
+	@Mock
+	private AllOpenmrsPushTasks allOpenmrsPushTasks;
+	@Mock
+	private ErrorTraceService errorTraceService;
+	@Mock
+	private Client client;
+	@Mock
+	private Event event;
+
+	private OpenmrsPushService service;
+
+	@Before
+	public void setUp() throws Exception {
+		initMocks(this);
+		when(allOpenmrsPushTasks.addAll(anyList())).thenReturn(new ArrayList<DocumentOperationResult>());
+		when(client.getBaseEntityId()).thenReturn("entity 1");
+		when(patientService.getPatientByIdentifier("entity 1")).thenReturn(new JSONObject());
+		when(formEntityConverter.getEventFromFormSubmission(any(FormSubmission.class))).thenReturn(event);
+		when(formEntityConverter.getDependentClientsFromFormSubmission(any(FormSubmission.class))).thenReturn(new HashMap<String, Map<String, Object>>());
+	}
+
+	@After
+	public void tearDown() {
+		if (service != null) {
+			service.shutdown();
+		}
+	}
+
+	@Test
+	public void shouldQueueOnlySubmissionsThatAreNotQueuedAlready() {
+		service = pushService(3);
+		DocumentOperationResult conflict = mock(DocumentOperationResult.class);
+		when(conflict.getId()).thenReturn("instance 1");
+		when(conflict.getError()).thenReturn("conflict");
+		when(allOpenmrsPushTasks.addAll(anyList())).thenReturn(asList(conflict));
+
+		int queued = service.enqueue(asList(submission("instance 1", "entity 1"), submission("instance 2", "entity 1"),
+				submission("instance 2", "entity 1")));
+
+		ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+		verify(allOpenmrsPushTasks).addAll(captor.capture());
+		List<OpenmrsPushTask> tasks = captor.getValue();
+		assertEquals(1, queued);
+		assertEquals(2, tasks.size());
+		assertEquals("instance 1", tasks.get(0).getId());
+		assertEquals("instance 2", tasks.get(1).getId());
+		assertEquals(OpenmrsPushTask.PENDING, tasks.get(1).getStatus());
+	}
+
+	@Test
+	public void shouldNotPushLaterSubmissionsOfAPatientWhenAnEarlierOneIsWaitingForRetry() throws Exception {
+		service = pushService(3);
+		FormSubmission first = submission("instance 1", "entity 1");
+		FormSubmission second = submission("instance 2", "entity 1");
+		OpenmrsPushTask firstTask = new OpenmrsPushTask(first, 1L);
+		OpenmrsPushTask secondTask = new OpenmrsPushTask(second, 2L);
+		when(allOpenmrsPushTasks.findDue(anyLong(), anyInt())).thenReturn(asList(secondTask, firstTask));
+		when(allOpenmrsPushTasks.findPendingByEntityIds(asList("entity 1"))).thenReturn(asList(secondTask, firstTask));
+		when(formEntityConverter.getClientFromFormSubmission(first)).thenThrow(new IllegalStateException("OpenMRS down"));
+
+		int pushed = service.drain();
+
+		assertEquals(0, pushed);
+		verify(allOpenmrsPushTasks).update(firstTask);
+		verify(formEntityConverter, never()).getClientFromFormSubmission(second);
+		assertEquals(OpenmrsPushTask.PENDING, firstTask.getStatus());
+		assertEquals(1, firstTask.getAttempts());
+		assertTrue(firstTask.getNextAttemptAt() > 1L);
+	}
+
+	@Test
+	public void shouldGiveUpAfterMaxAttemptsAndPushTheRestOfThePatientSubmissions() throws Exception {
+		service = pushService(1);
+		FormSubmission first = submission("instance 1", "entity 1");
+		FormSubmission second = submission("instance 2", "entity 1");
+		OpenmrsPushTask firstTask = new OpenmrsPushTask(first, 1L);
+		OpenmrsPushTask secondTask = new OpenmrsPushTask(second, 2L);
+		when(allOpenmrsPushTasks.findDue(anyLong(), anyInt())).thenReturn(asList(firstTask, secondTask));
+		when(allOpenmrsPushTasks.findPendingByEntityIds(asList("entity 1"))).thenReturn(asList(firstTask, secondTask));
+		when(formEntityConverter.getClientFromFormSubmission(first)).thenThrow(new IllegalStateException("bad form"));
+		when(formEntityConverter.getClientFromFormSubmission(second)).thenReturn(client);
+
+		int pushed = service.drain();
+
+		assertEquals(1, pushed);
+		assertEquals(OpenmrsPushTask.FAILED, firstTask.getStatus());
+		assertEquals(OpenmrsPushTask.DONE, secondTask.getStatus());
+		verify(errorTraceService).addError(any(ErrorTrace.class));
+		verify(encounterService, times(1)).createEncounter(event);
+		verify(patientService, never()).createPatient(client);
+	}
+
+	@Test
+	public void shouldNotPushAgainWhenMarkingAPushedSubmissionDoneFails() throws Exception {
+		service = pushService(3);
+		FormSubmission first = submission("instance 1", "entity 1");
+		OpenmrsPushTask firstTask = new OpenmrsPushTask(first, 1L);
+		when(allOpenmrsPushTasks.findDue(anyLong(), anyInt())).thenReturn(asList(firstTask));
+		when(allOpenmrsPushTasks.findPendingByEntityIds(asList("entity 1"))).thenReturn(asList(firstTask));
+		when(formEntityConverter.getClientFromFormSubmission(first)).thenReturn(client);
+		doThrow(new IllegalStateException("CouchDB down")).when(allOpenmrsPushTasks).update(firstTask);
+
+		assertEquals(1, service.drain());
+		assertEquals(0, firstTask.getAttempts());
+
+		when(allOpenmrsPushTasks.get("instance 1")).thenThrow(new IllegalStateException("CouchDB down"));
+		assertEquals(0, service.drain());
+
+		OpenmrsPushTask storedTask = new OpenmrsPushTask(first, 1L);
+		doReturn(storedTask).when(allOpenmrsPushTasks).get("instance 1");
+		when(allOpenmrsPushTasks.findDue(anyLong(), anyInt())).thenReturn(new ArrayList<OpenmrsPushTask>());
+		doNothing().when(allOpenmrsPushTasks).update(any(OpenmrsPushTask.class));
+		service.drain();
+
+		verify(encounterService, times(1)).createEncounter(event);
+		assertEquals(OpenmrsPushTask.DONE, storedTask.getStatus());
+	}
+
+	@Test
+	public void shouldPurgePushedSubmissionsAfterTheRetentionPeriod() {
+		service = pushService(3);
+		DateUtil.fakeIt(new LocalDate(2015, 1, 11));
+		List<OpenmrsPushTask> expired = asList(new OpenmrsPushTask(submission("instance 1", "entity 1"), 1L).markDone(2L));
+		when(allOpenmrsPushTasks.findDoneBefore(DateUtil.millis() - 7 * DAY_IN_MILLIS, 100)).thenReturn(expired);
+		when(allOpenmrsPushTasks.findDue(anyLong(), anyInt())).thenReturn(new ArrayList<OpenmrsPushTask>());
+
+		service.drain();
+
+		verify(allOpenmrsPushTasks).removeAll(expired);
+	}
+
+	private OpenmrsPushService pushService(int maxAttempts) {
+		return new OpenmrsPushService(formEntityConverter, patientService, encounterService, householdService,
+				allOpenmrsPushTasks, errorTraceService, 2, maxAttempts, 100, 30, 7);
+	}
+
+	private FormSubmission submission(String instanceId, String entityId) {
+		return new FormSubmission("anm id 1", instanceId, "anc_registration", entityId, 0L, "1", null, 0L);
+	}
+}
@@ -0,0 +1,106 @@
+package org.opensrp.connector.schedule;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.joda.time.DateTime;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.motechproject.scheduler.domain.MotechEvent;
+import org.motechproject.scheduletracking.api.domain.Enrollment;
+import org.opensrp.connector.openmrs.constants.OpenmrsConstants;
+import org.opensrp.connector.openmrs.constants.OpenmrsConstants.ScheduleTrackerConfig;
+import org.opensrp.connector.openmrs.service.OpenmrsSchedulerService;
+import org.opensrp.scheduler.Action;
+import org.opensrp.scheduler.service.ActionService;
+import org.opensrp.scheduler.service.ScheduleService;
+import org.opensrp.service.ConfigService;
+import org.opensrp.service.ErrorTraceService;
+
+public class OpenmrsSyncerListenerTest {
+	@Mock
+	private OpenmrsSchedulerService openmrsSchedulerService;
+	@Mock
+	private ScheduleService scheduleService;
+	@Mock
+	private ActionService actionService;
+	@Mock
+	private ConfigService config;
+	@Mock
+	private ErrorTraceService errorTraceService;
+
+	private OpenmrsSyncerListener listener;
+
+	@Before
+	public void setUp() throws Exception {
+		initMocks(this);
+		listener = new OpenmrsSyncerListener(openmrsSchedulerService, scheduleService, actionService, config, errorTraceService, 2, 2);
+		when(openmrsSchedulerService.createTrack(any(Enrollment.class), anyList())).thenReturn(new JSONObject("{\"uuid\":\"track uuid\"}"));
+	}
+
+	@Test
+	public void shouldPrefetchActionsPerBatchAndCheckpointAfterEachBatch() throws Exception {
+		Enrollment first = enrollment("enrollment 1", "entity 1", "2015-01-01T00:00:00.000Z", null);
+		Enrollment second = enrollment("enrollment 2", "entity 2", "2015-01-02T00:00:00.000Z", "track 2");
+		Enrollment third = enrollment("enrollment 3", "entity 3", "2015-01-03T00:00:00.000Z", "track 3");
+		when(scheduleService.findEnrollmentByLastUpDate(any(DateTime.class), any(DateTime.class))).thenReturn(asList(first, second, third));
+
+		listener.scheduletrackerSyncer(new MotechEvent(OpenmrsConstants.SCHEDULER_TRACKER_SYNCER_SUBJECT));
+
+		verify(actionService).findByCaseIdsAndSchedules(asList("entity 1", "entity 2"), asList("Ante Natal Care", "Ante Natal Care"));
+		verify(actionService).findByCaseIdsAndSchedules(asList("entity 3"), asList("Ante Natal Care"));
+		verify(scheduleService).updateEnrollmentWithMetadata("enrollment 1", OpenmrsConstants.ENROLLMENT_TRACK_UUID, "track uuid");
+		InOrder inOrder = inOrder(openmrsSchedulerService, config);
+		inOrder.verify(config).updateAppStateToken(ScheduleTrackerConfig.openmrs_syncer_sync_by_last_update_enrollment, new DateTime("2015-01-02T00:00:00.000Z"));
+		inOrder.verify(openmrsSchedulerService).updateTrack(eq(third), anyList());
+		inOrder.verify(config).updateAppStateToken(ScheduleTrackerConfig.openmrs_syncer_sync_by_last_update_enrollment, new DateTime("2015-01-03T00:00:00.000Z"));
+	}
+
+	@Test
+	public void shouldSelectActionsWithinTheAlertWindowOldestFirst() {
+		Action early = action(10L);
+		Action late = action(30L);
+		Action outside = action(50L);
+
+		List<Action> actions = OpenmrsSyncerListener.actionsInWindow(asList(late, outside, early, action(5L)), new DateTime(5L), new DateTime(40L));
+
+		assertEquals(asList(early, late), actions);
+	}
+
+	private Enrollment enrollment(String id, String entityId, String lastUpdate, String trackUuid) {
+		Enrollment enrollment = mock(Enrollment.class);
+		Map<String, String> metadata = new HashMap<>();
+		metadata.put("lastUpdate", lastUpdate);
+		if (trackUuid != null) {
+			metadata.put(OpenmrsConstants.ENROLLMENT_TRACK_UUID, trackUuid);
+		}
+		when(enrollment.getId()).thenReturn(id);
+		when(enrollment.getExternalId()).thenReturn(entityId);
+		when(enrollment.getScheduleName()).thenReturn("Ante Natal Care");
+		when(enrollment.getMetadata()).thenReturn(metadata);
+		when(enrollment.getStartOfSchedule()).thenReturn(new DateTime(0L));
+		when(enrollment.getCurrentMilestoneStartDate()).thenReturn(new DateTime());
+		return enrollment;
+	}
+
+	private Action action(long timestamp) {
+		Action action = mock(Action.class);
+		when(action.timestamp()).thenReturn(timestamp);
+		return action;
+	}
+}
@@ -9,6 +9,9 @@ import org.motechproject.model.MotechBaseDataObject;
 
 @TypeDiscriminator("doc.type == 'Multimedia'")
 public class Multimedia extends MotechBaseDataObject {
+	public static final String PUSH_PENDING = "pending";
+	public static final String PUSH_DONE = "done";
+	public static final String PUSH_FAILED = "failed";
 
 	@JsonProperty
 	private String caseId;
@@ -20,7 +23,16 @@ public class Multimedia extends MotechBaseDataObject {
 	private String filePath;
 	@JsonProperty
 	private String fileCategory;
-	
+	@JsonProperty
+	private String contentHash;
+	@JsonProperty
+	private String pushStatus;
+	@JsonProperty
+	private int pushAttempts;
+	@JsonProperty
+	private long nextPushAt;
+	@JsonProperty
+	private String lastPushError;
 	
 	public Multimedia() {
 
@@ -56,6 +68,38 @@ public class Multimedia extends MotechBaseDataObject {
 		this.fileCategory = fileCategory;
 		return this;
 	}
+
+	public Multimedia withContentHash(String contentHash) {
+		this.contentHash = contentHash;
+		return this;
+	}
+
+	/**
+	 * Queues the file to be pushed to OpenMRS from given time on.
+	 */
+	public Multimedia markPushPending(long nextPushAt) {
+		this.pushStatus = PUSH_PENDING;
+		this.pushAttempts = 0;
+		this.nextPushAt = nextPushAt;
+		this.lastPushError = null;
+		return this;
+	}
+
+	public Multimedia markPushed() {
+		this.pushStatus = PUSH_DONE;
+		this.lastPushError = null;
+		return this;
+	}
+
+	public Multimedia markPushFailed(String error, long nextPushAt, int maxAttempts) {
+		this.pushAttempts++;
+		this.lastPushError = error;
+		this.nextPushAt = nextPushAt;
+		if (pushAttempts >= maxAttempts) {
+			this.pushStatus = PUSH_FAILED;
+		}
+		return this;
+	}
 	
 	public String getCaseId() {
 		return caseId;
@@ -72,6 +116,24 @@ public class Multimedia extends MotechBaseDataObject {
 	public String getFileCategory() {
 		return fileCategory;
 	}
+	public String getContentHash() {
+		return contentHash;
+	}
+	public String getPushStatus() {
+		return pushStatus;
+	}
+	public int getPushAttempts() {
+		return pushAttempts;
+	}
+	public long getNextPushAt() {
+		return nextPushAt;
+	}
+	public String getLastPushError() {
+		return lastPushError;
+	}
+	public boolean isPushFailed() {
+		return PUSH_FAILED.equals(pushStatus);
+	}
 
 	public void setCaseId(String caseId) {
 		this.caseId = caseId;
@@ -0,0 +1,129 @@
+package org.opensrp.domain;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.codehaus.jackson.annotate.JsonProperty;
+import org.ektorp.support.TypeDiscriminator;
+import org.motechproject.model.MotechBaseDataObject;
+import org.opensrp.form.domain.FormSubmission;
+
+/**
+ * An outbound OpenMRS push waiting in the queue. The submission is kept on the task itself so that
+ * the push does not depend on when the form submission pipeline stores its own copy. The task is stored
+ * with the form submission id as its document id, so a submission can only be queued once.
+ */
+@TypeDiscriminator("doc.type === 'OpenmrsPushTask'")
+public class OpenmrsPushTask extends MotechBaseDataObject {
+    public static final String PENDING = "pending";
+    public static final String DONE = "done";
+    public static final String FAILED = "failed";
+
+    @JsonProperty
+    private String formSubmissionId;
+    @JsonProperty
+    private String entityId;
+    @JsonProperty
+    private FormSubmission formSubmission;
+    @JsonProperty
+    private String status;
+    @JsonProperty
+    private int attempts;
+    @JsonProperty
+    private long createdAt;
+    @JsonProperty
+    private long nextAttemptAt;
+    @JsonProperty
+    private String lastError;
+    @JsonProperty
+    private long doneAt;
+
+    protected OpenmrsPushTask() {
+    }
+
+    public OpenmrsPushTask(FormSubmission formSubmission, long createdAt) {
+        setId(formSubmission.instanceId());
+        this.formSubmissionId = formSubmission.instanceId();
+        this.entityId = formSubmission.entityId();
+        this.formSubmission = formSubmission;
+        this.status = PENDING;
+        this.createdAt = createdAt;
+        this.nextAttemptAt = createdAt;
+    }
+
+    public String getFormSubmissionId() {
+        return formSubmissionId;
+    }
+
+    public String getEntityId() {
+        return entityId;
+    }
+
+    public FormSubmission getFormSubmission() {
+        return formSubmission;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public long getDoneAt() {
+        return doneAt;
+    }
+
+    public OpenmrsPushTask markDone(long doneAt) {
+        this.status = DONE;
+        this.lastError = null;
+        this.doneAt = doneAt;
+        return this;
+    }
+
+    public OpenmrsPushTask markAttemptFailed(String error, long nextAttemptAt, int maxAttempts) {
+        this.attempts++;
+        this.lastError = error;
+        this.nextAttemptAt = nextAttemptAt;
+        if (attempts >= maxAttempts) {
+            this.status = FAILED;
+        }
+        return this;
+    }
+
+    public boolean isDone() {
+        return DONE.equals(status);
+    }
+
+    public boolean isFailed() {
+        return FAILED.equals(status);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return EqualsBuilder.reflectionEquals(this, o);
+    }
+
+    @Override
+    public int hashCode() {
+        return HashCodeBuilder.reflectionHashCode(this, "id");
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+}
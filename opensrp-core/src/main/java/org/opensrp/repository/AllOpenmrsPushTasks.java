@@ -0,0 +1,63 @@
+package org.opensrp.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.ektorp.BulkDeleteDocument;
+import org.ektorp.ComplexKey;
+import org.ektorp.CouchDbConnector;
+import org.ektorp.DocumentOperationResult;
+import org.ektorp.support.View;
+import org.motechproject.dao.MotechBaseRepository;
+import org.opensrp.common.AllConstants;
+import org.opensrp.domain.OpenmrsPushTask;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public class AllOpenmrsPushTasks extends MotechBaseRepository<OpenmrsPushTask> {
+    @Autowired
+    protected AllOpenmrsPushTasks(@Qualifier(AllConstants.OPENSRP_DATABASE_CONNECTOR) CouchDbConnector db) {
+        super(OpenmrsPushTask.class, db);
+    }
+
+    @View(name = "pending_by_nextAttemptAt", map = "function(doc) { if (doc.type === 'OpenmrsPushTask' && doc.status === 'pending') { emit([doc.nextAttemptAt], null); } }")
+    public List<OpenmrsPushTask> findDue(long now, int limit) {
+        return db.queryView(createQuery("pending_by_nextAttemptAt")
+                .startKey(ComplexKey.of(0))
+                .endKey(ComplexKey.of(now))
+                .limit(limit)
+                .includeDocs(true), OpenmrsPushTask.class);
+    }
+
+    @View(name = "pending_by_entityId", map = "function(doc) { if (doc.type === 'OpenmrsPushTask' && doc.status === 'pending') { emit(doc.entityId, null); } }")
+    public List<OpenmrsPushTask> findPendingByEntityIds(List<String> entityIds) {
+        return db.queryView(createQuery("pending_by_entityId").keys(entityIds).includeDocs(true), OpenmrsPushTask.class);
+    }
+
+    @View(name = "done_by_doneAt", map = "function(doc) { if (doc.type === 'OpenmrsPushTask' && doc.status === 'done') { emit(doc.doneAt, null); } }")
+    public List<OpenmrsPushTask> findDoneBefore(long before, int limit) {
+        return db.queryView(createQuery("done_by_doneAt")
+                .startKey(0)
+                .endKey(before)
+                .limit(limit)
+                .includeDocs(true), OpenmrsPushTask.class);
+    }
+
+    /**
+     * Stores new tasks. A task whose form submission is queued already is not stored and comes back as a
+     * conflict, since the form submission id is its document id.
+     */
+    public List<DocumentOperationResult> addAll(List<OpenmrsPushTask> tasks) {
+        return db.executeBulk(tasks);
+    }
+
+    public List<DocumentOperationResult> removeAll(List<OpenmrsPushTask> tasks) {
+        List<BulkDeleteDocument> deletions = new ArrayList<>();
+        for (OpenmrsPushTask task : tasks) {
+            deletions.add(BulkDeleteDocument.of(task));
+        }
+        return db.executeBulk(deletions);
+    }
+}
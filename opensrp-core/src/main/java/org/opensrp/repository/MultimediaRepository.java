@@ -2,6 +2,7 @@ package org.opensrp.repository;
 
 import java.util.List;
 
+import org.ektorp.ComplexKey;
 import org.ektorp.CouchDbConnector;
 import org.ektorp.support.GenerateView;
 import org.ektorp.support.View;
@@ -30,6 +31,37 @@ public class MultimediaRepository extends MotechBaseRepository<Multimedia> {
 		return files.get(0);
 	}
 
+	/**
+	 * @return the file of given case with given content type and category, or null if there is none
+	 */
+	@View(name = "by_caseId_contentType_fileCategory", map = "function(doc) { if (doc.type === 'Multimedia' && doc.caseId) { emit([doc.caseId, doc.contentType, doc.fileCategory], null); } }")
+	public Multimedia findByCaseIdContentTypeAndFileCategory(String caseId, String contentType, String fileCategory) {
+		List<Multimedia> files = db.queryView(createQuery("by_caseId_contentType_fileCategory")
+				.key(ComplexKey.of(caseId, contentType, fileCategory))
+				.limit(1)
+				.includeDocs(true), Multimedia.class);
+		return files.isEmpty() ? null : files.get(0);
+	}
+
+	@View(name = "by_contentHash", map = "function(doc) { if (doc.type === 'Multimedia' && doc.contentHash) { emit(doc.contentHash, null); } }")
+	public Multimedia findByContentHash(String contentHash) {
+		List<Multimedia> files = db.queryView(createQuery("by_contentHash").key(contentHash).limit(1)
+				.includeDocs(true), Multimedia.class);
+		return files.isEmpty() ? null : files.get(0);
+	}
+
+	/**
+	 * @return at most limit files waiting to be pushed to OpenMRS whose next push is due by given time, earliest first
+	 */
+	@View(name = "pending_push_by_nextPushAt", map = "function(doc) { if (doc.type === 'Multimedia' && doc.pushStatus === 'pending') { emit([doc.nextPushAt], null); } }")
+	public List<Multimedia> findPendingPush(long dueBy, int limit) {
+		return db.queryView(createQuery("pending_push_by_nextPushAt")
+				.startKey(ComplexKey.of(0))
+				.endKey(ComplexKey.of(dueBy))
+				.limit(limit)
+				.includeDocs(true), Multimedia.class);
+	}
+
 	@View(name = "all_multimedia_files", map = "function(doc) { if (doc.type === 'Multimedia' && doc.providerId) { emit(doc.providerId, doc); } }")
 	public List<Multimedia> all(String providerId) {
 		return db.queryView(createQuery("all_multimedia_files").key(providerId)
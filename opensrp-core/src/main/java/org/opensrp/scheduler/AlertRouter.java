@@ -1,6 +1,5 @@
 package org.opensrp.scheduler;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import org.motechproject.scheduler.domain.MotechEvent;
@@ -16,37 +15,39 @@ import org.springframework.stereotype.Component;
  */
 @Component
 public class AlertRouter {
-    private List<Route> routes;
     private static Logger logger = LoggerFactory.getLogger(AlertRouter.class.toString());
-
+    // replaced as a whole on every addRoute, so events being handled always see a consistent table
+    private volatile RouteTable routeTable;
 
     public AlertRouter() {
-        routes = new ArrayList<>();
+        routeTable = new RouteTable();
     }
 
     public Route addRoute(Matcher scheduleMatcher, Matcher milestoneMatcher, Matcher windowMatcher, HookedEvent action) {
-        Route route = new Route(scheduleMatcher, milestoneMatcher, windowMatcher, action);
-        routes.add(route);
-        return route;
+        return addRoute(new Route(scheduleMatcher, milestoneMatcher, windowMatcher, action));
     }
 
-    public Route addRoute(Route route) {
-        routes.add(route);
+    public synchronized Route addRoute(Route route) {
+        routeTable = routeTable.with(route);
         return route;
     }
+
+    /**
+     * @return the routes in the order in which they are tried, see {@link Route#hits()} for their usage
+     */
+    public List<Route> routes() {
+        return routeTable.routes();
+    }
     
     @MotechListener(subjects = {EventSubjects.MILESTONE_ALERT})
     public void handle(MotechEvent realEvent) {
         logger.info("Handling motech event : " + realEvent);
         MilestoneEvent event = new MilestoneEvent(realEvent);
 
-        for (Route route : routes) {
-            if (route.isSatisfiedBy(event.scheduleName(), event.milestoneName(), event.windowName())) {
-                route.invokeAction(event);
-                return;
-            }
+        Route route = routeTable.find(event.scheduleName(), event.milestoneName(), event.windowName());
+        if (route == null) {
+            throw new NoRoutesMatchException(event);
         }
-
-        throw new NoRoutesMatchException(event);
+        route.invokeAction(event);
     }
 }
@@ -61,9 +61,7 @@ public class HealthSchedulerService {
     }
 	
 	public void unEnrollFromAllSchedules(String entityId) {
-        List<String> activeSchedules = scheduleService.findOpenEnrollmentNames(entityId);
-
-		scheduleService.unenroll(entityId, activeSchedules);
+		scheduleService.unenrollFromAllSchedules(entityId);
         actionService.markAllAlertsAsInactive(entityId);
     }
 	
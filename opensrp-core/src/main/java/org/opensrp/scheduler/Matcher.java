@@ -1,11 +1,20 @@
 package org.opensrp.scheduler;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 public abstract class Matcher {
     public abstract boolean matches(String actualValue);
 
+    /**
+     * @return the only values this matcher can match, or null if it is not limited to a fixed set of values.
+     * Lets {@link AlertRouter} index routes by value instead of trying every matcher.
+     */
+    public List<String> exactValues() {
+        return null;
+    }
+
     public static Matcher eq(String value) {
         return new EqMatcher(value);
     }
@@ -36,6 +45,11 @@ public abstract class Matcher {
         public boolean matches(String actualValue) {
             return expectedValue.equals(actualValue);
         }
+
+        @Override
+        public List<String> exactValues() {
+            return Collections.singletonList(expectedValue);
+        }
     }
 
     private static class AnyOfMatcher extends Matcher {
@@ -49,5 +63,10 @@ public abstract class Matcher {
         public boolean matches(String actualValue) {
             return expectedValues.contains(actualValue);
         }
+
+        @Override
+        public List<String> exactValues() {
+            return expectedValues;
+        }
     }
 }
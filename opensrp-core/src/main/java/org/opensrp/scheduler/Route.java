@@ -2,6 +2,7 @@ package org.opensrp.scheduler;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class Route {
     private final Matcher scheduleMatcher;
@@ -9,6 +10,7 @@ public class Route {
     private final Matcher windowMatcher;
     private final HookedEvent action;
     private Map<String, String> extraData;
+    private final AtomicLong hits = new AtomicLong();
 
     public Route(Matcher scheduleMatcher, Matcher milestoneMatcher, Matcher windowMatcher, HookedEvent action) {
         this(scheduleMatcher, milestoneMatcher, windowMatcher, action, new HashMap<String, String>());
@@ -30,9 +32,25 @@ public class Route {
     }
 
     public void invokeAction(MilestoneEvent event) {
+        hits.incrementAndGet();
         action.invoke(event, extraData);
     }
 
+    Matcher scheduleMatcher() {
+        return scheduleMatcher;
+    }
+
+    Matcher milestoneMatcher() {
+        return milestoneMatcher;
+    }
+
+    /**
+     * @return number of events this route has handled
+     */
+    public long hits() {
+        return hits.get();
+    }
+
     public Route addExtraData(String key, String value) {
         this.extraData.put(key, value);
         return this;
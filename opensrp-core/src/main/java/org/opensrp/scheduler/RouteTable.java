@@ -0,0 +1,136 @@
+package org.opensrp.scheduler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the routes of {@link AlertRouter}. Routes with fixed schedule and/or milestone values are
+ * indexed by those values, so only the routes that can match an event are tried. Routes are still tried in the
+ * order in which they were added, so the first matching route wins as before.
+ */
+class RouteTable {
+    private static final int[] NONE = new int[0];
+
+    private final List<Route> routes;
+    private final Map<String, int[]> byScheduleAndMilestone;
+    private final Map<String, int[]> bySchedule;
+    private final Map<String, int[]> byMilestone;
+    private final int[] wildcards;
+
+    RouteTable() {
+        this(Collections.<Route>emptyList());
+    }
+
+    private RouteTable(List<Route> routes) {
+        this.routes = Collections.unmodifiableList(routes);
+        Map<String, List<Integer>> scheduleAndMilestone = new HashMap<>();
+        Map<String, List<Integer>> schedule = new HashMap<>();
+        Map<String, List<Integer>> milestone = new HashMap<>();
+        List<Integer> wildcard = new ArrayList<>();
+
+        for (int i = 0; i < routes.size(); i++) {
+            List<String> schedules = routes.get(i).scheduleMatcher().exactValues();
+            List<String> milestones = routes.get(i).milestoneMatcher().exactValues();
+            if (schedules != null && milestones != null) {
+                for (String s : schedules) {
+                    for (String m : milestones) {
+                        index(scheduleAndMilestone, key(s, m), i);
+                    }
+                }
+            } else if (schedules != null) {
+                for (String s : schedules) {
+                    index(schedule, s, i);
+                }
+            } else if (milestones != null) {
+                for (String m : milestones) {
+                    index(milestone, m, i);
+                }
+            } else {
+                wildcard.add(i);
+            }
+        }
+        this.byScheduleAndMilestone = toArrays(scheduleAndMilestone);
+        this.bySchedule = toArrays(schedule);
+        this.byMilestone = toArrays(milestone);
+        this.wildcards = toArray(wildcard);
+    }
+
+    RouteTable with(Route route) {
+        List<Route> newRoutes = new ArrayList<>(routes);
+        newRoutes.add(route);
+        return new RouteTable(newRoutes);
+    }
+
+    List<Route> routes() {
+        return routes;
+    }
+
+    /**
+     * @return the first route, in the order they were added, that matches the given names or null if none does
+     */
+    Route find(String scheduleName, String milestoneName, String windowName) {
+        int[][] candidates = {
+                get(byScheduleAndMilestone, key(scheduleName, milestoneName)),
+                get(bySchedule, scheduleName),
+                get(byMilestone, milestoneName),
+                wildcards};
+        int[] next = new int[candidates.length];
+
+        while (true) {
+            int list = -1;
+            for (int c = 0; c < candidates.length; c++) {
+                if (next[c] < candidates[c].length
+                        && (list == -1 || candidates[c][next[c]] < candidates[list][next[list]])) {
+                    list = c;
+                }
+            }
+            if (list == -1) {
+                return null;
+            }
+            Route route = routes.get(candidates[list][next[list]++]);
+            if (route.isSatisfiedBy(scheduleName, milestoneName, windowName)) {
+                return route;
+            }
+        }
+    }
+
+    private static void index(Map<String, List<Integer>> index, String key, int position) {
+        List<Integer> positions = index.get(key);
+        if (positions == null) {
+            positions = new ArrayList<>();
+            index.put(key, positions);
+        }
+        // anyOf matchers may list a value twice
+        if (positions.isEmpty() || positions.get(positions.size() - 1) != position) {
+            positions.add(position);
+        }
+    }
+
+    private static Map<String, int[]> toArrays(Map<String, List<Integer>> index) {
+        Map<String, int[]> arrays = new HashMap<>();
+        for (Map.Entry<String, List<Integer>> entry : index.entrySet()) {
+            arrays.put(entry.getKey(), toArray(entry.getValue()));
+        }
+        return arrays;
+    }
+
+    private static int[] toArray(List<Integer> positions) {
+        int[] array = new int[positions.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = positions.get(i);
+        }
+        return array;
+    }
+
+    private static int[] get(Map<String, int[]> index, String key) {
+        int[] positions = index.get(key);
+        return positions == null ? NONE : positions;
+    }
+
+    private static String key(String scheduleName, String milestoneName) {
+        return scheduleName + '\u0000' + milestoneName;
+    }
+}
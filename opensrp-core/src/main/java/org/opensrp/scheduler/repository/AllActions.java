@@ -2,11 +2,18 @@ package org.opensrp.scheduler.repository;
 
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 
 import org.ektorp.BulkDeleteDocument;
 import org.ektorp.ComplexKey;
 import org.ektorp.CouchDbConnector;
+import org.ektorp.DocumentOperationResult;
 import org.ektorp.support.GenerateView;
 import org.ektorp.support.View;
 import org.joda.time.DateTime;
@@ -52,6 +59,23 @@ public class AllActions extends MotechBaseRepository<Action> {
         return db.queryView(createQuery("action_by_caseId_and_schedule_and_time").startKey(startKey).endKey(endKey).includeDocs(true), Action.class);
     }
     
+    @View(name = "action_by_caseId_and_schedule", map = "function(doc) { if (doc.type === 'Action') { emit([doc.caseID, doc.data.scheduleName], null); } }")
+    public List<Action> findByCaseIdsAndSchedules(List<String> caseIds, List<String> schedules) {
+        // a key asked for twice would return its actions twice
+        Set<List<String>> uniquePairs = new LinkedHashSet<>();
+        for (int i = 0; i < caseIds.size(); i++) {
+            uniquePairs.add(Arrays.asList(caseIds.get(i), schedules.get(i)));
+        }
+        if (uniquePairs.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<ComplexKey> keys = new ArrayList<>();
+        for (List<String> pair : uniquePairs) {
+            keys.add(ComplexKey.of(pair.get(0), pair.get(1)));
+        }
+        return db.queryView(createQuery("action_by_caseId_and_schedule").keys(keys).includeDocs(true), Action.class);
+    }
+
     public void deleteAllByTarget(String target) {
         deleteAll(findByActionTarget(target));
     }
@@ -94,6 +118,42 @@ public class AllActions extends MotechBaseRepository<Action> {
         add(alertAction);
     }
 
+    /**
+     * Bulk version of {@link #addOrUpdateAlert(Action)}. Existing alerts of all given alerts are found with one
+     * multi-key query, and their removal and the new alerts are written with one bulk request. When the list has
+     * several alerts for the same anm, entity and schedule only the last one is kept, like consecutive calls to
+     * addOrUpdateAlert would do. New alerts are given their document id up front, so that a failure can be
+     * matched to its alert.
+     */
+    public List<DocumentOperationResult> addOrUpdateAlerts(List<Action> alertActions) {
+        Map<ComplexKey, Action> alertsByKey = new LinkedHashMap<>();
+        for (Action alertAction : alertActions) {
+            if (alertAction.getId() == null) {
+                alertAction.setId(UUID.randomUUID().toString());
+            }
+            ComplexKey key = ComplexKey.of(alertAction.anmIdentifier(), alertAction.caseId(), alertAction.data().get("scheduleName"));
+            alertsByKey.remove(key);
+            alertsByKey.put(key, alertAction);
+        }
+        if (alertsByKey.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<Action> existingAlerts = db.queryView(createQuery("action_by_anm_entityId_scheduleName")
+                .keys(new ArrayList<>(alertsByKey.keySet())).includeDocs(true), Action.class);
+        List<Object> bulk = new ArrayList<>();
+        for (Action existingAlert : existingAlerts) {
+            bulk.add(BulkDeleteDocument.of(existingAlert));
+        }
+        bulk.addAll(alertsByKey.values());
+
+        List<DocumentOperationResult> failures = db.executeBulk(bulk);
+        for (DocumentOperationResult failure : failures) {
+            logger.error(MessageFormat.format("Could not save alert {0}: {1} {2}", failure.getId(), failure.getError(), failure.getReason()));
+        }
+        return failures;
+    }
+
     public void markAlertAsInactiveFor(String anmIdentifier, String caseId, String scheduleName) {
         List<Action> existingAlerts = findAlertByANMIdEntityIdScheduleName(anmIdentifier, caseId, scheduleName);
         if (existingAlerts.size() > 1) {
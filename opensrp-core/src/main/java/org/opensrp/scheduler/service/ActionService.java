@@ -4,27 +4,89 @@ import static org.opensrp.dto.BeneficiaryType.child;
 import static org.opensrp.dto.BeneficiaryType.ec;
 import static org.opensrp.dto.BeneficiaryType.mother;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
+import javax.annotation.PreDestroy;
+
+import org.ektorp.DocumentOperationResult;
 import org.joda.time.DateTime;
 import org.opensrp.dto.ActionData;
 import org.opensrp.dto.AlertStatus;
 import org.opensrp.dto.BeneficiaryType;
 import org.opensrp.scheduler.Action;
 import org.opensrp.scheduler.repository.AllActions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 @Service
 public class ActionService {
+    private static Logger logger = LoggerFactory.getLogger(ActionService.class.toString());
     private AllActions allActions;
+    private static final int DEFAULT_MAX_BUFFERED_ALERTS = 10000;
+    private final int alertBufferSize;
+    private final int maxBufferedAlerts;
+    private final List<Action> bufferedAlerts = new ArrayList<>();
+    private ScheduledExecutorService alertFlusher;
 
-    @Autowired
     public ActionService(AllActions allActions) {
+        this(allActions, 1, 0);
+    }
+
+    public ActionService(AllActions allActions, int alertBufferSize, long alertFlushIntervalMillis) {
+        this(allActions, alertBufferSize, alertFlushIntervalMillis, DEFAULT_MAX_BUFFERED_ALERTS);
+    }
+
+    /**
+     * @param alertBufferSize alerts are buffered and saved in bulk once this many are waiting. 1 or less saves
+     * every alert right away.
+     * @param alertFlushIntervalMillis buffered alerts are also saved at this interval, so that a partly filled
+     * buffer does not wait for the next alert storm
+     * @param maxBufferedAlerts the most alerts kept in the buffer while saving them fails. New alerts are
+     * rejected once this many are waiting.
+     */
+    @Autowired
+    public ActionService(AllActions allActions,
+                         @Value("#{opensrp['alert.buffer.size']}") int alertBufferSize,
+                         @Value("#{opensrp['alert.buffer.flush.interval-ms']}") long alertFlushIntervalMillis,
+                         @Value("#{opensrp['alert.buffer.max-size']}") int maxBufferedAlerts) {
         this.allActions = allActions;
+        this.alertBufferSize = alertBufferSize;
+        this.maxBufferedAlerts = Math.max(alertBufferSize, maxBufferedAlerts);
+        if (alertBufferSize > 1 && alertFlushIntervalMillis > 0) {
+            alertFlusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "alert-flusher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            alertFlusher.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        flushAlerts();
+                    } catch (Exception e) {
+                        logger.error("Flushing buffered alerts failed", e);
+                    }
+                }
+            }, alertFlushIntervalMillis, alertFlushIntervalMillis, TimeUnit.MILLISECONDS);
+        }
     }
 
     public List<Action> getNewAlertsForANM(String anmIdentifier, long timeStamp) {
+        // buffered alerts must not be missed by the anm asking for them
+        flushAlerts();
         return allActions.findByANMIDAndTimeStamp(anmIdentifier, timeStamp);
     }
     
@@ -32,18 +94,108 @@ public class ActionService {
 		return allActions.findByCaseIdScheduleAndTimeStamp(caseId, schedule, start, end);
 	}
 
+    /**
+     * Fetches the actions of many case and schedule pairs with one query. The pair at index i is
+     * caseIds[i] and schedules[i].
+     */
+    public List<Action> findByCaseIdsAndSchedules(List<String> caseIds, List<String> schedules) {
+        return allActions.findByCaseIdsAndSchedules(caseIds, schedules);
+    }
+
     public void alertForBeneficiary(BeneficiaryType beneficiaryType, String caseID, String anmIdentifier, String scheduleName, String visitCode, AlertStatus alertStatus, DateTime startDate, DateTime expiryDate) {
+    	Action alert = newAlert(beneficiaryType, caseID, anmIdentifier, scheduleName, visitCode, alertStatus, startDate, expiryDate);
+    	if (alertBufferSize > 1) {
+    		bufferAlert(alert);
+    	}
+    	else {
+    		allActions.addOrUpdateAlert(alert);
+    	}
+    }
+
+    public Action newAlert(BeneficiaryType beneficiaryType, String caseID, String anmIdentifier, String scheduleName, String visitCode, AlertStatus alertStatus, DateTime startDate, DateTime expiryDate) {
     	if (!(mother.equals(beneficiaryType)||child.equals(beneficiaryType)||ec.equals(beneficiaryType))) {
             throw new IllegalArgumentException("Beneficiary Type : " + beneficiaryType + " is of unknown type");
         }
-    	allActions.addOrUpdateAlert(new Action(caseID, anmIdentifier, ActionData.createAlert(beneficiaryType, scheduleName, visitCode, alertStatus, startDate, expiryDate)));
+    	return new Action(caseID, anmIdentifier, ActionData.createAlert(beneficiaryType, scheduleName, visitCode, alertStatus, startDate, expiryDate));
+    }
+
+    /**
+     * Saves the given alerts, replacing existing alerts of the same anm, entity and schedule, with one view query
+     * and one bulk write.
+     * @return the alerts that could not be saved
+     */
+    public List<DocumentOperationResult> alertForBeneficiaries(List<Action> alerts) {
+        return allActions.addOrUpdateAlerts(alerts);
+    }
+
+    /**
+     * Adds the alert to the buffer, saving the whole buffer when it is full. Buffered alerts are written while
+     * holding the buffer so that two flushes never overtake each other.
+     * @throws IllegalStateException when saving keeps failing and the buffer already holds the most alerts it
+     * may keep, in which case the alert is not buffered
+     */
+    public void bufferAlert(Action alert) {
+        synchronized (bufferedAlerts) {
+            if (bufferedAlerts.size() >= maxBufferedAlerts) {
+                // the failure of this flush is reported to the caller together with the rejected alert
+                flushAlerts();
+                if (bufferedAlerts.size() >= maxBufferedAlerts) {
+                    throw new IllegalStateException("Alert buffer is full with " + bufferedAlerts.size()
+                            + " alerts that could not be saved. Rejecting alert for case: " + alert.caseId());
+                }
+            }
+            bufferedAlerts.add(alert);
+            if (bufferedAlerts.size() >= alertBufferSize) {
+                try {
+                    flushAlerts();
+                } catch (Exception e) {
+                    // the alert is kept in the buffer and saved by a later flush
+                    logger.error("Flushing buffered alerts failed", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Saves the buffered alerts. Only the alerts that were saved leave the buffer: when the save fails the
+     * buffer is kept as it was, and alerts the bulk write rejected stay buffered for the next flush.
+     */
+    public void flushAlerts() {
+        synchronized (bufferedAlerts) {
+            if (bufferedAlerts.isEmpty()) {
+                return;
+            }
+            List<Action> alerts = new ArrayList<>(bufferedAlerts);
+            List<DocumentOperationResult> failures = alertForBeneficiaries(alerts);
+            Set<String> failedIds = new HashSet<>();
+            for (DocumentOperationResult failure : failures) {
+                failedIds.add(failure.getId());
+            }
+            bufferedAlerts.clear();
+            for (Action alert : alerts) {
+                if (failedIds.contains(alert.getId())) {
+                    bufferedAlerts.add(alert);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (alertFlusher != null) {
+            alertFlusher.shutdown();
+        }
+        flushAlerts();
     }
 
     public void markAllAlertsAsInactive(String entityId) {
+        // a buffered alert saved later would otherwise come back as active
+        flushAlerts();
         allActions.markAllAsInActiveFor(entityId);
     }
 
     public void markAlertAsInactive(String anmId, String entityId, String scheduleName) {
+        flushAlerts();
         allActions.markAlertAsInactiveFor(anmId, entityId, scheduleName);
     }
 
@@ -1,14 +1,15 @@
 package org.opensrp.scheduler.service;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.ektorp.ComplexKey;
 import org.ektorp.CouchDbConnector;
+import org.ektorp.DocumentOperationResult;
 import org.ektorp.support.View;
 import org.joda.time.DateTime;
 import org.motechproject.scheduletracking.api.domain.Enrollment;
 import org.motechproject.scheduletracking.api.repository.AllEnrollments;
-import org.motechproject.scheduletracking.api.repository.AllSchedules;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Repository;
@@ -16,7 +17,7 @@ import org.springframework.stereotype.Repository;
 @Repository
 class AllEnrollmentWrapper extends AllEnrollments{
 	@Autowired
-    private AllSchedules allSchedules;
+    private ScheduleRegistry scheduleRegistry;
 	
 	@Autowired
 	public AllEnrollmentWrapper(@Qualifier("scheduleTrackingDbConnector") CouchDbConnector db) {
@@ -41,6 +42,34 @@ class AllEnrollmentWrapper extends AllEnrollments{
     	return populateWithSchedule(enrollments);
     }
     
+    private static final String FUNCTION_DOC_EMIT_EXTERNAL_ID_STATUS_AND_SCHEDULE = "function(doc) { if(doc.type === 'Enrollment') emit([doc.externalId, doc.status, doc.scheduleName], doc._id);}";
+
+    @View(name = "by_external_id_status_and_schedule", map = FUNCTION_DOC_EMIT_EXTERNAL_ID_STATUS_AND_SCHEDULE)
+    public List<Enrollment> findByExternalIdAndStatus(String externalId, String status) {
+        ComplexKey s = ComplexKey.of(externalId, status);
+        ComplexKey e = ComplexKey.of(externalId, status, ComplexKey.emptyObject());
+        return db.queryView(createQuery("by_external_id_status_and_schedule").startKey(s).endKey(e).includeDocs(true), Enrollment.class);
+    }
+
+    /**
+     * @return the enrollments of the entity with the given status in any of the given schedules, looked up by their
+     * keys so that the entity's enrollments in other schedules are not read
+     */
+    public List<Enrollment> findByExternalIdStatusAndSchedules(String externalId, String status, List<String> scheduleNames) {
+        if (scheduleNames.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<ComplexKey> keys = new ArrayList<>();
+        for (String scheduleName : scheduleNames) {
+            keys.add(ComplexKey.of(externalId, status, scheduleName));
+        }
+        return db.queryView(createQuery("by_external_id_status_and_schedule").keys(keys).includeDocs(true), Enrollment.class);
+    }
+
+    public List<DocumentOperationResult> updateAll(List<Enrollment> enrollments) {
+        return db.executeBulk(enrollments);
+    }
+
     private List<Enrollment> populateWithSchedule(List<Enrollment> enrollments) {
         for (Enrollment enrollment : enrollments)
             populateSchedule(enrollment);
@@ -48,7 +77,7 @@ class AllEnrollmentWrapper extends AllEnrollments{
     }
 
     private Enrollment populateSchedule(Enrollment enrollment) {
-        enrollment.setSchedule(allSchedules.getByName(enrollment.getScheduleName()));
+        enrollment.setSchedule(scheduleRegistry.getByName(enrollment.getScheduleName()));
         return enrollment;
     }
     
@@ -0,0 +1,96 @@
+package org.opensrp.scheduler.service;
+
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableMap;
+import static org.opensrp.common.util.DateUtil.today;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.joda.time.LocalDate;
+import org.joda.time.Period;
+import org.motechproject.scheduletracking.api.domain.Milestone;
+import org.motechproject.scheduletracking.api.domain.Schedule;
+import org.motechproject.scheduletracking.api.repository.AllSchedules;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory registry of the schedule definitions, keyed by schedule name. Definitions are static, so each one is
+ * read from {@link AllSchedules} once, together with the maximum duration of each of its milestones, and kept for
+ * the life of the application. The registry is an immutable map that is replaced, never changed, when a schedule
+ * is added, so lookups are plain map reads without locking.
+ */
+@Component
+public class ScheduleRegistry {
+    private final AllSchedules allSchedules;
+    private volatile Map<String, ScheduleDefinition> definitions = unmodifiableMap(new HashMap<String, ScheduleDefinition>());
+
+    @Autowired
+    public ScheduleRegistry(AllSchedules allSchedules) {
+        this.allSchedules = allSchedules;
+    }
+
+    public Schedule getByName(String name) {
+        ScheduleDefinition definition = definitionOf(name);
+        return definition == null ? null : definition.schedule;
+    }
+
+    /**
+     * @return the first milestone of the schedule whose maximum window, counted from the reference date, ends
+     * after today, or null when there is none
+     */
+    public String startingMilestoneName(String name, LocalDate referenceDate) {
+        ScheduleDefinition definition = definitionOf(name);
+        if (definition == null) {
+            return null;
+        }
+        LocalDate today = today();
+        for (int i = 0; i < definition.milestoneNames.size(); i++) {
+            if (referenceDate.plus(definition.maximumDurations.get(i)).isAfter(today))
+                return definition.milestoneNames.get(i);
+        }
+        return null;
+    }
+
+    private ScheduleDefinition definitionOf(String name) {
+        ScheduleDefinition definition = definitions.get(name);
+        return definition != null ? definition : load(name);
+    }
+
+    private synchronized ScheduleDefinition load(String name) {
+        ScheduleDefinition definition = definitions.get(name);
+        if (definition != null) {
+            return definition;
+        }
+        Schedule schedule = allSchedules.getByName(name);
+        if (schedule == null) {
+            return null;
+        }
+        definition = new ScheduleDefinition(schedule);
+        Map<String, ScheduleDefinition> loaded = new HashMap<>(definitions);
+        loaded.put(name, definition);
+        definitions = unmodifiableMap(loaded);
+        return definition;
+    }
+
+    private static class ScheduleDefinition {
+        private final Schedule schedule;
+        private final List<String> milestoneNames;
+        private final List<Period> maximumDurations;
+
+        ScheduleDefinition(Schedule schedule) {
+            List<String> names = new ArrayList<>();
+            List<Period> durations = new ArrayList<>();
+            for (Milestone milestone : schedule.getMilestones()) {
+                names.add(milestone.getName());
+                durations.add(milestone.getMaximumDuration());
+            }
+            this.schedule = schedule;
+            this.milestoneNames = unmodifiableList(names);
+            this.maximumDurations = unmodifiableList(durations);
+        }
+    }
+}
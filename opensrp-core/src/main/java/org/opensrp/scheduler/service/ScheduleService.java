@@ -1,23 +1,22 @@
 package org.opensrp.scheduler.service;
 
+import static java.text.MessageFormat.format;
 import static java.util.Arrays.asList;
 import static org.joda.time.LocalDate.parse;
 import static org.joda.time.LocalTime.now;
 import static org.motechproject.scheduletracking.api.domain.EnrollmentStatus.ACTIVE;
-import static org.opensrp.common.util.DateUtil.today;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.ektorp.DocumentOperationResult;
 import org.joda.time.DateTime;
 import org.joda.time.LocalDate;
 import org.joda.time.LocalTime;
 import org.motechproject.model.Time;
 import org.motechproject.scheduletracking.api.domain.Enrollment;
-import org.motechproject.scheduletracking.api.domain.Milestone;
-import org.motechproject.scheduletracking.api.domain.Schedule;
 import org.motechproject.scheduletracking.api.repository.AllSchedules;
 import org.motechproject.scheduletracking.api.service.EnrollmentRecord;
 import org.motechproject.scheduletracking.api.service.EnrollmentRequest;
@@ -29,16 +28,23 @@ import org.springframework.stereotype.Service;
 
 @Service
 public class ScheduleService {
+    private static final String CONFLICT = "conflict";
+    private static final int LAST_UPDATE_ATTEMPTS = 3;
     private final ScheduleTrackingService scheduleTrackingService;
-    private final AllSchedules allSchedules;
+    private final ScheduleRegistry scheduleRegistry;
     private final AllEnrollmentWrapper allEnrollments;
     private int preferredTime;
 
-    @Autowired
     public ScheduleService(ScheduleTrackingService scheduleTrackingService, AllSchedules allSchedules, 
+    		int preferredTime, AllEnrollmentWrapper allEnrollments) {
+        this(scheduleTrackingService, new ScheduleRegistry(allSchedules), preferredTime, allEnrollments);
+    }
+
+    @Autowired
+    public ScheduleService(ScheduleTrackingService scheduleTrackingService, ScheduleRegistry scheduleRegistry, 
     		@Value("#{opensrp['preferred.time']}") int preferredTime, AllEnrollmentWrapper allEnrollments) {
         this.scheduleTrackingService = scheduleTrackingService;
-        this.allSchedules = allSchedules;
+        this.scheduleRegistry = scheduleRegistry;
         this.preferredTime = preferredTime;
         this.allEnrollments = allEnrollments;
     }
@@ -51,12 +57,7 @@ public class ScheduleService {
     }
 
     private String getStartingMilestoneName(String name, LocalDate referenceDate) {
-        Schedule schedule = allSchedules.getByName(name);
-        for (Milestone milestone : schedule.getMilestones()) {
-            if (referenceDate.plus(milestone.getMaximumDuration()).isAfter(today()))
-                return milestone.getName();
-        }
-        return null;
+        return scheduleRegistry.startingMilestoneName(name, referenceDate);
     }
 
     public void enroll(String entityId, String scheduleName, String milestone, String referenceDate) {
@@ -66,20 +67,37 @@ public class ScheduleService {
     }
     
     public void fulfillMilestone(String entityId, String scheduleName, LocalDate completionDate) {
-    	 updateExistingEnrollmentWithLastUpdateMetadata(entityId, scheduleName);
+    	updateActiveEnrollmentsWithLastUpdateMetadata(entityId, asList(scheduleName));
     	scheduleTrackingService.fulfillCurrentMilestone(entityId, scheduleName, completionDate, new Time(now()));
     }
     
     public void unenroll(String entityId, String scheduleName) {
-    	updateExistingEnrollmentWithLastUpdateMetadata(entityId, scheduleName);
-    	scheduleTrackingService.unenroll(entityId, asList(scheduleName));
+    	unenroll(entityId, asList(scheduleName));
 	}
     
     public void unenroll(String entityId, List<String> schedules) {
-    	for (String schedule : schedules) {
-			updateExistingEnrollmentWithLastUpdateMetadata(entityId, schedule);
+    	updateActiveEnrollmentsWithLastUpdateMetadata(entityId, schedules);
+    	scheduleTrackingService.unenroll(entityId, schedules);
+	}
+    
+    /**
+     * Unenrolls the entity from every schedule it is active in, reading its active enrollments once and
+     * stamping all of them with one bulk write.
+     * @return the names of the schedules unenrolled from
+     */
+    public List<String> unenrollFromAllSchedules(String entityId) {
+    	List<Enrollment> enrollments = findActiveEnrollments(entityId);
+    	List<String> schedules = new ArrayList<>();
+    	for (Enrollment enrollment : enrollments) {
+			schedules.add(enrollment.getScheduleName());
 		}
+    	updateWithLastUpdateMetadata(enrollments);
     	scheduleTrackingService.unenroll(entityId, schedules);
+    	return schedules;
+	}
+    
+    public List<Enrollment> findActiveEnrollments(String entityId) {
+        return allEnrollments.findByExternalIdAndStatus(entityId, ACTIVE.name());
 	}
     
     public List<EnrollmentRecord> findOpenEnrollments(String entityId) {
@@ -122,9 +140,28 @@ public class ScheduleService {
 		map.put("lastUpdate", new DateTime().toString());
 		return map;
 	}
-    private void updateExistingEnrollmentWithLastUpdateMetadata(String entityId, String scheduleName){
-    	Enrollment enr = allEnrollments.getActiveEnrollment(entityId, scheduleName);
-    	enr.setMetadata(addOrUpdateLastUpdateMetadata(enr.getMetadata()));
-    	allEnrollments.update(enr);
+    private void updateActiveEnrollmentsWithLastUpdateMetadata(String entityId, List<String> scheduleNames){
+    	updateWithLastUpdateMetadata(allEnrollments.findByExternalIdStatusAndSchedules(entityId, ACTIVE.name(), scheduleNames));
+    }
+    
+    /**
+     * Stamps the enrollments with one bulk write. The enrollments another write changed in between are read again
+     * and stamped again, a few times at most.
+     */
+    private void updateWithLastUpdateMetadata(List<Enrollment> enrollments){
+    	for (int attempt = 1; !enrollments.isEmpty(); attempt++) {
+    		for (Enrollment enrollment : enrollments) {
+    			enrollment.setMetadata(addOrUpdateLastUpdateMetadata(enrollment.getMetadata()));
+    		}
+    		List<Enrollment> conflicting = new ArrayList<>();
+    		for (DocumentOperationResult failure : allEnrollments.updateAll(enrollments)) {
+    			if (!CONFLICT.equals(failure.getError()) || attempt == LAST_UPDATE_ATTEMPTS) {
+    				throw new IllegalStateException(format("Could not update last update of enrollment {0}: {1} {2}",
+    						failure.getId(), failure.getError(), failure.getReason()));
+    			}
+    			conflicting.add(allEnrollments.get(failure.getId()));
+    		}
+    		enrollments = conflicting;
+    	}
     }
 }
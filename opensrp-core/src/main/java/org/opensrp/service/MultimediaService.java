@@ -1,8 +1,31 @@
 package org.opensrp.service;
 
+import static java.text.MessageFormat.format;
+
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import javax.annotation.PreDestroy;
 
+import org.opensrp.common.util.DateUtil;
 import org.opensrp.domain.Multimedia;
 import org.opensrp.dto.form.MultimediaDTO;
 import org.opensrp.repository.MultimediaRepository;
@@ -13,127 +36,429 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+/**
+ * Stores uploaded multimedia files under the multimedia directory, one file per case, content type and category.
+ * Uploads are streamed to a part file in the uploads directory and only moved to their place once complete, either
+ * in one request or in chunks appended one after another, so that an interrupted upload resumes from the last byte
+ * received. Chunked uploads are kept apart per provider, and the ones abandoned for longer than the configured age
+ * are deleted. Files are identified by the SHA-256 of their content: an unchanged file is not stored again and a
+ * file with the same content as another case's is hard linked to it. Stored files are queued to be pushed to
+ * OpenMRS.
+ */
 @Service
 public class MultimediaService {
 	private static Logger logger = LoggerFactory.getLogger(MultimediaService.class
 			.toString());
+	private static final String UPLOADS_DIR_NAME = ".uploads";
+	private static final String PART_EXTENSION = ".part";
+	private static final Pattern UPLOAD_ID = Pattern.compile("[A-Za-z0-9_-]{1,128}");
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final long CLEANUP_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
 
 	private final MultimediaRepository multimediaRepository;
-	private String multimediaDirPath;
+	private final String multimediaDirPath;
+	private final Path storageRoot;
+	private final long abandonedUploadMillis;
+	private final ConcurrentHashMap<String, Object> uploadLocks = new ConcurrentHashMap<>();
+	private ScheduledExecutorService uploadCleaner;
+
+	public MultimediaService(MultimediaRepository multimediaRepository, String multimediaDirName) {
+		this(multimediaRepository, multimediaDirName, 0);
+	}
 
+	/**
+	 * @param abandonedUploadHours uploads not appended to for this many hours are deleted, checked every hour. 0
+	 * or less keeps them.
+	 */
 	@Autowired
-	public MultimediaService(MultimediaRepository multimediaRepository, @Value("#{opensrp['multimedia.directory.name']}") String multimediaDirName) {
+	public MultimediaService(MultimediaRepository multimediaRepository, @Value("#{opensrp['multimedia.directory.name']}") String multimediaDirName,
+			@Value("#{opensrp['multimedia.upload.abandoned-hours']}") int abandonedUploadHours) {
 		this.multimediaRepository = multimediaRepository;
 		this.multimediaDirPath = multimediaDirName;
+		this.storageRoot = storageRoot(multimediaDirName);
+		this.abandonedUploadMillis = TimeUnit.HOURS.toMillis(Math.max(0, abandonedUploadHours));
+		if (abandonedUploadHours > 0) {
+			uploadCleaner = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "multimedia-upload-cleaner");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			uploadCleaner.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						removeAbandonedUploads(System.currentTimeMillis());
+					} catch (Exception e) {
+						logger.error("Removing abandoned multimedia uploads failed", e);
+					}
+				}
+			}, CLEANUP_INTERVAL_MILLIS, CLEANUP_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (uploadCleaner != null) {
+			uploadCleaner.shutdownNow();
+		}
 	}
 
 	public String saveMultimediaFile(MultimediaDTO multimediaDTO, MultipartFile file) {
-		
-		boolean uploadStatus = uploadFile(multimediaDTO, file);
-         
-		String[] multimediaDirPathSplit =  multimediaDirPath.split("/", 3);
-		String multimediaDirPathDB = File.separator + multimediaDirPathSplit[2];
-		
-		if (uploadStatus) {
-			try {
-				logger.info("Image path : " + multimediaDirPath);
-				
-				Multimedia multimediaFile = new Multimedia()
-						.withCaseId(multimediaDTO.caseId())
-						.withProviderId(multimediaDTO.providerId())
-						.withContentType(multimediaDTO.contentType())
-						.withFilePath(multimediaDirPathDB)
-						.withFileCategory(multimediaDTO.fileCategory());
+		if (file.isEmpty()) {
+			return "fail";
+		}
+		File part = null;
+		try {
+			part = File.createTempFile("upload-", PART_EXTENSION, uploadsDirectory());
+			String contentHash;
+			try (InputStream input = file.getInputStream()) {
+				contentHash = write(input, part, false);
+			}
+			return save(multimediaDTO, part, contentHash);
+		} catch (Exception e) {
+			logger.error(format("Saving multimedia file of case {0} failed with exception {1}", multimediaDTO.caseId(), e));
+			return "fail";
+		} finally {
+			deleteIfExists(part);
+		}
+	}
+
+	/**
+	 * Writes the file to its place in the multimedia directory without recording it.
+	 */
+	public boolean uploadFile(MultimediaDTO multimediaDTO,
+			MultipartFile multimediaFile) {
+		File target = targetFile(multimediaDTO);
+		if (multimediaFile.isEmpty() || target == null) {
+			return false;
+		}
+		File part = null;
+		try (InputStream input = multimediaFile.getInputStream()) {
+			part = File.createTempFile("upload-", PART_EXTENSION, uploadsDirectory());
+			write(input, part, false);
+			moveInto(part, target);
+			return true;
+		} catch (Exception e) {
+			logger.error(format("Uploading multimedia file of case {0} failed with exception {1}", multimediaDTO.caseId(), e));
+			return false;
+		} finally {
+			deleteIfExists(part);
+		}
+	}
 
-				multimediaRepository.add(multimediaFile);
+	/**
+	 * @return the number of bytes received so far for given upload of the provider, which is where the next chunk
+	 * must start
+	 */
+	public long uploadedBytes(String providerId, String uploadId) {
+		return partFile(providerId, uploadId).length();
+	}
 
-				return "success";
+	/**
+	 * Appends a chunk to given upload, creating the upload with its first chunk.
+	 * @return the number of bytes received so far, including bytes of a chunk that was cut off
+	 * @throws IllegalStateException if offset is not the number of bytes received so far
+	 */
+	public long appendChunk(String providerId, String uploadId, long offset, InputStream chunk) throws IOException {
+		File part = partFile(providerId, uploadId);
+		synchronized (lockFor(part)) {
+			long received = part.length();
+			if (offset != received) {
+				throw new IllegalStateException(format("Upload {0} has {1} bytes, a chunk at offset {2} cannot be appended", uploadId, received, offset));
+			}
+			try {
+				write(chunk, part, true);
+			} finally {
+				received = part.length();
+			}
+			return received;
+		}
+	}
 
+	/**
+	 * Stores the file of a chunked upload of the provider of the file once all its chunks are received. The
+	 * upload is kept for another attempt if it cannot be stored.
+	 */
+	public String completeUpload(String uploadId, MultimediaDTO multimediaDTO) {
+		File part = partFile(multimediaDTO.providerId(), uploadId);
+		synchronized (lockFor(part)) {
+			if (!part.isFile()) {
+				logger.warn(format("Upload {0} of case {1} to complete does not exist", uploadId, multimediaDTO.caseId()));
+				return "fail";
+			}
+			try {
+				String status = save(multimediaDTO, part, hashOf(part));
+				if ("success".equals(status)) {
+					deleteIfExists(part);
+					uploadLocks.remove(part.getPath());
+				}
+				return status;
 			} catch (Exception e) {
-				e.getMessage();
+				logger.error(format("Completing upload {0} of case {1} failed with exception {2}", uploadId, multimediaDTO.caseId(), e));
+				return "fail";
 			}
 		}
+	}
 
-		return "fail";
+	/**
+	 * @return the stored file of given multimedia record
+	 */
+	public File fileOf(Multimedia multimedia) {
+		return storageRoot.resolve(multimedia.getFilePath().replaceFirst("^[/\\\\]+", "")).toFile();
+	}
 
+	public List<Multimedia> getMultimediaFiles(String providerId) {
+		return multimediaRepository.all(providerId);
 	}
 
-	public boolean uploadFile(MultimediaDTO multimediaDTO,
-			MultipartFile multimediaFile) {
-		 
-		if (!multimediaFile.isEmpty()) {
-			try {
+	/**
+	 * Deletes the part files of uploads not written to for longer than the abandoned upload age.
+	 * @return the number of part files deleted
+	 */
+	public int removeAbandonedUploads(long now) {
+		if (abandonedUploadMillis <= 0) {
+			return 0;
+		}
+		int removed = removeAbandonedParts(uploadsDirectory(), now);
+		File[] providerDirectories = uploadsDirectory().listFiles();
+		if (providerDirectories != null) {
+			for (File directory : providerDirectories) {
+				if (directory.isDirectory()) {
+					removed += removeAbandonedParts(directory, now);
+				}
+			}
+		}
+		if (removed > 0) {
+			logger.info(format("Removed {0} multimedia uploads abandoned for more than {1} hours", removed, TimeUnit.MILLISECONDS.toHours(abandonedUploadMillis)));
+		}
+		return removed;
+	}
 
-				 multimediaDirPath += File.separator + multimediaDTO.providerId()+ File.separator;
-
-				switch (multimediaDTO.contentType()) {
-				
-				case "application/octet-stream":
-					String videoDirPath = multimediaDirPath += "videos";
-					makeMultimediaDir(videoDirPath);
-					multimediaDirPath += File.separator
-							+ multimediaDTO.caseId() + ".mp4";
-					break;
-
-				case "image/jpeg":
-					String jpgImgDirPath = multimediaDirPath += "images";
-					makeMultimediaDir(jpgImgDirPath);
-					multimediaDirPath += File.separator
-							+ multimediaDTO.caseId() + ".jpg";
-					break;
-
-				case "image/gif":
-					String gifImgDirPath = multimediaDirPath += "images";
-					makeMultimediaDir(gifImgDirPath);
-					multimediaDirPath += File.separator
-							+ multimediaDTO.caseId() + ".gif";
-					break;
-
-				case "image/png":
-					String pngImgDirPath = multimediaDirPath += "images";
-					makeMultimediaDir(pngImgDirPath);
-					multimediaDirPath += File.separator
-							+ multimediaDTO.caseId() + ".png";
-					break;
-
-				default:
-					String defaultDirPath = multimediaDirPath += "images";
-					makeMultimediaDir(defaultDirPath);
-					multimediaDirPath += File.separator
-							+ multimediaDTO.caseId() + ".jpg";
-					break;
+	private int removeAbandonedParts(File directory, long now) {
+		int removed = 0;
+		File[] parts = directory.listFiles();
+		if (parts == null) {
+			return 0;
+		}
+		for (File part : parts) {
+			if (!part.isFile() || !part.getName().endsWith(PART_EXTENSION) || now - part.lastModified() < abandonedUploadMillis) {
+				continue;
+			}
+			// an upload appended to right now is not abandoned
+			synchronized (lockFor(part)) {
+				if (now - part.lastModified() >= abandonedUploadMillis && part.delete()) {
+					uploadLocks.remove(part.getPath());
+					removed++;
+				}
+			}
+		}
+		return removed;
+	}
+
+	private String save(MultimediaDTO multimediaDTO, File part, String contentHash) throws IOException {
+		File target = targetFile(multimediaDTO);
+		if (target == null) {
+			logger.warn(format("Multimedia file of case {0} and provider {1} has no valid path", multimediaDTO.caseId(), multimediaDTO.providerId()));
+			return "fail";
+		}
+		Multimedia existing = multimediaRepository.findByCaseIdContentTypeAndFileCategory(multimediaDTO.caseId(), multimediaDTO.contentType(),
+				multimediaDTO.fileCategory());
+		if (existing != null && contentHash.equals(existing.getContentHash()) && target.isFile()) {
+			logger.info(format("Multimedia file of case {0} is unchanged, not storing it again", multimediaDTO.caseId()));
+			return "success";
+		}
 
+		store(part, target, contentHash);
+		String multimediaDirPathDB = File.separator + storageRoot.relativize(target.toPath().toAbsolutePath().normalize());
+		logger.info("Image path : " + target.getPath());
+
+		Multimedia multimediaFile = (existing == null ? new Multimedia() : existing)
+				.withCaseId(multimediaDTO.caseId())
+				.withProviderId(multimediaDTO.providerId())
+				.withContentType(multimediaDTO.contentType())
+				.withFilePath(multimediaDirPathDB)
+				.withFileCategory(multimediaDTO.fileCategory())
+				.withContentHash(contentHash)
+				.markPushPending(DateUtil.millis());
+		if (existing == null) {
+			multimediaRepository.add(multimediaFile);
+		} else {
+			multimediaRepository.update(multimediaFile);
+		}
+		return "success";
+	}
+
+	/**
+	 * Puts the uploaded content at target, as a hard link to the file of another case with the same content
+	 * when there is one, or else by moving the part file.
+	 */
+	private void store(File part, File target, String contentHash) throws IOException {
+		Multimedia duplicate = multimediaRepository.findByContentHash(contentHash);
+		if (duplicate != null) {
+			File original = fileOf(duplicate);
+			if (original.isFile() && !original.equals(target)) {
+				File link = new File(target.getParentFile(), target.getName() + ".link");
+				try {
+					Files.deleteIfExists(link.toPath());
+					Files.createLink(link.toPath(), original.toPath());
+					Files.move(link.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+					return;
+				} catch (IOException | UnsupportedOperationException e) {
+					logger.warn(format("Could not link {0} to {1} with the same content, storing a copy: {2}", target, original, e));
+					deleteIfExists(link);
 				}
+			}
+		}
+		moveInto(part, target);
+	}
 
-				File multimediaDir = new File(multimediaDirPath);
+	private void moveInto(File part, File target) throws IOException {
+		try {
+			Files.move(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(part.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
 
-				 multimediaFile.transferTo(multimediaDir);
+	/**
+	 * @return the file of given case in the directory of its provider and kind of content, or null if the case
+	 * or provider would lead out of the multimedia directory
+	 */
+	private File targetFile(MultimediaDTO multimediaDTO) {
+		if (!isPathSegment(multimediaDTO.providerId()) || !isPathSegment(multimediaDTO.caseId())) {
+			return null;
+		}
+		String kind;
+		String extension;
+		switch (String.valueOf(multimediaDTO.contentType())) {
+		case "application/octet-stream":
+			kind = "videos";
+			extension = ".mp4";
+			break;
+		case "image/gif":
+			kind = "images";
+			extension = ".gif";
+			break;
+		case "image/png":
+			kind = "images";
+			extension = ".png";
+			break;
+		default:
+			kind = "images";
+			extension = ".jpg";
+			break;
+		}
+		File directory = new File(new File(multimediaDirPath, multimediaDTO.providerId()), kind);
+		makeMultimediaDir(directory);
+		return new File(directory, multimediaDTO.caseId() + extension);
+	}
 
-			/*
-			 byte[] bytes = multimediaFile.getBytes();
-			 	
-			 BufferedOutputStream stream = new BufferedOutputStream(
-						new FileOutputStream(multimediaDirPath));
-				stream.write(bytes);
-				stream.close();*/
-				 
-				return true;
-				
-			} catch (Exception e) {
-				return false;
+	/*
+	 * File paths of multimedia records are relative to the top level directory holding the multimedia directory,
+	 * e.g. /multimedia/provider/images/case.jpg for the multimedia directory /opt/multimedia.
+	 * */
+	private static Path storageRoot(String multimediaDirPath) {
+		Path directory = Paths.get(multimediaDirPath).toAbsolutePath().normalize();
+		return directory.getNameCount() == 0 ? directory : directory.getRoot().resolve(directory.getName(0));
+	}
+
+	private boolean isPathSegment(String name) {
+		return name != null && !name.isEmpty() && !name.contains("/") && !name.contains("\\") && !name.equals(".") && !name.equals("..");
+	}
+
+	/**
+	 * @return the part file of given upload in the uploads directory of the provider, so that providers choosing
+	 * the same upload id do not write to each other's upload
+	 */
+	private File partFile(String providerId, String uploadId) {
+		if (uploadId == null || !UPLOAD_ID.matcher(uploadId).matches()) {
+			throw new IllegalArgumentException(format("Invalid upload id {0}", uploadId));
+		}
+		if (!isPathSegment(providerId) || providerId.startsWith(".")) {
+			throw new IllegalArgumentException(format("Invalid provider {0} of upload {1}", providerId, uploadId));
+		}
+		File directory = new File(uploadsDirectory(), providerId);
+		makeMultimediaDir(directory);
+		return new File(directory, uploadId + PART_EXTENSION);
+	}
+
+	private File uploadsDirectory() {
+		File directory = new File(multimediaDirPath, UPLOADS_DIR_NAME);
+		makeMultimediaDir(directory);
+		return directory;
+	}
+
+	/**
+	 * Copies the stream to the file.
+	 * @return the SHA-256 of the bytes copied
+	 */
+	private String write(InputStream input, File file, boolean append) throws IOException {
+		MessageDigest digest = sha256();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		try (OutputStream output = new FileOutputStream(file, append)) {
+			int read;
+			while ((read = input.read(buffer)) != -1) {
+				output.write(buffer, 0, read);
+				digest.update(buffer, 0, read);
 			}
-		} else {
-			return false;
+		}
+		return hex(digest.digest());
+	}
+
+	private String hashOf(File file) throws IOException {
+		MessageDigest digest = sha256();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		try (InputStream input = new FileInputStream(file)) {
+			int read;
+			while ((read = input.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+		}
+		return hex(digest.digest());
+	}
+
+	private Object lockFor(File part) {
+		Object lock = uploadLocks.get(part.getPath());
+		if (lock == null) {
+			Object created = new Object();
+			lock = uploadLocks.putIfAbsent(part.getPath(), created);
+			if (lock == null) {
+				lock = created;
+			}
+		}
+		return lock;
+	}
+
+	private void deleteIfExists(File file) {
+		if (file != null && file.exists() && !file.delete()) {
+			logger.warn(format("Could not delete {0}", file));
 		}
 	}
-    private void makeMultimediaDir(String dirPath)
+
+    private void makeMultimediaDir(File file)
     {
-    	File file = new File(dirPath);
 		 if(!file.exists())
 			 file.mkdirs();
-			 
     }
-	public List<Multimedia> getMultimediaFiles(String providerId) {
-		return multimediaRepository.all(providerId);
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String hex(byte[] bytes) {
+		char[] digits = "0123456789abcdef".toCharArray();
+		char[] hex = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			hex[2 * i] = digits[(bytes[i] >> 4) & 0xf];
+			hex[2 * i + 1] = digits[bytes[i] & 0xf];
+		}
+		return new String(hex);
 	}
 }
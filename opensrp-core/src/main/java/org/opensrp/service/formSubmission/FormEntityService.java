@@ -9,8 +9,19 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.PreDestroy;
 
 import static java.lang.String.valueOf;
 import static java.text.MessageFormat.format;
@@ -23,6 +34,7 @@ public class FormEntityService {
     private static Logger logger = LoggerFactory.getLogger(FormEntityService.class.toString());
     private ZiggyService ziggyService;
     private AllFormExportTokens allFormExportTokens;
+    private final ExecutorService savers = Executors.newCachedThreadPool();
 
     @Autowired
     public FormEntityService(ZiggyService ziggyService, AllFormExportTokens allFormExportTokens) {
@@ -30,16 +42,92 @@ public class FormEntityService {
         this.allFormExportTokens = allFormExportTokens;
     }
 
+    /**
+     * Saves given submissions in server version order. When Ziggy has more than one engine, submissions are
+     * partitioned by entity id and partitions are saved in parallel, keeping the order within each entity.
+     * The export token only advances to the highest server version below which every submission has been saved.
+     * The first failure to save a submission is rethrown once the other entities are done.
+     */
     public void process(List<FormSubmission> formSubmissions) {
         sort(formSubmissions, serverVersionComparator());
         FormExportToken exportToken = allFormExportTokens.getAll().get(0);
-        for (FormSubmission submission : formSubmissions) {
-            String params = getParams(submission);
-            logger.info(format("Invoking save for form with instance Id: {0} and for entity Id: {1}",
-                    submission.instanceId(), submission.entityId()));
-            ziggyService.saveForm(params, new Gson().toJson(submission.instance()));
-            allFormExportTokens.update(exportToken.withVersion(submission.serverVersion()));
+        int parallelism = ziggyService.poolSize();
+        if (parallelism <= 1) {
+            for (FormSubmission submission : formSubmissions) {
+                save(submission);
+                allFormExportTokens.update(exportToken.withVersion(submission.serverVersion()));
+            }
+            return;
+        }
+
+        Map<String, List<Integer>> submissionsByEntity = new LinkedHashMap<>();
+        for (int i = 0; i < formSubmissions.size(); i++) {
+            String entityId = formSubmissions.get(i).entityId();
+            if (!submissionsByEntity.containsKey(entityId)) {
+                submissionsByEntity.put(entityId, new ArrayList<Integer>());
+            }
+            submissionsByEntity.get(entityId).add(i);
+        }
+
+        final ExportTokenTracker tracker = new ExportTokenTracker(formSubmissions, exportToken);
+        final Queue<List<Integer>> partitions = new ConcurrentLinkedQueue<>(submissionsByEntity.values());
+        final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        int workers = Math.min(parallelism, partitions.size());
+        final CountDownLatch done = new CountDownLatch(workers);
+        for (int i = 0; i < workers; i++) {
+            savers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (List<Integer> entitySubmissions = partitions.poll(); entitySubmissions != null; entitySubmissions = partitions.poll()) {
+                            saveInOrder(entitySubmissions, tracker, failure);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while waiting for forms to be saved. Export token: " + tracker.exportedVersion());
         }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    /**
+     * Saves the submissions of one entity in order. A failed submission stops the rest of that entity, as they
+     * must not be saved before it, and holds the export token back so that all of them are processed again.
+     */
+    private void saveInOrder(List<Integer> entitySubmissions, ExportTokenTracker tracker, AtomicReference<RuntimeException> failure) {
+        for (Integer index : entitySubmissions) {
+            FormSubmission submission = tracker.submission(index);
+            try {
+                save(submission);
+            } catch (RuntimeException e) {
+                logger.error(format("Failed to save form with instance Id: {0} for entity Id: {1}. Not saving later forms of the entity: {2}",
+                        submission.instanceId(), submission.entityId(), e));
+                failure.compareAndSet(null, e);
+                return;
+            }
+            tracker.completed(index);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        savers.shutdown();
+    }
+
+    private void save(FormSubmission submission) {
+        String params = getParams(submission);
+        logger.info(format("Invoking save for form with instance Id: {0} and for entity Id: {1}",
+                submission.instanceId(), submission.entityId()));
+        ziggyService.saveForm(params, new Gson().toJson(submission.instance()));
     }
 
     private String getParams(FormSubmission formSubmission) {
@@ -61,4 +149,39 @@ public class FormEntityService {
             }
         };
     }
+
+    private class ExportTokenTracker {
+        private final List<FormSubmission> formSubmissions;
+        private final FormExportToken exportToken;
+        private final boolean[] completed;
+        private int nextToExport;
+        private long exportedVersion;
+
+        private ExportTokenTracker(List<FormSubmission> formSubmissions, FormExportToken exportToken) {
+            this.formSubmissions = formSubmissions;
+            this.exportToken = exportToken;
+            this.completed = new boolean[formSubmissions.size()];
+            this.exportedVersion = exportToken.getVersion();
+        }
+
+        private FormSubmission submission(int index) {
+            return formSubmissions.get(index);
+        }
+
+        private synchronized void completed(int index) {
+            completed[index] = true;
+            int previous = nextToExport;
+            while (nextToExport < completed.length && completed[nextToExport]) {
+                nextToExport++;
+            }
+            if (nextToExport > previous) {
+                exportedVersion = formSubmissions.get(nextToExport - 1).serverVersion();
+                allFormExportTokens.update(exportToken.withVersion(exportedVersion));
+            }
+        }
+
+        private synchronized long exportedVersion() {
+            return exportedVersion;
+        }
+    }
 }
@@ -4,16 +4,39 @@ import org.opensrp.repository.FormDataRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.Invocable;
+import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
+
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static java.text.MessageFormat.format;
 import static javax.script.ScriptContext.ENGINE_SCOPE;
 
+/**
+ * Saves forms through a pool of Ziggy script engines. Every engine has the Ziggy JS evaluated once on
+ * startup and is used by one thread at a time, so up to pool size forms can be saved in parallel.
+ * When the JavaScript engine is Compilable, the Ziggy JS is compiled only once per JVM for a given content. Every
+ * pooled engine then has its own script context, with its own globals, in which the compiled Ziggy JS is evaluated
+ * and through which forms are saved, so pooled engines share code but no state. Otherwise every pooled engine is a
+ * separate script engine with its own copy of the Ziggy JS.
+ */
 @Service
 public class ZiggyService {
     public static final String JAVA_SCRIPT = "JavaScript";
@@ -25,45 +48,115 @@ public class ZiggyService {
     private static final String ZIGGY_FILE_LOADER = "ziggyFileLoader";
     private static final String REPOSITORY = "formDataRepositoryContext";
     private static final String FORM_SUBMISSION_ROUTER = "formSubmissionRouter";
+    private static final String PARAMS = "ziggyParams";
+    private static final String FORM_INSTANCE = "ziggyFormInstance";
+    private static final String JS_SAVE_SCRIPT = "controller." + SAVE_METHOD_NAME + "(" + PARAMS + ", " + FORM_INSTANCE + ");";
+    private static final Map<String, CompiledZiggy> compiledZiggyCache = new ConcurrentHashMap<>();
 
     private ZiggyFileLoader ziggyFileLoader;
     private FormDataRepository dataRepository;
     private FormSubmissionRouter formSubmissionRouter;
-    private Object ziggyFormController;
-    private Invocable invocable;
+    private BlockingQueue<ZiggyEngine> engines;
+    private int poolSize;
+    private long startupTimeInMillis;
+
+    public ZiggyService(ZiggyFileLoader ziggyFileLoader, FormDataRepository dataRepository, FormSubmissionRouter formSubmissionRouter) throws Exception {
+        this(ziggyFileLoader, dataRepository, formSubmissionRouter, 1);
+    }
 
     @Autowired
-    public ZiggyService(ZiggyFileLoader ziggyFileLoader,FormDataRepository dataRepository,FormSubmissionRouter formSubmissionRouter) throws Exception {
+    public ZiggyService(ZiggyFileLoader ziggyFileLoader, FormDataRepository dataRepository, FormSubmissionRouter formSubmissionRouter,
+                        @Value("#{opensrp['ziggy.engine.pool.size']}") int poolSize) throws Exception {
         this.ziggyFileLoader = ziggyFileLoader;
         this.dataRepository = dataRepository;
         this.formSubmissionRouter = formSubmissionRouter;
+        this.poolSize = Math.max(1, poolSize);
         initRhino();
     }
 
+    public int poolSize() {
+        return poolSize;
+    }
+
+    public long startupTimeInMillis() {
+        return startupTimeInMillis;
+    }
+
+    /**
+     * Saves given form instance through Ziggy.
+     * @throws IllegalStateException when the form could not be saved, so that callers do not treat it as saved.
+     */
     public void saveForm(String params, String formInstance) {
+        ZiggyEngine engine;
         try {
-            invocable.invokeMethod(ziggyFormController, SAVE_METHOD_NAME, params, formInstance);
+            engine = engines.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error(format("Form save interrupted while waiting for a Ziggy engine, with params: {0}.", params));
+            throw new IllegalStateException(format("Form save interrupted, with params: {0}.", params), e);
+        }
+        try {
+            engine.save(params, formInstance);
             logger.info(format("Saving form successful, with params: {0}.", params));
             logger.debug(format("Saving form successful, with params: {0}, with instance {1}.", params, formInstance));
         } catch (Exception e) {
             logger.error(format("Form save failed, with params: {0}, with instance {1}. Exception: {2}", params, formInstance, e));
+            throw new IllegalStateException(format("Form save failed, with params: {0}.", params), e);
+        } finally {
+            engines.offer(engine);
         }
     }
 
     private void initRhino() throws Exception {
+        long startTime = System.currentTimeMillis();
+        String jsFiles = ziggyFileLoader.getJSFiles();
         ScriptEngineManager manager = new ScriptEngineManager();
+        CompiledZiggy compiledZiggy = compile(manager, jsFiles);
+        engines = new ArrayBlockingQueue<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            engines.add(compiledZiggy == null ? createEngine(manager, jsFiles) : createEngine(compiledZiggy));
+        }
+        startupTimeInMillis = System.currentTimeMillis() - startTime;
+        logger.info(format("Initialized {0} Ziggy engine(s) in {1} ms. Using compiled script: {2}.",
+                poolSize, startupTimeInMillis, compiledZiggy != null));
+    }
+
+    private CompiledZiggy compile(ScriptEngineManager manager, String jsFiles) throws ScriptException, NoSuchAlgorithmException {
+        ScriptEngine engine = manager.getEngineByName(JAVA_SCRIPT);
+        if (!(engine instanceof Compilable)) {
+            return null;
+        }
+        String contentHash = sha1(jsFiles);
+        CompiledZiggy compiledZiggy = compiledZiggyCache.get(contentHash);
+        if (compiledZiggy == null) {
+            Compilable compiler = (Compilable) engine;
+            compiledZiggy = new CompiledZiggy(compiler.compile(jsFiles), compiler.compile(JS_INIT_SCRIPT), compiler.compile(JS_SAVE_SCRIPT));
+            compiledZiggyCache.put(contentHash, compiledZiggy);
+            logger.info(format("Compiled Ziggy JS with content hash: {0}.", contentHash));
+        }
+        return compiledZiggy;
+    }
+
+    private ZiggyEngine createEngine(CompiledZiggy compiledZiggy) throws ScriptException {
+        ScriptContext context = new SimpleScriptContext();
+        context.setBindings(getBindings(compiledZiggy.jsFiles.getEngine()), ENGINE_SCOPE);
+
+        compiledZiggy.jsFiles.eval(context);
+        compiledZiggy.initScript.eval(context);
+
+        return new ZiggyEngine(compiledZiggy.saveScript, context);
+    }
+
+    private ZiggyEngine createEngine(ScriptEngineManager manager, String jsFiles) throws Exception {
         ScriptEngine engine = manager.getEngineByName(JAVA_SCRIPT);
 
         Bindings bindings = getBindings(engine);
         engine.setBindings(bindings, ENGINE_SCOPE);
 
-        String jsFiles = ziggyFileLoader.getJSFiles();
-
         engine.eval(jsFiles);
         engine.eval(JS_INIT_SCRIPT);
 
-        ziggyFormController = engine.get("controller");
-        invocable = (Invocable) engine;
+        return new ZiggyEngine((Invocable) engine, engine.get("controller"));
     }
 
     private Bindings getBindings(ScriptEngine engine) {
@@ -73,4 +166,59 @@ public class ZiggyService {
         bindings.put(FORM_SUBMISSION_ROUTER, formSubmissionRouter);
         return bindings;
     }
+
+    private static String sha1(String content) throws NoSuchAlgorithmException {
+        byte[] digest = MessageDigest.getInstance("SHA-1").digest(content.getBytes(Charset.forName("UTF-8")));
+        return String.format("%040x", new BigInteger(1, digest));
+    }
+
+    private static class CompiledZiggy {
+        private final CompiledScript jsFiles;
+        private final CompiledScript initScript;
+        private final CompiledScript saveScript;
+
+        private CompiledZiggy(CompiledScript jsFiles, CompiledScript initScript, CompiledScript saveScript) {
+            this.jsFiles = jsFiles;
+            this.initScript = initScript;
+            this.saveScript = saveScript;
+        }
+    }
+
+    private static class ZiggyEngine {
+        private final Invocable invocable;
+        private final Object ziggyFormController;
+        private final CompiledScript saveScript;
+        private final ScriptContext context;
+
+        private ZiggyEngine(Invocable invocable, Object ziggyFormController) {
+            this.invocable = invocable;
+            this.ziggyFormController = ziggyFormController;
+            this.saveScript = null;
+            this.context = null;
+        }
+
+        private ZiggyEngine(CompiledScript saveScript, ScriptContext context) {
+            this.invocable = null;
+            this.ziggyFormController = null;
+            this.saveScript = saveScript;
+            this.context = context;
+        }
+
+        private void save(String params, String formInstance) throws ScriptException, NoSuchMethodException {
+            if (saveScript == null) {
+                invocable.invokeMethod(ziggyFormController, SAVE_METHOD_NAME, params, formInstance);
+                return;
+            }
+            // Invocable would call the controller in the default context of the shared engine, so the save is
+            // evaluated in this engine's own context instead.
+            context.setAttribute(PARAMS, params, ENGINE_SCOPE);
+            context.setAttribute(FORM_INSTANCE, formInstance, ENGINE_SCOPE);
+            try {
+                saveScript.eval(context);
+            } finally {
+                context.removeAttribute(PARAMS, ENGINE_SCOPE);
+                context.removeAttribute(FORM_INSTANCE, ENGINE_SCOPE);
+            }
+        }
+    }
 }
@@ -1,5 +1,7 @@
 package org.opensrp.scheduler.router;
 
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -11,6 +13,7 @@ import static org.motechproject.scheduletracking.api.events.constants.EventDataK
 import static org.motechproject.scheduletracking.api.events.constants.EventDataKeys.SCHEDULE_NAME;
 import static org.motechproject.scheduletracking.api.events.constants.EventDataKeys.WINDOW_NAME;
 import static org.opensrp.scheduler.Matcher.any;
+import static org.opensrp.scheduler.Matcher.anyOf;
 import static org.opensrp.scheduler.Matcher.eq;
 
 import java.util.HashMap;
@@ -25,6 +28,7 @@ import org.opensrp.scheduler.AlertRouter;
 import org.opensrp.scheduler.HookedEvent;
 import org.opensrp.scheduler.MilestoneEvent;
 import org.opensrp.scheduler.NoRoutesMatchException;
+import org.opensrp.scheduler.Route;
 
 public class AlertRouterTest {
     @Mock
@@ -120,6 +124,32 @@ public class AlertRouterTest {
         verifyZeroInteractions(secondAction);
     }
 
+    @Test
+    public void shouldKeepTheOrderOfRoutesAcrossExactAndWildcardMatchers() {
+        router.addRoute(any(), eq("Milestone X"), eq("Window X"), firstAction);
+        router.addRoute(eq("Schedule X"), anyOf("Milestone X", "Milestone Y"), any(), secondAction);
+        router.addRoute(eq("Schedule X"), any(), any(), thirdAction);
+
+        assertRouteMatches("Schedule X", "Milestone X", "Window X", firstAction, new HashMap<String, String>());
+        assertRouteMatches("Schedule X", "Milestone Y", "Window X", secondAction, new HashMap<String, String>());
+        assertRouteMatches("Schedule X", "Milestone Z", "Window X", thirdAction, new HashMap<String, String>());
+        assertNoRoutesMatch("Schedule Y", "Milestone Y", "Window X");
+    }
+
+    @Test
+    public void shouldCountTheEventsHandledByEachRoute() {
+        Route first = router.addRoute(eq("Schedule X"), any(), any(), firstAction);
+        Route second = router.addRoute(any(), any(), any(), secondAction);
+
+        handleEvent("Schedule X", "someMilestone", "someWindow");
+        handleEvent("Schedule X", "someOtherMilestone", "someWindow");
+        handleEvent("Schedule Y", "someMilestone", "someWindow");
+
+        assertEquals(2, first.hits());
+        assertEquals(1, second.hits());
+        assertEquals(asList(first, second), router.routes());
+    }
+
     @Test(expected = NoRoutesMatchException.class)
     public void shouldFailIfNoRoutesMatch() {
         router.handle(event("scheduleName", "milestoneName", "windowName"));
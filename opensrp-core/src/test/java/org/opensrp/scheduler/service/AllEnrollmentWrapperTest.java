@@ -0,0 +1,68 @@
+package org.opensrp.scheduler.service;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import java.util.Collections;
+
+import org.ektorp.ComplexKey;
+import org.ektorp.CouchDbConnector;
+import org.ektorp.ViewQuery;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.motechproject.scheduletracking.api.domain.Enrollment;
+
+public class AllEnrollmentWrapperTest {
+    @Mock
+    private CouchDbConnector db;
+
+    private AllEnrollmentWrapper allEnrollments;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        allEnrollments = new AllEnrollmentWrapper(db);
+    }
+
+    @Test
+    public void shouldFindEnrollmentsOfAnEntityWithAStatusInAnySchedule() {
+        allEnrollments.findByExternalIdAndStatus("entity 1", "ACTIVE");
+
+        ViewQuery query = queriedView();
+        assertEquals("by_external_id_status_and_schedule", query.getViewName());
+        assertEquals("[\"entity 1\",\"ACTIVE\"]", ((ComplexKey) query.getStartKey()).toJson().toString());
+        assertEquals("[\"entity 1\",\"ACTIVE\",{}]", ((ComplexKey) query.getEndKey()).toJson().toString());
+        assertTrue(query.isIncludeDocs());
+    }
+
+    @Test
+    public void shouldFindEnrollmentsOfAnEntityWithAStatusInTheGivenSchedulesOnlyByTheirKeys() {
+        allEnrollments.findByExternalIdStatusAndSchedules("entity 1", "ACTIVE", asList("Schedule 1", "Schedule 2"));
+
+        ViewQuery query = queriedView();
+        assertEquals("by_external_id_status_and_schedule", query.getViewName());
+        assertEquals("{\"keys\":[[\"entity 1\",\"ACTIVE\",\"Schedule 1\"],[\"entity 1\",\"ACTIVE\",\"Schedule 2\"]]}", query.getKeysAsJson());
+        assertTrue(query.isIncludeDocs());
+    }
+
+    @Test
+    public void shouldNotQueryWhenNoSchedulesAreGiven() {
+        assertTrue(allEnrollments.findByExternalIdStatusAndSchedules("entity 1", "ACTIVE", Collections.<String>emptyList()).isEmpty());
+
+        verify(db, never()).queryView(any(ViewQuery.class), eq(Enrollment.class));
+    }
+
+    private ViewQuery queriedView() {
+        ArgumentCaptor<ViewQuery> query = ArgumentCaptor.forClass(ViewQuery.class);
+        verify(db).queryView(query.capture(), eq(Enrollment.class));
+        return query.getValue();
+    }
+}
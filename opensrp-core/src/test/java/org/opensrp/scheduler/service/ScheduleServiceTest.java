@@ -0,0 +1,123 @@
+package org.opensrp.scheduler.service;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.ektorp.DocumentOperationResult;
+import org.joda.time.LocalDate;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.motechproject.model.Time;
+import org.motechproject.scheduletracking.api.domain.Enrollment;
+import org.motechproject.scheduletracking.api.service.ScheduleTrackingService;
+
+public class ScheduleServiceTest {
+    @Mock
+    private ScheduleTrackingService scheduleTrackingService;
+    @Mock
+    private ScheduleRegistry scheduleRegistry;
+    @Mock
+    private AllEnrollmentWrapper allEnrollments;
+
+    private ScheduleService scheduleService;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        scheduleService = new ScheduleService(scheduleTrackingService, scheduleRegistry, 14, allEnrollments);
+    }
+
+    @Test
+    public void shouldUnenrollFromEveryActiveScheduleAndStampThemAllWithOneBulkWrite() {
+        Map<String, String> firstMetadata = new HashMap<>();
+        Map<String, String> secondMetadata = new HashMap<>();
+        List<Enrollment> enrollments = asList(enrollment("Schedule 1", firstMetadata), enrollment("Schedule 2", secondMetadata));
+        when(allEnrollments.findByExternalIdAndStatus("entity 1", "ACTIVE")).thenReturn(enrollments);
+
+        List<String> schedules = scheduleService.unenrollFromAllSchedules("entity 1");
+
+        assertEquals(asList("Schedule 1", "Schedule 2"), schedules);
+        assertTrue(firstMetadata.containsKey("lastUpdate"));
+        assertTrue(secondMetadata.containsKey("lastUpdate"));
+        verify(allEnrollments).updateAll(enrollments);
+        verify(scheduleTrackingService).unenroll("entity 1", asList("Schedule 1", "Schedule 2"));
+    }
+
+    @Test
+    public void shouldReadOnlyTheEnrollmentOfTheScheduleWhoseMilestoneIsFulfilled() {
+        Map<String, String> metadata = new HashMap<>();
+        List<Enrollment> enrollments = asList(enrollment("Schedule 1", metadata));
+        when(allEnrollments.findByExternalIdStatusAndSchedules("entity 1", "ACTIVE", asList("Schedule 1"))).thenReturn(enrollments);
+
+        scheduleService.fulfillMilestone("entity 1", "Schedule 1", LocalDate.parse("2012-01-01"));
+
+        assertTrue(metadata.containsKey("lastUpdate"));
+        verify(allEnrollments).updateAll(enrollments);
+        verify(allEnrollments, never()).findByExternalIdAndStatus(anyString(), anyString());
+        verify(scheduleTrackingService).fulfillCurrentMilestone(eq("entity 1"), eq("Schedule 1"), eq(LocalDate.parse("2012-01-01")), any(Time.class));
+    }
+
+    @Test
+    public void shouldReadAgainAndStampAgainAnEnrollmentWhoseBulkWriteConflicted() {
+        Enrollment stale = enrollment("Schedule 1", new HashMap<String, String>());
+        Map<String, String> metadata = new HashMap<>();
+        Enrollment current = enrollment("Schedule 1", metadata);
+        List<Enrollment> enrollments = asList(stale);
+        when(allEnrollments.findByExternalIdStatusAndSchedules("entity 1", "ACTIVE", asList("Schedule 1"))).thenReturn(enrollments);
+        when(allEnrollments.updateAll(enrollments)).thenReturn(asList(failure("enrollment 1", "conflict")));
+        when(allEnrollments.get("enrollment 1")).thenReturn(current);
+
+        scheduleService.unenroll("entity 1", "Schedule 1");
+
+        assertTrue(metadata.containsKey("lastUpdate"));
+        verify(allEnrollments).updateAll(asList(current));
+        verify(scheduleTrackingService).unenroll("entity 1", asList("Schedule 1"));
+    }
+
+    @Test
+    public void shouldNotUnenrollWhenTheLastUpdateOfAnEnrollmentCannotBeWritten() {
+        List<Enrollment> enrollments = asList(enrollment("Schedule 1", new HashMap<String, String>()));
+        when(allEnrollments.findByExternalIdAndStatus("entity 1", "ACTIVE")).thenReturn(enrollments);
+        when(allEnrollments.updateAll(enrollments)).thenReturn(asList(failure("enrollment 1", "forbidden")));
+
+        try {
+            scheduleService.unenrollFromAllSchedules("entity 1");
+            fail("Expected the failed write to be reported");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("enrollment 1"));
+        }
+
+        verify(allEnrollments, never()).get(anyString());
+        verifyZeroInteractions(scheduleTrackingService);
+    }
+
+    private DocumentOperationResult failure(String id, String error) {
+        DocumentOperationResult failure = mock(DocumentOperationResult.class);
+        when(failure.getId()).thenReturn(id);
+        when(failure.getError()).thenReturn(error);
+        return failure;
+    }
+
+    private Enrollment enrollment(String scheduleName, Map<String, String> metadata) {
+        Enrollment enrollment = mock(Enrollment.class);
+        when(enrollment.getScheduleName()).thenReturn(scheduleName);
+        when(enrollment.getMetadata()).thenReturn(metadata);
+        return enrollment;
+    }
+}
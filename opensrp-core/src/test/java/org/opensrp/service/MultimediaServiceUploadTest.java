@@ -0,0 +1,175 @@
+package org.opensrp.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.opensrp.domain.Multimedia;
+import org.opensrp.dto.form.MultimediaDTO;
+import org.opensrp.repository.MultimediaRepository;
+import org.springframework.mock.web.MockMultipartFile;
+
+public class MultimediaServiceUploadTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	@Mock
+	private MultimediaRepository multimediaRepository;
+
+	private File multimediaDirectory;
+	private MultimediaService multimediaService;
+
+	@Before
+	public void setUp() throws Exception {
+		initMocks(this);
+		multimediaDirectory = folder.newFolder("multimedia");
+		multimediaService = new MultimediaService(multimediaRepository, multimediaDirectory.getPath(), 1);
+	}
+
+	@After
+	public void tearDown() {
+		multimediaService.shutdown();
+	}
+
+	@Test
+	public void shouldResumeChunkedUploadFromBytesReceived() throws Exception {
+		assertEquals(0, multimediaService.uploadedBytes("demo", "upload-1"));
+
+		assertEquals(5, multimediaService.appendChunk("demo", "upload-1", 0, new ByteArrayInputStream("hello".getBytes())));
+		assertEquals(5, multimediaService.uploadedBytes("demo", "upload-1"));
+		assertEquals(11, multimediaService.appendChunk("demo", "upload-1", 5, new ByteArrayInputStream(" world".getBytes())));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void shouldNotAppendChunkThatDoesNotStartAtBytesReceived() throws Exception {
+		multimediaService.appendChunk("demo", "upload-1", 0, new ByteArrayInputStream("hello".getBytes()));
+
+		multimediaService.appendChunk("demo", "upload-1", 3, new ByteArrayInputStream("lo world".getBytes()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldRejectUploadIdsThatAreNotPlainNames() throws Exception {
+		multimediaService.uploadedBytes("demo", "../upload-1");
+	}
+
+	@Test
+	public void shouldKeepUploadsOfEachProviderApart() throws Exception {
+		multimediaService.appendChunk("demo", "upload-1", 0, new ByteArrayInputStream("hello".getBytes()));
+
+		assertEquals(0, multimediaService.uploadedBytes("other", "upload-1"));
+		assertEquals(3, multimediaService.appendChunk("other", "upload-1", 0, new ByteArrayInputStream("bye".getBytes())));
+		assertEquals(5, multimediaService.uploadedBytes("demo", "upload-1"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldRejectProvidersThatAreNotPlainNames() throws Exception {
+		multimediaService.uploadedBytes("..", "upload-1");
+	}
+
+	@Test
+	public void shouldRemoveUploadsAbandonedForLongerThanTheConfiguredAge() throws Exception {
+		multimediaService.appendChunk("demo", "upload-1", 0, new ByteArrayInputStream("hello".getBytes()));
+		multimediaService.appendChunk("demo", "upload-2", 0, new ByteArrayInputStream("hello".getBytes()));
+		File abandoned = new File(multimediaDirectory, ".uploads/demo/upload-1.part");
+		long now = System.currentTimeMillis();
+		assertTrue(abandoned.setLastModified(now - TimeUnit.HOURS.toMillis(2)));
+
+		assertEquals(1, multimediaService.removeAbandonedUploads(now));
+
+		assertEquals(0, multimediaService.uploadedBytes("demo", "upload-1"));
+		assertEquals(5, multimediaService.uploadedBytes("demo", "upload-2"));
+	}
+
+	@Test
+	public void shouldKeepARecordPerContentTypeAndCategoryOfACase() throws Exception {
+		multimediaService.saveMultimediaFile(new MultimediaDTO("case 1", "demo", "image/jpeg", null, "profile"), new MockMultipartFile("file", "profile bytes".getBytes()));
+		multimediaService.saveMultimediaFile(new MultimediaDTO("case 1", "demo", "application/octet-stream", null, "video"), new MockMultipartFile("file", "video bytes".getBytes()));
+
+		verify(multimediaRepository).findByCaseIdContentTypeAndFileCategory("case 1", "image/jpeg", "profile");
+		verify(multimediaRepository).findByCaseIdContentTypeAndFileCategory("case 1", "application/octet-stream", "video");
+		verify(multimediaRepository, times(2)).add(any(Multimedia.class));
+		verify(multimediaRepository, never()).update(any(Multimedia.class));
+	}
+
+	@Test
+	public void shouldStoreCompletedUploadAndQueueItForOpenmrs() throws Exception {
+		multimediaService.appendChunk("demo", "upload-1", 0, new ByteArrayInputStream("image bytes".getBytes()));
+
+		String status = multimediaService.completeUpload("upload-1", new MultimediaDTO("case 1", "demo", "image/png", null, "profile"));
+
+		assertEquals("success", status);
+		File stored = new File(multimediaDirectory, "demo/images/case 1.png");
+		assertEquals("image bytes", new String(Files.readAllBytes(stored.toPath())));
+		assertEquals(0, multimediaService.uploadedBytes("demo", "upload-1"));
+		ArgumentCaptor<Multimedia> captor = ArgumentCaptor.forClass(Multimedia.class);
+		verify(multimediaRepository).add(captor.capture());
+		Multimedia multimedia = captor.getValue();
+		assertEquals(Multimedia.PUSH_PENDING, multimedia.getPushStatus());
+		assertEquals(64, multimedia.getContentHash().length());
+		assertEquals(stored, multimediaService.fileOf(multimedia));
+	}
+
+	@Test
+	public void shouldKeepFilePathsRelativeToTheTopLevelDirectoryOfTheMultimediaDirectory() throws Exception {
+		MultimediaService service = new MultimediaService(multimediaRepository, "/opt/multimedia");
+		Multimedia multimedia = new Multimedia().withFilePath("/multimedia/demo/images/case 1.jpg");
+
+		assertEquals(new File("/opt/multimedia/demo/images/case 1.jpg"), service.fileOf(multimedia));
+
+		multimediaService.appendChunk("demo", "upload-1", 0, new ByteArrayInputStream("image bytes".getBytes()));
+		multimediaService.completeUpload("upload-1", new MultimediaDTO("case 1", "demo", "image/png", null, "profile"));
+		ArgumentCaptor<Multimedia> captor = ArgumentCaptor.forClass(Multimedia.class);
+		verify(multimediaRepository).add(captor.capture());
+		File topLevelDirectory = multimediaDirectory.getAbsoluteFile();
+		while (topLevelDirectory.getParentFile().getParentFile() != null) {
+			topLevelDirectory = topLevelDirectory.getParentFile();
+		}
+		assertEquals(new File(topLevelDirectory, captor.getValue().getFilePath()), new File(multimediaDirectory, "demo/images/case 1.png"));
+	}
+
+	@Test
+	public void shouldNotStoreUnchangedFileAgain() throws Exception {
+		MultimediaDTO multimediaDTO = new MultimediaDTO("case 1", "demo", "image/jpeg", null, "profile");
+		multimediaService.saveMultimediaFile(multimediaDTO, new MockMultipartFile("file", "image bytes".getBytes()));
+		ArgumentCaptor<Multimedia> captor = ArgumentCaptor.forClass(Multimedia.class);
+		verify(multimediaRepository).add(captor.capture());
+		when(multimediaRepository.findByCaseIdContentTypeAndFileCategory("case 1", "image/jpeg", "profile")).thenReturn(captor.getValue());
+
+		String status = multimediaService.saveMultimediaFile(multimediaDTO, new MockMultipartFile("file", "image bytes".getBytes()));
+
+		assertEquals("success", status);
+		verify(multimediaRepository, never()).update(any(Multimedia.class));
+	}
+
+	@Test
+	public void shouldLinkFileWithSameContentAsAnotherCase() throws Exception {
+		multimediaService.saveMultimediaFile(new MultimediaDTO("case 1", "demo", "image/jpeg", null, "profile"), new MockMultipartFile("file", "image bytes".getBytes()));
+		ArgumentCaptor<Multimedia> captor = ArgumentCaptor.forClass(Multimedia.class);
+		verify(multimediaRepository).add(captor.capture());
+		Multimedia first = captor.getValue();
+		when(multimediaRepository.findByContentHash(first.getContentHash())).thenReturn(first);
+
+		String status = multimediaService.saveMultimediaFile(new MultimediaDTO("case 2", "demo", "image/jpeg", null, "profile"), new MockMultipartFile("file", "image bytes".getBytes()));
+
+		assertEquals("success", status);
+		File original = new File(multimediaDirectory, "demo/images/case 1.jpg");
+		File linked = new File(multimediaDirectory, "demo/images/case 2.jpg");
+		assertTrue(Files.isSameFile(original.toPath(), linked.toPath()));
+	}
+}
@@ -0,0 +1,64 @@
+package org.opensrp.service.formSubmission;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.opensrp.repository.FormDataRepository;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class ZiggyServiceTest {
+    private static final String COUNTING_ZIGGY = "var savedForms = 0;\n" +
+            "var require = function (modules, callback) {\n" +
+            "    callback({createOrUpdateEntity: function (params, formInstance) {\n" +
+            "        savedForms++;\n" +
+            "        formDataRepositoryContext.saveEntity(String(savedForms), String(params));\n" +
+            "    }});\n" +
+            "};";
+
+    @Mock
+    private ZiggyFileLoader ziggyFileLoader;
+    @Mock
+    private FormDataRepository formDataRepository;
+    @Mock
+    private FormSubmissionRouter formSubmissionRouter;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        when(ziggyFileLoader.getJSFiles()).thenReturn(COUNTING_ZIGGY);
+    }
+
+    @Test
+    public void shouldKeepTheStateOfPooledEnginesApart() throws Exception {
+        ZiggyService service = new ZiggyService(ziggyFileLoader, formDataRepository, formSubmissionRouter, 2);
+
+        for (int i = 0; i < 4; i++) {
+            service.saveForm("form " + i, "{}");
+        }
+
+        verify(formDataRepository).saveEntity("1", "form 0");
+        verify(formDataRepository).saveEntity("1", "form 1");
+        verify(formDataRepository).saveEntity("2", "form 2");
+        verify(formDataRepository).saveEntity("2", "form 3");
+    }
+
+    @Test
+    public void shouldNotShareStateBetweenServicesWithTheSameZiggyJS() throws Exception {
+        ZiggyService service = new ZiggyService(ziggyFileLoader, formDataRepository, formSubmissionRouter, 1);
+        ZiggyService otherService = new ZiggyService(ziggyFileLoader, formDataRepository, formSubmissionRouter, 1);
+
+        service.saveForm("form", "{}");
+        otherService.saveForm("other form", "{}");
+        service.saveForm("form", "{}");
+
+        verify(formDataRepository).saveEntity("1", "form");
+        verify(formDataRepository).saveEntity("1", "other form");
+        verify(formDataRepository).saveEntity("2", "form");
+        verify(formDataRepository, times(3)).saveEntity(anyString(), anyString());
+    }
+}
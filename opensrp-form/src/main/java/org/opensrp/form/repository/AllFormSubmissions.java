@@ -1,21 +1,39 @@
 package org.opensrp.form.repository;
 
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.DeserializationConfig;
+import org.codehaus.jackson.map.ObjectMapper;
 import org.ektorp.ComplexKey;
 import org.ektorp.CouchDbConnector;
+import org.ektorp.DbAccessException;
+import org.ektorp.DocumentOperationResult;
 import org.ektorp.ViewQuery;
+import org.ektorp.ViewResult;
 import org.ektorp.support.GenerateView;
 import org.ektorp.support.View;
 import org.motechproject.dao.MotechBaseRepository;
 import org.opensrp.form.domain.FormSubmission;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Repository;
 import org.opensrp.common.AllConstants;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 @Repository
 public class AllFormSubmissions extends MotechBaseRepository<FormSubmission> {
+    private static Logger logger = LoggerFactory.getLogger(AllFormSubmissions.class.toString());
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationConfig.Feature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
     @Autowired
     protected AllFormSubmissions(@Qualifier(AllConstants.OPENSRP_FORM_DATABASE_CONNECTOR) CouchDbConnector db) {
         super(FormSubmission.class, db);
@@ -34,6 +52,22 @@ public class AllFormSubmissions extends MotechBaseRepository<FormSubmission> {
         return submissions.get(0);
     }
 
+    public Set<String> findExistingInstanceIds(List<String> instanceIds) {
+        Set<String> existingInstanceIds = new HashSet<>();
+        if (instanceIds.isEmpty()) {
+            return existingInstanceIds;
+        }
+        List<ViewResult.Row> rows = db.queryView(createQuery("by_instanceId").keys(instanceIds)).getRows();
+        for (ViewResult.Row row : rows) {
+            existingInstanceIds.add(row.getKey());
+        }
+        return existingInstanceIds;
+    }
+
+    public List<DocumentOperationResult> addAll(List<FormSubmission> submissions) {
+        return db.executeBulk(submissions);
+    }
+
     @View(name = "formSubmission_by_server_version", map = "function(doc) { if (doc.type === 'FormSubmission') { emit([doc.serverVersion], null); } }")
     public List<FormSubmission> findByServerVersion(long serverVersion) {
         ComplexKey startKey = ComplexKey.of(serverVersion + 1);
@@ -55,6 +89,18 @@ public class AllFormSubmissions extends MotechBaseRepository<FormSubmission> {
         return db.queryView(query, FormSubmission.class);
     }
 
+    public void streamAllFormSubmissions(long serverVersion, String lastDocId, Integer batchSize, FormSubmissionStreamHandler handler) {
+        ViewQuery query = createQuery("formSubmission_by_server_version")
+                .endKey(ComplexKey.of(Long.MAX_VALUE))
+                .includeDocs(true);
+        if (lastDocId == null) {
+            query.startKey(ComplexKey.of(serverVersion + 1));
+        } else {
+            query.startKey(ComplexKey.of(serverVersion)).startDocId(lastDocId);
+        }
+        stream(query, batchSize, lastDocId, handler);
+    }
+
     @View(name = "formSubmission_by_anm_and_server_version",
             map = "function(doc) { if (doc.type === 'FormSubmission') { emit([doc.anmId, doc.serverVersion], null); } }")
     public List<FormSubmission> findByANMIDAndServerVersion(String anmId, long version, Integer batchSize) {
@@ -69,6 +115,18 @@ public class AllFormSubmissions extends MotechBaseRepository<FormSubmission> {
         }
         return db.queryView(query, FormSubmission.class);
     }
+
+    public void streamByANMIDAndServerVersion(String anmId, long version, String lastDocId, Integer batchSize, FormSubmissionStreamHandler handler) {
+        ViewQuery query = createQuery("formSubmission_by_anm_and_server_version")
+                .endKey(ComplexKey.of(anmId, Long.MAX_VALUE))
+                .includeDocs(true);
+        if (lastDocId == null) {
+            query.startKey(ComplexKey.of(anmId, version + 1));
+        } else {
+            query.startKey(ComplexKey.of(anmId, version)).startDocId(lastDocId);
+        }
+        stream(query, batchSize, lastDocId, handler);
+    }
     
     @View(name = "formSubmission_by_form_name_and_server_version", 
     		map = "function(doc) { if (doc.type === 'FormSubmission') { emit([doc.formName, doc.serverVersion]); } }")
@@ -94,4 +152,44 @@ public class AllFormSubmissions extends MotechBaseRepository<FormSubmission> {
                 .includeDocs(true), FormSubmission.class);
     }
 
+    /**
+     * Streams the rows of a page which continues from {@code lastDocId}. The page starts at that document's key,
+     * and its row is left out only when it is still there: if it has been deleted since, the first row is the
+     * next document, which must not be dropped.
+     */
+    private void stream(ViewQuery query, Integer batchSize, String lastDocId, FormSubmissionStreamHandler handler) {
+        if (batchSize != null) {
+            query.limit(lastDocId == null ? batchSize : batchSize + 1);
+        }
+        InputStream json = db.queryForStream(query);
+        try {
+            JsonParser parser = objectMapper.getJsonFactory().createJsonParser(json);
+            while (parser.nextToken() != null) {
+                if (parser.getCurrentToken() == JsonToken.FIELD_NAME && "rows".equals(parser.getCurrentName())) {
+                    parser.nextToken();
+                    boolean firstRow = true;
+                    int handled = 0;
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        JsonNode row = objectMapper.readTree(parser);
+                        boolean isLastDoc = firstRow && lastDocId != null && lastDocId.equals(row.path("id").getTextValue());
+                        firstRow = false;
+                        if (isLastDoc || (batchSize != null && handled >= batchSize)) {
+                            continue;
+                        }
+                        handler.handle(objectMapper.treeToValue(row.get("doc"), FormSubmission.class));
+                        handled++;
+                    }
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            throw new DbAccessException(e);
+        } finally {
+            try {
+                json.close();
+            } catch (IOException e) {
+                logger.warn("Could not close form submission view stream", e);
+            }
+        }
+    }
 }
@@ -0,0 +1,7 @@
+package org.opensrp.form.repository;
+
+import org.opensrp.form.domain.FormSubmission;
+
+public interface FormSubmissionStreamHandler {
+    void handle(FormSubmission submission);
+}
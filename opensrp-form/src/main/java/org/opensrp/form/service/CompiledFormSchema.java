@@ -0,0 +1,382 @@
+package org.opensrp.form.service;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Parsed form_definition.json, form.json and model.xml of a single form along with the lookup tables
+ * FormAttributeParser needs for every submission (field bind paths, model attributes per bind path, field types
+ * and option codes). The tables are built once when the form is loaded and are never modified afterwards.
+ * The model document is shared, so any XPath evaluated against it must go through {@link #evaluate(String, QName)}.
+ */
+class CompiledFormSchema {
+	private final long formDefinitionLastModified;
+	private final long jsonFormLastModified;
+	private final long modelLastModified;
+
+	private final JsonObject formDefinition;
+	private final JsonObject jsonForm;
+	private final Document model;
+
+	private final Map<String, String> fieldBindPaths;
+	private final Map<String, Map<String, String>> subformFieldBindPaths;
+	private final Map<String, Map<String, String>> subformFieldSources;
+	private final Map<String, String> subformDefaultBindPaths;
+	private final Map<String, Map<String, String>> attributesByBindPath;
+	private final Map<String, FieldSchema> fieldsByBindPath;
+
+	private final XPath xPath = XPathFactory.newInstance().newXPath();
+	private final Map<String, XPathExpression> compiledExpressions = new HashMap<>();
+
+	private CompiledFormSchema(File formDefinitionFile, File jsonFormFile, File modelFile) throws IOException, ParserConfigurationException, SAXException {
+		this.formDefinitionLastModified = formDefinitionFile.lastModified();
+		this.jsonFormLastModified = jsonFormFile.lastModified();
+		this.modelLastModified = modelFile.lastModified();
+
+		this.formDefinition = readJson(formDefinitionFile);
+		this.jsonForm = readJson(jsonFormFile);
+		DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+		DocumentBuilder builder = factory.newDocumentBuilder();
+		this.model = builder.parse(modelFile);
+
+		Map<String, String> fieldBindPaths = new HashMap<>();
+		Map<String, Map<String, String>> subformFieldBindPaths = new HashMap<>();
+		Map<String, Map<String, String>> subformFieldSources = new HashMap<>();
+		Map<String, String> subformDefaultBindPaths = new HashMap<>();
+		Map<String, FieldSchema> fieldsByBindPath = new HashMap<>();
+
+		JsonElement formElement = formDefinition.get("form");
+		if (formElement != null && formElement.isJsonObject()) {
+			JsonObject form = formElement.getAsJsonObject();
+			for (JsonElement field : getArray(form, "fields")) {
+				JsonObject fieldObject = field.getAsJsonObject();
+				if (fieldObject.has("bind") && fieldObject.has("name")) {
+					putIfAbsent(fieldBindPaths, key(fieldObject.get("name").getAsString()), fieldObject.get("bind").getAsString());
+					indexField(fieldsByBindPath, fieldObject.get("bind").getAsString());
+				}
+			}
+			for (JsonElement subform : getArray(form, "sub_forms")) {
+				JsonObject subformObject = subform.getAsJsonObject();
+				if (!subformObject.has("name")) {
+					continue;
+				}
+				String subformName = key(subformObject.get("name").getAsString());
+				if (subformObject.has("default_bind_path")) {
+					putIfAbsent(subformDefaultBindPaths, subformName, subformObject.get("default_bind_path").getAsString());
+				}
+				Map<String, String> binds = getOrCreate(subformFieldBindPaths, subformName);
+				Map<String, String> sources = getOrCreate(subformFieldSources, subformName);
+				for (JsonElement field : getArray(subformObject, "fields")) {
+					JsonObject fieldObject = field.getAsJsonObject();
+					if (!fieldObject.has("name")) {
+						continue;
+					}
+					String fieldName = key(fieldObject.get("name").getAsString());
+					if (fieldObject.has("bind")) {
+						putIfAbsent(binds, fieldName, fieldObject.get("bind").getAsString());
+						indexField(fieldsByBindPath, fieldObject.get("bind").getAsString());
+					}
+					if (fieldObject.has("source")) {
+						putIfAbsent(sources, fieldName, fieldObject.get("source").getAsString());
+					}
+				}
+			}
+		}
+
+		Map<String, Map<String, String>> attributesByBindPath = new HashMap<>();
+		indexAttributes(attributesByBindPath, model.getDocumentElement(), "");
+
+		this.fieldBindPaths = Collections.unmodifiableMap(fieldBindPaths);
+		this.subformFieldBindPaths = Collections.unmodifiableMap(subformFieldBindPaths);
+		this.subformFieldSources = Collections.unmodifiableMap(subformFieldSources);
+		this.subformDefaultBindPaths = Collections.unmodifiableMap(subformDefaultBindPaths);
+		this.attributesByBindPath = Collections.unmodifiableMap(attributesByBindPath);
+		this.fieldsByBindPath = Collections.unmodifiableMap(fieldsByBindPath);
+	}
+
+	static CompiledFormSchema load(String formDirPath) throws IOException, ParserConfigurationException, SAXException {
+		return new CompiledFormSchema(new File(formDirPath + "/form_definition.json"), new File(formDirPath + "/form.json"),
+				new File(formDirPath + "/model.xml"));
+	}
+
+	boolean isStale(String formDirPath) {
+		return new File(formDirPath + "/form_definition.json").lastModified() != formDefinitionLastModified
+				|| new File(formDirPath + "/form.json").lastModified() != jsonFormLastModified
+				|| new File(formDirPath + "/model.xml").lastModified() != modelLastModified;
+	}
+
+	JsonObject formDefinition() {
+		return formDefinition;
+	}
+
+	JsonObject jsonForm() {
+		return jsonForm;
+	}
+
+	Document model() {
+		return model;
+	}
+
+	String fieldBindPath(String fieldName) {
+		return fieldName == null ? null : fieldBindPaths.get(key(fieldName));
+	}
+
+	String subformFieldBindPath(String subformName, String fieldName) {
+		return lookup(subformFieldBindPaths, subformName, fieldName);
+	}
+
+	String subformFieldSource(String subformName, String fieldName) {
+		return lookup(subformFieldSources, subformName, fieldName);
+	}
+
+	String subformDefaultBindPath(String subformName) {
+		return subformName == null ? null : subformDefaultBindPaths.get(key(subformName));
+	}
+
+	/**
+	 * Returns a copy of the attributes of the model.xml node at given bind path. Bind paths which are not plain
+	 * absolute element paths are evaluated as XPath against the model.
+	 */
+	Map<String, String> attributesForBindPath(String bindPath) throws XPathExpressionException {
+		if (bindPath.endsWith("/")) {
+			bindPath = bindPath.substring(0, bindPath.length() - 1);
+		}
+		if (isElementPath(bindPath)) {
+			Map<String, String> attributes = attributesByBindPath.get(bindPath);
+			return attributes == null ? new HashMap<String, String>() : new HashMap<>(attributes);
+		}
+		return attributesOf((Node) evaluate(bindPath, XPathConstants.NODE));
+	}
+
+	String fieldType(String bindPath) {
+		FieldSchema field = fieldsByBindPath.get(bindPath);
+		return field == null ? FieldSchema.of(jsonForm, bindPath).type : field.type;
+	}
+
+	boolean isMultiselect(String bindPath) {
+		FieldSchema field = fieldsByBindPath.get(bindPath);
+		return field == null ? FieldSchema.of(jsonForm, bindPath).multiselect : field.multiselect;
+	}
+
+	/**
+	 * Returns a copy of the instance attributes (i.e. custom codes) of the option with given value for field at given
+	 * bind path, or null if field has no such option.
+	 */
+	Map<String, String> valueCodes(String bindPath, String value) {
+		FieldSchema field = fieldsByBindPath.get(bindPath);
+		if (field == null) {
+			field = FieldSchema.of(jsonForm, bindPath);
+		}
+		Map<String, String> codes = value == null ? null : field.optionCodes.get(key(value));
+		return codes == null ? null : new HashMap<>(codes);
+	}
+
+	/**
+	 * Evaluates given XPath against the shared model document. DOM and XPath objects are not thread safe
+	 * so evaluation is serialized per form.
+	 */
+	Object evaluate(String expression, QName returnType) throws XPathExpressionException {
+		synchronized (model) {
+			XPathExpression compiled = compiledExpressions.get(expression);
+			if (compiled == null) {
+				compiled = xPath.compile(expression);
+				compiledExpressions.put(expression, compiled);
+			}
+			return compiled.evaluate(model, returnType);
+		}
+	}
+
+	NodeList evaluateNodeSet(String expression) throws XPathExpressionException {
+		return (NodeList) evaluate(expression, XPathConstants.NODESET);
+	}
+
+	static Map<String, String> attributesOf(Node node) {
+		Map<String, String> attributeMap = new HashMap<>();
+		if (node != null && node.getAttributes() != null) {
+			NamedNodeMap attributes = node.getAttributes();
+			for (int i = 0; i < attributes.getLength(); i++) {
+				Node attributeNode = attributes.item(i);
+				attributeMap.put(attributeNode.getNodeName(), attributeNode.getNodeValue());
+			}
+		}
+		return attributeMap;
+	}
+
+	/**
+	 * Finds the node in form.json for field with given bind path by walking the children of as many levels as the
+	 * bind path has below /model/instance/form_name.
+	 */
+	static JsonObject findJsonFormNode(JsonObject jsonForm, String fieldBindPath) {
+		String[] sps = fieldBindPath.split("/");
+		int level = sps.length - 4;
+		String nodeNameToFind = sps[sps.length - 1];
+		return getChildrenOfLevel(level, jsonForm, nodeNameToFind);
+	}
+
+	private static JsonObject getChildrenOfLevel(int level, JsonObject node, String nodeName) {
+		for (JsonElement ch : getArray(node, "children")) {
+			if (ch.getAsJsonObject().has("type")) {
+				for (int i = 1; i <= level; i++) {
+					String ccurrchnmae = ch.getAsJsonObject().get("name").getAsString();
+					if (i == level) {
+						if (ccurrchnmae.equalsIgnoreCase(nodeName)) {
+							return ch.getAsJsonObject();
+						}
+						continue;
+					}
+
+					if (!ch.getAsJsonObject().has("children")) {
+						break;
+					}
+					JsonObject obj = getChildrenOfLevel(level - i, ch.getAsJsonObject(), nodeName);
+					if (obj != null) {
+						return obj;
+					}
+				}
+			}
+		}
+		return null;
+	}
+
+	private void indexField(Map<String, FieldSchema> fieldsByBindPath, String bindPath) {
+		if (!fieldsByBindPath.containsKey(bindPath)) {
+			fieldsByBindPath.put(bindPath, FieldSchema.of(jsonForm, bindPath));
+		}
+	}
+
+	private static void indexAttributes(Map<String, Map<String, String>> attributesByBindPath, Node node, String parentPath) {
+		if (node == null || node.getNodeType() != Node.ELEMENT_NODE) {
+			return;
+		}
+		String path = parentPath + "/" + node.getNodeName();
+		if (!attributesByBindPath.containsKey(path)) {
+			attributesByBindPath.put(path, Collections.unmodifiableMap(attributesOf(node)));
+		}
+		NodeList children = node.getChildNodes();
+		for (int i = 0; i < children.getLength(); i++) {
+			indexAttributes(attributesByBindPath, children.item(i), path);
+		}
+	}
+
+	private static boolean isElementPath(String bindPath) {
+		return bindPath.startsWith("/") && !bindPath.startsWith("//")
+				&& !bindPath.contains("[") && !bindPath.contains("@") && !bindPath.contains("*")
+				&& !bindPath.contains("..") && !bindPath.contains("(") && !bindPath.contains(":");
+	}
+
+	private static JsonObject readJson(File file) throws IOException {
+		FileReader reader = new FileReader(file);
+		try {
+			return (JsonObject) new JsonParser().parse(reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static JsonArray getArray(JsonObject object, String name) {
+		JsonElement element = object.get(name);
+		if (element == null || !element.isJsonArray()) {
+			return new JsonArray();
+		}
+		return element.getAsJsonArray();
+	}
+
+	private static String lookup(Map<String, Map<String, String>> table, String subformName, String fieldName) {
+		if (subformName == null || fieldName == null) {
+			return null;
+		}
+		Map<String, String> fields = table.get(key(subformName));
+		return fields == null ? null : fields.get(key(fieldName));
+	}
+
+	private static Map<String, String> getOrCreate(Map<String, Map<String, String>> table, String key) {
+		Map<String, String> value = table.get(key);
+		if (value == null) {
+			value = new HashMap<>();
+			table.put(key, value);
+		}
+		return value;
+	}
+
+	private static void putIfAbsent(Map<String, String> map, String key, String value) {
+		if (!map.containsKey(key)) {
+			map.put(key, value);
+		}
+	}
+
+	private static String key(String name) {
+		return name.toLowerCase(Locale.ENGLISH);
+	}
+
+	private static class FieldSchema {
+		private final String type;
+		private final boolean multiselect;
+		private final Map<String, Map<String, String>> optionCodes;
+
+		private FieldSchema(String type, boolean multiselect, Map<String, Map<String, String>> optionCodes) {
+			this.type = type;
+			this.multiselect = multiselect;
+			this.optionCodes = optionCodes;
+		}
+
+		static FieldSchema of(JsonObject jsonForm, String bindPath) {
+			JsonObject node = findJsonFormNode(jsonForm, bindPath);
+			if (node == null) {
+				return new FieldSchema(null, false, Collections.<String, Map<String, String>>emptyMap());
+			}
+			String type = node.has("type") ? node.get("type").getAsString() : null;
+			boolean multiselect = node.has("children") && type != null
+					&& (type.startsWith("select all") || type.startsWith("select multiple"));
+			Map<String, Map<String, String>> optionCodes = new HashMap<>();
+			for (JsonElement option : getArray(node, "children")) {
+				JsonObject optionObject = option.getAsJsonObject();
+				if (!optionObject.has("name")) {
+					continue;
+				}
+				String optionName = key(optionObject.get("name").getAsString());
+				if (!optionCodes.containsKey(optionName)) {
+					optionCodes.put(optionName, Collections.unmodifiableMap(toMap(optionObject.get("instance"))));
+				}
+			}
+			return new FieldSchema(type, multiselect, Collections.unmodifiableMap(optionCodes));
+		}
+
+		private static Map<String, String> toMap(JsonElement element) {
+			Map<String, String> map = new HashMap<>();
+			if (element == null) {
+				return map;
+			}
+			for (Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+				map.put(entry.getKey(), entry.getValue().getAsString());
+			}
+			return map;
+		}
+	}
+}
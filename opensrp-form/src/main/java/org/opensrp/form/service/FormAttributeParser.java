@@ -1,8 +1,5 @@
 package org.opensrp.form.service;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -12,9 +9,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
@@ -40,19 +36,23 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonIOException;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import com.google.gson.JsonSyntaxException;
 import com.mysql.jdbc.StringUtils;
 
 /**
  * The class is the bridge that allows parsing and mapping of formSubmission fields with 
  * those defined in xls form for external system entity mappings.
+ * Form files are parsed once into a {@link CompiledFormSchema} per form and reparsed only when
+ * any of form_definition.json, form.json or model.xml is modified.
  */
 
 @Service
 public class FormAttributeParser {
 	private String jsonFilePath;
 	private String xmlFilePath;
+	private final Map<String, CompiledFormSchema> formSchemas = new ConcurrentHashMap<>();
+	private final XPath xPath = XPathFactory.newInstance().newXPath();
+	private final Map<String, XPathExpression> compiledExpressions = new HashMap<>();
 	
 	@Autowired
 	public FormAttributeParser(@Value("#{opensrp['form.directory.name']}") String formDirPath) throws IOException
@@ -64,28 +64,26 @@ public class FormAttributeParser {
 	}
 	
 	public FormSubmissionMap createFormSubmissionMap(FormSubmission fs) throws JsonIOException, JsonSyntaxException, ParserConfigurationException, SAXException, IOException, XPathExpressionException {
-		JsonObject formDefinitionData = getFormDefinitionData(fs.formName());
-		Document modelXml = getModelXmlData(fs.formName());
-		JsonObject jsonForm = getJSONFormData(fs.formName());
+		CompiledFormSchema schema = getFormSchema(fs.formName());
 		
-		Map<String, String> formAttributes = getAttributesForBindPath(fs.defaultBindPath(), modelXml);
+		Map<String, String> formAttributes = schema.attributesForBindPath(fs.defaultBindPath());
 		List<FormFieldMap> fields = new ArrayList<FormFieldMap>();
 		for (FormField fsf : fs.instance().form().fields()) {
-			String bindPath = getPropertyBindFromFormDefinition(fsf.name(), fs.formName(), formDefinitionData);
-			String type = bindPath==null?null:getFieldType(bindPath, jsonForm);
-			Map<String, String> fieldAttributes = bindPath==null?new HashMap<String, String>():getAttributesForBindPath(bindPath, modelXml);
+			String bindPath = schema.fieldBindPath(fsf.name());
+			String type = bindPath==null?null:schema.fieldType(bindPath);
+			Map<String, String> fieldAttributes = bindPath==null?new HashMap<String, String>():schema.attributesForBindPath(bindPath);
 			
-			boolean ismultiselect = bindPath==null?false:isMultiselect(bindPath, jsonForm);
+			boolean ismultiselect = bindPath==null?false:schema.isMultiselect(bindPath);
 			if(ismultiselect){
 				String[] vals = fsf.value().split(" ");
 				Map<String, Map<String, String>> valCods = new HashMap<>();
 				for (String v : vals) {
-					valCods.put(v, getInstanceAttributesForFormFieldAndValue(bindPath, v, jsonForm));
+					valCods.put(v, schema.valueCodes(bindPath, v));
 				}
 				fields.add(new FormFieldMap(fsf.name(), Arrays.asList(vals), fsf.source(), bindPath, type, fieldAttributes, valCods));
 			}
 			else {
-				Map<String, String> valueCodes = bindPath==null?null:getInstanceAttributesForFormFieldAndValue(bindPath, fsf.value(), jsonForm);
+				Map<String, String> valueCodes = bindPath==null?null:schema.valueCodes(bindPath, fsf.value());
 				fields.add(new FormFieldMap(fsf.name(), fsf.value(), fsf.source(), bindPath, type, fieldAttributes, valueCodes));
 			}
 		}
@@ -94,24 +92,24 @@ public class FormAttributeParser {
 		if(fs.subForms() != null){
 		for (SubFormData sf : fs.subForms()) {
 			for (Map<String, String> flvl : sf.instances()) {
-				Map<String, String> subformAttributes = getAttributesForBindPath(sf.defaultBindPath(), modelXml);
+				Map<String, String> subformAttributes = schema.attributesForBindPath(sf.defaultBindPath());
 				List<FormFieldMap> sfFields = new ArrayList<>();
 				for (Entry<String, String> sffl : flvl.entrySet()) {
-					String source = getSourceFromSubformDefinition(sf.name(), sffl.getKey(), fs.formName(), formDefinitionData);
-					String bindPath = getPathFromSubformDefinition(sf.name(), sffl.getKey(), fs.formName(), formDefinitionData);
-					String type = bindPath==null?null:getFieldType(bindPath, jsonForm);
-					Map<String, String> attributes = bindPath==null?new HashMap<String, String>():getAttributesForBindPath(bindPath, modelXml);
-					boolean ismultiselect = bindPath==null?false:isMultiselect(bindPath, jsonForm);
+					String source = schema.subformFieldSource(sf.name(), sffl.getKey());
+					String bindPath = schema.subformFieldBindPath(sf.name(), sffl.getKey());
+					String type = bindPath==null?null:schema.fieldType(bindPath);
+					Map<String, String> attributes = bindPath==null?new HashMap<String, String>():schema.attributesForBindPath(bindPath);
+					boolean ismultiselect = bindPath==null?false:schema.isMultiselect(bindPath);
 					if(ismultiselect){
 						String[] vals = sffl.getValue().split(" ");
 						Map<String, Map<String, String>> valCods = new HashMap<>();
 						for (String v : vals) {
-							valCods.put(v, getInstanceAttributesForFormFieldAndValue(bindPath, v, jsonForm));
+							valCods.put(v, schema.valueCodes(bindPath, v));
 						}
 						sfFields.add(new FormFieldMap(sffl.getKey(), Arrays.asList(vals), source, bindPath, type, attributes, valCods));
 					}
 					else {
-						Map<String, String> valueCodes = bindPath==null?null:getInstanceAttributesForFormFieldAndValue(bindPath, sffl.getValue(), jsonForm);
+						Map<String, String> valueCodes = bindPath==null?null:schema.valueCodes(bindPath, sffl.getValue());
 						sfFields.add(new FormFieldMap(sffl.getKey(), sffl.getValue(), source, bindPath, type, attributes, valueCodes));
 					}
 				}
@@ -122,26 +120,46 @@ public class FormAttributeParser {
 		return new FormSubmissionMap(fs, formAttributes, fields, subforms);
 	}
 	
-	public JsonObject getFormDefinitionData(String formName) throws JsonIOException, JsonSyntaxException, FileNotFoundException {
-		String filePath = this.jsonFilePath+"/"+formName+"/form_definition.json";
-		JsonParser parser = new JsonParser();
-		Object obj = parser.parse(new FileReader(filePath));
-		return (JsonObject)obj;
+	/**
+	 * Returns the compiled schema of given form, loading it if it was never loaded or if any of its files
+	 * has been modified since it was loaded.
+	 * @param formName
+	 * @return
+	 * @throws IOException if any of the form files could not be read or parsed
+	 */
+	CompiledFormSchema getFormSchema(String formName) throws IOException {
+		String formDirPath = this.jsonFilePath+"/"+formName;
+		CompiledFormSchema schema = formSchemas.get(formName);
+		if(schema == null || schema.isStale(formDirPath)){
+			try {
+				schema = CompiledFormSchema.load(formDirPath);
+			} catch (ParserConfigurationException | SAXException e) {
+				throw new IOException("Could not parse model.xml of form "+formName, e);
+			}
+			formSchemas.put(formName, schema);
+		}
+		return schema;
 	}
 	
-	public JsonObject getJSONFormData(String formName) throws JsonIOException, JsonSyntaxException, FileNotFoundException {
-		String filePath = this.jsonFilePath+"/"+formName+"/form.json";
-		JsonParser parser = new JsonParser();
-		Object obj = parser.parse(new FileReader(filePath));
-		return (JsonObject)obj;
+	/**
+	 * The returned object is shared by all the callers and must not be modified.
+	 */
+	public JsonObject getFormDefinitionData(String formName) throws JsonIOException, JsonSyntaxException, IOException {
+		return getFormSchema(formName).formDefinition();
 	}
 	
+	/**
+	 * The returned object is shared by all the callers and must not be modified.
+	 */
+	public JsonObject getJSONFormData(String formName) throws JsonIOException, JsonSyntaxException, IOException {
+		return getFormSchema(formName).jsonForm();
+	}
+	
+	/**
+	 * The returned document is shared by all the callers and must not be modified.
+	 */
 	public Document getModelXmlData(String formName) throws ParserConfigurationException, SAXException, IOException {
-		String filePath = this.xmlFilePath+"/"+formName+"/model.xml";
-    	File file = new File(filePath);
-    	DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-		DocumentBuilder builder = factory.newDocumentBuilder();
-		return builder.parse(file);
+		return getFormSchema(formName).model();
 	}
 	
 	/**
@@ -305,10 +323,7 @@ public class FormAttributeParser {
 	Node getFieldTagFromModel(Map<String,String> attributeMapForm,FormSubmission formSubmission) throws IOException, XPathExpressionException, ParserConfigurationException, SAXException
 	{
 		Node lastNode = null;
-		String formName = formSubmission.formName();
-		Document document = getModelXmlData(formName);
-		XPathFactory xPathFactory = XPathFactory.newInstance();
-		XPath xpath = xPathFactory.newXPath();
+		CompiledFormSchema schema = getFormSchema(formSubmission.formName());
 		String expression = "//*[";
 		String expressionQuery = "";
 		NodeList nodeList;
@@ -323,7 +338,7 @@ public class FormAttributeParser {
 		
 		expression += expressionQuery;
 		expression += "]";
-		nodeList = (NodeList) xpath.evaluate(expression, document, XPathConstants.NODESET);
+		nodeList = schema.evaluateNodeSet(expression);
 		lastNode = nodeList.item(0);			
 		return lastNode;
 	}
@@ -342,11 +357,8 @@ public class FormAttributeParser {
 	public Node getFieldTagFromModel(Map<String,String> attributeMapForm, String subform, FormSubmission formSubmission) throws ParserConfigurationException, SAXException, IOException, XPathExpressionException
 	{
 		Node lastNode = null;
-		String formName = formSubmission.formName();
-		Document document = getModelXmlData(formName);
-		XPathFactory xPathFactory = XPathFactory.newInstance();
-		XPath xpath = xPathFactory.newXPath();
-		String expression = getDefaultBindPathFromSubformDefinition(subform, formSubmission)+"/node()[";
+		CompiledFormSchema schema = getFormSchema(formSubmission.formName());
+		String expression = schema.subformDefaultBindPath(subform)+"/node()[";
 		String expressionQuery = "";
 		NodeList nodeList;
 		for(String key:attributeMapForm.keySet())
@@ -360,7 +372,7 @@ public class FormAttributeParser {
 		
 		expression += expressionQuery;
 		expression += "]";
-		nodeList = (NodeList) xpath.evaluate(expression, document, XPathConstants.NODESET);
+		nodeList = schema.evaluateNodeSet(expression);
 		lastNode = nodeList.item(0);			
 		return lastNode;
 	}
@@ -381,10 +393,7 @@ public class FormAttributeParser {
 		Map<String, String> map = new HashMap<>();
 
 		Node lastNode = null;
-		String formName = formSubmission.formName();
-		Document document = getModelXmlData(formName);
-		XPathFactory xPathFactory = XPathFactory.newInstance();
-		XPath xpath = xPathFactory.newXPath();
+		CompiledFormSchema schema = getFormSchema(formSubmission.formName());
 		String expression = "//*[";
 		String expressionQuery = "";
 		NodeList nodeList;
@@ -399,7 +408,7 @@ public class FormAttributeParser {
 		
 		expression += expressionQuery;
 		expression += "]";
-		nodeList = (NodeList) xpath.evaluate(expression, document, XPathConstants.NODESET);
+		nodeList = schema.evaluateNodeSet(expression);
 		lastNode = nodeList.item(0);
 		
 		NamedNodeMap attributes = lastNode.getAttributes();
@@ -432,53 +441,44 @@ public class FormAttributeParser {
 	 */
 	public Map<String, String> getAttributesForField (String fieldName, String formName) throws JsonSyntaxException, IOException, XPathExpressionException, ParserConfigurationException, SAXException{
 	
-		String formBindForField = getPropertyBindFromFormDefinition(fieldName, formName); 
-		Node tagAndAttributes = null;
+		CompiledFormSchema schema = getFormSchema(formName);
+		String formBindForField = schema.fieldBindPath(fieldName); 
 		if(formBindForField!=null)
 		{
-			tagAndAttributes  = getFormPropertyNameForAttribute(formBindForField, getModelXmlData(formName));
+			return schema.attributesForBindPath(formBindForField);
 		}
 
-		return convertToMap(tagAndAttributes);
+		return new HashMap<>();
 	    
 	}
 	public Map<String, String> getAttributesForField (String fieldName, String subform, String formName) throws JsonSyntaxException, IOException, XPathExpressionException, ParserConfigurationException, SAXException{
 		
-		String formBindForField = getPathFromSubformDefinition(subform, fieldName, formName, getFormDefinitionData(formName));
-		Node tagAndAttributes = null;
+		CompiledFormSchema schema = getFormSchema(formName);
+		String formBindForField = schema.subformFieldBindPath(subform, fieldName);
 		if(formBindForField!=null)
 		{
-			tagAndAttributes = getFormPropertyNameForAttribute(formBindForField, getModelXmlData(formName));
+			return schema.attributesForBindPath(formBindForField);
 		}
 
-		return convertToMap(tagAndAttributes);
+		return new HashMap<>();
 	    
 	}
 	
 	public Map<String, String> getAttributesForBindPath (String bindPath, Document xmlModel) throws XPathExpressionException, ParserConfigurationException, SAXException, IOException{
+		for (CompiledFormSchema schema : formSchemas.values()) {
+			if(schema.model() == xmlModel){
+				return schema.attributesForBindPath(bindPath);
+			}
+		}
 		return convertToMap(getFormPropertyNameForAttribute(bindPath, xmlModel));
 	}
 	
 	public Map<String, String> getAttributesForBindPath (String bindPath, String formName) throws XPathExpressionException, ParserConfigurationException, SAXException, IOException{
-		Document xmlModel = getModelXmlData(formName);
-		return convertToMap(getFormPropertyNameForAttribute(bindPath, xmlModel));
+		return getFormSchema(formName).attributesForBindPath(bindPath);
 	}
 	
 	private Map<String, String> convertToMap(Node tagAndAttributes){
-	    Map<String,String> attributeMap = new HashMap<>();
-	    Node attributeNode = null;
-	    
-	    if(tagAndAttributes!=null)
-	    {
-	    	NamedNodeMap attributes = tagAndAttributes.getAttributes();
-	    	for(int i=0;i<attributes.getLength();i++)
-	    	{
-	    		attributeNode = attributes.item(i);
-	    		attributeMap.put(attributeNode.getNodeName(), attributeNode.getNodeValue());
-	    	}
-	    }
-	    
-	    return attributeMap; 
+	    return CompiledFormSchema.attributesOf(tagAndAttributes); 
 	}
 	
 	
@@ -509,17 +509,16 @@ public class FormAttributeParser {
 	 * @throws XPathExpressionException 
 	 */
 	public Map<String, String> getAttributesForSubform (String subformName, FormSubmission formSubmission) throws JsonSyntaxException, IOException, XPathExpressionException, ParserConfigurationException, SAXException{
-		String formBindForField = "";
-		Node tagAndAttributes = null;
+		CompiledFormSchema schema = getFormSchema(formSubmission.formName());
 		// From form_definition.json
-		formBindForField = getDefaultBindPathFromSubformDefinition(subformName, formSubmission); 
+		String formBindForField = schema.subformDefaultBindPath(subformName); 
 		// xpath in model.xml
 		if(formBindForField!=null && !formBindForField.equals("null") && formBindForField.length()>0)
 		{
-			tagAndAttributes = getFormPropertyNameForAttribute(formBindForField, getModelXmlData(formSubmission.formName()));
+			return schema.attributesForBindPath(formBindForField);
 		}
 
-	    return convertToMap(tagAndAttributes); 
+	    return new HashMap<>(); 
 	}
 	
 	/**
@@ -549,23 +548,21 @@ public class FormAttributeParser {
 	
 	public Map<String, String> getInstanceAttributesForFormFieldAndValue(String fieldName, String fieldVal, String subform, FormSubmission fs) throws JsonSyntaxException, IOException
 	{		
+		CompiledFormSchema schema = getFormSchema(fs.formName());
 		String bindPath = null;
 		if(StringUtils.isEmptyOrWhitespaceOnly(subform)){
-			bindPath = getPropertyBindFromFormDefinition(fieldName, fs.formName(), getFormDefinitionData(fs.formName()));
+			bindPath = schema.fieldBindPath(fieldName);
 		}
 		else {
-			bindPath = getPathFromSubformDefinition(subform, fieldName, fs.formName(), getFormDefinitionData(fs.formName()));
+			bindPath = schema.subformFieldBindPath(subform, fieldName);
 		}
 		
-		return getInstanceAttributesForFormFieldAndValue(bindPath, fieldVal, getJSONFormData(fs.formName()));
+		return bindPath==null?null:schema.valueCodes(bindPath, fieldVal);
 	}
 	
 	public Map<String, String> getInstanceAttributesForFormFieldAndValue(String fieldBindPath, String fieldVal, JsonObject jsonForm) throws JsonSyntaxException, IOException
 	{		
-		String[] sps = fieldBindPath.split("/");
-		int level = sps.length-4;
-		String nodeNameToFind = sps[sps.length-1];
-		JsonObject node = getChildrenOfLevel(level, jsonForm, nodeNameToFind);
+		JsonObject node = CompiledFormSchema.findJsonFormNode(jsonForm, fieldBindPath);
 		
 		if(node != null && node.getAsJsonObject().has("children")){
 			JsonArray nodeChAr = node.getAsJsonObject().get("children").getAsJsonArray();
@@ -582,10 +579,7 @@ public class FormAttributeParser {
 	
 	public String getFieldType(String fieldBindPath, JsonObject jsonForm)
 	{		
-		String[] sps = fieldBindPath.split("/");
-		int level = sps.length-4;
-		String nodeNameToFind = sps[sps.length-1];
-		JsonObject node = getChildrenOfLevel(level, jsonForm, nodeNameToFind);
+		JsonObject node = CompiledFormSchema.findJsonFormNode(jsonForm, fieldBindPath);
 		
 		if(node != null && node.getAsJsonObject().has("type")){
 			return node.getAsJsonObject().get("type").getAsString();
@@ -595,10 +589,7 @@ public class FormAttributeParser {
 	
 	public boolean isMultiselect(String fieldBindPath, JsonObject jsonForm)
 	{		
-		String[] sps = fieldBindPath.split("/");
-		int level = sps.length-4;
-		String nodeNameToFind = sps[sps.length-1];
-		JsonObject node = getChildrenOfLevel(level, jsonForm, nodeNameToFind);
+		JsonObject node = CompiledFormSchema.findJsonFormNode(jsonForm, fieldBindPath);
 		
 		if(node != null && node.getAsJsonObject().has("children") 
 				&& node.has("type") 
@@ -609,40 +600,6 @@ public class FormAttributeParser {
     	return false;
 	}
 	
-	private JsonObject getChildrenOfLevel(int level, JsonObject node, String nodeName){
-		for (JsonElement ch : getChildren(node)) {
-			if(ch.getAsJsonObject().has("type")){
-				for (int i = 1; i <= level; i++) {//3
-					String ccurrchnmae = ch.getAsJsonObject().get("name").getAsString();
-					if(i==level){
-						if(ccurrchnmae.equalsIgnoreCase(nodeName)){
-							return ch.getAsJsonObject();
-						}
-						continue;
-					}
-					
-					if(!ch.getAsJsonObject().has("children")){
-						break;
-					}
-					JsonObject obj = getChildrenOfLevel(level-i, ch.getAsJsonObject(), nodeName);
-					if(obj != null){
-						return obj;
-					}
-				}
-			}
-		}
-		return null;
-	}
-	
-	private JsonArray getChildren(JsonObject node){
-		if(!node.has("children")){
-			return new JsonArray();
-		}
-		
-		return node.getAsJsonArray("children");
-		
-	}
-	
 	/**
 	 * read default bind path from form_definition.json for given subform in given formSubmission. This is used to get the xpath in model.xml for subform.
 	 * @throws  
@@ -651,15 +608,7 @@ public class FormAttributeParser {
 	 */
 	String getDefaultBindPathFromSubformDefinition(String subformName, FormSubmission formSubmission) throws IOException, JsonSyntaxException
 	{		
-		JsonObject jsonObject = getFormDefinitionData(formSubmission.formName());
-		JsonArray subforms = jsonObject.get("form").getAsJsonObject().get("sub_forms").getAsJsonArray();
-		for (JsonElement jsonElement : subforms) {
-			if(jsonElement.getAsJsonObject().get("name").getAsString().equalsIgnoreCase(subformName)){
-				return jsonElement.getAsJsonObject().get("default_bind_path").getAsString();
-			}
-		}
-    	
-    	return null;
+		return getFormSchema(formSubmission.formName()).subformDefaultBindPath(subformName);
 	}
 	
 	/**
@@ -723,8 +672,7 @@ public class FormAttributeParser {
 	 */
 	String getPropertyBindFromFormDefinition(String fieldName, String formName) throws JsonSyntaxException, IOException
 	{		
-		JsonObject jsonObject = getFormDefinitionData(formName);
-		return getPropertyBindFromFormDefinition(fieldName, formName, jsonObject);
+		return getFormSchema(formName).fieldBindPath(fieldName);
 	}
 	
 	String getPropertyBindFromFormDefinition(String fieldName, String formName, JsonObject formDefinition) throws JsonSyntaxException, IOException
@@ -747,7 +695,8 @@ public class FormAttributeParser {
 	}
 	
 	/**
-	 * Gets the Node from model.xml that maps to specified bind path in given form submission   	
+	 * Gets the Node from model.xml that maps to specified bind path in given form submission.
+	 * Expressions are compiled once and shared, so compiling and evaluating them is done under a lock.
 	 * @param xmlModel 
 	 * @throws XPathExpressionException 
 	 * @throws IOException 
@@ -759,14 +708,13 @@ public class FormAttributeParser {
 		if(formBindForField.endsWith("/")){
 			formBindForField = formBindForField.substring(0, formBindForField.length()-1);
 		}
-    	Node lastNode = null;
-		XPathFactory xPathFactory = XPathFactory.newInstance();
-		XPath xPath = xPathFactory.newXPath();
-		//put the xpath to get
-		XPathExpression expr = xPath.compile(formBindForField);
-		
-		lastNode = (Node) expr.evaluate(xmlModel, XPathConstants.NODE);
-
-		return lastNode;
+		synchronized (compiledExpressions) {
+			XPathExpression expr = compiledExpressions.get(formBindForField);
+			if(expr == null){
+				expr = xPath.compile(formBindForField);
+				compiledExpressions.put(formBindForField, expr);
+			}
+			return (Node) expr.evaluate(xmlModel, XPathConstants.NODE);
+		}
 	}
 }
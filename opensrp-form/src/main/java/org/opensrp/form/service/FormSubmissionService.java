@@ -3,17 +3,23 @@ package org.opensrp.form.service;
 import ch.lambdaj.function.convert.Converter;
 
 
+import org.ektorp.DocumentOperationResult;
 import org.opensrp.common.util.DateUtil;
 import org.opensrp.dto.form.FormSubmissionDTO;
 import org.opensrp.form.domain.FormSubmission;
 import org.opensrp.form.repository.AllFormSubmissions;
+import org.opensrp.form.repository.FormSubmissionStreamHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static ch.lambdaj.collection.LambdaCollections.with;
 import static java.text.MessageFormat.format;
@@ -23,6 +29,7 @@ import static java.util.Collections.sort;
 public class FormSubmissionService {
     private static Logger logger = LoggerFactory.getLogger(FormSubmissionService.class.toString());
     private AllFormSubmissions allFormSubmissions;
+    private final AtomicLong lastServerVersion = new AtomicLong();
 
     @Autowired
     public FormSubmissionService(AllFormSubmissions allFormSubmissions) {
@@ -50,6 +57,14 @@ public class FormSubmissionService {
         return allFormSubmissions.allFormSubmissions(version, batchSize);
     }
 
+    public void streamNewSubmissionsForANM(String anmIdentifier, Long version, String lastDocId, Integer batchSize, FormSubmissionStreamHandler handler) {
+        allFormSubmissions.streamByANMIDAndServerVersion(anmIdentifier, version, lastDocId, batchSize, handler);
+    }
+
+    public void streamAllSubmissions(Long version, String lastDocId, Integer batchSize, FormSubmissionStreamHandler handler) {
+        allFormSubmissions.streamAllFormSubmissions(version, lastDocId, batchSize, handler);
+    }
+
     public List<FormSubmission> findByFormName(String formName, long version) {
     	return allFormSubmissions.findByFormName(formName, version);
     }
@@ -58,15 +73,13 @@ public class FormSubmissionService {
     	return allFormSubmissions.findByMetadata(key, value);
     }
     
+    /**
+     * Saves the submissions one by one, each with the current time as its server version, raised when needed
+     * above every version given out before this call.
+     */
     public void submit(List<FormSubmissionDTO> formSubmissionsDTO) {
-        List<FormSubmission> formSubmissions = with(formSubmissionsDTO).convert(new Converter<FormSubmissionDTO, FormSubmission>() {
-            @Override
-            public FormSubmission convert(FormSubmissionDTO submission) {
-                return FormSubmissionConverter.toFormSubmission(submission);
-            }
-        });
-
-        sort(formSubmissions, timeStampComparator());
+        List<FormSubmission> formSubmissions = toSortedFormSubmissions(formSubmissionsDTO);
+        long serverVersion = nextServerVersion();
         for (FormSubmission submission : formSubmissions) {
             if (allFormSubmissions.exists(submission.instanceId())) {
                 logger.warn(format("Received form submission that already exists. Skipping. Submission: {0}", submission));
@@ -74,11 +87,79 @@ public class FormSubmissionService {
             }
             logger.info(format("Saving form {0} with instance Id: {1} and for entity Id: {2}",
                     submission.formName(), submission.instanceId(), submission.entityId()));
-            submission.setServerVersion(DateUtil.millis());
+            serverVersion = Math.max(DateUtil.millis(), serverVersion);
+            submission.setServerVersion(serverVersion);
+            raiseLastServerVersion(serverVersion);
             allFormSubmissions.add(submission);
         }
     }
 
+    public List<DocumentOperationResult> bulkSubmit(List<FormSubmissionDTO> formSubmissionsDTO) {
+        List<FormSubmission> formSubmissions = toSortedFormSubmissions(formSubmissionsDTO);
+        List<String> instanceIds = new ArrayList<>();
+        for (FormSubmission submission : formSubmissions) {
+            instanceIds.add(submission.instanceId());
+        }
+        Set<String> existingInstanceIds = allFormSubmissions.findExistingInstanceIds(instanceIds);
+
+        Set<String> acceptedInstanceIds = new HashSet<>();
+        List<FormSubmission> newSubmissions = new ArrayList<>();
+        for (FormSubmission submission : formSubmissions) {
+            if (existingInstanceIds.contains(submission.instanceId()) || !acceptedInstanceIds.add(submission.instanceId())) {
+                logger.warn(format("Received form submission that already exists. Skipping. Submission: {0}", submission));
+                continue;
+            }
+            logger.info(format("Saving form {0} with instance Id: {1} and for entity Id: {2}",
+                    submission.formName(), submission.instanceId(), submission.entityId()));
+            submission.setServerVersion(nextServerVersion());
+            newSubmissions.add(submission);
+        }
+        if (newSubmissions.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<DocumentOperationResult> conflicts = allFormSubmissions.addAll(newSubmissions);
+        for (DocumentOperationResult conflict : conflicts) {
+            logger.error(format("Could not save form submission with id: {0}. Error: {1}, Reason: {2}",
+                    conflict.getId(), conflict.getError(), conflict.getReason()));
+        }
+        return conflicts;
+    }
+
+    /**
+     * Server versions only ever increase, even when a batch is saved within one millisecond, so that a client
+     * syncing from the highest version it has seen never skips a submission saved later.
+     */
+    private long nextServerVersion() {
+        while (true) {
+            long last = lastServerVersion.get();
+            long next = Math.max(DateUtil.millis(), last + 1);
+            if (lastServerVersion.compareAndSet(last, next)) {
+                return next;
+            }
+        }
+    }
+
+    private void raiseLastServerVersion(long serverVersion) {
+        while (true) {
+            long last = lastServerVersion.get();
+            if (last >= serverVersion || lastServerVersion.compareAndSet(last, serverVersion)) {
+                return;
+            }
+        }
+    }
+
+    private List<FormSubmission> toSortedFormSubmissions(List<FormSubmissionDTO> formSubmissionsDTO) {
+        List<FormSubmission> formSubmissions = with(formSubmissionsDTO).convert(new Converter<FormSubmissionDTO, FormSubmission>() {
+            @Override
+            public FormSubmission convert(FormSubmissionDTO submission) {
+                return FormSubmissionConverter.toFormSubmission(submission);
+            }
+        });
+        sort(formSubmissions, timeStampComparator());
+        return formSubmissions;
+    }
+
     private Comparator<FormSubmission> timeStampComparator() {
         return new Comparator<FormSubmission>() {
             public int compare(FormSubmission firstSubmission, FormSubmission secondSubmission) {
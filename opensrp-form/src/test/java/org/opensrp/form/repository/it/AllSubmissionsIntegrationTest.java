@@ -6,10 +6,14 @@ import org.junit.runner.RunWith;
 import org.motechproject.util.DateUtil;
 import org.opensrp.form.domain.FormSubmission;
 import org.opensrp.form.repository.AllFormSubmissions;
+import org.opensrp.form.repository.FormSubmissionStreamHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static java.util.Arrays.asList;
 import static junit.framework.Assert.*;
 
@@ -91,4 +95,35 @@ public class AllSubmissionsIntegrationTest {
 
         assertEquals(0, formSubmissions.findByANMIDAndServerVersion("ANM 1", thirdFormSubmission.serverVersion(), null).size());
     }
+
+    @Test
+    public void shouldContinueStreamingFromNextSubmissionWhenLastStreamedSubmissionWasDeleted() throws Exception {
+        long baseTimeStamp = DateUtil.now().getMillis();
+        formSubmissions.add(new FormSubmission("ANM 1", "instance id 1", "form name 1", "entity id 1", 0L, "1", null, baseTimeStamp));
+        formSubmissions.add(new FormSubmission("ANM 1", "instance id 2", "form name 1", "entity id 2", 1L, "1", null, baseTimeStamp));
+        formSubmissions.add(new FormSubmission("ANM 1", "instance id 3", "form name 1", "entity id 3", 2L, "1", null, baseTimeStamp));
+
+        final List<FormSubmission> firstPage = new ArrayList<>();
+        formSubmissions.streamByANMIDAndServerVersion("ANM 1", baseTimeStamp - 1, null, 1, collectInto(firstPage));
+        FormSubmission lastStreamed = firstPage.get(0);
+        List<FormSubmission> secondPage = new ArrayList<>();
+        formSubmissions.streamByANMIDAndServerVersion("ANM 1", baseTimeStamp, lastStreamed.getId(), 1, collectInto(secondPage));
+        formSubmissions.remove(formSubmissions.get(secondPage.get(0).getId()));
+        List<FormSubmission> thirdPage = new ArrayList<>();
+        formSubmissions.streamByANMIDAndServerVersion("ANM 1", baseTimeStamp, secondPage.get(0).getId(), 2, collectInto(thirdPage));
+
+        assertEquals(1, secondPage.size());
+        assertEquals(1, thirdPage.size());
+        assertFalse(thirdPage.get(0).getId().equals(lastStreamed.getId()));
+        assertFalse(thirdPage.get(0).getId().equals(secondPage.get(0).getId()));
+    }
+
+    private FormSubmissionStreamHandler collectInto(final List<FormSubmission> submissions) {
+        return new FormSubmissionStreamHandler() {
+            @Override
+            public void handle(FormSubmission submission) {
+                submissions.add(submission);
+            }
+        };
+    }
 }
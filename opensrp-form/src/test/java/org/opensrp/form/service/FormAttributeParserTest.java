@@ -3,10 +3,13 @@ package org.opensrp.form.service;
 import static org.hamcrest.Matchers.equalTo;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.MockitoAnnotations.initMocks;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -21,6 +24,8 @@ import org.hamcrest.Matchers;
 import org.junit.Before;
 import org.junit.Test;
 import org.opensrp.form.domain.FormSubmission;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
 
 import com.google.gson.JsonIOException;
@@ -437,4 +442,35 @@ public class FormAttributeParserTest extends TestResourceLoader{
 		assertNotNull(fn);
 		assertEquals(fn, "gender");
 	}
+
+	@Test
+	public void shouldReuseCompiledFormSchemaUntilFormFilesAreModified() throws IOException {
+		CompiledFormSchema schema = fam.getFormSchema("basic_reg");
+		assertSame(schema, fam.getFormSchema("basic_reg"));
+
+		File model = new File(new DefaultResourceLoader().getResource(formDirPath).getURI().getPath()+"/basic_reg/model.xml");
+		long lastModified = model.lastModified();
+		try {
+			assertTrue(model.setLastModified(lastModified - 10000));
+			CompiledFormSchema reloadedSchema = fam.getFormSchema("basic_reg");
+			assertNotSame(schema, reloadedSchema);
+			assertSame(reloadedSchema, fam.getFormSchema("basic_reg"));
+		}
+		finally {
+			model.setLastModified(lastModified);
+		}
+	}
+
+	@Test
+	public void shouldGetAttributesForBindPathFromGivenModelDocument() throws Exception {
+		String bindPath = "/model/instance/register_with_address/birthplace_address/birthplace_street";
+		Document model = fam.getModelXmlData("basic_reg");
+		Map<String, String> attributes = fam.getAttributesForBindPath(bindPath, model);
+		assertThat(attributes, Matchers.hasEntry("openmrs_entity_id", "street"));
+		assertEquals(fam.getAttributesForBindPath(bindPath, "basic_reg"), attributes);
+
+		Document copy = (Document) model.cloneNode(true);
+		assertEquals(attributes, fam.getAttributesForBindPath(bindPath+"/", copy));
+		assertEquals(attributes, fam.getAttributesForBindPath(bindPath, copy));
+	}
 }
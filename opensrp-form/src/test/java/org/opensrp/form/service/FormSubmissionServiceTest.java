@@ -1,5 +1,6 @@
 package org.opensrp.form.service;
 
+import org.ektorp.DocumentOperationResult;
 import org.joda.time.LocalDate;
 import org.junit.Before;
 import org.junit.Test;
@@ -11,6 +12,8 @@ import org.opensrp.form.domain.FormSubmission;
 import org.opensrp.form.repository.AllFormSubmissions;
 import org.opensrp.form.service.FormSubmissionService;
 
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 
 import static java.lang.String.valueOf;
@@ -80,6 +83,63 @@ public class FormSubmissionServiceTest {
         verifyNoMoreInteractions(allFormSubmissions);
     }
 
+    @Test
+    public void shouldLookUpAllInstanceIdsOnceAndSaveNewSubmissionsInOneBulkRequest() throws Exception {
+        long baseTimeStamp = DateUtil.now().getMillis();
+        FormSubmissionDTO existingFormSubmissionDTO = new FormSubmissionDTO("anm id 1", "instance id 1", "entity id 1", "form name 1", null, valueOf(baseTimeStamp), "1");
+        FormSubmissionDTO laterFormSubmissionDTO = new FormSubmissionDTO("anm id 2", "instance id 2", "entity id 2", "form name 1", null, valueOf(baseTimeStamp + 2), "1");
+        FormSubmissionDTO earlierFormSubmissionDTO = new FormSubmissionDTO("anm id 2", "instance id 3", "entity id 3", "form name 1", null, valueOf(baseTimeStamp + 1), "1");
+        FormSubmissionDTO duplicateFormSubmissionDTO = new FormSubmissionDTO("anm id 2", "instance id 3", "entity id 3", "form name 1", null, valueOf(baseTimeStamp + 3), "1");
+        FormSubmission earlierFormSubmission = new FormSubmission("anm id 2", "instance id 3", "form name 1", "entity id 3", baseTimeStamp + 1, "1", null, serverVersion);
+        FormSubmission laterFormSubmission = new FormSubmission("anm id 2", "instance id 2", "form name 1", "entity id 2", baseTimeStamp + 2, "1", null, serverVersion + 1);
+        when(allFormSubmissions.findExistingInstanceIds(asList("instance id 1", "instance id 3", "instance id 2", "instance id 3")))
+                .thenReturn(new HashSet<>(asList("instance id 1")));
+        when(allFormSubmissions.addAll(asList(earlierFormSubmission, laterFormSubmission))).thenReturn(Collections.<DocumentOperationResult>emptyList());
+
+        List<DocumentOperationResult> conflicts = formSubmissionService.bulkSubmit(
+                asList(laterFormSubmissionDTO, existingFormSubmissionDTO, duplicateFormSubmissionDTO, earlierFormSubmissionDTO));
+
+        assertEquals(0, conflicts.size());
+        InOrder inOrder = inOrder(allFormSubmissions);
+        inOrder.verify(allFormSubmissions).findExistingInstanceIds(asList("instance id 1", "instance id 3", "instance id 2", "instance id 3"));
+        inOrder.verify(allFormSubmissions).addAll(asList(earlierFormSubmission, laterFormSubmission));
+        verifyNoMoreInteractions(allFormSubmissions);
+    }
+
+    @Test
+    public void shouldGiveLaterBatchesHigherServerVersionsThanEarlierOnes() throws Exception {
+        long baseTimeStamp = DateUtil.now().getMillis();
+        FormSubmissionDTO firstFormSubmissionDTO = new FormSubmissionDTO("anm id 1", "instance id 1", "entity id 1", "form name 1", null, valueOf(baseTimeStamp), "1");
+        FormSubmissionDTO secondFormSubmissionDTO = new FormSubmissionDTO("anm id 1", "instance id 2", "entity id 2", "form name 1", null, valueOf(baseTimeStamp + 1), "1");
+        FormSubmissionDTO thirdFormSubmissionDTO = new FormSubmissionDTO("anm id 1", "instance id 3", "entity id 3", "form name 1", null, valueOf(baseTimeStamp + 2), "1");
+        FormSubmissionDTO fourthFormSubmissionDTO = new FormSubmissionDTO("anm id 1", "instance id 4", "entity id 4", "form name 1", null, valueOf(baseTimeStamp + 3), "1");
+        when(allFormSubmissions.findExistingInstanceIds(asList("instance id 1", "instance id 2"))).thenReturn(new HashSet<String>());
+        when(allFormSubmissions.findExistingInstanceIds(asList("instance id 4"))).thenReturn(new HashSet<String>());
+        when(allFormSubmissions.exists(anyString())).thenReturn(false);
+
+        formSubmissionService.bulkSubmit(asList(firstFormSubmissionDTO, secondFormSubmissionDTO));
+        formSubmissionService.submit(asList(thirdFormSubmissionDTO));
+        formSubmissionService.bulkSubmit(asList(fourthFormSubmissionDTO));
+
+        verify(allFormSubmissions).addAll(asList(
+                new FormSubmission("anm id 1", "instance id 1", "form name 1", "entity id 1", baseTimeStamp, "1", null, serverVersion),
+                new FormSubmission("anm id 1", "instance id 2", "form name 1", "entity id 2", baseTimeStamp + 1, "1", null, serverVersion + 1)));
+        verify(allFormSubmissions).add(new FormSubmission("anm id 1", "instance id 3", "form name 1", "entity id 3", baseTimeStamp + 2, "1", null, serverVersion + 2));
+        verify(allFormSubmissions).addAll(asList(
+                new FormSubmission("anm id 1", "instance id 4", "form name 1", "entity id 4", baseTimeStamp + 3, "1", null, serverVersion + 3)));
+    }
+
+    @Test
+    public void shouldNotMakeBulkRequestWhenAllSubmissionsAlreadyExist() throws Exception {
+        FormSubmissionDTO formSubmissionDTO = new FormSubmissionDTO("anm id 1", "instance id 1", "entity id 1", "form name 1", null, "0", "1");
+        when(allFormSubmissions.findExistingInstanceIds(asList("instance id 1"))).thenReturn(new HashSet<>(asList("instance id 1")));
+
+        formSubmissionService.bulkSubmit(asList(formSubmissionDTO));
+
+        verify(allFormSubmissions).findExistingInstanceIds(asList("instance id 1"));
+        verifyNoMoreInteractions(allFormSubmissions);
+    }
+
     @Test
     public void shouldFetchFormSubmissionsByGiven() throws Exception {
         long baseTimeStamp = DateUtil.now().getMillis();
@@ -4,6 +4,9 @@ public class DrishtiScheduleConstants {
     public static final String PROVIDER_REPORT_SCHEDULE_SUBJECT = "PROVIDER-REPORT-SCHEDULE";
     public static final String MCTS_REPORT_SCHEDULE_SUBJECT = "MCTS-REPORT-SCHEDULE";
     public static final String ANM_REPORT_SCHEDULE_SUBJECT = "DRISHTI-ANM-REPORT-FETCH-SCHEDULE";
+    public static final String ANM_ENTITY_COUNTS_SUBJECT = "ANM-ENTITY-COUNTS-CATCH-UP";
+    public static final String ANM_ENTITY_COUNTS_RECOMPUTE_SUBJECT = "ANM-ENTITY-COUNTS-RECOMPUTE";
+    public static final String REPORT_OUTBOX_SUBJECT = "REPORT-OUTBOX-DELIVERY";
 
     public static class ChildScheduleConstants {
         public static final String CHILD_SCHEDULE_BCG = "BCG";
@@ -0,0 +1,111 @@
+package org.opensrp.register.domain;
+
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.codehaus.jackson.annotate.JsonProperty;
+import org.ektorp.support.TypeDiscriminator;
+import org.motechproject.model.MotechBaseDataObject;
+
+/**
+ * A report submission, update or deletion waiting to be delivered to the reporting application. The payload is
+ * kept as the JSON body that is posted, so entries can be joined into batches without reading them back.
+ */
+@TypeDiscriminator("doc.type === 'ReportOutboxEntry'")
+public class ReportOutboxEntry extends MotechBaseDataObject {
+    public static final String PENDING = "pending";
+    public static final String FAILED = "failed";
+
+    @JsonProperty
+    private String action;
+    @JsonProperty
+    private String payload;
+    @JsonProperty
+    private String status;
+    @JsonProperty
+    private int attempts;
+    @JsonProperty
+    private long createdAt;
+    @JsonProperty
+    private long nextAttemptAt;
+    @JsonProperty
+    private String lastError;
+
+    protected ReportOutboxEntry() {
+    }
+
+    public ReportOutboxEntry(String action, String payload, long createdAt) {
+        this.action = action;
+        this.payload = payload;
+        this.status = PENDING;
+        this.createdAt = createdAt;
+        this.nextAttemptAt = createdAt;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public ReportOutboxEntry markAttemptFailed(String error, long nextAttemptAt, int maxAttempts) {
+        this.attempts++;
+        this.lastError = error;
+        this.nextAttemptAt = nextAttemptAt;
+        if (attempts >= maxAttempts) {
+            this.status = FAILED;
+        }
+        return this;
+    }
+
+    /**
+     * Puts a failed entry back in the queue with a fresh set of attempts.
+     */
+    public ReportOutboxEntry markForRedelivery(long nextAttemptAt) {
+        this.status = PENDING;
+        this.attempts = 0;
+        this.nextAttemptAt = nextAttemptAt;
+        return this;
+    }
+
+    public boolean isFailed() {
+        return FAILED.equals(status);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return EqualsBuilder.reflectionEquals(this, o);
+    }
+
+    @Override
+    public int hashCode() {
+        return HashCodeBuilder.reflectionHashCode(this, "id");
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this);
+    }
+}
@@ -0,0 +1,44 @@
+package org.opensrp.register.listener;
+
+import static java.text.MessageFormat.format;
+import static org.apache.commons.lang.exception.ExceptionUtils.getFullStackTrace;
+
+import org.motechproject.scheduler.domain.MotechEvent;
+import org.motechproject.server.event.annotations.MotechListener;
+import org.opensrp.register.DrishtiScheduleConstants;
+import org.opensrp.register.service.ANMEntityCounts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+@Component
+public class ANMEntityCountsListener {
+    private static Logger logger = LoggerFactory.getLogger(ANMEntityCountsListener.class.toString());
+    private ANMEntityCounts anmEntityCounts;
+
+    @Autowired
+    public ANMEntityCountsListener(ANMEntityCounts anmEntityCounts) {
+        this.anmEntityCounts = anmEntityCounts;
+    }
+
+    @MotechListener(subjects = DrishtiScheduleConstants.ANM_ENTITY_COUNTS_SUBJECT)
+    public void catchUp(MotechEvent event) {
+        try {
+            anmEntityCounts.catchUp();
+        } catch (Exception e) {
+            logger.error(format("{0} occurred while applying changes to ANM entity counts. Message: {1} with stack trace {2}",
+                    e.toString(), e.getMessage(), getFullStackTrace(e)));
+        }
+    }
+
+    @MotechListener(subjects = DrishtiScheduleConstants.ANM_ENTITY_COUNTS_RECOMPUTE_SUBJECT)
+    public void recompute(MotechEvent event) {
+        try {
+            anmEntityCounts.recompute();
+        } catch (Exception e) {
+            logger.error(format("{0} occurred while recomputing ANM entity counts. Message: {1} with stack trace {2}",
+                    e.toString(), e.getMessage(), getFullStackTrace(e)));
+        }
+    }
+}
@@ -49,7 +49,7 @@ public class FormEventListener {
     public void submitForms(MotechEvent event) {
         List<FormSubmissionDTO> formSubmissions = new Gson().fromJson((String) event.getParameters().get("data"), new TypeToken<List<FormSubmissionDTO>>() {
         }.getType());
-        formSubmissionService.submit(formSubmissions);
+        formSubmissionService.bulkSubmit(formSubmissions);
     }
 
     @MotechListener(subjects = OpenSRPConstants.FORM_SCHEDULE_SUBJECT)
@@ -12,11 +12,11 @@ import org.opensrp.event.ReportEvent;
 import org.opensrp.event.ReportUpdateEvent;
 import org.opensrp.register.DrishtiScheduleConstants;
 import org.opensrp.register.service.reporting.ANMReportingService;
+import org.opensrp.register.service.reporting.ReportOutbox;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 
 import com.google.gson.Gson;
@@ -25,46 +25,45 @@ import com.google.gson.reflect.TypeToken;
 @Component
 public class ReportingEventListener {
     public static final String FETCH_REPORTS_FOR_ALL_ANMS_ACTION = "fetchForAllANMs";
-    public static final String SUBMIT_REPORT_ACTION = "submit";
+    public static final String SUBMIT_REPORT_ACTION = ReportOutbox.SUBMIT_REPORT_ACTION;
     public static final String UPDATE_REPORT_ACTION = "update";
     public static final String DELETE_REPORT_ACTION = "delete";
     private ANMReportingService anmReportService;
     private HttpAgent httpAgent;
+    private ReportOutbox reportOutbox;
     private String url;
     private static Logger logger = LoggerFactory.getLogger(ReportingEventListener.class);
 
     @Autowired
-    public ReportingEventListener(ANMReportingService anmReportService, HttpAgent httpAgent,
+    public ReportingEventListener(ANMReportingService anmReportService, HttpAgent httpAgent, ReportOutbox reportOutbox,
                                   @Value("#{opensrp['opensrp.reporting.url']}") String url) {
         this.anmReportService = anmReportService;
         this.httpAgent = httpAgent;
+        this.reportOutbox = reportOutbox;
         this.url = url;
     }
 
     @MotechListener(subjects = ReportEvent.SUBJECT)
     public void submitReportingData(MotechEvent event) {
-        String data = new Gson().toJson(event.getParameters().get("data"));
-        HttpResponse response = httpAgent.post(url + "/" + SUBMIT_REPORT_ACTION, data, MediaType.APPLICATION_JSON_VALUE);
-        if (!response.isSuccess()) {
-            logger.error("Reporting data post failed. URL: " + url + "/" + SUBMIT_REPORT_ACTION + ". Data: " + data + ". Response: " + response.body());
-        }
+        reportOutbox.add(SUBMIT_REPORT_ACTION, new Gson().toJson(event.getParameters().get("data")));
     }
 
     @MotechListener(subjects = ReportUpdateEvent.SUBJECT)
     public void updateReportingData(MotechEvent event) {
-        String data = new Gson().toJson(event.getParameters().get("data"));
-        HttpResponse response = httpAgent.post(url + "/" + UPDATE_REPORT_ACTION, data, MediaType.APPLICATION_JSON_VALUE);
-        if (!response.isSuccess()) {
-            logger.error("Reporting data post failed. URL: " + url + "/" + UPDATE_REPORT_ACTION + ". Data: " + data + ". Response: " + response.body());
-        }
+        reportOutbox.add(UPDATE_REPORT_ACTION, new Gson().toJson(event.getParameters().get("data")));
     }
 
     @MotechListener(subjects = ReportDeleteEvent.SUBJECT)
     public void deleteReportingData(MotechEvent event) {
-        String data = new Gson().toJson(event.getParameters().get("data"));
-        HttpResponse response = httpAgent.post(url + "/" + DELETE_REPORT_ACTION, data, MediaType.APPLICATION_JSON_VALUE);
-        if (!response.isSuccess()) {
-            logger.error("Reporting data post failed. URL: " + url + "/" + DELETE_REPORT_ACTION + ". Data: " + data + ". Response: " + response.body());
+        reportOutbox.add(DELETE_REPORT_ACTION, new Gson().toJson(event.getParameters().get("data")));
+    }
+
+    @MotechListener(subjects = DrishtiScheduleConstants.REPORT_OUTBOX_SUBJECT)
+    public void deliverReportingData(MotechEvent event) {
+        try {
+            reportOutbox.drain();
+        } catch (Exception e) {
+            logger.error("Delivering reporting data failed.", e);
         }
     }
 
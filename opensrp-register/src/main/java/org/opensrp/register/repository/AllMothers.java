@@ -81,6 +81,14 @@ public class AllMothers extends MotechBaseRepository<Mother> {
         );
     }
 
+    public List<Mother> findAllOpenANCByECCaseIds(List<String> ecIds) {
+        return db.queryView(createQuery("all_open_anc_by_ec_caseId")
+                        .keys(ecIds)
+                        .includeDocs(true),
+                Mother.class
+        );
+    }
+
     @View(name = "all_open_mothers_by_anmId",
             map = "function(doc) { if (doc.type === 'Mother' && doc.isClosed === 'false' && doc.anmIdentifier && doc.details.type === 'ANC') { emit(doc.anmIdentifier); } }")
     public List<Mother> findAllOpenMothersForANM(String anmIdentifier) {
@@ -0,0 +1,35 @@
+package org.opensrp.register.repository;
+
+import org.ektorp.CouchDbConnector;
+import org.ektorp.changes.ChangesCommand;
+import org.ektorp.changes.DocumentChange;
+import org.opensrp.common.AllConstants;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Reads the _changes feed of the database holding ECs, mothers and children.
+ */
+@Repository
+public class AllRegisterChanges {
+    private final CouchDbConnector db;
+
+    @Autowired
+    public AllRegisterChanges(@Qualifier(AllConstants.OPENSRP_DATABASE_CONNECTOR) CouchDbConnector db) {
+        this.db = db;
+    }
+
+    /**
+     * @return at most limit changes after given update sequence, with the changed documents
+     */
+    public List<DocumentChange> since(long sequence, int limit) {
+        return db.changes(new ChangesCommand.Builder()
+                .since(sequence)
+                .limit(limit)
+                .includeDocs(true)
+                .build());
+    }
+}
@@ -0,0 +1,51 @@
+package org.opensrp.register.repository;
+
+import org.ektorp.BulkDeleteDocument;
+import org.ektorp.CouchDbConnector;
+import org.ektorp.DocumentOperationResult;
+import org.ektorp.support.View;
+import org.motechproject.dao.MotechBaseRepository;
+import org.opensrp.common.AllConstants;
+import org.opensrp.register.domain.ReportOutboxEntry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Repository
+public class AllReportOutboxEntries extends MotechBaseRepository<ReportOutboxEntry> {
+    @Autowired
+    public AllReportOutboxEntries(@Qualifier(AllConstants.OPENSRP_DATABASE_CONNECTOR) CouchDbConnector db) {
+        super(ReportOutboxEntry.class, db);
+    }
+
+    /**
+     * @return at most limit pending entries, oldest first, whether or not they are due
+     */
+    @View(name = "pending_by_createdAt", map = "function(doc) { if (doc.type === 'ReportOutboxEntry' && doc.status === 'pending') { emit(doc.createdAt, null); } }")
+    public List<ReportOutboxEntry> findPending(int limit) {
+        return db.queryView(createQuery("pending_by_createdAt").limit(limit).includeDocs(true), ReportOutboxEntry.class);
+    }
+
+    /**
+     * @return at most limit failed entries whose last attempt was due before given time
+     */
+    @View(name = "failed_by_nextAttemptAt", map = "function(doc) { if (doc.type === 'ReportOutboxEntry' && doc.status === 'failed') { emit(doc.nextAttemptAt, null); } }")
+    public List<ReportOutboxEntry> findFailedBefore(long before, int limit) {
+        return db.queryView(createQuery("failed_by_nextAttemptAt").endKey(before).limit(limit).includeDocs(true), ReportOutboxEntry.class);
+    }
+
+    public List<DocumentOperationResult> updateAll(List<ReportOutboxEntry> entries) {
+        return db.executeBulk(entries);
+    }
+
+    public List<DocumentOperationResult> removeAll(List<ReportOutboxEntry> entries) {
+        List<BulkDeleteDocument> deletions = new ArrayList<>();
+        for (ReportOutboxEntry entry : entries) {
+            deletions.add(BulkDeleteDocument.of(entry));
+        }
+        return db.executeBulk(deletions);
+    }
+}
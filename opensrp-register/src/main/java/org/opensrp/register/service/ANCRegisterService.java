@@ -10,15 +10,14 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
-import static ch.lambdaj.Lambda.*;
+import static org.opensrp.register.service.RegisterJoins.ecsOfMothers;
 import static org.opensrp.common.AllConstants.ANCFormFields.REGISTRATION_DATE;
 import static org.opensrp.common.AllConstants.ANCRegistrationFormFields.*;
 import static org.opensrp.common.AllConstants.CommonFormFields.IS_HIGH_RISK;
 import static org.opensrp.common.AllConstants.ECRegistrationFields.*;
-import static org.hamcrest.Matchers.equalTo;
 
 @Service
 public class ANCRegisterService {
@@ -35,13 +34,9 @@ public class ANCRegisterService {
     public ANCRegister getRegisterForANM(String anmIdentifier) {
         ArrayList<ANCRegisterEntry> ancRegisterEntries = new ArrayList<>();
         List<Mother> mothers = allMothers.findAllOpenMothersForANM(anmIdentifier);
-        Collection<String> ecIDs = selectDistinct(collect(mothers, on(Mother.class).ecCaseId()));
-        List<String> ecIdsList = new ArrayList<>();
-        ecIdsList.addAll(ecIDs);
-        List<EligibleCouple> ecs = allEligibleCouples.findAll(ecIdsList);
+        Map<String, EligibleCouple> ecs = ecsOfMothers(allEligibleCouples, mothers);
         for (Mother mother : mothers) {
-            EligibleCouple ec = selectUnique(ecs,
-                    having(on(EligibleCouple.class).caseId(), equalTo(mother.ecCaseId())));
+            EligibleCouple ec = ecs.get(mother.ecCaseId());
             ANCRegisterEntry entry = new ANCRegisterEntry()
                     .withANCNumber(mother.getDetail(ANC_NUMBER))
                     .withRegistrationDate(mother.getDetail(REGISTRATION_DATE))
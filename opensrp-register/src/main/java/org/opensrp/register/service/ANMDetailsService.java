@@ -24,15 +24,32 @@ public class ANMDetailsService {
     private final AllChildren allChildren;
     private final AllMothers allMothers;
     private final AllEligibleCouples allEligibleCouples;
+    private final ANMEntityCounts anmEntityCounts;
 
     @Autowired
-    public ANMDetailsService(AllEligibleCouples allEligibleCouples, AllMothers allMothers, AllChildren allChildren) {
+    public ANMDetailsService(AllEligibleCouples allEligibleCouples, AllMothers allMothers, AllChildren allChildren,
+                             ANMEntityCounts anmEntityCounts) {
         this.allChildren = allChildren;
         this.allMothers = allMothers;
         this.allEligibleCouples = allEligibleCouples;
+        this.anmEntityCounts = anmEntityCounts;
     }
 
+    /**
+     * Serves the counts from {@link ANMEntityCounts} once they are loaded, and from the count views until then.
+     */
     public ANMDetails anmDetails(List<ANMDTO> anms) {
+        if (anmEntityCounts.isLoaded()) {
+            List<ANMDetail> anmDetails = new ArrayList<>();
+            for (ANMDTO anm : anms) {
+                int[] counts = anmEntityCounts.countsFor(anm.identifier());
+                anmDetails.add(new ANMDetail(anm.identifier(), anm.name(), anm.location(),
+                        counts[ANMEntityCounts.EC], counts[ANMEntityCounts.FP], counts[ANMEntityCounts.ANC],
+                        counts[ANMEntityCounts.PNC], counts[ANMEntityCounts.CHILD]));
+            }
+            return new ANMDetails(anmDetails);
+        }
+
         List<String> anmIdentifiers = collect(anms, on(ANMDTO.class).identifier());
         Map<String, Integer> ecCount = allEligibleCouples.allOpenECs(anmIdentifiers);
         Map<String, Integer> fpCount = allEligibleCouples.fpCountForANM(anmIdentifiers);
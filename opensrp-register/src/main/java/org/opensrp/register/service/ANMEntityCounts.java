@@ -0,0 +1,170 @@
+package org.opensrp.register.service;
+
+import org.codehaus.jackson.JsonNode;
+import org.ektorp.changes.DocumentChange;
+import org.opensrp.register.repository.AllRegisterChanges;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * In-memory table of open EC, FP, ANC, PNC and child counts per ANM, kept up to date from the _changes feed.
+ * Every EC, mother and child document is remembered with what it was counted as, so that an update or
+ * deletion moves it to its new counts. The rules match the count views of AllEligibleCouples, AllMothers
+ * and AllChildren.
+ */
+@Service
+public class ANMEntityCounts {
+    private static Logger logger = LoggerFactory.getLogger(ANMEntityCounts.class.toString());
+    static final int EC = 0;
+    static final int FP = 1;
+    static final int ANC = 2;
+    static final int PNC = 3;
+    static final int CHILD = 4;
+    private static final int COUNTS = 5;
+
+    private final AllRegisterChanges allRegisterChanges;
+    private final int batchSize;
+    private volatile Table table;
+
+    @Autowired
+    public ANMEntityCounts(AllRegisterChanges allRegisterChanges,
+                           @Value("#{opensrp['anm.entity.counts.batch.size']}") int batchSize) {
+        this.allRegisterChanges = allRegisterChanges;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public boolean isLoaded() {
+        return table != null;
+    }
+
+    /**
+     * @return counts of given ANM indexed by {@link #EC}, {@link #FP}, {@link #ANC}, {@link #PNC} and {@link #CHILD}
+     */
+    public int[] countsFor(String anmIdentifier) {
+        int[] counts = new int[COUNTS];
+        Table current = table;
+        AtomicIntegerArray anmCounts = current == null ? null : current.byANM.get(anmIdentifier);
+        if (anmCounts != null) {
+            for (int i = 0; i < COUNTS; i++) {
+                counts[i] = anmCounts.get(i);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Applies all changes since the last call. Recomputes the counts if they were never computed.
+     */
+    public synchronized void catchUp() {
+        if (table == null) {
+            recompute();
+            return;
+        }
+        int applied = apply(table);
+        if (applied > 0) {
+            logger.info(format("Applied {0} changes to ANM entity counts, now at update sequence {1}", applied, table.sequence));
+        }
+    }
+
+    /**
+     * Recounts everything from the start of the _changes feed and then swaps the result in, so the counts
+     * being served stay complete meanwhile. Used to load the counts and to repair them.
+     */
+    public synchronized void recompute() {
+        Table fresh = new Table();
+        int applied = apply(fresh);
+        table = fresh;
+        logger.info(format("Recomputed ANM entity counts from {0} changes of {1} documents", applied, fresh.contributions.size()));
+    }
+
+    private int apply(Table target) {
+        int applied = 0;
+        List<DocumentChange> changes;
+        do {
+            changes = allRegisterChanges.since(target.sequence, batchSize);
+            for (DocumentChange change : changes) {
+                target.apply(change.getId(), change.isDeleted() ? null : contributionOf(change.getDocAsNode()));
+                target.sequence = change.getSequence();
+            }
+            applied += changes.size();
+        } while (changes.size() >= batchSize);
+        return applied;
+    }
+
+    static Contribution contributionOf(JsonNode doc) {
+        if (doc == null || !"false".equals(text(doc, "isClosed")) || text(doc, "anmIdentifier") == null) {
+            return null;
+        }
+        String type = text(doc, "type");
+        String anm = text(doc, "anmIdentifier");
+        JsonNode details = doc.get("details");
+        if ("EligibleCouple".equals(type)) {
+            if (!"false".equals(text(doc, "isOutOfArea"))) {
+                return null;
+            }
+            String currentMethod = details == null ? null : text(details, "currentMethod");
+            boolean onFP = currentMethod != null && !currentMethod.isEmpty() && !"none".equals(currentMethod);
+            return onFP ? new Contribution(anm, EC, FP) : new Contribution(anm, EC);
+        }
+        if ("Mother".equals(type)) {
+            String motherType = details == null ? null : text(details, "type");
+            if ("ANC".equals(motherType)) {
+                return new Contribution(anm, ANC);
+            }
+            return "PNC".equals(motherType) ? new Contribution(anm, PNC) : null;
+        }
+        return "Child".equals(type) ? new Contribution(anm, CHILD) : null;
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value == null || value.isNull() ? null : value.getTextValue();
+    }
+
+    static class Contribution {
+        private final String anmIdentifier;
+        private final int[] counts;
+
+        Contribution(String anmIdentifier, int... counts) {
+            this.anmIdentifier = anmIdentifier;
+            this.counts = counts;
+        }
+    }
+
+    private static class Table {
+        private final Map<String, Contribution> contributions = new HashMap<>();
+        private final ConcurrentHashMap<String, AtomicIntegerArray> byANM = new ConcurrentHashMap<>();
+        private long sequence;
+
+        void apply(String documentId, Contribution contribution) {
+            Contribution previous = contribution == null ? contributions.remove(documentId) : contributions.put(documentId, contribution);
+            add(previous, -1);
+            add(contribution, 1);
+        }
+
+        private void add(Contribution contribution, int delta) {
+            if (contribution == null) {
+                return;
+            }
+            AtomicIntegerArray anmCounts = byANM.get(contribution.anmIdentifier);
+            if (anmCounts == null) {
+                byANM.putIfAbsent(contribution.anmIdentifier, new AtomicIntegerArray(COUNTS));
+                anmCounts = byANM.get(contribution.anmIdentifier);
+            }
+            for (int count : contribution.counts) {
+                anmCounts.addAndGet(count, delta);
+            }
+        }
+    }
+}
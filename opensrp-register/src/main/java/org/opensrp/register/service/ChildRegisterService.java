@@ -12,11 +12,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
-import static ch.lambdaj.Lambda.*;
-import static org.hamcrest.Matchers.equalTo;
+import static org.opensrp.register.service.RegisterJoins.ecsOfMothers;
+import static org.opensrp.register.service.RegisterJoins.mothersOfChildren;
 
 @Service
 public class ChildRegisterService {
@@ -35,19 +35,11 @@ public class ChildRegisterService {
     public ChildRegister getRegisterForANM(String anmIdentifier) {
         ArrayList<ChildRegisterEntry> childRegisterEntries = new ArrayList<>();
         List<Child> children = allChildren.findAllOpenChildrenForANM(anmIdentifier);
-        Collection<String> motherIds = selectDistinct(collect(children, on(Child.class).motherCaseId()));
-        List<String> motherIdsList = new ArrayList<>();
-        motherIdsList.addAll(motherIds);
-        List<Mother> mothers = allMothers.findAll(motherIdsList);
-        Collection<String> ecIDs =  selectDistinct(collect(mothers, on(Mother.class).ecCaseId()));
-        List<String> ecIdsList = new ArrayList<>();
-        ecIdsList.addAll(ecIDs);
-        List<EligibleCouple> ecs = allEligibleCouples.findAll(ecIdsList);
+        Map<String, Mother> mothers = mothersOfChildren(allMothers, children);
+        Map<String, EligibleCouple> ecs = ecsOfMothers(allEligibleCouples, mothers.values());
         for (Child child : children) {
-            Mother mother = selectUnique(mothers,
-                    having(on(Mother.class).caseId(), equalTo(child.motherCaseId())));
-            EligibleCouple ec = selectUnique(ecs,
-                    having(on(EligibleCouple.class).caseId(), equalTo(mother.ecCaseId())));
+            Mother mother = mothers.get(child.motherCaseId());
+            EligibleCouple ec = ecs.get(mother.ecCaseId());
             ChildRegisterEntry entry = new ChildRegisterEntry()
                     .withThayiCardNumber(mother.thayiCardNumber())
                     .withWifeName(ec.wifeName())
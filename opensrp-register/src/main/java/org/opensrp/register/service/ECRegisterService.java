@@ -1,7 +1,6 @@
 package org.opensrp.register.service;
 
 import org.opensrp.register.domain.EligibleCouple;
-import org.opensrp.register.domain.Mother;
 import org.opensrp.register.ECRegister;
 import org.opensrp.register.ECRegisterEntry;
 import org.opensrp.register.repository.AllEligibleCouples;
@@ -11,12 +10,14 @@ import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import static org.opensrp.common.AllConstants.ANCFormFields.REGISTRATION_DATE;
 import static org.opensrp.common.AllConstants.ECRegistrationFields.*;
 import static org.opensrp.common.AllConstants.FamilyPlanningFormFields.CURRENT_FP_METHOD_FIELD_NAME;
 import static org.opensrp.common.AllConstants.FamilyPlanningFormFields.FP_METHOD_CHANGE_DATE_FIELD_NAME;
 import static org.opensrp.common.util.IntegerUtil.parseValidIntegersAndDefaultInvalidOnesToEmptyString;
+import static org.opensrp.register.service.RegisterJoins.ecsWithOpenANC;
 
 @Service
 public class ECRegisterService {
@@ -33,9 +34,9 @@ public class ECRegisterService {
     public ECRegister getRegisterForANM(String anmIdentifier) {
         ArrayList<ECRegisterEntry> ecRegisterEntries = new ArrayList<>();
         List<EligibleCouple> ecs = allEligibleCouples.allOpenECsForANM(anmIdentifier);
+        Set<String> pregnantECs = ecsWithOpenANC(allMothers, ecs);
         for (EligibleCouple ec : ecs) {
-            List<Mother> mothers = allMothers.findAllOpenANCByECCaseId(ec.caseId());
-            boolean isPregnant = mothers.size() > 0;
+            boolean isPregnant = pregnantECs.contains(ec.caseId());
             ECRegisterEntry ecRegisterEntry = new ECRegisterEntry()
                     .withECNumber(ec.ecNumber())
                     .withWifeName(ec.wifeName())
@@ -14,7 +14,14 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.text.MessageFormat.format;
 
 @Service
 public class EntitiesService {
@@ -30,20 +37,73 @@ public class EntitiesService {
         this.allEligibleCouples = allEligibleCouples;
     }
 
+    /**
+     * Lists the ECs, mothers and children of given ANM. The EC numbers of mothers and children are joined in
+     * memory; mothers and ECs not belonging to the ANM are fetched with one multi-key query per type.
+     */
     public List<EntityDetail> entities(String anmIdentifier) {
+        List<EligibleCouple> ecs = allEligibleCouples.all(anmIdentifier);
+        List<Mother> mothers = allMothers.all(anmIdentifier);
+        List<Child> children = allChildren.all(anmIdentifier);
+
+        Map<String, Mother> mothersByCaseId = mothersByCaseId(mothers, children);
+        Map<String, String> ecNumbersByCaseId = ecNumbersByCaseId(ecs, mothersByCaseId.values());
+
         List<EntityDetail> entityDetails = new ArrayList<>();
-        updateWithECDetails(entityDetails, anmIdentifier);
-        updateWithMotherDetails(entityDetails, anmIdentifier);
-        updateWithChildDetails(entityDetails, anmIdentifier);
+        updateWithECDetails(entityDetails, ecs);
+        updateWithMotherDetails(entityDetails, mothers, ecNumbersByCaseId);
+        updateWithChildDetails(entityDetails, children, mothersByCaseId, ecNumbersByCaseId);
         return entityDetails;
     }
 
-    private void updateWithChildDetails(List<EntityDetail> entityDetails, String anmIdentifier) {
-        List<Child> children = allChildren.all(anmIdentifier);
+    private Map<String, Mother> mothersByCaseId(List<Mother> mothers, List<Child> children) {
+        Map<String, Mother> mothersByCaseId = new HashMap<>();
+        for (Mother mother : mothers) {
+            mothersByCaseId.put(mother.caseId(), mother);
+        }
+        Set<String> missingMotherIds = new LinkedHashSet<>();
+        for (Child child : children) {
+            if (child.motherCaseId() != null && !mothersByCaseId.containsKey(child.motherCaseId())) {
+                missingMotherIds.add(child.motherCaseId());
+            }
+        }
+        if (!missingMotherIds.isEmpty()) {
+            for (Mother mother : allMothers.findAll(new ArrayList<>(missingMotherIds))) {
+                mothersByCaseId.put(mother.caseId(), mother);
+            }
+        }
+        return mothersByCaseId;
+    }
+
+    private Map<String, String> ecNumbersByCaseId(List<EligibleCouple> ecs, Collection<Mother> mothers) {
+        Map<String, String> ecNumbersByCaseId = new HashMap<>();
+        for (EligibleCouple ec : ecs) {
+            ecNumbersByCaseId.put(ec.caseId(), ec.ecNumber());
+        }
+        Set<String> missingECIds = new LinkedHashSet<>();
+        for (Mother mother : mothers) {
+            if (mother.ecCaseId() != null && !ecNumbersByCaseId.containsKey(mother.ecCaseId())) {
+                missingECIds.add(mother.ecCaseId());
+            }
+        }
+        if (!missingECIds.isEmpty()) {
+            for (EligibleCouple ec : allEligibleCouples.findAll(new ArrayList<>(missingECIds))) {
+                ecNumbersByCaseId.put(ec.caseId(), ec.ecNumber());
+            }
+        }
+        return ecNumbersByCaseId;
+    }
+
+    private void updateWithChildDetails(List<EntityDetail> entityDetails, List<Child> children,
+                                        Map<String, Mother> mothersByCaseId, Map<String, String> ecNumbersByCaseId) {
         for (Child child : children) {
+            Mother mother = mothersByCaseId.get(child.motherCaseId());
+            if (mother == null) {
+                logger.warn(format("Mother {0} of child {1} not found", child.motherCaseId(), child.caseId()));
+            }
             EntityDetail entity = new EntityDetail()
                     .withEntityID(child.caseId())
-                    .withECNumber(ecNumber(child))
+                    .withECNumber(mother == null ? null : ecNumbersByCaseId.get(mother.ecCaseId()))
                     .withANMIdentifier(child.anmIdentifier())
                     .withEntityType(AllConstants.FormEntityTypes.CHILD_TYPE)
                     .withThayiCardNumber(child.thayiCardNumber());
@@ -51,20 +111,11 @@ public class EntitiesService {
         }
     }
 
-    private String ecNumber(Child child) {
-        return ecNumber(allMothers.findByCaseId(child.motherCaseId()));
-    }
-
-    private String ecNumber(Mother mother) {
-        return allEligibleCouples.findByCaseId(mother.ecCaseId()).ecNumber();
-    }
-
-    private void updateWithMotherDetails(List<EntityDetail> entityDetails, String anmIdentifier) {
-        List<Mother> mothers = allMothers.all(anmIdentifier);
+    private void updateWithMotherDetails(List<EntityDetail> entityDetails, List<Mother> mothers, Map<String, String> ecNumbersByCaseId) {
         for (Mother mother : mothers) {
             EntityDetail entity = new EntityDetail()
                     .withEntityID(mother.caseId())
-                    .withECNumber(ecNumber(mother))
+                    .withECNumber(ecNumbersByCaseId.get(mother.ecCaseId()))
                     .withANMIdentifier(mother.anmIdentifier())
                     .withEntityType(AllConstants.FormEntityTypes.MOTHER_TYPE)
                     .withThayiCardNumber(mother.thayiCardNumber());
@@ -72,8 +123,7 @@ public class EntitiesService {
         }
     }
 
-    private void updateWithECDetails(List<EntityDetail> entityDetails, String anmIdentifier) {
-        List<EligibleCouple> allECs = allEligibleCouples.all(anmIdentifier);
+    private void updateWithECDetails(List<EntityDetail> entityDetails, List<EligibleCouple> allECs) {
         for (EligibleCouple ec : allECs) {
             EntityDetail entity = new EntityDetail()
                     .withEntityID(ec.caseId())
@@ -10,16 +10,15 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
-import static ch.lambdaj.Lambda.*;
+import static org.opensrp.register.service.RegisterJoins.ecsOfMothers;
 import static org.opensrp.common.AllConstants.ANCFormFields.REGISTRATION_DATE;
 import static org.opensrp.common.AllConstants.DeliveryOutcomeFields.*;
 import static org.opensrp.common.AllConstants.ECRegistrationFields.HOUSEHOLD_ADDRESS;
 import static org.opensrp.common.AllConstants.FamilyPlanningFormFields.*;
 import static org.opensrp.common.AllConstants.PNCVisitFormFields.DISCHARGE_DATE;
-import static org.hamcrest.Matchers.equalTo;
 
 @Service
 public class PNCRegisterService {
@@ -36,13 +35,9 @@ public class PNCRegisterService {
     public PNCRegister getRegisterForANM(String anmIdentifier) {
         ArrayList<PNCRegisterEntry> pncRegisterEntries = new ArrayList<>();
         List<Mother> mothers = allMothers.findAllOpenPNCsForANM(anmIdentifier);
-        Collection<String> ecIDs = selectDistinct(collect(mothers, on(Mother.class).ecCaseId()));
-        List<String> ecIdsList = new ArrayList<>();
-        ecIdsList.addAll(ecIDs);
-        List<EligibleCouple> ecs = allEligibleCouples.findAll(ecIdsList);
+        Map<String, EligibleCouple> ecs = ecsOfMothers(allEligibleCouples, mothers);
         for (Mother mother : mothers) {
-            EligibleCouple ec = selectUnique(ecs,
-                    having(on(EligibleCouple.class).caseId(), equalTo(mother.ecCaseId())));
+            EligibleCouple ec = ecs.get(mother.ecCaseId());
             PNCRegisterEntry pncRegisterEntry = new PNCRegisterEntry()
                     .withRegistrationDate(mother.getDetail(REGISTRATION_DATE))
                     .withThayiCardNumber(mother.thayiCardNumber())
@@ -0,0 +1,88 @@
+package org.opensrp.register.service;
+
+import org.opensrp.register.domain.Child;
+import org.opensrp.register.domain.EligibleCouple;
+import org.opensrp.register.domain.Mother;
+import org.opensrp.register.repository.AllEligibleCouples;
+import org.opensrp.register.repository.AllMothers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Joins used by the register services. Each join fetches the related entities of a whole register with one
+ * multi-key query and indexes them by case id, so building a register costs one query per entity type
+ * instead of one per entry.
+ */
+class RegisterJoins {
+    private RegisterJoins() {
+    }
+
+    static Map<String, EligibleCouple> ecsOfMothers(AllEligibleCouples allEligibleCouples, Collection<Mother> mothers) {
+        Set<String> ecIds = new LinkedHashSet<>();
+        for (Mother mother : mothers) {
+            ecIds.add(mother.ecCaseId());
+        }
+        Map<String, EligibleCouple> ecsByCaseId = new HashMap<>();
+        if (ecIds.isEmpty()) {
+            return ecsByCaseId;
+        }
+        for (EligibleCouple ec : allEligibleCouples.findAll(new ArrayList<>(ecIds))) {
+            ecsByCaseId.put(ec.caseId(), ec);
+        }
+        return ecsByCaseId;
+    }
+
+    static Map<String, Mother> mothersOfChildren(AllMothers allMothers, Collection<Child> children) {
+        Set<String> motherIds = new LinkedHashSet<>();
+        for (Child child : children) {
+            motherIds.add(child.motherCaseId());
+        }
+        Map<String, Mother> mothersByCaseId = new HashMap<>();
+        if (motherIds.isEmpty()) {
+            return mothersByCaseId;
+        }
+        for (Mother mother : allMothers.findAll(new ArrayList<>(motherIds))) {
+            mothersByCaseId.put(mother.caseId(), mother);
+        }
+        return mothersByCaseId;
+    }
+
+    /**
+     * @return case ids of the given ECs having an open mother, ANC or PNC
+     */
+    static Set<String> ecsWithOpenMothers(AllMothers allMothers, Collection<EligibleCouple> ecs) {
+        List<String> ecIds = caseIds(ecs);
+        return ecIds.isEmpty() ? new HashSet<String>() : ecCaseIds(allMothers.findAllOpenMothersByECCaseId(ecIds));
+    }
+
+    /**
+     * @return case ids of the given ECs having an open ANC
+     */
+    static Set<String> ecsWithOpenANC(AllMothers allMothers, Collection<EligibleCouple> ecs) {
+        List<String> ecIds = caseIds(ecs);
+        return ecIds.isEmpty() ? new HashSet<String>() : ecCaseIds(allMothers.findAllOpenANCByECCaseIds(ecIds));
+    }
+
+    private static List<String> caseIds(Collection<EligibleCouple> ecs) {
+        Set<String> ecIds = new LinkedHashSet<>();
+        for (EligibleCouple ec : ecs) {
+            ecIds.add(ec.caseId());
+        }
+        return new ArrayList<>(ecIds);
+    }
+
+    private static Set<String> ecCaseIds(List<Mother> mothers) {
+        Set<String> ecIds = new HashSet<>();
+        for (Mother mother : mothers) {
+            ecIds.add(mother.ecCaseId());
+        }
+        return ecIds;
+    }
+}
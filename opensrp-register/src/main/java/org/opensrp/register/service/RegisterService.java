@@ -15,16 +15,17 @@ import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-import static ch.lambdaj.Lambda.*;
-import static java.util.Arrays.asList;
+import static org.opensrp.register.service.RegisterJoins.ecsOfMothers;
+import static org.opensrp.register.service.RegisterJoins.ecsWithOpenMothers;
 import static org.opensrp.common.AllConstants.ANCFormFields.REGISTRATION_DATE;
 import static org.opensrp.common.AllConstants.ANCRegistrationFormFields.*;
 import static org.opensrp.common.AllConstants.CommonFormFields.IS_HIGH_RISK;
 import static org.opensrp.common.AllConstants.ECRegistrationFields.*;
 import static org.opensrp.common.AllConstants.FamilyPlanningFormFields.CURRENT_FP_METHOD_FIELD_NAME;
 import static org.opensrp.common.AllConstants.FamilyPlanningFormFields.FP_METHOD_CHANGE_DATE_FIELD_NAME;
-import static org.hamcrest.Matchers.equalTo;
 
 @Service
 public class RegisterService {
@@ -42,11 +43,9 @@ public class RegisterService {
     public ANCRegister getANCRegister(String anmIdentifier) {
         ArrayList<ANCRegisterEntry> ancRegisterEntries = new ArrayList<>();
         List<Mother> mothers = allMothers.findAllOpenMothersForANM(anmIdentifier);
-        List<String> ecIDs = collect(mothers, on(Mother.class).ecCaseId());
-        List<EligibleCouple> ecs = allEligibleCouples.findAll(ecIDs);
+        Map<String, EligibleCouple> ecs = ecsOfMothers(allEligibleCouples, mothers);
         for (Mother mother : mothers) {
-            EligibleCouple ec = selectUnique(ecs,
-                    having(on(EligibleCouple.class).caseId(), equalTo(mother.ecCaseId())));
+            EligibleCouple ec = ecs.get(mother.ecCaseId());
             ANCRegisterEntry entry = new ANCRegisterEntry()
                     .withANCNumber(mother.getDetail(ANC_NUMBER))
                     .withRegistrationDate(mother.getDetail(REGISTRATION_DATE))
@@ -84,12 +83,12 @@ public class RegisterService {
     public ECRegister getECRegister(String anmIdentifier) {
         ArrayList<ECRegisterEntry> ecRegisterEntries = new ArrayList<>();
         List<EligibleCouple> ecs = allEligibleCouples.allOpenECsForANM(anmIdentifier);
+        Set<String> pregnantECs = ecsWithOpenMothers(allMothers, ecs);
         for (EligibleCouple ec : ecs) {
             Integer gravida = Integer.parseInt(ec.getDetail(NUMBER_OF_LIVING_CHILDREN)) +
                     Integer.parseInt(ec.getDetail(NUMBER_OF_STILL_BIRTHS)) +
                     Integer.parseInt(ec.getDetail(NUMBER_OF_ABORTIONS));
-            List<Mother> mothers = allMothers.findAllOpenMothersByECCaseId(asList(ec.caseId()));
-            boolean isPregnant = mothers.size() > 0;
+            boolean isPregnant = pregnantECs.contains(ec.caseId());
             ECRegisterEntry ecRegisterEntry = new ECRegisterEntry()
                     .withECNumber(ec.ecNumber())
                     .withWifeName(ec.wifeName())
@@ -0,0 +1,357 @@
+package org.opensrp.register.service.reporting;
+
+import org.ektorp.DocumentOperationResult;
+import org.opensrp.common.util.DateUtil;
+import org.opensrp.common.util.HttpAgent;
+import org.opensrp.common.util.HttpResponse;
+import org.opensrp.register.domain.ReportOutboxEntry;
+import org.opensrp.register.repository.AllReportOutboxEntries;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Durable outbox of reports posted to the reporting application. Reports are stored when their events arrive and
+ * delivered by {@link #drain()}, which runs on a schedule and as soon as a batch worth of reports is waiting.
+ * Consecutive submissions are posted together to submit-batch, in batches sent in parallel up to the number of
+ * requests allowed in flight. Updates and deletions are posted on their own and in order with the submissions
+ * around them. A report which fails is retried with exponential backoff and holds back the reports after it. A batch
+ * the reporting application rejects is split until the reports it rejects are on their own.
+ * A report given up on after the maximum attempts is logged and put back in the outbox after the redrive interval.
+ * A delivered report is removed from the outbox separately from its delivery: when the removal fails it is not
+ * posted again, and the removal is retried by the next drain.
+ */
+@Service
+public class ReportOutbox {
+    public static final String SUBMIT_REPORT_ACTION = "submit";
+    public static final String SUBMIT_BATCH_REPORT_ACTION = "submit-batch";
+    private static Logger logger = LoggerFactory.getLogger(ReportOutbox.class.toString());
+    private static final int MAX_BACKOFF_SHIFT = 10;
+    private static final String NOT_FOUND = "not_found";
+
+    private final AllReportOutboxEntries allReportOutboxEntries;
+    private final HttpAgent httpAgent;
+    private final String url;
+    private final int batchSize;
+    private final int maxInFlight;
+    private final int maxAttempts;
+    private final long retryBaseMillis;
+    private final long failedRedriveMillis;
+    private final Map<String, ReportOutboxEntry> deliveredNotRemoved = new ConcurrentHashMap<>();
+    private final ExecutorService senders;
+    private final ExecutorService drainer = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final AtomicInteger addedSinceDrain = new AtomicInteger();
+    private final AtomicLong lastCreatedAt = new AtomicLong();
+
+    @Autowired
+    public ReportOutbox(AllReportOutboxEntries allReportOutboxEntries, HttpAgent httpAgent,
+                        @Value("#{opensrp['opensrp.reporting.url']}") String url,
+                        @Value("#{opensrp['report.outbox.batch.size']}") int batchSize,
+                        @Value("#{opensrp['report.outbox.max.in-flight']}") int maxInFlight,
+                        @Value("#{opensrp['report.outbox.max.attempts']}") int maxAttempts,
+                        @Value("#{opensrp['report.outbox.retry.base-sec']}") int retryBaseSeconds,
+                        @Value("#{opensrp['report.outbox.failed.redrive-min']}") int failedRedriveMinutes) {
+        this.allReportOutboxEntries = allReportOutboxEntries;
+        this.httpAgent = httpAgent;
+        this.url = url;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryBaseMillis = Math.max(1, retryBaseSeconds) * 1000L;
+        this.failedRedriveMillis = Math.max(1, failedRedriveMinutes) * 60 * 1000L;
+        this.senders = Executors.newFixedThreadPool(this.maxInFlight);
+    }
+
+    /**
+     * Stores the report to be posted to given action of the reporting application.
+     */
+    public void add(String action, String payload) {
+        allReportOutboxEntries.add(new ReportOutboxEntry(action, payload, nextCreatedAt()));
+        if (addedSinceDrain.incrementAndGet() >= batchSize) {
+            addedSinceDrain.set(0);
+            drainer.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        drain();
+                    } catch (Exception e) {
+                        logger.error(format("Delivering reports failed with exception {0}", e));
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Delivers the pending reports in the order they were added, until one of them fails or is not due yet.
+     * Returns immediately when another drain is running.
+     * @return the number of reports delivered
+     */
+    public int drain() {
+        if (!draining.compareAndSet(false, true)) {
+            return 0;
+        }
+        try {
+            addedSinceDrain.set(0);
+            removeDelivered();
+            redriveFailed(DateUtil.millis());
+            int delivered = 0;
+            List<ReportOutboxEntry> pending;
+            do {
+                pending = allReportOutboxEntries.findPending(batchSize * maxInFlight);
+                int deliveredNow = deliverInOrder(notDelivered(pending), DateUtil.millis());
+                if (deliveredNow < 0) {
+                    return delivered - deliveredNow - 1;
+                }
+                delivered += deliveredNow;
+            } while (pending.size() >= batchSize * maxInFlight);
+            if (delivered > 0) {
+                logger.info(format("Delivered {0} reports to the reporting application", delivered));
+            }
+            return delivered;
+        } finally {
+            draining.set(false);
+        }
+    }
+
+    /**
+     * Puts the reports given up on more than the redrive interval ago back in the outbox.
+     * @return the number of reports put back
+     */
+    public int redriveFailed(long now) {
+        List<ReportOutboxEntry> failed = allReportOutboxEntries.findFailedBefore(now - failedRedriveMillis, batchSize);
+        if (failed.isEmpty()) {
+            return 0;
+        }
+        for (ReportOutboxEntry entry : failed) {
+            entry.markForRedelivery(now);
+        }
+        allReportOutboxEntries.updateAll(failed);
+        logger.warn(format("Put {0} reports that could not be delivered to {1} back in the outbox", failed.size(), url));
+        return failed.size();
+    }
+
+    private List<ReportOutboxEntry> notDelivered(List<ReportOutboxEntry> pending) {
+        if (deliveredNotRemoved.isEmpty()) {
+            return pending;
+        }
+        List<ReportOutboxEntry> notDelivered = new ArrayList<>();
+        for (ReportOutboxEntry entry : pending) {
+            if (!deliveredNotRemoved.containsKey(entry.getId())) {
+                notDelivered.add(entry);
+            }
+        }
+        return notDelivered;
+    }
+
+    private void removeDelivered() {
+        if (!deliveredNotRemoved.isEmpty()) {
+            remove(new ArrayList<>(deliveredNotRemoved.values()));
+        }
+    }
+
+    /**
+     * Removes delivered reports from the outbox. Reports which could not be removed are remembered as delivered
+     * until a later removal succeeds.
+     */
+    private void remove(List<ReportOutboxEntry> entries) {
+        List<DocumentOperationResult> failures;
+        try {
+            failures = allReportOutboxEntries.removeAll(entries);
+        } catch (Exception e) {
+            logger.error(format("Could not remove {0} delivered reports from the outbox: {1}", entries.size(), e));
+            for (ReportOutboxEntry entry : entries) {
+                deliveredNotRemoved.put(entry.getId(), entry);
+            }
+            return;
+        }
+        Set<String> notRemoved = new HashSet<>();
+        for (DocumentOperationResult failure : failures) {
+            // a report removed by an earlier attempt whose response was lost is gone already
+            if (!NOT_FOUND.equals(failure.getError())) {
+                logger.error(format("Could not remove delivered report {0} from the outbox: {1} {2}", failure.getId(), failure.getError(), failure.getReason()));
+                notRemoved.add(failure.getId());
+            }
+        }
+        for (ReportOutboxEntry entry : entries) {
+            if (notRemoved.contains(entry.getId())) {
+                deliveredNotRemoved.put(entry.getId(), entry);
+            } else {
+                deliveredNotRemoved.remove(entry.getId());
+            }
+        }
+    }
+
+    /**
+     * @return the number of reports delivered or, when delivery has to stop early, minus that number minus one
+     */
+    private int deliverInOrder(List<ReportOutboxEntry> pending, long now) {
+        int delivered = 0;
+        int index = 0;
+        while (index < pending.size()) {
+            List<ReportOutboxEntry> run = new ArrayList<>();
+            boolean submissions = SUBMIT_REPORT_ACTION.equals(pending.get(index).getAction());
+            do {
+                run.add(pending.get(index++));
+            } while (submissions && index < pending.size() && SUBMIT_REPORT_ACTION.equals(pending.get(index).getAction()));
+
+            int due = 0;
+            while (due < run.size() && run.get(due).getNextAttemptAt() <= now) {
+                due++;
+            }
+            boolean complete = due == run.size();
+            if (due > 0) {
+                Outcome outcome = submissions ? submitAll(run.subList(0, due)) : send(run.get(0));
+                delivered += outcome.delivered;
+                complete = complete && !outcome.blocked;
+            }
+            if (!complete) {
+                return -delivered - 1;
+            }
+        }
+        return delivered;
+    }
+
+    private Outcome submitAll(List<ReportOutboxEntry> submissions) {
+        List<Future<Outcome>> results = new ArrayList<>();
+        for (int start = 0; start < submissions.size(); start += batchSize) {
+            final List<ReportOutboxEntry> batch = new ArrayList<>(submissions.subList(start, Math.min(start + batchSize, submissions.size())));
+            results.add(senders.submit(new Callable<Outcome>() {
+                @Override
+                public Outcome call() {
+                    return post(SUBMIT_BATCH_REPORT_ACTION, batchPayload(batch), batch);
+                }
+            }));
+        }
+
+        Outcome outcome = new Outcome();
+        for (Future<Outcome> result : results) {
+            try {
+                outcome.add(result.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                outcome.blocked = true;
+                break;
+            } catch (ExecutionException e) {
+                logger.error(format("Report delivery failed with exception {0}", e.getCause()));
+                outcome.blocked = true;
+            }
+        }
+        return outcome;
+    }
+
+    private Outcome send(ReportOutboxEntry entry) {
+        List<ReportOutboxEntry> entries = new ArrayList<>();
+        entries.add(entry);
+        return post(entry.getAction(), entry.getPayload(), entries);
+    }
+
+    /**
+     * Posts the entries together. When the reporting application rejects a batch of several reports, the halves of
+     * the batch are posted separately, so that only the reports it rejects on their own are retried.
+     */
+    private Outcome post(String action, String payload, List<ReportOutboxEntry> entries) {
+        Outcome outcome = new Outcome();
+        String error = null;
+        boolean rejected = false;
+        try {
+            HttpResponse response = httpAgent.post(url + "/" + action, payload, MediaType.APPLICATION_JSON_VALUE);
+            if (response.isSuccess()) {
+                outcome.delivered = entries.size();
+            } else {
+                error = "Response: " + response.body();
+                rejected = response.isClientError();
+            }
+        } catch (Exception e) {
+            error = String.valueOf(e);
+        }
+        if (outcome.delivered > 0) {
+            remove(entries);
+            return outcome;
+        }
+        if (rejected && entries.size() > 1) {
+            logger.warn(format("{0} rejected a batch of {1} reports, posting its halves separately. {2}", url + "/" + action, entries.size(), error));
+            List<ReportOutboxEntry> firstHalf = new ArrayList<>(entries.subList(0, entries.size() / 2));
+            List<ReportOutboxEntry> secondHalf = new ArrayList<>(entries.subList(entries.size() / 2, entries.size()));
+            outcome.add(post(action, batchPayload(firstHalf), firstHalf));
+            outcome.add(post(action, batchPayload(secondHalf), secondHalf));
+            return outcome;
+        }
+
+        long backoff = retryBaseMillis << Math.min(entries.get(0).getAttempts(), MAX_BACKOFF_SHIFT);
+        for (ReportOutboxEntry entry : entries) {
+            entry.markAttemptFailed(error, DateUtil.millis() + backoff, maxAttempts);
+        }
+        allReportOutboxEntries.updateAll(entries);
+        if (entries.get(0).isFailed()) {
+            logger.error(format("Giving up delivering {0} reports to {1} after {2} attempts, putting them back in the outbox in {3} minutes. {4}",
+                    entries.size(), url + "/" + action, maxAttempts, failedRedriveMillis / 60000, error));
+        } else {
+            logger.warn(format("Delivering {0} reports to {1} failed, retrying in {2} ms. {3}", entries.size(), url + "/" + action, backoff, error));
+            outcome.blocked = true;
+        }
+        return outcome;
+    }
+
+    private String batchPayload(List<ReportOutboxEntry> batch) {
+        StringBuilder payload = new StringBuilder("[");
+        for (ReportOutboxEntry entry : batch) {
+            if (payload.length() > 1) {
+                payload.append(',');
+            }
+            payload.append(entry.getPayload());
+        }
+        return payload.append(']').toString();
+    }
+
+    // keeps the order of reports added in the same millisecond
+    private long nextCreatedAt() {
+        long now = DateUtil.millis();
+        long last;
+        do {
+            last = lastCreatedAt.get();
+            if (now <= last) {
+                now = last + 1;
+            }
+        } while (!lastCreatedAt.compareAndSet(last, now));
+        return now;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        drainer.shutdown();
+        senders.shutdown();
+    }
+
+    private static class Outcome {
+        private int delivered;
+        private boolean blocked;
+
+        void add(Outcome other) {
+            delivered += other.delivered;
+            blocked = blocked || other.blocked;
+        }
+    }
+}
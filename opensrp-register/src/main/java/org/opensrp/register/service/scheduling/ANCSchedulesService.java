@@ -22,6 +22,9 @@ import static org.opensrp.register.DrishtiScheduleConstants.MotherScheduleConsta
 import static org.opensrp.register.DrishtiScheduleConstants.MotherScheduleConstants.SCHEDULE_TT_1;
 import static org.opensrp.register.DrishtiScheduleConstants.MotherScheduleConstants.SCHEDULE_TT_2;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.joda.time.LocalDate;
 import org.joda.time.Weeks;
 import org.motechproject.scheduletracking.api.service.EnrollmentRecord;
@@ -59,17 +62,17 @@ public class ANCSchedulesService {
     }
 
     public void deliveryHasBeenPlanned(String entityId, String anmId, String deliveryPlanDate) {
-        fulfillMilestoneIfPossible(entityId, anmId, SCHEDULE_DELIVERY_PLAN, SCHEDULE_DELIVERY_PLAN, parse(deliveryPlanDate));
+        fulfillMilestoneIfPossible(entityId, anmId, activeEnrollments(entityId), SCHEDULE_DELIVERY_PLAN, SCHEDULE_DELIVERY_PLAN, parse(deliveryPlanDate));
     }
 
     public void ttVisitHasHappened(String entityId, String anmId, String ttDose, String ttDate) {
         if (AllConstants.ANCFormFields.TT_BOOSTER_DOSE_VALUE.equals(ttDose)) {
             unEnrollFromSchedule(entityId, anmId, SCHEDULE_TT_1);
         } else if (AllConstants.ANCFormFields.TT1_DOSE_VALUE.equals(ttDose)) {
-            fulfillMilestoneIfPossible(entityId, anmId, SCHEDULE_TT_1, SCHEDULE_TT_1, parse(ttDate));
+            fulfillMilestoneIfPossible(entityId, anmId, activeEnrollments(entityId), SCHEDULE_TT_1, SCHEDULE_TT_1, parse(ttDate));
             scheduler.enrollIntoSchedule(entityId, SCHEDULE_TT_2, ttDate);
         } else if (AllConstants.ANCFormFields.TT2_DOSE_VALUE.equals(ttDose)) {
-            fulfillMilestoneIfPossible(entityId, anmId, SCHEDULE_TT_2, SCHEDULE_TT_2, parse(ttDate));
+            fulfillMilestoneIfPossible(entityId, anmId, activeEnrollments(entityId), SCHEDULE_TT_2, SCHEDULE_TT_2, parse(ttDate));
         }
     }
 
@@ -78,37 +81,39 @@ public class ANCSchedulesService {
             logger.info("Number of IFA tablets given is zero so not updating schedules for entity: " + entityId);
             return;
         }
-        if (fulfillMilestoneIfPossible(entityId, anmId, SCHEDULE_IFA_1, SCHEDULE_IFA_1, parse(ifaGivenDate))) {
+        Map<String, EnrollmentRecord> activeEnrollments = activeEnrollments(entityId);
+        if (fulfillMilestoneIfPossible(entityId, anmId, activeEnrollments, SCHEDULE_IFA_1, SCHEDULE_IFA_1, parse(ifaGivenDate))) {
             logger.info("Enrolling ANC to IFA 2 schedule. Entity id: " + entityId);
 
             scheduler.enrollIntoSchedule(entityId, SCHEDULE_IFA_2, ifaGivenDate);
             return;
         }
-        if (fulfillMilestoneIfPossible(entityId, anmId, SCHEDULE_IFA_2, SCHEDULE_IFA_2, parse(ifaGivenDate))) {
+        if (fulfillMilestoneIfPossible(entityId, anmId, activeEnrollments, SCHEDULE_IFA_2, SCHEDULE_IFA_2, parse(ifaGivenDate))) {
             logger.info("Enrolling ANC to IFA 3 schedule. Entity id: " + entityId);
 
             scheduler.enrollIntoSchedule(entityId, SCHEDULE_IFA_3, ifaGivenDate);
             return;
         }
-        fulfillMilestoneIfPossible(entityId, anmId, SCHEDULE_IFA_3, SCHEDULE_IFA_3, parse(ifaGivenDate));
+        fulfillMilestoneIfPossible(entityId, anmId, activeEnrollments, SCHEDULE_IFA_3, SCHEDULE_IFA_3, parse(ifaGivenDate));
     }
 
     public void hbTestDone(String entityId, String anmId, String date, String anaemicStatus, LocalDate lmp) {
-        if (fulfillMilestoneIfPossible(entityId, anmId, SCHEDULE_HB_TEST_1, SCHEDULE_HB_TEST_1, parse(date))) {
+        Map<String, EnrollmentRecord> activeEnrollments = activeEnrollments(entityId);
+        if (fulfillMilestoneIfPossible(entityId, anmId, activeEnrollments, SCHEDULE_HB_TEST_1, SCHEDULE_HB_TEST_1, parse(date))) {
             if (isNotBlank(anaemicStatus)) {
                 logger.info(format("ANC is anaemic so enrolling her to Hb Followup Test schedule: Entity id:{0}, Anaemic status: {1}", entityId, anaemicStatus));
                 scheduler.enrollIntoSchedule(entityId, SCHEDULE_HB_FOLLOWUP_TEST, date);
             } else {
                 enrollANCToHbTest2Schedule(entityId, lmp);
             }
-        } else if (fulfillMilestoneIfPossible(entityId, anmId, SCHEDULE_HB_FOLLOWUP_TEST, SCHEDULE_HB_FOLLOWUP_TEST, parse(date))) {
+        } else if (fulfillMilestoneIfPossible(entityId, anmId, activeEnrollments, SCHEDULE_HB_FOLLOWUP_TEST, SCHEDULE_HB_FOLLOWUP_TEST, parse(date))) {
             if (parse(date).isAfter(lmp.plusWeeks(NUMBER_OF_WEEKS_BEFORE_HB_TEST_2_BECOMES_DUE))) {
-                fulfillMilestoneIfPossible(entityId, anmId, SCHEDULE_HB_TEST_2, SCHEDULE_HB_TEST_2, parse(date));
+                fulfillMilestoneIfPossible(entityId, anmId, activeEnrollments, SCHEDULE_HB_TEST_2, SCHEDULE_HB_TEST_2, parse(date));
             } else {
                 enrollANCToHbTest2Schedule(entityId, lmp);
             }
         } else {
-            fulfillMilestoneIfPossible(entityId, anmId, SCHEDULE_HB_TEST_2, SCHEDULE_HB_TEST_2, parse(date));
+            fulfillMilestoneIfPossible(entityId, anmId, activeEnrollments, SCHEDULE_HB_TEST_2, SCHEDULE_HB_TEST_2, parse(date));
         }
     }
 
@@ -149,33 +154,40 @@ public class ANCSchedulesService {
     }
 
     private void fastForwardSchedule(String entityId, String anmId, String scheduleName, String milestonePrefix, int visitNumberToFulfill, LocalDate visitDate) {
-        int currentMilestoneNumber = currentMilestoneNumber(entityId, scheduleName, milestonePrefix);
+        EnrollmentRecord record = activeEnrollments(entityId).get(scheduleName);
+        if (record == null) {
+            return;
+        }
+        int currentMilestoneNumber = Integer.valueOf(record.getCurrentMilestoneName().replace(milestonePrefix + " ", ""));
         for (int i = currentMilestoneNumber; i <= visitNumberToFulfill; i++) {
-            fulfillMilestoneIfPossible(entityId, anmId, scheduleName, milestonePrefix + " " + i, visitDate);
+            // the enrollment ends with the last milestone of the schedule, which may come before the visit number
+            if (i > currentMilestoneNumber && scheduler.isNotEnrolled(entityId, scheduleName)) {
+                break;
+            }
+            fulfillMilestone(entityId, anmId, scheduleName, milestonePrefix + " " + i, visitDate);
         }
     }
 
-    private boolean fulfillMilestoneIfPossible(String entityId, String anmId, String scheduleName, String milestone, LocalDate fulfillmentDate) {
-        if (isNotEnrolled(entityId, scheduleName)) {
+    private boolean fulfillMilestoneIfPossible(String entityId, String anmId, Map<String, EnrollmentRecord> activeEnrollments, String scheduleName, String milestone, LocalDate fulfillmentDate) {
+        if (!activeEnrollments.containsKey(scheduleName)) {
             logger.warn(format("Tried to fulfill milestone {0} of {1} for entity id: {2}", milestone, scheduleName, entityId));
             return false;
         }
 
-        logger.warn(format("Fulfilling milestone {0} of {1} for entity id: {2}", milestone, scheduleName, entityId));
-        scheduler.fullfillMilestoneAndCloseAlert(entityId, anmId, scheduleName, milestone, fulfillmentDate);
+        fulfillMilestone(entityId, anmId, scheduleName, milestone, fulfillmentDate);
         return true;
     }
 
-    private int currentMilestoneNumber(String caseId, String scheduleName, String milestonePrefix) {
-        if (isNotEnrolled(caseId, scheduleName)) {
-            return Integer.MAX_VALUE;
-        }
-
-        EnrollmentRecord record = scheduler.getEnrollment(caseId, scheduleName);
-        return Integer.valueOf(record.getCurrentMilestoneName().replace(milestonePrefix + " ", ""));
+    private void fulfillMilestone(String entityId, String anmId, String scheduleName, String milestone, LocalDate fulfillmentDate) {
+        logger.warn(format("Fulfilling milestone {0} of {1} for entity id: {2}", milestone, scheduleName, entityId));
+        scheduler.fullfillMilestoneAndCloseAlert(entityId, anmId, scheduleName, milestone, fulfillmentDate);
     }
 
-    private boolean isNotEnrolled(String caseId, String scheduleName) {
-        return scheduler.isNotEnrolled(caseId, scheduleName);
+    private Map<String, EnrollmentRecord> activeEnrollments(String entityId) {
+        Map<String, EnrollmentRecord> activeEnrollments = new HashMap<>();
+        for (EnrollmentRecord record : scheduler.findActiveEnrollments(entityId)) {
+            activeEnrollments.put(record.getScheduleName(), record);
+        }
+        return activeEnrollments;
     }
 }
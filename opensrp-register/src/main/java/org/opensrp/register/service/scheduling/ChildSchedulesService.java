@@ -31,6 +31,7 @@ import static org.opensrp.register.DrishtiScheduleConstants.ChildScheduleConstan
 import static org.opensrp.register.DrishtiScheduleConstants.ChildScheduleConstants.CHILD_SCHEDULE_PENTAVALENT_3;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -111,9 +112,19 @@ public class ChildSchedulesService {
     }
 
     private void updateMilestonesForEnrolledSchedules(String id, String anmIdentifier, List<String> immunizationsGiven, String immunizationDate) {
+        Map<String, EnrollmentRecord> activeEnrollments = new HashMap<>();
+        for (EnrollmentRecord record : scheduler.findActiveEnrollments(id)) {
+            activeEnrollments.put(record.getScheduleName(), record);
+        }
+
         for (Schedule schedule : childSchedules.values()) {
+            EnrollmentRecord record = activeEnrollments.get(schedule.name());
+            boolean milestoneFulfilled = false;
             for (String mileStoneName : schedule.getMileStones()) {
-                EnrollmentRecord record = scheduler.getEnrollment(id, schedule.name());
+                if (milestoneFulfilled) {
+                    record = scheduler.getEnrollment(id, schedule.name());
+                    milestoneFulfilled = false;
+                }
                 if (record == null)
                     break;
                 String currentMilestoneName = record.getCurrentMilestoneName();
@@ -124,6 +135,7 @@ public class ChildSchedulesService {
                     logger.info(format("Fulfilling current milestone of schedule: {0}, milestone: {1}, entityId: {2}, completionDate: {3}", schedule.name(),
                             mileStoneName, id, immunizationDate));
                     scheduler.fullfillMilestoneAndCloseAlert(id, anmIdentifier, schedule.name(), mileStoneName, LocalDate.parse(immunizationDate));
+                    milestoneFulfilled = true;
                 }
             }
         }
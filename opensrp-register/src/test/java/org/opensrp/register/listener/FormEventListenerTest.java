@@ -47,7 +47,7 @@ public class FormEventListenerTest {
 
         listener.submitForms(new MotechEvent(OpenSRPEvent.FORM_SUBMISSION, mapOf("data", (Object) new Gson().toJson(formSubmissions))));
 
-        verify(formSubmissionService).submit(formSubmissions);
+        verify(formSubmissionService).bulkSubmit(formSubmissions);
     }
 
     @Test
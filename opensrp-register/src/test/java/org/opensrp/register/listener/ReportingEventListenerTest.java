@@ -1,7 +1,6 @@
 package org.opensrp.register.listener;
 
 import static java.util.Arrays.asList;
-import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyList;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.times;
@@ -26,6 +25,7 @@ import org.opensrp.common.domain.ReportingData;
 import org.opensrp.common.util.HttpAgent;
 import org.opensrp.common.util.HttpResponse;
 import org.opensrp.register.service.reporting.ANMReportingService;
+import org.opensrp.register.service.reporting.ReportOutbox;
 
 import com.google.gson.Gson;
 
@@ -34,24 +34,25 @@ public class ReportingEventListenerTest {
     private HttpAgent agent;
     @Mock
     private ANMReportingService anmReportingService;
+    @Mock
+    private ReportOutbox reportOutbox;
 
     private ReportingEventListener listener;
 
     @Before
     public void setUp() throws Exception {
         initMocks(this);
-        listener = new ReportingEventListener(anmReportingService, agent, "http://drishti");
+        listener = new ReportingEventListener(anmReportingService, agent, reportOutbox, "http://drishti");
     }
 
     @Test
     public void shouldSubmitReportingData() throws Exception {
         Map<String, Object> data = new HashMap<>();
         data.put("data", new ReportingData("Boo").with("abc", "def"));
-        when(agent.post(eq("http://drishti/submit"), any(String.class), eq("application/json"))).thenReturn(new HttpResponse(true, null));
 
         listener.submitReportingData(new MotechEvent("SUBJECT", data));
 
-        verify(agent).post("http://drishti/submit", "{\"type\":\"Boo\",\"data\":{\"abc\":\"def\"}}", "application/json");
+        verify(reportOutbox).add("submit", "{\"type\":\"Boo\",\"data\":{\"abc\":\"def\"}}");
     }
 
     @Test
@@ -63,13 +64,11 @@ public class ReportingEventListenerTest {
                 .withStartDate("2013-01-26")
                 .withEndDate("2013-02-25");
         data.put("data", dataRequest);
-        when(agent.post(eq("http://drishti/update"), any(String.class), eq("application/json"))).thenReturn(new HttpResponse(true, null));
 
         listener.updateReportingData(new MotechEvent("SUBJECT", data));
 
-        verify(agent).post("http://drishti/update",
-                "{\"startDate\":\"2013-01-26\",\"endDate\":\"2013-02-25\",\"type\":\"Boo\",\"reportingData\":[{\"type\":\"Boo\",\"data\":{\"abc\":\"def\"}}]}",
-                "application/json");
+        verify(reportOutbox).add("update",
+                "{\"startDate\":\"2013-01-26\",\"endDate\":\"2013-02-25\",\"type\":\"Boo\",\"reportingData\":[{\"type\":\"Boo\",\"data\":{\"abc\":\"def\"}}]}");
     }
 
     @Test
@@ -124,10 +123,16 @@ public class ReportingEventListenerTest {
         ReportDataDeleteRequest dataRequest = new ReportDataDeleteRequest().withType("Boo")
                 .withDristhiEntityId("entity id 1");
         data.put("data", dataRequest);
-        when(agent.post(eq("http://drishti/delete"), any(String.class), eq("application/json"))).thenReturn(new HttpResponse(true, null));
 
         listener.deleteReportingData(new MotechEvent("SUBJECT", data));
 
-        verify(agent).post("http://drishti/delete", "{\"type\":\"Boo\",\"dristhiEntityId\":\"entity id 1\"}", "application/json");
+        verify(reportOutbox).add("delete", "{\"type\":\"Boo\",\"dristhiEntityId\":\"entity id 1\"}");
+    }
+
+    @Test
+    public void shouldDeliverStoredReportingDataOnSchedule() throws Exception {
+        listener.deliverReportingData(new MotechEvent("SUBJECT", new HashMap<String, Object>()));
+
+        verify(reportOutbox).drain();
     }
 }
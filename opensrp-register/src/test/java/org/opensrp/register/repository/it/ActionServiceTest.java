@@ -2,6 +2,13 @@ package org.opensrp.register.repository.it;
 
 import static java.util.Arrays.asList;
 import static junit.framework.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
@@ -11,12 +18,16 @@ import static org.opensrp.dto.BeneficiaryType.child;
 import static org.opensrp.dto.BeneficiaryType.ec;
 import static org.opensrp.dto.BeneficiaryType.mother;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import org.ektorp.DocumentOperationResult;
 import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.opensrp.dto.ActionData;
 import org.opensrp.dto.MonthSummaryDatum;
@@ -155,4 +166,94 @@ public class ActionServiceTest {
 
         verify(allActions).deleteAllByTarget("report");
     }
+
+    @Test
+    public void shouldSaveBufferedAlertsInBulkWhenBufferIsFull() {
+        ActionService bufferedService = new ActionService(allActions, 2, 0);
+        DateTime dueDate = DateTime.now().minusDays(1);
+        DateTime expiryDate = dueDate.plusWeeks(2);
+
+        bufferedService.alertForBeneficiary(mother, "Case X", "ANM 1", "Ante Natal Care - Normal", "ANC 1", normal, dueDate, expiryDate);
+        verify(allActions, never()).addOrUpdateAlerts(anyListOf(Action.class));
+
+        bufferedService.alertForBeneficiary(child, "Case Y", "ANM 1", "BCG", "bcg", urgent, dueDate, expiryDate);
+
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        verify(allActions).addOrUpdateAlerts(captor.capture());
+        verify(allActions, never()).addOrUpdateAlert(any(Action.class));
+        List<Action> alerts = captor.getValue();
+        assertEquals(2, alerts.size());
+        assertEquals("Case X", alerts.get(0).caseId());
+        assertEquals("Case Y", alerts.get(1).caseId());
+    }
+
+    @Test
+    public void shouldFlushBufferedAlertsBeforeMarkingAlertsInactive() {
+        ActionService bufferedService = new ActionService(allActions, 10, 0);
+        DateTime dueDate = DateTime.now().minusDays(1);
+
+        bufferedService.alertForBeneficiary(mother, "Case X", "ANM 1", "Schedule 1", "ANC 1", normal, dueDate, dueDate.plusWeeks(2));
+        bufferedService.markAlertAsInactive("ANM 1", "Case X", "Schedule 1");
+
+        InOrder inOrder = inOrder(allActions);
+        inOrder.verify(allActions).addOrUpdateAlerts(anyListOf(Action.class));
+        inOrder.verify(allActions).markAlertAsInactiveFor("ANM 1", "Case X", "Schedule 1");
+    }
+
+    @Test
+    public void shouldKeepBufferedAlertsWhenSavingThemFails() {
+        ActionService bufferedService = new ActionService(allActions, 10, 0);
+        DateTime dueDate = DateTime.now().minusDays(1);
+        bufferedService.alertForBeneficiary(mother, "Case X", "ANM 1", "Schedule 1", "ANC 1", normal, dueDate, dueDate.plusWeeks(2));
+        when(allActions.addOrUpdateAlerts(anyListOf(Action.class))).thenThrow(new IllegalStateException("CouchDB down"));
+
+        try {
+            bufferedService.flushAlerts();
+            fail("expected the failed save to be reported");
+        } catch (IllegalStateException expected) {
+        }
+        doReturn(new ArrayList<DocumentOperationResult>()).when(allActions).addOrUpdateAlerts(anyListOf(Action.class));
+        bufferedService.flushAlerts();
+
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        verify(allActions, times(2)).addOrUpdateAlerts(captor.capture());
+        assertEquals(1, captor.getValue().size());
+        assertEquals("Case X", ((Action) captor.getValue().get(0)).caseId());
+    }
+
+    @Test
+    public void shouldRejectNewAlertsWhenTheBufferIsFullOfAlertsThatCouldNotBeSaved() {
+        ActionService bufferedService = new ActionService(allActions, 2, 0, 3);
+        DateTime dueDate = DateTime.now().minusDays(1);
+        when(allActions.addOrUpdateAlerts(anyListOf(Action.class))).thenThrow(new IllegalStateException("CouchDB down"));
+        for (String caseId : asList("Case 1", "Case 2", "Case 3")) {
+            bufferedService.alertForBeneficiary(mother, caseId, "ANM 1", "Schedule 1", "ANC 1", normal, dueDate, dueDate.plusWeeks(2));
+        }
+
+        try {
+            bufferedService.alertForBeneficiary(mother, "Case 4", "ANM 1", "Schedule 1", "ANC 1", normal, dueDate, dueDate.plusWeeks(2));
+            fail("expected the alert to be rejected");
+        } catch (IllegalStateException expected) {
+        }
+        doReturn(new ArrayList<DocumentOperationResult>()).when(allActions).addOrUpdateAlerts(anyListOf(Action.class));
+        bufferedService.flushAlerts();
+
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+        verify(allActions, times(4)).addOrUpdateAlerts(captor.capture());
+        assertEquals(3, captor.getValue().size());
+        assertEquals("Case 3", ((Action) captor.getValue().get(2)).caseId());
+    }
+
+    @Test
+    public void shouldFlushBufferedAlertsBeforeServingNewAlerts() {
+        ActionService bufferedService = new ActionService(allActions, 10, 0);
+        DateTime dueDate = DateTime.now().minusDays(1);
+
+        bufferedService.alertForBeneficiary(mother, "Case X", "ANM 1", "Schedule 1", "ANC 1", normal, dueDate, dueDate.plusWeeks(2));
+        bufferedService.getNewAlertsForANM("ANM 1", 0);
+
+        InOrder inOrder = inOrder(allActions);
+        inOrder.verify(allActions).addOrUpdateAlerts(anyListOf(Action.class));
+        inOrder.verify(allActions).findByANMIDAndTimeStamp("ANM 1", 0);
+    }
 }
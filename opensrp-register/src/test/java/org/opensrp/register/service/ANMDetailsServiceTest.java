@@ -16,6 +16,7 @@ import java.util.List;
 import static java.util.Arrays.asList;
 import static org.opensrp.common.util.EasyMap.mapOf;
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -27,12 +28,14 @@ public class ANMDetailsServiceTest {
     private AllMothers allMothers;
     @Mock
     private AllChildren allChildren;
+    @Mock
+    private ANMEntityCounts anmEntityCounts;
     private ANMDetailsService service;
 
     @Before
     public void setUp() throws Exception {
         initMocks(this);
-        service = new ANMDetailsService(allEligibleCouples, allMothers, allChildren);
+        service = new ANMDetailsService(allEligibleCouples, allMothers, allChildren, anmEntityCounts);
     }
 
     @Test
@@ -49,4 +52,15 @@ public class ANMDetailsServiceTest {
 
         assertEquals(new ANMDetails(asList(new ANMDetail("demo1", "demo1", null, 1, 2, 3, 4, 5))), anmDetails);
     }
+
+    @Test
+    public void shouldServeBeneficiariesCountFromEntityCountsOnceTheyAreLoaded() {
+        when(anmEntityCounts.isLoaded()).thenReturn(true);
+        when(anmEntityCounts.countsFor("demo1")).thenReturn(new int[]{1, 2, 3, 4, 5});
+
+        ANMDetails anmDetails = service.anmDetails(asList(new ANMDTO("demo1", "demo1", null)));
+
+        assertEquals(new ANMDetails(asList(new ANMDetail("demo1", "demo1", null, 1, 2, 3, 4, 5))), anmDetails);
+        verifyZeroInteractions(allEligibleCouples, allMothers, allChildren);
+    }
 }
@@ -0,0 +1,84 @@
+package org.opensrp.register.service;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.ektorp.changes.DocumentChange;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.opensrp.register.repository.AllRegisterChanges;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class ANMEntityCountsTest {
+    @Mock
+    private AllRegisterChanges allRegisterChanges;
+    private ANMEntityCounts counts;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        counts = new ANMEntityCounts(allRegisterChanges, 100);
+    }
+
+    @Test
+    public void shouldCountOpenEntitiesOfEveryANMWhenRecomputed() throws Exception {
+        when(allRegisterChanges.since(anyLong(), anyInt())).thenReturn(asList(
+                change("ec1", "{\"type\":\"EligibleCouple\",\"anmIdentifier\":\"demo1\",\"isClosed\":\"false\",\"isOutOfArea\":\"false\",\"details\":{\"currentMethod\":\"condom\"}}"),
+                change("ec2", "{\"type\":\"EligibleCouple\",\"anmIdentifier\":\"demo1\",\"isClosed\":\"false\",\"isOutOfArea\":\"false\",\"details\":{\"currentMethod\":\"none\"}}"),
+                change("ec3", "{\"type\":\"EligibleCouple\",\"anmIdentifier\":\"demo1\",\"isClosed\":\"false\",\"isOutOfArea\":\"true\",\"details\":{}}"),
+                change("mother1", "{\"type\":\"Mother\",\"anmIdentifier\":\"demo1\",\"isClosed\":\"false\",\"details\":{\"type\":\"ANC\"}}"),
+                change("mother2", "{\"type\":\"Mother\",\"anmIdentifier\":\"demo2\",\"isClosed\":\"false\",\"details\":{\"type\":\"PNC\"}}"),
+                change("mother3", "{\"type\":\"Mother\",\"anmIdentifier\":\"demo2\",\"isClosed\":\"true\",\"details\":{\"type\":\"PNC\"}}"),
+                change("child1", "{\"type\":\"Child\",\"anmIdentifier\":\"demo2\",\"isClosed\":\"false\"}")));
+
+        assertFalse(counts.isLoaded());
+        counts.recompute();
+
+        assertTrue(counts.isLoaded());
+        assertArrayEquals(new int[]{2, 1, 1, 0, 0}, counts.countsFor("demo1"));
+        assertArrayEquals(new int[]{0, 0, 0, 1, 1}, counts.countsFor("demo2"));
+        assertArrayEquals(new int[]{0, 0, 0, 0, 0}, counts.countsFor("demo3"));
+    }
+
+    @Test
+    public void shouldMoveCountsOfUpdatedAndDeletedDocumentsWhenCatchingUp() throws Exception {
+        when(allRegisterChanges.since(anyLong(), anyInt())).thenReturn(asList(
+                change("mother1", "{\"type\":\"Mother\",\"anmIdentifier\":\"demo1\",\"isClosed\":\"false\",\"details\":{\"type\":\"ANC\"}}"),
+                change("child1", "{\"type\":\"Child\",\"anmIdentifier\":\"demo1\",\"isClosed\":\"false\"}")))
+                .thenReturn(asList(
+                        change("mother1", "{\"type\":\"Mother\",\"anmIdentifier\":\"demo1\",\"isClosed\":\"false\",\"details\":{\"type\":\"PNC\"}}"),
+                        deletion("child1")))
+                .thenReturn(Collections.<DocumentChange>emptyList());
+
+        counts.catchUp();
+        assertArrayEquals(new int[]{0, 0, 1, 0, 1}, counts.countsFor("demo1"));
+
+        counts.catchUp();
+        assertArrayEquals(new int[]{0, 0, 0, 1, 0}, counts.countsFor("demo1"));
+    }
+
+    private DocumentChange change(String id, String json) throws IOException {
+        DocumentChange change = mock(DocumentChange.class);
+        when(change.getId()).thenReturn(id);
+        when(change.getDocAsNode()).thenReturn(new ObjectMapper().readTree(json));
+        return change;
+    }
+
+    private DocumentChange deletion(String id) {
+        DocumentChange change = mock(DocumentChange.class);
+        when(change.getId()).thenReturn(id);
+        when(change.isDeleted()).thenReturn(true);
+        return change;
+    }
+}
@@ -10,6 +10,7 @@ import org.mockito.Mock;
 import static java.util.Arrays.asList;
 import static org.opensrp.common.util.EasyMap.create;
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
 import org.opensrp.register.ECRegister;
@@ -77,7 +78,7 @@ public class ECRegisterServiceTest {
                                 .map()
                 );
         when(allEligibleCouples.allOpenECsForANM("anm1")).thenReturn(asList(eligibleCouple));
-        when(allMothers.findAllOpenANCByECCaseId("ecCaseId")).thenReturn(asList(mother));
+        when(allMothers.findAllOpenANCByECCaseIds(asList("ecCaseId"))).thenReturn(asList(mother));
         ECRegister expectedRegister = new ECRegister(asList(new ECRegisterEntry()
                 .withECNumber("123")
                 .withRegistrationDate("2013-01-01")
@@ -155,7 +156,7 @@ public class ECRegisterServiceTest {
                                 .map()
                 );
         when(allEligibleCouples.allOpenECsForANM("anm1")).thenReturn(asList(eligibleCouple));
-        when(allMothers.findAllOpenANCByECCaseId("ecCaseId")).thenReturn(asList(mother));
+        when(allMothers.findAllOpenANCByECCaseIds(asList("ecCaseId"))).thenReturn(asList(mother));
         ECRegister expectedRegister = new ECRegister(asList(new ECRegisterEntry()
                 .withECNumber("123")
                 .withRegistrationDate("2013-01-01")
@@ -188,4 +189,18 @@ public class ECRegisterServiceTest {
 
         assertEquals(expectedRegister, register);
     }
+
+    @Test
+    public void shouldFindPregnancyStatusOfAllECsWithOneQuery() throws Exception {
+        EligibleCouple pregnantEC = new EligibleCouple("ec 1", "1").withDetails(create("numberOfPregnancies", "1").map());
+        EligibleCouple otherEC = new EligibleCouple("ec 2", "2").withDetails(create("numberOfPregnancies", "0").map());
+        when(allEligibleCouples.allOpenECsForANM("anm1")).thenReturn(asList(pregnantEC, otherEC));
+        when(allMothers.findAllOpenANCByECCaseIds(asList("ec 1", "ec 2"))).thenReturn(asList(new Mother("mother 1", "ec 1", "thayi 1")));
+
+        ECRegister register = registerService.getRegisterForANM("anm1");
+
+        assertEquals("yes", register.ecRegisterEntries().get(0).isPregnant());
+        assertEquals("no", register.ecRegisterEntries().get(1).isPregnant());
+        verify(allMothers).findAllOpenANCByECCaseIds(asList("ec 1", "ec 2"));
+    }
 }
@@ -0,0 +1,82 @@
+package org.opensrp.register.service;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.opensrp.common.AllConstants;
+import org.opensrp.domain.EntityDetail;
+import org.opensrp.register.domain.Child;
+import org.opensrp.register.domain.EligibleCouple;
+import org.opensrp.register.domain.Mother;
+import org.opensrp.register.repository.AllChildren;
+import org.opensrp.register.repository.AllEligibleCouples;
+import org.opensrp.register.repository.AllMothers;
+
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class EntitiesServiceTest {
+    @Mock
+    private AllEligibleCouples allEligibleCouples;
+    @Mock
+    private AllMothers allMothers;
+    @Mock
+    private AllChildren allChildren;
+    private EntitiesService service;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        service = new EntitiesService(allEligibleCouples, allMothers, allChildren);
+    }
+
+    @Test
+    public void shouldJoinECNumbersOfMothersAndChildrenOfANM() {
+        when(allEligibleCouples.all("demo1")).thenReturn(asList(new EligibleCouple("ec id 1", "ec number 1").withANMIdentifier("demo1")));
+        when(allMothers.all("demo1")).thenReturn(asList(new Mother("mother id 1", "ec id 1", "thayi 1").withAnm("demo1")));
+        when(allChildren.all("demo1")).thenReturn(asList(new Child("child id 1", "mother id 1", null, null, "female").withAnm("demo1").withThayiCard("thayi 1")));
+
+        List<EntityDetail> entities = service.entities("demo1");
+
+        assertEquals(asList(
+                entity("ec id 1", "ec number 1", AllConstants.FormEntityTypes.ELIGIBLE_COUPLE_TYPE, ""),
+                entity("mother id 1", "ec number 1", AllConstants.FormEntityTypes.MOTHER_TYPE, "thayi 1"),
+                entity("child id 1", "ec number 1", AllConstants.FormEntityTypes.CHILD_TYPE, "thayi 1")), entities);
+        verify(allMothers, never()).findAll(anyListOf(String.class));
+        verify(allEligibleCouples, never()).findAll(anyListOf(String.class));
+    }
+
+    @Test
+    public void shouldFetchMothersAndECsOfOtherANMsInOneQueryPerType() {
+        when(allMothers.all("demo1")).thenReturn(asList(new Mother("mother id 1", "ec id 1", "thayi 1").withAnm("demo1")));
+        when(allChildren.all("demo1")).thenReturn(asList(
+                new Child("child id 1", "mother id 2", null, null, "female").withAnm("demo1").withThayiCard("thayi 2"),
+                new Child("child id 2", "mother id 2", null, null, "male").withAnm("demo1").withThayiCard("thayi 2")));
+        when(allMothers.findAll(asList("mother id 2"))).thenReturn(asList(new Mother("mother id 2", "ec id 2", "thayi 2").withAnm("demo2")));
+        when(allEligibleCouples.findAll(anyListOf(String.class))).thenReturn(asList(
+                new EligibleCouple("ec id 1", "ec number 1"), new EligibleCouple("ec id 2", "ec number 2")));
+
+        List<EntityDetail> entities = service.entities("demo1");
+
+        assertEquals(asList(
+                entity("mother id 1", "ec number 1", AllConstants.FormEntityTypes.MOTHER_TYPE, "thayi 1"),
+                entity("child id 1", "ec number 2", AllConstants.FormEntityTypes.CHILD_TYPE, "thayi 2"),
+                entity("child id 2", "ec number 2", AllConstants.FormEntityTypes.CHILD_TYPE, "thayi 2")), entities);
+    }
+
+    private EntityDetail entity(String entityId, String ecNumber, String entityType, String thayiCardNumber) {
+        return new EntityDetail()
+                .withEntityID(entityId)
+                .withECNumber(ecNumber)
+                .withANMIdentifier("demo1")
+                .withEntityType(entityType)
+                .withThayiCardNumber(thayiCardNumber);
+    }
+}
@@ -91,14 +91,6 @@ public class FastForwardScheduleTestBase {
         this.serviceCall = new Action() {
             @Override
             public void make(String caseId, int visitNumber, LocalDate visitDate) {
-            	if(scheduleName.equalsIgnoreCase("IFA 2") || scheduleName.equalsIgnoreCase("IFA 3")) {
-            		when(sf.isNotEnrolled("Case X", "IFA 1")).thenReturn(true);
-                    when(sf.getEnrollment("Case X", "IFA 1")).thenReturn(null);
-                }
-            	if(scheduleName.equalsIgnoreCase("IFA 3")) {
-            		when(sf.isNotEnrolled("Case X", "IFA 2")).thenReturn(true);
-                    when(sf.getEnrollment("Case X", "IFA 2")).thenReturn(null);
-            	}
                 schedulesService.ifaTabletsGiven(caseId, "ANM 1", numberOfIFATabletsGiven, visitDate.toString());
             }
         };
@@ -123,7 +115,7 @@ public class FastForwardScheduleTestBase {
     public void willFulfillFor(String... expectedVisitCodes) {
         EnrollmentRecord recordForNextMilestone = enrollmentRecord(scheduleName, expectedNextMilestone);
 
-        when(sf.getEnrollment("Case X", scheduleName)).thenReturn(recordForNextMilestone);
+        when(sf.findActiveEnrollments("Case X")).thenReturn(Arrays.asList(recordForNextMilestone));
 
         LocalDate visitDate = today();
 
@@ -140,8 +132,7 @@ public class FastForwardScheduleTestBase {
 
     private void verifyAllActionInteractions(List<String> expectedVisitCodes) {
         if (expectedVisitCodes.isEmpty()) {
-        	verify(sf, atMost(1)).isNotEnrolled("Case X", scheduleName);
-        	verify(sf, atMost(1)).getEnrollment("Case X", scheduleName);
+        	verify(sf, atMost(1)).findActiveEnrollments("Case X");
             verifyZeroInteractions(sf);
         }
         for (String visitCode : expectedVisitCodes) {
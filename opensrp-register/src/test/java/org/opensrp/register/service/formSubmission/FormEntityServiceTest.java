@@ -1,6 +1,14 @@
 package org.opensrp.register.service.formSubmission;
 
 import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -13,8 +21,10 @@ import static org.opensrp.common.AllConstants.Form.INSTANCE_ID;
 import static org.opensrp.common.AllConstants.Form.SERVER_VERSION;
 import static org.opensrp.common.util.EasyMap.create;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InOrder;
@@ -24,8 +34,10 @@ import org.opensrp.domain.FormExportToken;
 import org.opensrp.form.domain.FormSubmission;
 import org.opensrp.register.util.FormSubmissionBuilder;
 import org.opensrp.repository.AllFormExportTokens;
+import org.opensrp.repository.FormDataRepository;
 import org.opensrp.service.formSubmission.FormEntityService;
 import org.opensrp.service.formSubmission.FormSubmissionRouter;
+import org.opensrp.service.formSubmission.ZiggyFileLoader;
 import org.opensrp.service.formSubmission.ZiggyService;
 
 import com.google.gson.Gson;
@@ -38,6 +50,10 @@ public class FormEntityServiceTest {
     private FormSubmissionRouter formSubmissionRouter;
     @Mock
     private AllFormExportTokens allFormExportTokens;
+    @Mock
+    private ZiggyFileLoader ziggyFileLoader;
+    @Mock
+    private FormDataRepository formDataRepository;
 
     private FormEntityService submissionService;
 
@@ -47,6 +63,11 @@ public class FormEntityServiceTest {
         submissionService = new FormEntityService(ziggyService, allFormExportTokens);
     }
 
+    @After
+    public void tearDown() {
+        submissionService.shutdown();
+    }
+
     @Test
     public void shouldSortAllSubmissionsAndSaveEachOne() throws Exception {
         long baseTimeStamp = DateUtil.now().getMillis();
@@ -71,4 +92,92 @@ public class FormEntityServiceTest {
         inOrder.verify(allFormExportTokens).update(formExportToken.withVersion(3L));
         verifyNoMoreInteractions(ziggyService);
     }
+
+    @Test
+    public void shouldSaveSubmissionsOfDifferentEntitiesInParallelAndKeepOrderWithinAnEntity() throws Exception {
+        long baseTimeStamp = DateUtil.now().getMillis();
+        FormSubmission firstSubmissionOfEntity1 = FormSubmissionBuilder.create().withInstanceId("instance id 1").withEntityId("entity id 1").withTimeStamp(baseTimeStamp).withServerVersion(1L).build();
+        FormSubmission submissionOfEntity2 = FormSubmissionBuilder.create().withInstanceId("instance id 2").withEntityId("entity id 2").withTimeStamp(baseTimeStamp).withServerVersion(2L).build();
+        FormSubmission secondSubmissionOfEntity1 = FormSubmissionBuilder.create().withInstanceId("instance id 3").withEntityId("entity id 1").withTimeStamp(baseTimeStamp).withServerVersion(3L).build();
+        List<FormSubmission> formSubmissions = new ArrayList<>(asList(secondSubmissionOfEntity1, submissionOfEntity2, firstSubmissionOfEntity1));
+        FormExportToken formExportToken = new FormExportToken(0L);
+        when(allFormExportTokens.getAll()).thenReturn(asList(formExportToken));
+        when(ziggyService.poolSize()).thenReturn(2);
+
+        submissionService.process(formSubmissions);
+
+        InOrder inOrder = inOrder(ziggyService);
+        inOrder.verify(ziggyService).saveForm(paramsFor(firstSubmissionOfEntity1), new Gson().toJson(firstSubmissionOfEntity1.instance()));
+        inOrder.verify(ziggyService).saveForm(paramsFor(secondSubmissionOfEntity1), new Gson().toJson(secondSubmissionOfEntity1.instance()));
+        verify(ziggyService, times(3)).saveForm(anyString(), anyString());
+        assertEquals(3L, formExportToken.getVersion());
+    }
+
+    @Test
+    public void shouldStopSavingAnEntityAfterAFailureAndNotExportPastIt() throws Exception {
+        long baseTimeStamp = DateUtil.now().getMillis();
+        FormSubmission firstSubmissionOfEntity1 = FormSubmissionBuilder.create().withInstanceId("instance id 1").withEntityId("entity id 1").withTimeStamp(baseTimeStamp).withServerVersion(1L).build();
+        FormSubmission submissionOfEntity2 = FormSubmissionBuilder.create().withInstanceId("instance id 2").withEntityId("entity id 2").withTimeStamp(baseTimeStamp).withServerVersion(2L).build();
+        FormSubmission secondSubmissionOfEntity1 = FormSubmissionBuilder.create().withInstanceId("instance id 3").withEntityId("entity id 1").withTimeStamp(baseTimeStamp).withServerVersion(3L).build();
+        List<FormSubmission> formSubmissions = new ArrayList<>(asList(secondSubmissionOfEntity1, submissionOfEntity2, firstSubmissionOfEntity1));
+        FormExportToken formExportToken = new FormExportToken(0L);
+        when(allFormExportTokens.getAll()).thenReturn(asList(formExportToken));
+        when(ziggyService.poolSize()).thenReturn(2);
+        doThrow(new RuntimeException("Ziggy failed")).when(ziggyService).saveForm(paramsFor(firstSubmissionOfEntity1), new Gson().toJson(firstSubmissionOfEntity1.instance()));
+
+        try {
+            submissionService.process(formSubmissions);
+            fail("Expected the failure to save a form to be rethrown");
+        } catch (RuntimeException e) {
+            assertEquals("Ziggy failed", e.getMessage());
+        }
+
+        verify(ziggyService).saveForm(paramsFor(submissionOfEntity2), new Gson().toJson(submissionOfEntity2.instance()));
+        verify(ziggyService, never()).saveForm(paramsFor(secondSubmissionOfEntity1), new Gson().toJson(secondSubmissionOfEntity1.instance()));
+        assertEquals(0L, formExportToken.getVersion());
+    }
+
+    @Test
+    public void shouldNotExportPastAFormThatZiggyFailedToSave() throws Exception {
+        long baseTimeStamp = DateUtil.now().getMillis();
+        FormSubmission firstSubmissionOfEntity1 = FormSubmissionBuilder.create().withInstanceId("instance id 1").withEntityId("entity id 1").withTimeStamp(baseTimeStamp).withServerVersion(1L).build();
+        FormSubmission submissionOfEntity2 = FormSubmissionBuilder.create().withInstanceId("instance id 2").withEntityId("entity id 2").withTimeStamp(baseTimeStamp).withServerVersion(2L).build();
+        FormSubmission secondSubmissionOfEntity1 = FormSubmissionBuilder.create().withInstanceId("instance id 3").withEntityId("entity id 1").withTimeStamp(baseTimeStamp).withServerVersion(3L).build();
+        List<FormSubmission> formSubmissions = new ArrayList<>(asList(secondSubmissionOfEntity1, submissionOfEntity2, firstSubmissionOfEntity1));
+        FormExportToken formExportToken = new FormExportToken(0L);
+        when(allFormExportTokens.getAll()).thenReturn(asList(formExportToken));
+        when(ziggyFileLoader.getJSFiles()).thenReturn("var require = function (modules, callback) {\n" +
+                "    callback({createOrUpdateEntity: function (params, formInstance) {\n" +
+                "        formDataRepositoryContext.saveEntity(String(params), String(formInstance));\n" +
+                "    }});\n" +
+                "};");
+        when(formDataRepository.saveEntity(contains("instance id 1"), anyString())).thenThrow(new RuntimeException("Could not save entity"));
+        FormEntityService service = new FormEntityService(new ZiggyService(ziggyFileLoader, formDataRepository, formSubmissionRouter, 2), allFormExportTokens);
+
+        try {
+            service.process(formSubmissions);
+            fail("Expected the failure to save a form to be rethrown");
+        } catch (RuntimeException e) {
+            assertEquals("Could not save entity", rootCauseOf(e).getMessage());
+        } finally {
+            service.shutdown();
+        }
+
+        verify(formDataRepository).saveEntity(contains("instance id 2"), anyString());
+        verify(formDataRepository, never()).saveEntity(contains("instance id 3"), anyString());
+        assertEquals(0L, formExportToken.getVersion());
+    }
+
+    private Throwable rootCauseOf(Throwable throwable) {
+        while (throwable.getCause() != null) {
+            throwable = throwable.getCause();
+        }
+        return throwable;
+    }
+
+    private String paramsFor(FormSubmission submission) {
+        return new Gson().toJson(create(ANM_ID, submission.anmId()).put(INSTANCE_ID, submission.instanceId()).put(ENTITY_ID, submission.entityId())
+                .put(FORM_NAME, submission.formName()).put(CLIENT_VERSION, String.valueOf(submission.clientVersion()))
+                .put(SERVER_VERSION, String.valueOf(submission.serverVersion())).map());
+    }
 }
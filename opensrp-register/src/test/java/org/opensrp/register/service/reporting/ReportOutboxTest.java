@@ -0,0 +1,187 @@
+package org.opensrp.register.service.reporting;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ektorp.DocumentOperationResult;
+import org.mockito.Mock;
+import org.opensrp.common.util.DateUtil;
+import org.opensrp.common.util.HttpAgent;
+import org.opensrp.common.util.HttpResponse;
+import org.opensrp.register.domain.ReportOutboxEntry;
+import org.opensrp.register.repository.AllReportOutboxEntries;
+
+import java.util.Collections;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class ReportOutboxTest {
+    @Mock
+    private AllReportOutboxEntries allReportOutboxEntries;
+    @Mock
+    private HttpAgent httpAgent;
+
+    private ReportOutbox reportOutbox;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        reportOutbox = new ReportOutbox(allReportOutboxEntries, httpAgent, "http://drishti", 2, 2, 3, 30, 60);
+        when(httpAgent.post(anyString(), anyString(), anyString())).thenReturn(new HttpResponse(true, null));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        reportOutbox.shutdown();
+    }
+
+    @Test
+    public void shouldStoreReportsInTheOrderTheyAreAdded() throws Exception {
+        reportOutbox.add("submit", "{\"id\":1}");
+
+        verify(allReportOutboxEntries).add(any(ReportOutboxEntry.class));
+        verify(httpAgent, never()).post(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    public void shouldPostConsecutiveSubmissionsInBatchesAndOtherReportsOnTheirOwn() throws Exception {
+        ReportOutboxEntry first = entry("submit", "{\"id\":1}");
+        ReportOutboxEntry second = entry("submit", "{\"id\":2}");
+        ReportOutboxEntry third = entry("submit", "{\"id\":3}");
+        ReportOutboxEntry update = entry("update", "{\"id\":4}");
+        when(allReportOutboxEntries.findPending(4)).thenReturn(asList(first, second, third, update));
+
+        int delivered = reportOutbox.drain();
+
+        assertEquals(4, delivered);
+        verify(httpAgent).post("http://drishti/submit-batch", "[{\"id\":1},{\"id\":2}]", "application/json");
+        verify(httpAgent).post("http://drishti/submit-batch", "[{\"id\":3}]", "application/json");
+        verify(httpAgent).post("http://drishti/update", "{\"id\":4}", "application/json");
+        verify(allReportOutboxEntries).removeAll(asList(first, second));
+        verify(allReportOutboxEntries).removeAll(asList(third));
+        verify(allReportOutboxEntries).removeAll(asList(update));
+    }
+
+    @Test
+    public void shouldMarkFailedReportForRetryAndHoldBackTheReportsAfterIt() throws Exception {
+        ReportOutboxEntry delete = entry("delete", "{\"id\":1}");
+        ReportOutboxEntry submit = entry("submit", "{\"id\":2}");
+        when(allReportOutboxEntries.findPending(4)).thenReturn(asList(delete, submit));
+        when(httpAgent.post(eq("http://drishti/delete"), anyString(), anyString())).thenReturn(new HttpResponse(false, "unavailable"));
+
+        int delivered = reportOutbox.drain();
+
+        assertEquals(0, delivered);
+        assertEquals(1, delete.getAttempts());
+        assertFalse(delete.isFailed());
+        assertTrue(delete.getNextAttemptAt() >= DateUtil.millis() + 30000);
+        verify(allReportOutboxEntries).updateAll(asList(delete));
+        verify(httpAgent, never()).post(eq("http://drishti/submit-batch"), anyString(), anyString());
+        verify(allReportOutboxEntries, never()).removeAll(anyList());
+    }
+
+    @Test
+    public void shouldGiveUpOnReportAfterMaxAttemptsAndDeliverTheRest() throws Exception {
+        ReportOutboxEntry delete = entry("delete", "{\"id\":1}");
+        delete.markAttemptFailed("error", 0, 3).markAttemptFailed("error", 0, 3);
+        ReportOutboxEntry submit = entry("submit", "{\"id\":2}");
+        when(allReportOutboxEntries.findPending(4)).thenReturn(asList(delete, submit));
+        when(httpAgent.post(eq("http://drishti/delete"), anyString(), anyString())).thenReturn(new HttpResponse(false, "unavailable"));
+
+        int delivered = reportOutbox.drain();
+
+        assertEquals(1, delivered);
+        assertTrue(delete.isFailed());
+        verify(allReportOutboxEntries).updateAll(asList(delete));
+        verify(httpAgent).post("http://drishti/submit-batch", "[{\"id\":2}]", "application/json");
+    }
+
+    @Test
+    public void shouldSplitARejectedBatchAndRetryOnlyTheReportItRejects() throws Exception {
+        ReportOutbox batchingOutbox = new ReportOutbox(allReportOutboxEntries, httpAgent, "http://drishti", 4, 1, 3, 30, 60);
+        ReportOutboxEntry first = entry("submit", "{\"id\":1}");
+        ReportOutboxEntry second = entry("submit", "{\"id\":2}");
+        ReportOutboxEntry malformed = entry("submit", "{\"id\":3}");
+        ReportOutboxEntry fourth = entry("submit", "{\"id\":4}");
+        when(allReportOutboxEntries.findPending(4)).thenReturn(asList(first, second, malformed, fourth));
+        when(httpAgent.post(eq("http://drishti/submit-batch"), contains("{\"id\":3}"), anyString())).thenReturn(new HttpResponse(false, "bad report", 400));
+
+        try {
+            assertEquals(3, batchingOutbox.drain());
+        } finally {
+            batchingOutbox.shutdown();
+        }
+
+        verify(httpAgent).post("http://drishti/submit-batch", "[{\"id\":1},{\"id\":2},{\"id\":3},{\"id\":4}]", "application/json");
+        verify(httpAgent).post("http://drishti/submit-batch", "[{\"id\":3},{\"id\":4}]", "application/json");
+        verify(allReportOutboxEntries).removeAll(asList(first, second));
+        verify(allReportOutboxEntries).removeAll(asList(fourth));
+        verify(allReportOutboxEntries).updateAll(asList(malformed));
+        assertEquals(1, malformed.getAttempts());
+        assertEquals(0, fourth.getAttempts());
+        assertEquals(0, first.getAttempts());
+    }
+
+    @Test
+    public void shouldNotDeliverReportsAfterOneThatIsNotDueYet() throws Exception {
+        ReportOutboxEntry update = entry("update", "{\"id\":1}");
+        update.markAttemptFailed("error", DateUtil.millis() + 60000, 3);
+        ReportOutboxEntry submit = entry("submit", "{\"id\":2}");
+        when(allReportOutboxEntries.findPending(4)).thenReturn(asList(update, submit));
+
+        int delivered = reportOutbox.drain();
+
+        assertEquals(0, delivered);
+        verify(httpAgent, never()).post(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    public void shouldNotPostAgainWhenRemovingDeliveredReportsFails() throws Exception {
+        ReportOutboxEntry submit = entry("submit", "{\"id\":1}");
+        submit.setId("entry-1");
+        when(allReportOutboxEntries.findPending(4)).thenReturn(asList(submit));
+        when(allReportOutboxEntries.removeAll(asList(submit)))
+                .thenThrow(new RuntimeException("couch unavailable"))
+                .thenReturn(Collections.<DocumentOperationResult>emptyList());
+
+        assertEquals(1, reportOutbox.drain());
+        assertEquals(0, reportOutbox.drain());
+
+        verify(httpAgent, times(1)).post("http://drishti/submit-batch", "[{\"id\":1}]", "application/json");
+        verify(allReportOutboxEntries, times(2)).removeAll(asList(submit));
+    }
+
+    @Test
+    public void shouldPutReportsGivenUpOnBackInTheOutboxAfterTheRedriveInterval() throws Exception {
+        ReportOutboxEntry delete = entry("delete", "{\"id\":1}");
+        delete.markAttemptFailed("error", 0, 3).markAttemptFailed("error", 0, 3).markAttemptFailed("error", 0, 3);
+        when(allReportOutboxEntries.findFailedBefore(anyLong(), eq(2))).thenReturn(asList(delete));
+
+        long now = DateUtil.millis();
+        assertEquals(1, reportOutbox.redriveFailed(now));
+
+        assertFalse(delete.isFailed());
+        assertEquals(0, delete.getAttempts());
+        assertEquals(now, delete.getNextAttemptAt());
+        verify(allReportOutboxEntries).findFailedBefore(now - 60 * 60 * 1000L, 2);
+        verify(allReportOutboxEntries).updateAll(asList(delete));
+    }
+
+    private ReportOutboxEntry entry(String action, String payload) {
+        return new ReportOutboxEntry(action, payload, 0);
+    }
+}
@@ -19,6 +19,7 @@ import static org.powermock.api.mockito.PowerMockito.verifyNoMoreInteractions;
 import static org.powermock.api.mockito.PowerMockito.verifyZeroInteractions;
 import static org.powermock.api.mockito.PowerMockito.when;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.joda.time.LocalDate;
@@ -140,8 +141,7 @@ public class ANCSchedulesServiceTest extends BaseUnitTest {
     @Test
     public void shouldEnrollMotherInTT2ScheduleIfTT1IsProvided() throws Exception {
         fakeIt(parse("2012-01-01"));
-        when(scheduler.getEnrollment("entity id 1", "TT 1")).thenReturn(
-                new EnrollmentRecord("entity id 1", "TT 1", "TT 1", null, null, null, null, null, null, null));
+        givenActiveEnrollmentsIn("entity id 1", "TT 1");
 
         ancSchedulesService.ttVisitHasHappened("entity id 1", "ANM 1", "tt1", "2012-01-01");
 
@@ -173,11 +173,24 @@ public class ANCSchedulesServiceTest extends BaseUnitTest {
 
     @Test
     public void shouldNotFulfillANCIfANCScheduleIsAlreadyOver() throws Exception {
-        when(scheduler.isNotEnrolled("Entity X", SCHEDULE_ANC)).thenReturn(true);
-        when(scheduler.getEnrollment("Entity X", SCHEDULE_ANC)).thenReturn(null);
+        givenActiveEnrollmentsIn("Entity X");
 
         ancSchedulesService.ancVisitHasHappened("Entity X", "ANM 1", 2, "2012-01-23");
 
+        verify(scheduler).findActiveEnrollments("Entity X");
+        verifyNoMoreInteractions(scheduler);
+    }
+
+    @Test
+    public void shouldStopFastForwardingANCOnceItsLastMilestoneIsFulfilled() throws Exception {
+        when(scheduler.findActiveEnrollments("Entity X")).thenReturn(asList(
+                new EnrollmentRecord("Entity X", SCHEDULE_ANC, "ANC 4", null, null, null, null, null, null, null)));
+        when(scheduler.isNotEnrolled("Entity X", SCHEDULE_ANC)).thenReturn(true);
+
+        ancSchedulesService.ancVisitHasHappened("Entity X", "ANM 1", 5, "2012-01-23");
+
+        verify(scheduler).findActiveEnrollments("Entity X");
+        verify(scheduler).fullfillMilestoneAndCloseAlert("Entity X", "ANM 1", SCHEDULE_ANC, "ANC 4", parse("2012-01-23"));
         verify(scheduler).isNotEnrolled("Entity X", SCHEDULE_ANC);
         verifyNoMoreInteractions(scheduler);
     }
@@ -206,8 +219,7 @@ public class ANCSchedulesServiceTest extends BaseUnitTest {
 
     @Test
     public void shouldFulfillHbTest1WhenHbTestIsDone() {
-        when(scheduler.getEnrollment("Case X", "Hb Test 1"))
-                .thenReturn(new EnrollmentRecord("Case X", "Hb Test 1", "HB Test 1", null, null, null, null, null, null, null));
+        givenActiveEnrollmentsIn("Case X", "Hb Test 1");
 
         ancSchedulesService.hbTestDone("Case X", "ANM 1", "2013-01-01", null, parse("2012-09-01"));
 
@@ -216,8 +228,7 @@ public class ANCSchedulesServiceTest extends BaseUnitTest {
 
     @Test
     public void shouldEnrollANCToHbFollowupTestWhenHbTestIsDoneAndSheIsAnaemic() {
-        when(scheduler.getEnrollment("Case X", "Hb Test 1"))
-                .thenReturn(new EnrollmentRecord("Case X", "Hb Test 1", "HB Test 1", null, null, null, null, null, null, null));
+        givenActiveEnrollmentsIn("Case X", "Hb Test 1");
 
         ancSchedulesService.hbTestDone("Case X", "ANM 1", "2013-01-01", "Anaemic", null);
 
@@ -226,8 +237,7 @@ public class ANCSchedulesServiceTest extends BaseUnitTest {
 
     @Test
     public void shouldEnrollANCToHbTest2WhenHbTestIsDoneAndSheIsNotAnaemic() {
-        when(scheduler.getEnrollment("Case X", "Hb Test 1"))
-                .thenReturn(new EnrollmentRecord("Case X", "Hb Test 1", "HB Test 1", null, null, null, null, null, null, null));
+        givenActiveEnrollmentsIn("Case X", "Hb Test 1");
 
         ancSchedulesService.hbTestDone("Case X", "ANM 1", "2013-01-01", null, parse("2012-09-01"));
 
@@ -236,10 +246,7 @@ public class ANCSchedulesServiceTest extends BaseUnitTest {
 
     @Test
     public void shouldFulfillHbFollowupTestWhenHbTestIsDone() {
-        when(scheduler.isNotEnrolled("Case X", "Hb Test 1")).thenReturn(true);
-        when(scheduler.getEnrollment("Case X", "Hb Test 1")).thenReturn(null);
-        when(scheduler.getEnrollment("Case X", "Hb Followup Test"))
-                .thenReturn(new EnrollmentRecord("Case X", "Hb Followup Test", "Hb Followup Test", null, null, null, null, null, null, null));
+        givenActiveEnrollmentsIn("Case X", "Hb Followup Test");
 
         ancSchedulesService.hbTestDone("Case X", "ANM 1", "2013-01-01", "Anaemic", parse("2012-09-01"));
 
@@ -248,13 +255,7 @@ public class ANCSchedulesServiceTest extends BaseUnitTest {
 
     @Test
     public void shouldFulfillHbTest2WhenHbTestIsDoneAndFollowupIsFulfilledAndDateIs28WeeksAfterLMP() {
-        when(scheduler.isNotEnrolled("Case X", "Hb Test 1")).thenReturn(true);
-        when(scheduler.getEnrollment("Case X", "Hb Test 1")).thenReturn(null);
-        when(scheduler.isNotEnrolled("Case X", "Hb Followup Test")).thenReturn(true);
-        when(scheduler.getEnrollment("Case X", "Hb Followup Test"))
-                .thenReturn(new EnrollmentRecord("Case X", "Hb Followup Test", "Hb Followup Test", null, null, null, null, null, null, null));
-        when(scheduler.getEnrollment("Case X", "Hb Test 2"))
-                .thenReturn(new EnrollmentRecord("Case X", "Hb Test 2", "Hb Test 2", null, null, null, null, null, null, null));
+        givenActiveEnrollmentsIn("Case X", "Hb Followup Test", "Hb Test 2");
 
         ancSchedulesService.hbTestDone("Case X", "ANM 1", "2013-04-16", "Anaemic", parse("2012-09-01"));
 
@@ -263,8 +264,7 @@ public class ANCSchedulesServiceTest extends BaseUnitTest {
 
     @Test
     public void shouldFulfillScheduleWhenDeliveryHasBeenPlanned() {
-        when(scheduler.getEnrollment("Case X", "Delivery Plan"))
-                .thenReturn(new EnrollmentRecord("Case X", "Delivery Plan", "Delivery Plan", null, null, null, null, null, null, null));
+        givenActiveEnrollmentsIn("Case X", "Delivery Plan");
 
         ancSchedulesService.deliveryHasBeenPlanned("Case X", "ANM 1", "2013-01-01");
 
@@ -273,12 +273,7 @@ public class ANCSchedulesServiceTest extends BaseUnitTest {
 
     @Test
     public void shouldEnrollToHbTest2WhenHbTestIsDoneAndFollowupIsFulfilledAndDateIsNot28WeeksAfterLMP() {
-        when(scheduler.isNotEnrolled("Case X", "Hb Test 1")).thenReturn(true);
-        when(scheduler.getEnrollment("Case X", "Hb Test 1")).thenReturn(null);
-        when(scheduler.getEnrollment("Case X", "Hb Followup Test"))
-                .thenReturn(new EnrollmentRecord("Case X", "Hb Followup Test", "Hb Followup Test", null, null, null, null, null, null, null));
-        when(scheduler.getEnrollment("Case X", "Hb Test 2"))
-                .thenReturn(new EnrollmentRecord("Case X", "Hb Test 2", "Hb Test 2", null, null, null, null, null, null, null));
+        givenActiveEnrollmentsIn("Case X", "Hb Followup Test", "Hb Test 2");
 
         ancSchedulesService.hbTestDone("Case X", "ANM 1", "2013-02-16", "Anaemic", parse("2012-09-01"));
 
@@ -288,18 +283,21 @@ public class ANCSchedulesServiceTest extends BaseUnitTest {
 
     @Test
     public void shouldFulfillHbTest2WhenHbTestIsDoneAndItsTheActiveMilestone() {
-        when(scheduler.isNotEnrolled("Case X", "Hb Test 1")).thenReturn(true);
-        when(scheduler.getEnrollment("Case X", "Hb Test 1")).thenReturn(null);
-        when(scheduler.isNotEnrolled("Case X", "Hb Followup Test")).thenReturn(true);
-        when(scheduler.getEnrollment("Case X", "Hb Followup Test")).thenReturn(null);
-        when(scheduler.getEnrollment("Case X", "Hb Test 2"))
-                .thenReturn(new EnrollmentRecord("Case X", "Hb Test 2", "Hb Test 2", null, null, null, null, null, null, null));
+        givenActiveEnrollmentsIn("Case X", "Hb Test 2");
 
         ancSchedulesService.hbTestDone("Case X", "ANM 1", "2013-04-16", "Anaemic", parse("2012-09-01"));
 
         verify(scheduler).fullfillMilestoneAndCloseAlert(eq("Case X"), eq("ANM 1"), eq("Hb Test 2"), eq("Hb Test 2"), eq(parse("2013-04-16")));
     }
 
+    private void givenActiveEnrollmentsIn(String entityId, String... scheduleNames) {
+        List<EnrollmentRecord> records = new ArrayList<>();
+        for (String scheduleName : scheduleNames) {
+            records.add(new EnrollmentRecord(entityId, scheduleName, scheduleName, null, null, null, null, null, null, null));
+        }
+        when(scheduler.findActiveEnrollments(entityId)).thenReturn(records);
+    }
+
     private void assertEnrollmentIntoMilestoneBasedOnDate(LocalDate enrollmentDate, String expectedMilestone) throws Exception {
         assertEnrollmentIntoMilestoneBasedOnDate(enrollmentDate, expectedMilestone, 1);
     }
@@ -286,11 +286,14 @@ public class ChildSchedulesServiceTest {
         private final String immunizationsDate = "2012-05-04";
        // private TaskSchedulerService scheduler;
         private List<EnrollmentRecord> allEnrollments;
+        private List<EnrollmentRecord> activeEnrollments;
+        private int fulfillmentsVerified;
 
         public TestForChildEnrollmentAndUpdate() {
         	scheduler = mock(HealthSchedulerService.class);
             childSchedulesService = new ChildSchedulesService(allChildren, scheduler);
             allEnrollments = new ArrayList<>();
+            activeEnrollments = new ArrayList<>();
         }
 
         public TestForChildEnrollmentAndUpdate givenEnrollmentIn(final String schedule, String... milestoneNames) {
@@ -299,10 +302,12 @@ public class ChildSchedulesServiceTest {
                 records.add(new EnrollmentRecord(caseId, schedule, milestoneName, null, null, null, null, null, null, null));
             }
 
-            if (records.size() > 1) {
-                when(scheduler.getEnrollment(caseId, schedule)).thenReturn(records.get(0), records.subList(1, records.size()).toArray(new EnrollmentRecord[0]));
+            activeEnrollments.add(records.get(0));
+            when(scheduler.findActiveEnrollments(caseId)).thenReturn(new ArrayList<>(activeEnrollments));
+            if (records.size() > 2) {
+                when(scheduler.getEnrollment(caseId, schedule)).thenReturn(records.get(1), records.subList(2, records.size()).toArray(new EnrollmentRecord[0]));
             } else {
-                when(scheduler.getEnrollment(caseId, schedule)).thenReturn(records.get(0));
+                when(scheduler.getEnrollment(caseId, schedule)).thenReturn(records.get(records.size() - 1));
             }
 
             when(scheduler.isNotEnrolled(eq(caseId), any(String.class))).thenAnswer(new Answer<Boolean>() {
@@ -406,13 +411,15 @@ public class ChildSchedulesServiceTest {
         }
 
         private void shouldFulfill(String expectedFulfillment, int numberOfTimes, String dateOfFulfillment, String... milestones) {
+            fulfillmentsVerified += milestones.length;
             for (String m : milestones) {
             	verify(scheduler, times(numberOfTimes)).fullfillMilestoneAndCloseAlert(eq(caseId), eq(anmId), eq(expectedFulfillment), eq(m), eq(LocalDate.parse(dateOfFulfillment)));
 			}
         }
 
         public TestForChildEnrollmentAndUpdate shouldNotEnrollAndFulfillAnythingElse() {
-            verify(scheduler, atLeastOnce()).getEnrollment(eq(caseId), any(String.class));
+            verify(scheduler, atLeastOnce()).findActiveEnrollments(caseId);
+            verify(scheduler, atMost(fulfillmentsVerified)).getEnrollment(eq(caseId), any(String.class));
         	verify(scheduler, atMost(2)).isNotEnrolled(eq(caseId), any(String.class));
             verifyNoMoreInteractions(scheduler);
 
@@ -0,0 +1,71 @@
+package org.opensrp.register.service.scheduling;
+
+import static org.joda.time.LocalDate.parse;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+import org.joda.time.Period;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.motechproject.scheduletracking.api.domain.Milestone;
+import org.motechproject.scheduletracking.api.domain.Schedule;
+import org.motechproject.scheduletracking.api.repository.AllSchedules;
+import org.opensrp.common.util.DateUtil;
+import org.opensrp.scheduler.service.ScheduleRegistry;
+
+public class ScheduleRegistryTest {
+    @Mock
+    private AllSchedules allSchedules;
+    private ScheduleRegistry scheduleRegistry;
+    private Schedule schedule;
+
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        schedule = new Schedule("my_schedule");
+        schedule.addMilestones(new Milestone("firstMilestone", weeks(1), weeks(1), weeks(1), weeks(1)));
+        schedule.addMilestones(new Milestone("secondMilestone", weeks(5), weeks(1), weeks(1), weeks(1)));
+        when(allSchedules.getByName("my_schedule")).thenReturn(schedule);
+        scheduleRegistry = new ScheduleRegistry(allSchedules);
+    }
+
+    @Test
+    public void shouldReadEachScheduleDefinitionOnlyOnce() {
+        assertSame(schedule, scheduleRegistry.getByName("my_schedule"));
+        assertSame(schedule, scheduleRegistry.getByName("my_schedule"));
+        DateUtil.fakeIt(parse("2012-01-01"));
+        scheduleRegistry.startingMilestoneName("my_schedule", parse("2012-01-01"));
+
+        verify(allSchedules, times(1)).getByName("my_schedule");
+    }
+
+    @Test
+    public void shouldFindStartingMilestoneFromReferenceDate() {
+        DateUtil.fakeIt(parse("2012-01-01"));
+        assertEquals("firstMilestone", scheduleRegistry.startingMilestoneName("my_schedule", parse("2012-01-01")));
+
+        DateUtil.fakeIt(parse("2012-02-07"));
+        assertEquals("secondMilestone", scheduleRegistry.startingMilestoneName("my_schedule", parse("2012-01-01")));
+
+        DateUtil.fakeIt(parse("2013-01-01"));
+        assertNull(scheduleRegistry.startingMilestoneName("my_schedule", parse("2012-01-01")));
+    }
+
+    @Test
+    public void shouldNotRememberSchedulesWhichDoNotExist() {
+        assertNull(scheduleRegistry.getByName("missing_schedule"));
+        assertNull(scheduleRegistry.getByName("missing_schedule"));
+
+        verify(allSchedules, times(2)).getByName("missing_schedule");
+    }
+
+    private Period weeks(int numberOfWeeks) {
+        return new Period(0, 0, numberOfWeeks, 0, 0, 0, 0, 0);
+    }
+}
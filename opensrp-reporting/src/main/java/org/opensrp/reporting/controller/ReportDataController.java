@@ -8,9 +8,11 @@ import org.opensrp.reporting.DristhiEntityIdMissingException;
 import org.opensrp.reporting.ReportDataMissingException;
 import org.opensrp.reporting.repository.ANMReportsRepository;
 import org.opensrp.reporting.repository.ServicesProvidedRepository;
+import org.opensrp.reporting.service.ReportingDataService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -23,18 +25,22 @@ import java.util.List;
 
 import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.opensrp.common.AllConstants.ReportDataParameters;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.OK;
 
 @Controller
 public class ReportDataController {
     private ServicesProvidedRepository servicesProvidedRepository;
     private ANMReportsRepository anmReportsRepository;
+    private ReportingDataService reportingDataService;
     private static final Logger logger = LoggerFactory.getLogger(ReportDataController.class);
 
     @Autowired
     public ReportDataController(ServicesProvidedRepository servicesProvidedRepository,
-                                ANMReportsRepository anmReportsRepository) {
+                                ANMReportsRepository anmReportsRepository, ReportingDataService reportingDataService) {
         this.servicesProvidedRepository = servicesProvidedRepository;
         this.anmReportsRepository = anmReportsRepository;
+        this.reportingDataService = reportingDataService;
     }
 
     @RequestMapping(value = "/report/submit", method = RequestMethod.POST)
@@ -66,6 +72,31 @@ public class ReportDataController {
         return "Success.";
     }
 
+    /**
+     * Saves a batch of reports as one unit. The body is read as an array, so that every element is bound to a
+     * ReportingData. A batch with a report of an unknown type is rejected before anything is saved.
+     */
+    @RequestMapping(headers = {"Accept=application/json"}, value = "/report/submit-batch", method = RequestMethod.POST)
+    public ResponseEntity<String> submitBatch(@RequestBody ReportingData[] reportingData) throws ReportDataMissingException {
+        logger.info(MessageFormat.format("Reporting on a batch of {0} reports", reportingData.length));
+        List<ReportingData> servicesProvided = new ArrayList<>();
+        List<ReportingData> anmReportData = new ArrayList<>();
+        for (ReportingData data : reportingData) {
+            if (ReportDataParameters.SERVICE_PROVIDED_DATA_TYPE.equals(data.type())) {
+                throwExceptionIfMandatoryDataIsNotPresentForServiceProvidedReport(data);
+                servicesProvided.add(data);
+            } else if (ReportDataParameters.ANM_REPORT_DATA_TYPE.equals(data.type())) {
+                throwExceptionIfMandatoryDataIsNotPresentForANMReport(data);
+                anmReportData.add(data);
+            } else {
+                logger.warn(MessageFormat.format("Rejecting a batch of {0} reports with unknown report type: {1}", reportingData.length, data.type()));
+                return new ResponseEntity<>("Unknown report type: " + data.type(), BAD_REQUEST);
+            }
+        }
+        reportingDataService.saveBatch(servicesProvided, anmReportData);
+        return new ResponseEntity<>("Success.", OK);
+    }
+
     @RequestMapping(headers = {"Accept=application/json"}, value = "/report/update", method = RequestMethod.POST)
     @ResponseBody
     public String updateReports(@RequestBody ReportDataUpdateRequest request) throws ReportDataMissingException {
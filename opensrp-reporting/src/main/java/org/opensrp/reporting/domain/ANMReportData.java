@@ -20,13 +20,23 @@ import java.util.Date;
                 query = "select r from ANMReportData r, ANM a, Indicator i " +
                         "where r.anm=a.id and r.indicator = i.id and a.anmIdentifier = ? and r.date >= ? and r.date < ?"),
         @NamedQuery(name = ANMReportData.FIND_BY_EXTERNAL_IDENTIFIER,
-                query = "select r from ANMReportData r where r.externalId = ?")
+                query = "select r from ANMReportData r where r.externalId = ?"),
+        @NamedQuery(name = ANMReportData.DELETE_BY_INDICATOR_FOR_MONTH,
+                query = "delete from ANMReportData r where r.indicator.id in (select i.id from Indicator i where i.indicator = ?)" +
+                        " and r.date >= ? and r.date < ?"),
+        @NamedQuery(name = ANMReportData.DELETE_BY_EXTERNAL_IDENTIFIER,
+                query = "delete from ANMReportData r where r.externalId = ?"),
+        @NamedQuery(name = ANMReportData.FIND_BY_DATE,
+                query = "select r from ANMReportData r join fetch r.anm join fetch r.indicator where r.date >= :date")
 })
 public class ANMReportData {
     public static final String FIND_BY_ANM_IDENTIFIER_AND_DATE = "find.by.anm.identifier.and.date";
     public static final String FIND_BY_ANM_IDENTIFIER_WITH_INDICATOR_FOR_MONTH = "find.by.anm.identifier.with.indicator.for.month";
     public static final String FIND_BY_ANM_IDENTIFIER_FOR_REPORTING_MONTH = "find.by.anm.identifier.for.reporting.month";
     public static final String FIND_BY_EXTERNAL_IDENTIFIER = "find.by.external.identifier";
+    public static final String FIND_BY_DATE = "find.by.date";
+    public static final String DELETE_BY_INDICATOR_FOR_MONTH = "delete.by.indicator.for.month";
+    public static final String DELETE_BY_EXTERNAL_IDENTIFIER = "delete.by.external.identifier";
 
     public String id() {
         return id.toString();
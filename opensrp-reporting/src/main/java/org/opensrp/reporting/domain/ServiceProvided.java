@@ -18,13 +18,20 @@ import java.util.Date;
                         " where r.indicator = i.id and r.serviceProvider = p.id and p.type = spt.id" +
                         " and r.date >= ? and r.date < ?"),
         @NamedQuery(name = ServiceProvided.FIND_SERVICE_PROVIDED_FOR_DRISTHI_ENTITY_ID,
-                query = "select r from ServiceProvided r where r.dristhiEntityId = ?")
+                query = "select r from ServiceProvided r where r.dristhiEntityId = ?"),
+        @NamedQuery(name = ServiceProvided.DELETE_BY_INDICATOR_FOR_MONTH,
+                query = "delete from ServiceProvided r where r.indicator.id in (select i.id from Indicator i where i.indicator = ?)" +
+                        " and r.date >= ? and r.date < ?"),
+        @NamedQuery(name = ServiceProvided.DELETE_FOR_DRISTHI_ENTITY_ID,
+                query = "delete from ServiceProvided r where r.dristhiEntityId = ?")
 })
 
 public class ServiceProvided {
     public static final String FIND_BY_ANM_IDENTIFIER_WITH_INDICATOR_FOR_MONTH = "find.service.provided.by.anm.identifier.with.indicator.for.month";
     public static final String FIND_SERVICE_PROVIDED_FOR_REPORTING_MONTH = "find.service.provided.for.reporting.month";
     public static final String FIND_SERVICE_PROVIDED_FOR_DRISTHI_ENTITY_ID = "find.service.provided.for.dristhi.entity.id";
+    public static final String DELETE_BY_INDICATOR_FOR_MONTH = "delete.service.provided.by.indicator.for.month";
+    public static final String DELETE_FOR_DRISTHI_ENTITY_ID = "delete.service.provided.for.dristhi.entity.id";
 
     @Id
     @Column(name = "id")
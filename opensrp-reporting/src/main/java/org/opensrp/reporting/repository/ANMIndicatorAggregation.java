@@ -0,0 +1,125 @@
+package org.opensrp.reporting.repository;
+
+import org.joda.time.LocalDate;
+import org.opensrp.common.domain.MonthSummary;
+import org.opensrp.common.domain.ReportMonth;
+import org.opensrp.reporting.domain.ANMReportData;
+import org.opensrp.reporting.domain.Indicator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.lang.String.valueOf;
+
+/**
+ * Month by month counts of one ANM's report data, kept as one column of counts and external ids per indicator.
+ * Every row is bucketed into its reporting month once, instead of filtering all rows for every indicator and month.
+ */
+class ANMIndicatorAggregation {
+    private final LocalDate[] monthStarts;
+    private final long[] startMillis;
+    private final long[] endMillis;
+    private final Map<String, Column> columns = new LinkedHashMap<>();
+
+    /**
+     * Aggregates over the reporting months from the start of the reporting year up to and including the month
+     * containing given date.
+     */
+    ANMIndicatorAggregation(ReportMonth reportMonth, LocalDate today) {
+        List<LocalDate> starts = new ArrayList<>();
+        for (LocalDate indexDate = new LocalDate(reportMonth.startDateOfReportingYear()); indexDate.isBefore(reportMonth.startDateOfNextReportingMonth(today)); indexDate = indexDate.plusMonths(1)) {
+            starts.add(indexDate);
+        }
+        monthStarts = starts.toArray(new LocalDate[starts.size()]);
+        startMillis = new long[monthStarts.length];
+        endMillis = new long[monthStarts.length];
+        for (int i = 0; i < monthStarts.length; i++) {
+            startMillis[i] = monthStarts[i].toDate().getTime();
+            endMillis[i] = reportMonth.endDateOfReportingMonthGivenStartDate(monthStarts[i]).toDate().getTime();
+        }
+    }
+
+    ANMIndicatorAggregation addAll(Collection<ANMReportData> reportData) {
+        for (ANMReportData data : reportData) {
+            add(data);
+        }
+        return this;
+    }
+
+    void add(ANMReportData data) {
+        int month = monthOf(data.date().getTime());
+        if (month < 0) {
+            return;
+        }
+        Indicator indicator = data.indicator();
+        Column column = columns.get(indicator.indicator());
+        if (column == null) {
+            column = new Column(indicator, monthStarts.length);
+            columns.put(indicator.indicator(), column);
+        }
+        column.counts[month]++;
+        if (column.externalIds[month] == null) {
+            column.externalIds[month] = new LinkedHashSet<>();
+        }
+        column.externalIds[month].add(data.externalId());
+    }
+
+    /**
+     * @return the indicators that have report data, in the order they were first seen
+     */
+    List<Indicator> indicators() {
+        List<Indicator> indicators = new ArrayList<>();
+        for (Column column : columns.values()) {
+            indicators.add(column.indicator);
+        }
+        return indicators;
+    }
+
+    /**
+     * @return summaries of the months of given indicator which have report data, with the progress so far
+     */
+    List<MonthSummary> monthSummaries(Indicator indicator) {
+        List<MonthSummary> monthSummaries = new ArrayList<>();
+        Column column = columns.get(indicator.indicator());
+        if (column == null) {
+            return monthSummaries;
+        }
+        int aggregatedProgress = 0;
+        for (int month = 0; month < monthStarts.length; month++) {
+            int currentProgress = column.counts[month];
+            if (currentProgress == 0) {
+                continue;
+            }
+            aggregatedProgress += currentProgress;
+            LocalDate reportingMonthEndDate = monthStarts[month].plusMonths(1);
+            monthSummaries.add(new MonthSummary(valueOf(reportingMonthEndDate.getMonthOfYear()), valueOf(reportingMonthEndDate.getYear()),
+                    valueOf(currentProgress), valueOf(aggregatedProgress), new ArrayList<>(column.externalIds[month])));
+        }
+        return monthSummaries;
+    }
+
+    private int monthOf(long date) {
+        int index = Arrays.binarySearch(startMillis, date);
+        int month = index >= 0 ? index : -index - 2;
+        return month >= 0 && date <= endMillis[month] ? month : -1;
+    }
+
+    private static class Column {
+        private final Indicator indicator;
+        private final int[] counts;
+        private final Set<String>[] externalIds;
+
+        @SuppressWarnings("unchecked")
+        Column(Indicator indicator, int months) {
+            this.indicator = indicator;
+            this.counts = new int[months];
+            this.externalIds = new Set[months];
+        }
+    }
+}
@@ -16,17 +16,23 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.annotation.PreDestroy;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-
-import static ch.lambdaj.Lambda.*;
-import static java.lang.String.valueOf;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.util.Collections.singletonList;
 import static org.opensrp.common.AllConstants.ReportDataParameters.*;
 import static org.opensrp.common.monitor.Metric.REPORTING_ANM_REPORTS_CACHE_TIME;
 import static org.opensrp.common.monitor.Metric.REPORTING_ANM_REPORTS_INSERT_TIME;
 import static org.opensrp.common.util.DateUtil.today;
-import static org.hamcrest.Matchers.*;
 
 @Repository
 public class ANMReportsRepository {
@@ -37,6 +43,7 @@ public class ANMReportsRepository {
 
     private ReadOnlyCachingRepository<ANM> cachedANMs;
     private ReadOnlyCachingRepository<Indicator> cachedIndicators;
+    private ExecutorService summaryWorkers;
 
     protected ANMReportsRepository() {
     }
@@ -52,93 +59,104 @@ public class ANMReportsRepository {
         this.reportMonth = reportMonth;
         cachedANMs = new ReadOnlyCachingRepository<>(anmRepository);
         cachedIndicators = new ReadOnlyCachingRepository<>(indicatorRepository);
+        summaryWorkers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
     }
 
+    /**
+     * Saves one row, quantity times, with the batched inserts of {@link #saveAll(List)}.
+     */
     @Transactional("anm_report")
     public void save(String anmIdentifier, String externalId, String indicator, String date, String quantity) {
-        Probe probeForCache = monitor.start(REPORTING_ANM_REPORTS_CACHE_TIME);
-        ANM anm = cachedANMs.fetch(new ANM(anmIdentifier));
-        Indicator fetchedIndicator = cachedIndicators.fetch(new Indicator(indicator));
-        monitor.end(probeForCache);
-
-        int count = getCount(quantity);
-        Probe probeForInsert = monitor.start(REPORTING_ANM_REPORTS_INSERT_TIME);
-        for (int i = 0; i < count; i++) {
-            try {
-                anmReportDataRepository.save(anm, externalId, fetchedIndicator, LocalDate.parse(date).toDate());
-            } catch (Exception e) {
-                cachedANMs.clear(anm);
-                cachedIndicators.clear(fetchedIndicator);
-            }
-        }
-        monitor.end(probeForInsert);
+        saveAll(singletonList(new ReportingData(ANM_REPORT_DATA_TYPE)
+                .with(ANM_IDENTIFIER, anmIdentifier)
+                .with(EXTERNAL_ID, externalId)
+                .with(INDICATOR, indicator)
+                .with(SERVICE_PROVIDED_DATE, date)
+                .withQuantity(quantity)));
     }
 
-    //Todo: Need to refactor
     @Transactional("anm_report")
     public List<ANMIndicatorSummary> fetchANMSummary(String anmIdentifier) {
-        List<ANMIndicatorSummary> anmIndicatorSummaries = new ArrayList<>();
-
         List<ANMReportData> allReportData = anmReportDataRepository.fetchByANMIdAndDate(anmIdentifier, reportMonth.startDateOfReportingYear());
+        ANMIndicatorAggregation aggregation = new ANMIndicatorAggregation(reportMonth, today()).addAll(allReportData);
 
-        Collection<Indicator> indicators = getDistinctIndicators(allReportData);
-        for (Indicator indicator : indicators) {
-            List<ANMReportData> allReportDataForIndicator = filterReportsByIndicator(allReportData, indicator);
-            int aggregatedProgress = 0;
-            List<MonthSummary> monthSummaries = new ArrayList<>();
-
-            for (LocalDate indexDate = new LocalDate(reportMonth.startDateOfReportingYear()); indexDate.isBefore(reportMonth.startDateOfNextReportingMonth(today())); indexDate = indexDate.plusMonths(1)) {
-                LocalDate reportingMonthEndDate = new LocalDate(indexDate).plusMonths(1);
-                List<ANMReportData> allReportDataForAMonth = filterReportsByMonth(allReportDataForIndicator, indexDate, reportMonth.endDateOfReportingMonthGivenStartDate(indexDate));
-                if (allReportDataForAMonth.size() == 0) {
-                    continue;
-                }
-
-                int currentProgress = allReportDataForAMonth.size();
-                aggregatedProgress += currentProgress;
-                List<String> externalIds = getAllExternalIds(allReportDataForAMonth);
-
-                monthSummaries.add(new MonthSummary(valueOf(reportingMonthEndDate.getMonthOfYear()), valueOf(reportingMonthEndDate.getYear()),
-                        valueOf(currentProgress), valueOf(aggregatedProgress), externalIds));
-            }
+        List<ANMIndicatorSummary> anmIndicatorSummaries = new ArrayList<>();
+        for (Indicator indicator : aggregation.indicators()) {
             AnnualTarget annualTarget = annualTargetsRepository.fetchFor(anmIdentifier, indicator, today().toDate());
             String target = annualTarget == null ? null : annualTarget.target();
-            anmIndicatorSummaries.add(new ANMIndicatorSummary(indicator.indicator(), target, monthSummaries));
+            anmIndicatorSummaries.add(new ANMIndicatorSummary(indicator.indicator(), target, aggregation.monthSummaries(indicator)));
         }
         return anmIndicatorSummaries;
     }
 
+    /**
+     * Fetches the report data and annual targets of all ANMs with one query each, and then aggregates the
+     * summaries of the ANMs in parallel.
+     */
     @Transactional("anm_report")
     public List<ANMReport> fetchAllANMsReport() {
         List<ANM> allANMs = cachedANMs.fetchAll();
-        ArrayList<ANMReport> anmReports = new ArrayList<>();
-        for (ANM anm : allANMs) {
-            anmReports.add(new ANMReport(anm.anmIdentifier(), fetchANMSummary(anm.anmIdentifier())));
+        Map<String, List<ANMReportData>> reportDataByANM = new HashMap<>();
+        for (ANMReportData data : anmReportDataRepository.fetchByDate(reportMonth.startDateOfReportingYear())) {
+            List<ANMReportData> anmReportData = reportDataByANM.get(data.anmIdentifier());
+            if (anmReportData == null) {
+                anmReportData = new ArrayList<>();
+                reportDataByANM.put(data.anmIdentifier(), anmReportData);
+            }
+            anmReportData.add(data);
         }
-        return anmReports;
-    }
-
-    private List<String> getAllExternalIds(List<ANMReportData> reportDataList) {
-        Collection<String> externalIds = selectDistinct(collect(reportDataList, on(ANMReportData.class).externalId()));
-        return new ArrayList<>(externalIds);
-    }
+        final Map<String, Map<String, String>> targetsByANM = annualTargetsRepository.fetchAllFor(today().toDate());
+        final LocalDate today = today();
 
-    private Collection<Indicator> getDistinctIndicators(List<ANMReportData> reportDataList) {
-        return selectDistinct(collect(reportDataList, on(ANMReportData.class).indicator()));
-    }
+        List<Future<ANMReport>> futures = new ArrayList<>();
+        for (ANM anm : allANMs) {
+            final String anmIdentifier = anm.anmIdentifier();
+            final List<ANMReportData> anmReportData = reportDataByANM.containsKey(anmIdentifier)
+                    ? reportDataByANM.get(anmIdentifier) : Collections.<ANMReportData>emptyList();
+            futures.add(summaryWorkers.submit(new Callable<ANMReport>() {
+                @Override
+                public ANMReport call() {
+                    return summarize(anmIdentifier, anmReportData, targetsByANM.get(anmIdentifier), today);
+                }
+            }));
+        }
 
-    private List<ANMReportData> filterReportsByMonth(List<ANMReportData> reportDataList, LocalDate startDate, LocalDate endDate) {
-        return filter(having(on(ANMReportData.class).date(), allOf(greaterThanOrEqualTo(startDate.toDate()), lessThanOrEqualTo(endDate.toDate()))), reportDataList);
+        ArrayList<ANMReport> anmReports = new ArrayList<>();
+        for (Future<ANMReport> future : futures) {
+            try {
+                anmReports.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+        return anmReports;
     }
 
-    private List<ANMReportData> filterReportsByIndicator(List<ANMReportData> reportDataList, Indicator indicator) {
-        return filter(having(on(ANMReportData.class).indicator(), equalTo(indicator)), reportDataList);
+    private ANMReport summarize(String anmIdentifier, List<ANMReportData> reportData, Map<String, String> targets, LocalDate today) {
+        ANMIndicatorAggregation aggregation = new ANMIndicatorAggregation(reportMonth, today).addAll(reportData);
+        List<ANMIndicatorSummary> anmIndicatorSummaries = new ArrayList<>();
+        for (Indicator indicator : aggregation.indicators()) {
+            String target = targets == null ? null : targets.get(indicator.indicator());
+            anmIndicatorSummaries.add(new ANMIndicatorSummary(indicator.indicator(), target, aggregation.monthSummaries(indicator)));
+        }
+        return new ANMReport(anmIdentifier, anmIndicatorSummaries);
     }
 
     private int getCount(String quantity) {
         return quantity == null ? 1 : Integer.parseInt(quantity);
     }
 
+    /**
+     * Saves all given rows with batched inserts. ANMs and indicators are looked up once per distinct value in the batch.
+     */
+    @Transactional("anm_report")
+    public void saveAll(List<ReportingData> reportingData) {
+        saveReportDataForIndicator(reportingData, null);
+    }
+
     @Transactional("anm_report")
     public void update(ReportDataUpdateRequest request) {
         anmReportDataRepository.delete(request.indicator(), request.startDate(), request.endDate());
@@ -146,8 +164,45 @@ public class ANMReportsRepository {
     }
 
     private void saveReportDataForIndicator(List<ReportingData> reportingData, String indicator) {
+        Probe probeForCache = monitor.start(REPORTING_ANM_REPORTS_CACHE_TIME);
+        Map<String, ANM> anms = new HashMap<>();
+        Map<String, Indicator> indicators = new HashMap<>();
+        List<ANMReportData> anmReportData = new ArrayList<>();
         for (ReportingData data : reportingData) {
-            save(data.get(ANM_IDENTIFIER), data.get(EXTERNAL_ID), indicator, data.get(SERVICE_PROVIDED_DATE), data.get(QUANTITY));
+            String anmIdentifier = data.get(ANM_IDENTIFIER);
+            ANM anm = anms.get(anmIdentifier);
+            if (anm == null) {
+                anm = cachedANMs.fetch(new ANM(anmIdentifier));
+                anms.put(anmIdentifier, anm);
+            }
+            String indicatorName = indicator == null ? data.get(INDICATOR) : indicator;
+            Indicator fetchedIndicator = indicators.get(indicatorName);
+            if (fetchedIndicator == null) {
+                fetchedIndicator = cachedIndicators.fetch(new Indicator(indicatorName));
+                indicators.put(indicatorName, fetchedIndicator);
+            }
+
+            ANMReportData reportData = new ANMReportData(anm, data.get(EXTERNAL_ID), fetchedIndicator,
+                    LocalDate.parse(data.get(SERVICE_PROVIDED_DATE)).toDate());
+            for (int i = getCount(data.get(QUANTITY)); i > 0; i--) {
+                anmReportData.add(reportData);
+            }
+        }
+        monitor.end(probeForCache);
+
+        Probe probeForInsert = monitor.start(REPORTING_ANM_REPORTS_INSERT_TIME);
+        try {
+            anmReportDataRepository.saveAll(anmReportData);
+        } catch (RuntimeException e) {
+            for (ANM anm : anms.values()) {
+                cachedANMs.clear(anm);
+            }
+            for (Indicator fetchedIndicator : indicators.values()) {
+                cachedIndicators.clear(fetchedIndicator);
+            }
+            throw e;
+        } finally {
+            monitor.end(probeForInsert);
         }
     }
 
@@ -160,4 +215,11 @@ public class ANMReportsRepository {
     public void delete(ReportDataDeleteRequest request) {
         anmReportDataRepository.deleteReportsForExternalId(request.dristhiEntityId());
     }
+
+    @PreDestroy
+    public void shutdown() {
+        if (summaryWorkers != null) {
+            summaryWorkers.shutdown();
+        }
+    }
 }
@@ -15,6 +15,7 @@ import static org.opensrp.reporting.domain.ANMReportData.*;
 
 @Repository
 public class AllANMReportDataRepository {
+    private static final int BATCH_SIZE = 500;
     private DataAccessTemplate dataAccessTemplate;
 
     protected AllANMReportDataRepository() {
@@ -29,16 +30,23 @@ public class AllANMReportDataRepository {
         dataAccessTemplate.save(new ANMReportData(anm, externalId, indicator, date));
     }
 
+    public void saveAll(List<ANMReportData> reportData) {
+        dataAccessTemplate.batchInsert(ANMReportData.class, reportData, BATCH_SIZE);
+    }
+
     public List<ANMReportData> fetchByANMIdAndDate(String anmIdentifier, Date date) {
         return (List<ANMReportData>) dataAccessTemplate.findByNamedQueryAndNamedParam(FIND_BY_ANM_IDENTIFIER_AND_DATE,
                 new String[]{"anmIdentifier", "date"}, new Object[]{anmIdentifier, date});
 
     }
 
+    public List<ANMReportData> fetchByDate(Date date) {
+        return (List<ANMReportData>) dataAccessTemplate.findByNamedQueryAndNamedParam(FIND_BY_DATE, "date", date);
+    }
+
     public void delete(String indicator, String startDate, String endDate) {
-        List result = dataAccessTemplate.findByNamedQuery(FIND_BY_ANM_IDENTIFIER_WITH_INDICATOR_FOR_MONTH,
-                new Object[]{indicator, LocalDate.parse(startDate).toDate(), LocalDate.parse(endDate).toDate()});
-        dataAccessTemplate.deleteAll(result);
+        dataAccessTemplate.bulkUpdateByNamedQuery(DELETE_BY_INDICATOR_FOR_MONTH,
+                indicator, LocalDate.parse(startDate).toDate(), LocalDate.parse(endDate).toDate());
     }
 
     public List getReportsFor(String anmId, String startDate, String endDate) {
@@ -51,6 +59,6 @@ public class AllANMReportDataRepository {
     }
 
     public void deleteReportsForExternalId(String externalId) {
-        dataAccessTemplate.deleteAll(getReportsForExternalId(externalId));
+        dataAccessTemplate.bulkUpdateByNamedQuery(DELETE_BY_EXTERNAL_IDENTIFIER, externalId);
     }
 }
@@ -8,8 +8,12 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Repository;
 
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.opensrp.reporting.domain.AnnualTarget.FIND_BY_ANM_AND_INDICATOR_AND_DATE;
+import static org.opensrp.reporting.domain.AnnualTarget.FIND_TARGETS_BY_DATE;
 @Repository
 public class AllAnnualTargetsRepository {
     private DataAccessTemplate dataAccessTemplate;
@@ -26,4 +30,21 @@ public class AllAnnualTargetsRepository {
         return (AnnualTarget) dataAccessTemplate.getUniqueResult(FIND_BY_ANM_AND_INDICATOR_AND_DATE,
                 new String[]{"anmIdentifier", "indicator", "reportDate"}, new Object[]{anmIdentifier, indicator.indicator(), reportDate});
     }
+
+    /**
+     * @return targets of all ANMs for given date, by ANM identifier and then by indicator
+     */
+    public Map<String, Map<String, String>> fetchAllFor(Date reportDate) {
+        List<Object[]> rows = (List<Object[]>) dataAccessTemplate.findByNamedQueryAndNamedParam(FIND_TARGETS_BY_DATE, "reportDate", reportDate);
+        Map<String, Map<String, String>> targets = new HashMap<>();
+        for (Object[] row : rows) {
+            Map<String, String> anmTargets = targets.get(row[0]);
+            if (anmTargets == null) {
+                anmTargets = new HashMap<>();
+                targets.put((String) row[0], anmTargets);
+            }
+            anmTargets.put((String) row[1], (String) row[2]);
+        }
+        return targets;
+    }
 }
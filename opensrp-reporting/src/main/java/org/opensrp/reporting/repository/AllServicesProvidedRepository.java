@@ -16,6 +16,7 @@ import java.util.List;
 
 @Repository
 public class  AllServicesProvidedRepository {
+    private static final int BATCH_SIZE = 500;
     private DataAccessTemplate dataAccessTemplate;
 
     protected AllServicesProvidedRepository() {
@@ -30,10 +31,13 @@ public class  AllServicesProvidedRepository {
         dataAccessTemplate.save(new ServiceProvided(serviceProvider, externalId, indicator, date, location, dristhiEntityId));
     }
 
+    public void saveAll(List<ServiceProvided> servicesProvided) {
+        dataAccessTemplate.batchInsert(ServiceProvided.class, servicesProvided, BATCH_SIZE);
+    }
+
     public void delete(String indicator, String startDate, String endDate) {
-        List result = dataAccessTemplate.findByNamedQuery(ServiceProvided.FIND_BY_ANM_IDENTIFIER_WITH_INDICATOR_FOR_MONTH,
+        dataAccessTemplate.bulkUpdateByNamedQuery(ServiceProvided.DELETE_BY_INDICATOR_FOR_MONTH,
                 indicator, LocalDate.parse(startDate).toDate(), LocalDate.parse(endDate).toDate());
-        dataAccessTemplate.deleteAll(result);
     }
 
     public List<ServiceProvidedReport> getNewReports(Integer token) {
@@ -55,6 +59,6 @@ public class  AllServicesProvidedRepository {
     }
 
     public void deleteReportsFor(String dristhiEntityId) {
-        dataAccessTemplate.deleteAll(getAllReportsForDristhiEntityID(dristhiEntityId));
+        dataAccessTemplate.bulkUpdateByNamedQuery(ServiceProvided.DELETE_FOR_DRISTHI_ENTITY_ID, dristhiEntityId);
     }
 }
@@ -1,12 +1,30 @@
 package org.opensrp.reporting.repository;
 
+import org.hibernate.EntityMode;
+import org.hibernate.HibernateException;
+import org.hibernate.Query;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.engine.SessionImplementor;
+import org.hibernate.jdbc.Work;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.type.Type;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Scope;
 import org.springframework.dao.support.DataAccessUtils;
+import org.springframework.orm.hibernate3.HibernateCallback;
 import org.springframework.orm.hibernate3.HibernateTemplate;
 import org.springframework.stereotype.Component;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.apache.commons.lang3.StringUtils.join;
+import static org.apache.commons.lang3.StringUtils.repeat;
+
 @Component
 @Scope(value = "prototype")
 public class DataAccessTemplate extends HibernateTemplate {
@@ -19,4 +37,81 @@ public class DataAccessTemplate extends HibernateTemplate {
     public Object getUniqueResult(String namedQueryName, String[] parameterNames, Object[] parameterValues) {
         return DataAccessUtils.uniqueResult(findByNamedQueryAndNamedParam(namedQueryName, parameterNames, parameterValues));
     }
+
+    /**
+     * Runs the named HQL update or delete with given positional parameters in the database.
+     * @return the number of rows affected
+     */
+    public int bulkUpdateByNamedQuery(final String namedQueryName, final Object... values) {
+        return execute(new HibernateCallback<Integer>() {
+            @Override
+            public Integer doInHibernate(Session session) throws HibernateException, SQLException {
+                Query query = session.getNamedQuery(namedQueryName);
+                for (int i = 0; i < values.length; i++) {
+                    query.setParameter(i, values[i]);
+                }
+                return query.executeUpdate();
+            }
+        });
+    }
+
+    /**
+     * Inserts the given new entities of one class with JDBC batches of batchSize rows. Hibernate does not batch
+     * inserts of entities whose ids are generated by the database, so the insert is built from the entity's
+     * mapping and its values are bound the way Hibernate binds them. The entities are not attached to the session.
+     */
+    public void batchInsert(final Class<?> entityClass, final List<?> entities, final int batchSize) {
+        if (entities.isEmpty()) {
+            return;
+        }
+        execute(new HibernateCallback<Object>() {
+            @Override
+            public Object doInHibernate(final Session session) throws HibernateException, SQLException {
+                final AbstractEntityPersister persister = (AbstractEntityPersister) getSessionFactory().getClassMetadata(entityClass);
+                final Type[] types = persister.getPropertyTypes();
+                final boolean[] insertable = persister.getPropertyInsertability();
+                List<String> columns = new ArrayList<>();
+                for (int i = 0; i < types.length; i++) {
+                    if (insertable[i]) {
+                        for (String column : persister.getPropertyColumnNames(i)) {
+                            columns.add(column);
+                        }
+                    }
+                }
+                final String sql = "insert into " + persister.getTableName() + " (" + join(columns, ", ") + ") values ("
+                        + repeat("?", ", ", columns.size()) + ")";
+
+                session.doWork(new Work() {
+                    @Override
+                    public void execute(Connection connection) throws SQLException {
+                        PreparedStatement statement = connection.prepareStatement(sql);
+                        try {
+                            int pending = 0;
+                            for (Object entity : entities) {
+                                Object[] values = persister.getPropertyValues(entity, EntityMode.POJO);
+                                int index = 1;
+                                for (int i = 0; i < types.length; i++) {
+                                    if (insertable[i]) {
+                                        types[i].nullSafeSet(statement, values[i], index, (SessionImplementor) session);
+                                        index += persister.getPropertyColumnNames(i).length;
+                                    }
+                                }
+                                statement.addBatch();
+                                if (++pending == batchSize) {
+                                    statement.executeBatch();
+                                    pending = 0;
+                                }
+                            }
+                            if (pending > 0) {
+                                statement.executeBatch();
+                            }
+                        } finally {
+                            statement.close();
+                        }
+                    }
+                });
+                return null;
+            }
+        });
+    }
 }
@@ -9,66 +9,91 @@ import org.opensrp.common.monitor.Probe;
 import org.joda.time.LocalDate;
 import org.opensrp.reporting.domain.Indicator;
 import org.opensrp.reporting.domain.Location;
+import org.opensrp.reporting.domain.ServiceProvided;
 import org.opensrp.reporting.domain.ServiceProvidedReport;
 import org.opensrp.reporting.domain.ServiceProvider;
 
 import org.opensrp.reporting.repository.cache.IndicatorCacheableRepository;
+import org.opensrp.reporting.repository.cache.LoadingCache;
 import org.opensrp.reporting.repository.cache.ReadOnlyCachingRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.opensrp.reporting.repository.cache.ReadOnlyCachingRepository.DEFAULT_ABSENT_TTL_MILLIS;
+import static org.opensrp.reporting.repository.cache.ReadOnlyCachingRepository.DEFAULT_MAX_SIZE;
+import static org.opensrp.reporting.repository.cache.ReadOnlyCachingRepository.DEFAULT_TTL_MILLIS;
 import static org.opensrp.reporting.domain.ServiceProviderType.parse;
 import static org.opensrp.common.monitor.Metric.REPORTING_SERVICE_PROVIDED_CACHE_TIME;
 import static org.opensrp.common.monitor.Metric.REPORTING_SERVICE_PROVIDED_INSERT_TIME;
 
 @Repository
 public class ServicesProvidedRepository {
-    private AllServiceProvidersRepository serviceProvidersRepository;
     private AllServicesProvidedRepository servicesProvidedRepository;
     private Monitor monitor;
 
     private ReadOnlyCachingRepository<Indicator> cachedIndicators;
-    private AllLocationsRepository locationRepository;
+    private LoadingCache<List<String>, Location> cachedLocations;
+    private LoadingCache<List<String>, ServiceProvider> cachedServiceProviders;
 
     protected ServicesProvidedRepository() {
     }
 
     @Autowired
     public ServicesProvidedRepository(@Qualifier("serviceProvidedIndicatorRepository") IndicatorCacheableRepository indicatorRepository,
-                                      AllLocationsRepository locationRepository,
-                                      AllServiceProvidersRepository serviceProvidersRepository,
+                                      final AllLocationsRepository locationRepository,
+                                      final AllServiceProvidersRepository serviceProvidersRepository,
                                       AllServicesProvidedRepository servicesProvidedRepository, Monitor monitor) {
-        this.serviceProvidersRepository = serviceProvidersRepository;
         this.servicesProvidedRepository = servicesProvidedRepository;
         this.monitor = monitor;
         cachedIndicators = new ReadOnlyCachingRepository<>(indicatorRepository);
-        this.locationRepository = locationRepository;
+        cachedLocations = new LoadingCache<>(new LoadingCache.Loader<List<String>, Location>() {
+            @Override
+            public Location load(List<String> key) {
+                return locationRepository.fetchBy(key.get(0), key.get(1), key.get(2));
+            }
+        }, DEFAULT_MAX_SIZE, DEFAULT_TTL_MILLIS, DEFAULT_ABSENT_TTL_MILLIS);
+        cachedServiceProviders = new LoadingCache<>(new LoadingCache.Loader<List<String>, ServiceProvider>() {
+            @Override
+            public ServiceProvider load(List<String> key) {
+                return serviceProvidersRepository.fetchBy(key.get(0), parse(key.get(1)));
+            }
+        }, DEFAULT_MAX_SIZE, DEFAULT_TTL_MILLIS, DEFAULT_ABSENT_TTL_MILLIS);
     }
 
+    /**
+     * Saves one row, quantity times, with the batched inserts of {@link #saveAll(List)}.
+     */
     @Transactional("service_provided")
     public void save(String serviceProviderIdentifier, String serviceProviderType, String externalId, String indicator,
                      String date, String village, String subCenter, String phcIdentifier, String quantity, String dristhiEntityId) {
-        Probe probeForCache = monitor.start(REPORTING_SERVICE_PROVIDED_CACHE_TIME);
-        Indicator fetchedIndicator = cachedIndicators.fetch(new Indicator(indicator));
-        Date dates = LocalDate.parse(date).toDate();
-        Location location = locationRepository.fetchBy(village, subCenter, phcIdentifier);
-        ServiceProvider serviceProvider = serviceProvidersRepository.fetchBy(serviceProviderIdentifier, parse(serviceProviderType));
-        monitor.end(probeForCache);
+        saveAll(singletonList(new ReportingData(AllConstants.ReportDataParameters.SERVICE_PROVIDED_DATA_TYPE)
+                .with(AllConstants.ReportDataParameters.ANM_IDENTIFIER, serviceProviderIdentifier)
+                .with(AllConstants.ReportDataParameters.SERVICE_PROVIDER_TYPE, serviceProviderType)
+                .with(AllConstants.ReportDataParameters.EXTERNAL_ID, externalId)
+                .with(AllConstants.ReportDataParameters.INDICATOR, indicator)
+                .with(AllConstants.ReportDataParameters.SERVICE_PROVIDED_DATE, date)
+                .with(AllConstants.ReportDataParameters.VILLAGE, village)
+                .with(AllConstants.ReportDataParameters.SUB_CENTER, subCenter)
+                .with(AllConstants.ReportDataParameters.PHC, phcIdentifier)
+                .with(AllConstants.ReportDataParameters.DRISTHI_ENTITY_ID, dristhiEntityId)
+                .withQuantity(quantity)));
+    }
 
-        int count = getCount(quantity);
-        Probe probeForInsert = monitor.start(REPORTING_SERVICE_PROVIDED_INSERT_TIME);
-        for (int i = 0; i < count; i++) {
-            try {
-                servicesProvidedRepository.save(serviceProvider, externalId, fetchedIndicator, dates, location, dristhiEntityId);
-            } catch (Exception e) {
-                cachedIndicators.clear(fetchedIndicator);
-            }
-        }
-        monitor.end(probeForInsert);
+    /**
+     * Saves all given rows with batched inserts. Indicators, locations and service providers come from the caches.
+     */
+    @Transactional("service_provided")
+    public void saveAll(List<ReportingData> reportingData) {
+        saveReportingDataForIndicator(reportingData, null);
     }
 
     @Transactional("service_provided")
@@ -78,18 +103,44 @@ public class ServicesProvidedRepository {
     }
 
     private void saveReportingDataForIndicator(List<ReportingData> reportingData, String indicator) {
+        Probe probeForCache = monitor.start(REPORTING_SERVICE_PROVIDED_CACHE_TIME);
+        Map<String, Indicator> indicators = new HashMap<>();
+        List<ServiceProvided> servicesProvided = new ArrayList<>();
         for (ReportingData data : reportingData) {
-            this.save(data.get(AllConstants.ReportDataParameters.ANM_IDENTIFIER),
-                    data.get(AllConstants.ReportDataParameters.SERVICE_PROVIDER_TYPE),
-                    data.get(AllConstants.ReportDataParameters.EXTERNAL_ID),
-                    indicator,
-                    data.get(AllConstants.ReportDataParameters.SERVICE_PROVIDED_DATE),
-                    data.get(AllConstants.ReportDataParameters.VILLAGE),
-                    data.get(AllConstants.ReportDataParameters.SUB_CENTER),
-                    data.get(AllConstants.ReportDataParameters.PHC),
-                    data.get(AllConstants.ReportDataParameters.QUANTITY),
-                    data.get(AllConstants.ReportDataParameters.DRISTHI_ENTITY_ID)
-            );
+            String indicatorName = indicator == null ? data.get(AllConstants.ReportDataParameters.INDICATOR) : indicator;
+            Indicator fetchedIndicator = indicators.get(indicatorName);
+            if (fetchedIndicator == null) {
+                fetchedIndicator = cachedIndicators.fetch(new Indicator(indicatorName));
+                indicators.put(indicatorName, fetchedIndicator);
+            }
+
+            Location location = cachedLocations.get(asList(data.get(AllConstants.ReportDataParameters.VILLAGE),
+                    data.get(AllConstants.ReportDataParameters.SUB_CENTER), data.get(AllConstants.ReportDataParameters.PHC)));
+            ServiceProvider serviceProvider = cachedServiceProviders.get(asList(data.get(AllConstants.ReportDataParameters.ANM_IDENTIFIER),
+                    data.get(AllConstants.ReportDataParameters.SERVICE_PROVIDER_TYPE)));
+
+            ServiceProvided serviceProvided = new ServiceProvided(serviceProvider,
+                    data.get(AllConstants.ReportDataParameters.EXTERNAL_ID), fetchedIndicator,
+                    LocalDate.parse(data.get(AllConstants.ReportDataParameters.SERVICE_PROVIDED_DATE)).toDate(),
+                    location, data.get(AllConstants.ReportDataParameters.DRISTHI_ENTITY_ID));
+            for (int i = getCount(data.get(AllConstants.ReportDataParameters.QUANTITY)); i > 0; i--) {
+                servicesProvided.add(serviceProvided);
+            }
+        }
+        monitor.end(probeForCache);
+
+        Probe probeForInsert = monitor.start(REPORTING_SERVICE_PROVIDED_INSERT_TIME);
+        try {
+            servicesProvidedRepository.saveAll(servicesProvided);
+        } catch (RuntimeException e) {
+            for (Indicator fetchedIndicator : indicators.values()) {
+                cachedIndicators.clear(fetchedIndicator);
+            }
+            cachedLocations.invalidateAll();
+            cachedServiceProviders.invalidateAll();
+            throw e;
+        } finally {
+            monitor.end(probeForInsert);
         }
     }
 
@@ -1,55 +1,44 @@
 package org.opensrp.reporting.repository.cache;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.locks.ReentrantLock;
+
+import static org.opensrp.reporting.repository.cache.ReadOnlyCachingRepository.DEFAULT_MAX_SIZE;
+import static org.opensrp.reporting.repository.cache.ReadOnlyCachingRepository.DEFAULT_TTL_MILLIS;
 
 public class CachingRepository<T> {
     private CacheableRepository<T> cacheableRepository;
-    private Map<T, T> cache;
-    private static ReentrantLock lock = new ReentrantLock();
+    private LoadingCache<T, T> cache;
 
-    public CachingRepository(CacheableRepository<T> cacheableRepository) {
+    public CachingRepository(final CacheableRepository<T> cacheableRepository) {
         this.cacheableRepository = cacheableRepository;
-        cache = new HashMap<>();
+        // objects are saved when missing, so a key without a value is never remembered for long
+        cache = new LoadingCache<>(new LoadingCache.Loader<T, T>() {
+            @Override
+            public T load(T object) {
+                T objectInDB = cacheableRepository.fetch(object);
+                if (objectInDB == null) {
+                    cacheableRepository.save(object);
+                    cacheableRepository.flush();
+                    objectInDB = cacheableRepository.fetch(object);
+                }
+                return objectInDB;
+            }
+        }, DEFAULT_MAX_SIZE, DEFAULT_TTL_MILLIS, 0);
     }
 
     public T fetch(T object) {
-        if (cache.containsKey(object)) {
-            return cache.get(object);
-        }
-
-        saveToCache(object);
         return cache.get(object);
     }
 
     public void clear(T object) {
-        if (cache.containsKey(object)) {
-            cache.remove(object);
-        }
-    }
-
-    private void saveToCache(T object) {
-        lock.lock();
-        try {
-            if (cache.containsKey(object)) {
-                return;
-            }
-
-            T objectInDB = cacheableRepository.fetch(object);
-            if (objectInDB == null) {
-                cacheableRepository.save(object);
-                cacheableRepository.flush();
-                objectInDB = cacheableRepository.fetch(object);
-            }
-            cache.put(object, objectInDB);
-        } finally {
-            lock.unlock();
-        }
+        cache.invalidate(object);
     }
 
     public List<T> fetchAll() {
         return cacheableRepository.fetchAll();
     }
+
+    public LoadingCache<T, T> cache() {
+        return cache;
+    }
 }
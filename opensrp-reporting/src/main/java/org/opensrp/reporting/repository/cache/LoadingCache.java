@@ -0,0 +1,121 @@
+package org.opensrp.reporting.repository.cache;
+
+import org.opensrp.common.util.TtlCache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread safe cache which loads missing values itself. Concurrent lookups of a key which is not cached wait for
+ * one load instead of each querying the database. Keys which have no value are remembered too, for a shorter
+ * time, so repeated lookups of unknown keys do not reach the database either. Values expire after a fixed time
+ * and the cache holds at most maxSize values and maxSize unknown keys.
+ */
+public class LoadingCache<K, V> {
+    public interface Loader<K, V> {
+        /**
+         * @return the value of given key or null if there is none
+         */
+        V load(K key);
+    }
+
+    private final Loader<K, V> loader;
+    private final TtlCache<K, V> values;
+    private final TtlCache<K, Boolean> absentKeys;
+    private final ConcurrentHashMap<K, FutureTask<V>> loading = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong loadFailures = new AtomicLong();
+
+    public LoadingCache(Loader<K, V> loader, int maxSize, long ttlMillis, long absentTtlMillis) {
+        this.loader = loader;
+        this.values = new TtlCache<>(maxSize, ttlMillis);
+        this.absentKeys = new TtlCache<>(maxSize, absentTtlMillis);
+    }
+
+    public V get(final K key) {
+        V value = values.get(key);
+        if (value != null || absentKeys.get(key) != null) {
+            hits.incrementAndGet();
+            return value;
+        }
+        misses.incrementAndGet();
+
+        FutureTask<V> task = new FutureTask<>(new Callable<V>() {
+            @Override
+            public V call() {
+                V loaded = loader.load(key);
+                if (loaded == null) {
+                    absentKeys.put(key, Boolean.TRUE);
+                } else {
+                    values.put(key, loaded);
+                }
+                return loaded;
+            }
+        });
+        FutureTask<V> inProgress = loading.putIfAbsent(key, task);
+        if (inProgress == null) {
+            inProgress = task;
+            try {
+                task.run();
+            } finally {
+                loading.remove(key, task);
+            }
+        }
+        return result(inProgress);
+    }
+
+    public void invalidate(K key) {
+        values.invalidate(key);
+        absentKeys.invalidate(key);
+    }
+
+    public void invalidateAll() {
+        values.invalidateAll();
+        absentKeys.invalidateAll();
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long loadFailures() {
+        return loadFailures.get();
+    }
+
+    public long evictions() {
+        return values.evictions() + absentKeys.evictions();
+    }
+
+    private V result(FutureTask<V> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            loadFailures.incrementAndGet();
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "size=" + size() + ", absentKeys=" + absentKeys.size() + ", hits=" + hits() + ", misses=" + misses()
+                + ", loadFailures=" + loadFailures() + ", evictions=" + evictions();
+    }
+}
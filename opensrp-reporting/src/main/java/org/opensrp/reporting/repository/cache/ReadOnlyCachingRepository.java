@@ -1,53 +1,43 @@
 package org.opensrp.reporting.repository.cache;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.TimeUnit;
 
 public class ReadOnlyCachingRepository<T> {
+    public static final int DEFAULT_MAX_SIZE = 10000;
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.HOURS.toMillis(1);
+    public static final long DEFAULT_ABSENT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
     private ReadOnlyCacheableRepository<T> cacheableRepository;
-    private Map<T, T> cache;
-    private static ReentrantLock lock = new ReentrantLock();
+    private LoadingCache<T, T> cache;
 
     public ReadOnlyCachingRepository(ReadOnlyCacheableRepository<T> cacheableRepository) {
-        this.cacheableRepository = cacheableRepository;
-        cache = new HashMap<>();
+        this(cacheableRepository, DEFAULT_MAX_SIZE, DEFAULT_TTL_MILLIS, DEFAULT_ABSENT_TTL_MILLIS);
     }
 
-    public T fetch(T object) {
-        if (cache.containsKey(object)) {
-            return cache.get(object);
-        }
-
-        return writeToCache(object);
+    public ReadOnlyCachingRepository(final ReadOnlyCacheableRepository<T> cacheableRepository, int maxSize, long ttlMillis, long absentTtlMillis) {
+        this.cacheableRepository = cacheableRepository;
+        cache = new LoadingCache<>(new LoadingCache.Loader<T, T>() {
+            @Override
+            public T load(T object) {
+                return cacheableRepository.fetch(object);
+            }
+        }, maxSize, ttlMillis, absentTtlMillis);
     }
 
-    public void clear(T object){
-        if (cache.containsKey(object)) {
-            cache.remove(object);
-        }
+    public T fetch(T object) {
+        return cache.get(object);
     }
 
-    private T writeToCache(T object) {
-        lock.lock();
-        try {
-            if (cache.containsKey(object)) {
-                return cache.get(object);
-            }
-
-            T objectInDB = cacheableRepository.fetch(object);
-            if (objectInDB == null) {
-                return null;
-            }
-            cache.put(object, objectInDB);
-        } finally {
-            lock.unlock();
-        }
-        return cache.get(object);
+    public void clear(T object) {
+        cache.invalidate(object);
     }
 
     public List<T> fetchAll() {
         return cacheableRepository.fetchAll();
     }
+
+    public LoadingCache<T, T> cache() {
+        return cache;
+    }
 }
@@ -0,0 +1,40 @@
+package org.opensrp.reporting.service;
+
+import org.opensrp.common.domain.ReportingData;
+import org.opensrp.reporting.repository.ANMReportsRepository;
+import org.opensrp.reporting.repository.ServicesProvidedRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Service
+public class ReportingDataService {
+    private ServicesProvidedRepository servicesProvidedRepository;
+    private ANMReportsRepository anmReportsRepository;
+
+    protected ReportingDataService() {
+    }
+
+    @Autowired
+    public ReportingDataService(ServicesProvidedRepository servicesProvidedRepository, ANMReportsRepository anmReportsRepository) {
+        this.servicesProvidedRepository = servicesProvidedRepository;
+        this.anmReportsRepository = anmReportsRepository;
+    }
+
+    /**
+     * Saves a batch of service provided and ANM reports as one unit. The service provided rows are written in this
+     * transaction and the ANM report rows in a nested one of the anm_report transaction manager, which commits
+     * just before this one. A failure while saving either kind rolls back both.
+     */
+    @Transactional("service_provided")
+    public void saveBatch(List<ReportingData> servicesProvided, List<ReportingData> anmReports) {
+        if (!servicesProvided.isEmpty()) {
+            servicesProvidedRepository.saveAll(servicesProvided);
+        }
+        if (!anmReports.isEmpty()) {
+            anmReportsRepository.saveAll(anmReports);
+        }
+    }
+}
@@ -9,6 +9,10 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -25,6 +29,8 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.OK;
 import org.opensrp.reporting.DristhiEntityIdMissingException;
 import org.opensrp.reporting.ReportDataMissingException;
 import org.opensrp.reporting.controller.ReportDataController;
@@ -32,6 +38,12 @@ import org.opensrp.reporting.domain.ANMReportData;
 import org.opensrp.reporting.domain.ServiceProvided;
 import org.opensrp.reporting.repository.ANMReportsRepository;
 import org.opensrp.reporting.repository.ServicesProvidedRepository;
+import org.opensrp.reporting.service.ReportingDataService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJacksonHttpMessageConverter;
 
 public class ReportDataControllerTest {
     @Mock
@@ -39,6 +51,8 @@ public class ReportDataControllerTest {
     @Mock
     private ANMReportsRepository anmReportsRepository;
     @Mock
+    private ReportingDataService reportingDataService;
+    @Mock
     private ServiceProvided serviceProvided;
     @Mock
     private ANMReportData anmReportData;
@@ -50,7 +64,7 @@ public class ReportDataControllerTest {
     @Before
     public void setUp() throws Exception {
         initMocks(this);
-        controller = new ReportDataController(servicesProvidedRepository, anmReportsRepository);
+        controller = new ReportDataController(servicesProvidedRepository, anmReportsRepository, reportingDataService);
     }
 
     @Test
@@ -188,4 +202,68 @@ public class ReportDataControllerTest {
         verify(anmReportsRepository).update(reportDataUpdateRequest);
         assertEquals("Success.", result);
     }
+
+    @Test
+    public void shouldSaveABatchOfReportsGroupedByType() throws Exception {
+        ReportingData serviceProvided = serviceProvidedData("ANM X", "TC 1", BCG, "2012-01-01",
+                new Location("bherya", "Sub Center", "PHC X"), "entity id 1");
+        ReportingData anmReport = anmReportData("ANM X", "EC Number 1", FP_IUD, "2012-01-01");
+        ReportingData anotherANMReport = anmReportData("ANM Y", "EC Number 2", FP_IUD, "2012-01-02");
+
+        ResponseEntity<String> result = controller.submitBatch(new ReportingData[]{anmReport, serviceProvided, anotherANMReport});
+
+        verify(reportingDataService).saveBatch(asList(serviceProvided), asList(anmReport, anotherANMReport));
+        assertEquals(OK, result.getStatusCode());
+        assertEquals("Success.", result.getBody());
+    }
+
+    @Test(expected = ReportDataMissingException.class)
+    public void shouldNotSaveAnyOfTheBatchWhenAReportDoesNotHaveAllTheNecessaryInformation() throws Exception {
+        try {
+            controller.submitBatch(new ReportingData[]{anmReportData("ANM X", "EC Number 1", FP_IUD, "2012-01-01"),
+                    anmReportData(null, null, FP_CONDOM, null)});
+        } finally {
+            verifyZeroInteractions(reportingDataService);
+        }
+    }
+
+    @Test
+    public void shouldRejectTheWholeBatchWhenAReportHasAnUnknownType() throws Exception {
+        ResponseEntity<String> result = controller.submitBatch(new ReportingData[]{
+                anmReportData("ANM X", "EC Number 1", FP_IUD, "2012-01-01"), new ReportingData("unknownType")});
+
+        assertEquals(BAD_REQUEST, result.getStatusCode());
+        verifyZeroInteractions(reportingDataService);
+    }
+
+    @Test
+    public void shouldBindEveryReportOfABatchRequestBodyToReportingData() throws Exception {
+        String body = "[{\"type\":\"" + ANM_REPORT_DATA_TYPE + "\",\"data\":{"
+                + "\"" + ANM_IDENTIFIER + "\":\"ANM X\",\"" + EXTERNAL_ID + "\":\"EC Number 1\","
+                + "\"" + INDICATOR + "\":\"" + FP_IUD.value() + "\",\"" + SERVICE_PROVIDED_DATE + "\":\"2012-01-01\"}}]";
+        Class<?> bodyType = ReportDataController.class.getMethod("submitBatch", ReportingData[].class).getParameterTypes()[0];
+        MappingJacksonHttpMessageConverter converter = new MappingJacksonHttpMessageConverter();
+
+        ReportingData[] reportingData = (ReportingData[]) converter.read((Class) bodyType, jsonMessage(body));
+        controller.submitBatch(reportingData);
+
+        verify(reportingDataService).saveBatch(new ArrayList<ReportingData>(),
+                asList(anmReportData("ANM X", "EC Number 1", FP_IUD, "2012-01-01")));
+    }
+
+    private HttpInputMessage jsonMessage(final String body) {
+        return new HttpInputMessage() {
+            @Override
+            public InputStream getBody() throws IOException {
+                return new ByteArrayInputStream(body.getBytes("UTF-8"));
+            }
+
+            @Override
+            public HttpHeaders getHeaders() {
+                HttpHeaders headers = new HttpHeaders();
+                headers.setContentType(MediaType.APPLICATION_JSON);
+                return headers;
+            }
+        };
+    }
 }
@@ -7,11 +7,14 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static java.util.Arrays.asList;
+import static java.util.Collections.nCopies;
 import static junit.framework.Assert.assertEquals;
 import static org.opensrp.common.AllConstants.ReportDataParameters.*;
 import static org.opensrp.common.util.ANMIndicatorSummaryFactory.*;
@@ -75,7 +78,7 @@ public class ANMReportsRepositoryTest {
         verifyCallsToReadOnlyCachedRepository(anmRepository, new ANM(anmIdentifier));
         verifyCallsToReadOnlyCachedRepository(indicatorRepository, fetchedIndicator);
 
-        verify(anmReportDataRepository, times(2)).save(anm, externalId, fetchedIndicator, date);
+        verify(anmReportDataRepository, times(2)).saveAll(asList(new ANMReportData(anm, externalId, fetchedIndicator, date)));
     }
 
 
@@ -94,7 +97,7 @@ public class ANMReportsRepositoryTest {
 
         repository.save(anmIdentifier, externalId, indicator, "2012-04-04", "50");
 
-        verify(anmReportDataRepository, times(50)).save(anm, externalId, fetchedIndicator, date);
+        verify(anmReportDataRepository).saveAll(nCopies(50, new ANMReportData(anm, externalId, fetchedIndicator, date)));
     }
 
     @Test
@@ -237,25 +240,46 @@ public class ANMReportsRepositoryTest {
         Date date3 = parse("2012-05-27").toDate();
         Indicator indicator1 = new Indicator("IUD");
         Indicator indicator2 = new Indicator("ANC");
-        when(anmReportDataRepository.fetchByANMIdAndDate("ANM X", parse("2012-03-26").toDate())).thenReturn(asList(
+        when(anmReportDataRepository.fetchByDate(parse("2012-03-26").toDate())).thenReturn(asList(
                 new ANMReportData(anmX, "CASE 1", indicator1, date1),
+                new ANMReportData(anmY, "CASE 5", indicator2, date3),
                 new ANMReportData(anmX, "CASE 2", indicator1, date1),
                 new ANMReportData(anmX, "CASE 3", indicator1, date2),
+                new ANMReportData(anmY, "CASE 6", indicator2, date3),
                 new ANMReportData(anmX, "CASE 4", indicator1, date2)));
-        when(anmReportDataRepository.fetchByANMIdAndDate("ANM Y", parse("2012-03-26").toDate())).thenReturn(asList(
-                new ANMReportData(anmY, "CASE 5", indicator2, date3),
-                new ANMReportData(anmY, "CASE 6", indicator2, date3)));
-        when(annualTargetsRepository.fetchFor("ANM X", indicator1, parse("2012-06-30").toDate())).thenReturn(new AnnualTarget(1, 1, "40", parse("2012-03-26").toDate(), parse("2013-03-25").toDate()));
-        when(annualTargetsRepository.fetchFor("ANM Y", indicator2, parse("2012-06-30").toDate())).thenReturn(new AnnualTarget(1, 1, "30", parse("2012-03-26").toDate(), parse("2013-03-25").toDate()));
-        when(anmRepository.fetchAll()).thenReturn(asList(anmX, anmY));
+        Map<String, Map<String, String>> targets = new HashMap<>();
+        targets.put("ANM X", Collections.singletonMap("IUD", "40"));
+        targets.put("ANM Y", Collections.singletonMap("ANC", "30"));
+        when(annualTargetsRepository.fetchAllFor(parse("2012-06-30").toDate())).thenReturn(targets);
+        when(anmRepository.fetchAll()).thenReturn(asList(anmX, anmY, new ANM("ANM Z")));
 
         List<ANMReport> anmReports = repository.fetchAllANMsReport();
 
         ANMReport anmXReport = new ANMReport("ANM X", asList(createSummaryForIUD()));
         ANMReport anmYReport = new ANMReport("ANM Y", asList(createSummaryForANC()));
+        ANMReport anmZReport = new ANMReport("ANM Z", Collections.<ANMIndicatorSummary>emptyList());
+
+        assertEquals(asList(anmXReport, anmYReport, anmZReport), anmReports);
+        verify(anmReportDataRepository, never()).fetchByANMIdAndDate(anyString(), any(Date.class));
+        verify(annualTargetsRepository, never()).fetchFor(anyString(), any(Indicator.class), any(Date.class));
+    }
+
+    @Test
+    public void shouldLeaveOutReportDataOutsideTheReportingMonthsSoFar() throws Exception {
+        DateUtil.fakeIt(parse("2012-06-30"));
+        ANM anm = new ANM("ANM X");
+        Indicator indicator = new Indicator("IUD");
+        when(anmReportDataRepository.fetchByANMIdAndDate("ANM X", parse("2012-03-26").toDate())).thenReturn(asList(
+                new ANMReportData(anm, "CASE 1", indicator, parse("2012-03-25").toDate()),
+                new ANMReportData(anm, "CASE 2", indicator, parse("2012-03-26").toDate()),
+                new ANMReportData(anm, "CASE 3", indicator, parse("2012-07-25").toDate()),
+                new ANMReportData(anm, "CASE 4", indicator, parse("2012-07-26").toDate())));
+
+        List<ANMIndicatorSummary> anmIndicatorSummaries = repository.fetchANMSummary("ANM X");
 
-        assertTrue(anmReports.containsAll(asList(anmXReport, anmYReport)));
-        assertEquals(2, anmReports.size());
+        assertEquals(asList(new ANMIndicatorSummary("IUD", null, asList(
+                new MonthSummary("4", "2012", "1", "1", asList("CASE 2")),
+                new MonthSummary("7", "2012", "1", "2", asList("CASE 3"))))), anmIndicatorSummaries);
     }
 
     @Test
@@ -292,7 +316,7 @@ public class ANMReportsRepositoryTest {
         repository.update(request);
 
         verify(anmReportDataRepository).delete("INDICATOR 1", "2013-01-26", "2013-02-25");
-        verify(anmReportDataRepository).save(anm, externalId, fetchedIndicator, date);
+        verify(anmReportDataRepository).saveAll(asList(new ANMReportData(anm, externalId, fetchedIndicator, date)));
     }
 
     @Test
@@ -14,6 +14,7 @@ import java.util.Date;
 import java.util.HashMap;
 
 import static java.util.Arrays.asList;
+import static java.util.Collections.nCopies;
 import static org.opensrp.common.AllConstants.ReportDataParameters.*;
 import static org.mockito.Mockito.*;
 import static org.mockito.MockitoAnnotations.initMocks;
@@ -77,9 +78,9 @@ public class ServicesProvidedRepositoryTest {
         repository.save(anmIdentifier, "ANM", externalId, indicator, "2012-04-04", village, subCenter, phc.phcIdentifier(), null, dristhiEntityId);
 
         verifyCallsToReadOnlyCachedRepository(indicatorRepository, new Indicator(indicator));
-        verify(locationRepository, times(2)).fetchBy(village, subCenter, phc.phcIdentifier());
-        verify(serviceProvidersRepository, times(2)).fetchBy(anmIdentifier, ANM);
-        verify(servicesProvidedRepository, times(2)).save(serviceProvider, "12345", fetchedIndicator, date, location, dristhiEntityId);
+        verify(locationRepository, times(1)).fetchBy(village, subCenter, phc.phcIdentifier());
+        verify(serviceProvidersRepository, times(1)).fetchBy(anmIdentifier, ANM);
+        verify(servicesProvidedRepository, times(2)).saveAll(asList(new ServiceProvided(serviceProvider, "12345", fetchedIndicator, date, location, dristhiEntityId)));
     }
 
     @Test
@@ -102,7 +103,7 @@ public class ServicesProvidedRepositoryTest {
 
         repository.save(anmIdentifier, "ANM", externalId, indicator, "2012-04-04", village, subCenter, phc.phcIdentifier(), "40", dristhiEntityId);
 
-        verify(servicesProvidedRepository, times(40)).save(serviceProvider, "12345", fetchedIndicator, date, location, dristhiEntityId);
+        verify(servicesProvidedRepository).saveAll(nCopies(40, new ServiceProvided(serviceProvider, "12345", fetchedIndicator, date, location, dristhiEntityId)));
     }
 
     @Test
@@ -148,7 +149,48 @@ public class ServicesProvidedRepositoryTest {
         repository.update(request);
 
         verify(servicesProvidedRepository).delete(indicator, startDate, endDate);
-        verify(servicesProvidedRepository).save(serviceProvider, "12345", fetchedIndicator, date, location, "entity id 1");
+        verify(servicesProvidedRepository).saveAll(asList(new ServiceProvided(serviceProvider, "12345", fetchedIndicator, date, location, "entity id 1")));
+    }
+
+    @Test
+    public void shouldSaveABatchAsPerQuantityLookingUpEveryLocationAndServiceProviderOnce() throws Exception {
+        String village = "Bherya";
+        String subCenter = "Sub Center";
+        Date date = LocalDate.parse("2012-04-04").toDate();
+        PHC phc = new PHC(34, "PHC X", "PHC");
+        ServiceProvider serviceProvider = new ServiceProvider(2, 2, ANM);
+        Indicator anc = new Indicator(2, "ANC");
+        Indicator bcg = new Indicator(3, "BCG");
+        Location location = new Location(2, village, subCenter, phc, "taluka", "mysore", "karnataka");
+        when(serviceProvidersRepository.fetchBy("ANM X", ANM)).thenReturn(serviceProvider);
+        when(indicatorRepository.fetch(new Indicator("ANC"))).thenReturn(anc);
+        when(indicatorRepository.fetch(new Indicator("BCG"))).thenReturn(bcg);
+        when(locationRepository.fetchBy(village, subCenter, phc.phcIdentifier())).thenReturn(location);
+
+        repository.saveAll(asList(
+                serviceProvidedData("ANC", "case 1", "2", village, subCenter, phc.phcIdentifier()),
+                serviceProvidedData("BCG", "case 2", null, village, subCenter, phc.phcIdentifier())));
+
+        ServiceProvided ancProvided = new ServiceProvided(serviceProvider, "case 1", anc, date, location, "entity id 1");
+        ServiceProvided bcgProvided = new ServiceProvided(serviceProvider, "case 2", bcg, date, location, "entity id 1");
+        verify(servicesProvidedRepository).saveAll(asList(ancProvided, ancProvided, bcgProvided));
+        verify(locationRepository, times(1)).fetchBy(village, subCenter, phc.phcIdentifier());
+        verify(serviceProvidersRepository, times(1)).fetchBy("ANM X", ANM);
+    }
+
+    private ReportingData serviceProvidedData(String indicator, String externalId, String quantity, String village, String subCenter, String phc) {
+        HashMap<String, String> data = new HashMap<String, String>();
+        data.put(ANM_IDENTIFIER, "ANM X");
+        data.put(SERVICE_PROVIDER_TYPE, "ANM");
+        data.put(EXTERNAL_ID, externalId);
+        data.put(INDICATOR, indicator);
+        data.put(SERVICE_PROVIDED_DATE, "2012-04-04");
+        data.put(VILLAGE, village);
+        data.put(SUB_CENTER, subCenter);
+        data.put(PHC, phc);
+        data.put(QUANTITY, quantity);
+        data.put(DRISTHI_ENTITY_ID, "entity id 1");
+        return new ReportingData(SERVICE_PROVIDED_DATA_TYPE, data);
     }
 
     @Test
@@ -0,0 +1,146 @@
+package org.opensrp.reporting.repository.cache;
+
+import org.joda.time.LocalDate;
+import org.junit.Test;
+import org.opensrp.common.util.DateUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class LoadingCacheTest {
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    @Test
+    public void shouldLoadAKeyOnceForConcurrentLookups() throws Exception {
+        final CountDownLatch loadStarted = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger loads = new AtomicInteger();
+        final LoadingCache<String, String> cache = new LoadingCache<>(new LoadingCache.Loader<String, String>() {
+            @Override
+            public String load(String key) {
+                loads.incrementAndGet();
+                loadStarted.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return key.toUpperCase();
+            }
+        }, 10, DAY, DAY);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return cache.get("anm");
+                    }
+                }));
+            }
+            loadStarted.await();
+            release.countDown();
+            for (Future<String> result : results) {
+                assertEquals("ANM", result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void shouldRememberKeysWithoutValueUntilTheyExpire() throws Exception {
+        DateUtil.fakeIt(new LocalDate(2015, 1, 1));
+        final AtomicInteger loads = new AtomicInteger();
+        LoadingCache<String, String> cache = new LoadingCache<>(new LoadingCache.Loader<String, String>() {
+            @Override
+            public String load(String key) {
+                loads.incrementAndGet();
+                return null;
+            }
+        }, 10, 30 * DAY, DAY);
+
+        assertNull(cache.get("unknown"));
+        assertNull(cache.get("unknown"));
+        assertEquals(1, loads.get());
+
+        DateUtil.fakeIt(new LocalDate(2015, 1, 2));
+        assertNull(cache.get("unknown"));
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+    }
+
+    @Test
+    public void shouldReloadInvalidatedAndExpiredValues() throws Exception {
+        DateUtil.fakeIt(new LocalDate(2015, 1, 1));
+        final AtomicInteger loads = new AtomicInteger();
+        LoadingCache<String, Integer> cache = new LoadingCache<>(new LoadingCache.Loader<String, Integer>() {
+            @Override
+            public Integer load(String key) {
+                return loads.incrementAndGet();
+            }
+        }, 10, DAY, DAY);
+
+        assertEquals(Integer.valueOf(1), cache.get("key"));
+        assertEquals(Integer.valueOf(1), cache.get("key"));
+        cache.invalidate("key");
+        assertEquals(Integer.valueOf(2), cache.get("key"));
+
+        DateUtil.fakeIt(new LocalDate(2015, 1, 2));
+        assertEquals(Integer.valueOf(3), cache.get("key"));
+    }
+
+    @Test
+    public void shouldNotCacheFailedLoads() throws Exception {
+        final AtomicInteger loads = new AtomicInteger();
+        LoadingCache<String, String> cache = new LoadingCache<>(new LoadingCache.Loader<String, String>() {
+            @Override
+            public String load(String key) {
+                if (loads.incrementAndGet() == 1) {
+                    throw new IllegalArgumentException("database unavailable");
+                }
+                return "value";
+            }
+        }, 10, DAY, DAY);
+
+        try {
+            cache.get("key");
+            fail("Expected the load failure to be rethrown");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals("value", cache.get("key"));
+        assertEquals(1, cache.loadFailures());
+    }
+
+    @Test
+    public void shouldHoldAtMostMaxSizeValues() throws Exception {
+        LoadingCache<Integer, Integer> cache = new LoadingCache<>(new LoadingCache.Loader<Integer, Integer>() {
+            @Override
+            public Integer load(Integer key) {
+                return key;
+            }
+        }, 10, DAY, DAY);
+
+        for (int i = 0; i < 25; i++) {
+            cache.get(i);
+        }
+
+        assertEquals(true, cache.size() <= 10);
+        assertEquals(true, cache.evictions() >= 15);
+    }
+}
@@ -1,21 +1,18 @@
 package org.opensrp.web.controller;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.HashSet;
+import java.util.Set;
 
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.xml.ws.WebServiceException;
 
-import org.codehaus.jackson.JsonFactory;
-import org.codehaus.jackson.JsonParseException;
-import org.codehaus.jackson.JsonParser;
-import org.codehaus.jackson.JsonToken;
+import org.opensrp.web.controller.FormDownloadCache.FormZip;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.DefaultResourceLoader;
@@ -25,143 +22,147 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
+import static java.text.MessageFormat.format;
+
 @Controller
 @RequestMapping("form/")
 public class FormDownLoadController {
+	private static Logger logger = LoggerFactory.getLogger(FormDownLoadController.class.toString());
 
 	private String FORMS_DIR;
-	private String FORMS_DEFINITION_FILE_NAME = "form_definition.json";
-	private static final String DS = "/"; 
-	private String FILES_TO_DOWNLOAD;
-	
+	private FormDownloadCache formDownloadCache;
+
+	public FormDownLoadController(String FORMS_DIR, String FILES_TO_DOWNLOAD) throws IOException {
+		this(FORMS_DIR, FILES_TO_DOWNLOAD, null);
+	}
+
 	@Autowired
-	public FormDownLoadController(@Value("#{opensrp['form.directory.name']}") String FORMS_DIR, 
-			@Value("#{opensrp['form.download.files']}") String FILES_TO_DOWNLOAD) throws IOException 
+	public FormDownLoadController(@Value("#{opensrp['form.directory.name']}") String FORMS_DIR,
+			@Value("#{opensrp['form.download.files']}") String FILES_TO_DOWNLOAD,
+			@Value("#{opensrp['form.download.cache.directory']}") String cacheDirectory) throws IOException
 	{
 		ResourceLoader loader=new DefaultResourceLoader();
 		this.FORMS_DIR = loader.getResource(FORMS_DIR).getURI().getPath();
-		this.FILES_TO_DOWNLOAD = FILES_TO_DOWNLOAD.replace(" ", "");
+		Set<String> filesToDownload = new HashSet<>();
+		for (String fileName : FILES_TO_DOWNLOAD.split(",")) {
+			filesToDownload.add(fileName.trim());
+		}
+		if (cacheDirectory == null || cacheDirectory.trim().isEmpty()) {
+			this.formDownloadCache = new FormDownloadCache(new File(this.FORMS_DIR), filesToDownload);
+		} else {
+			this.formDownloadCache = new FormDownloadCache(new File(this.FORMS_DIR), new File(cacheDirectory.trim()), filesToDownload);
+		}
 		System.out.println(FORMS_DIR);
 	}
 
+	@PreDestroy
+	public void shutdown() {
+		formDownloadCache.shutdown();
+	}
+
 	@RequestMapping("latest-form-versions")
 	public @ResponseBody String getAllAvailableVersion() {
-		return readFormDefinitionFromDirectories();
+		return formDownloadCache.versions();
 	}
 
 	/*
-	 * Service method transfer file as a byte stream
+	 * Service method streams the cached zip of the form directory. Clients holding the current zip get
+	 * 304 Not Modified when they send its ETag in If-None-Match, and interrupted downloads can be
+	 * resumed with a single byte Range.
 	 * */
 	@RequestMapping("form-files")
-	public @ResponseBody byte[] getForm(@RequestParam(value="formDirName") String formDirName, HttpServletResponse resp) {
+	public void getForm(@RequestParam(value="formDirName") String formDirName, HttpServletRequest req, HttpServletResponse resp) throws IOException {
+		FormZip zip;
+		try {
+			zip = formDownloadCache.zipOf(formDirName);
+		} catch (IOException ex) {
+			logger.error(format("Could not zip form {0}: {1}", formDirName, ex));
+			throw new WebServiceException(ex);
+		}
+		if (zip == null) {
+			resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		resp.setHeader("ETag", zip.eTag());
+		resp.setHeader("Accept-Ranges", "bytes");
+		resp.setHeader("Cache-Control", "no-cache");
+		if (matchesETag(req.getHeader("If-None-Match"), zip.eTag())) {
+			resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+
+		long length = zip.length();
+		long start = 0;
+		long end = length - 1;
+		String range = req.getHeader("Range");
+		String ifRange = req.getHeader("If-Range");
+		if (range != null && (ifRange == null || ifRange.equals(zip.eTag()))) {
+			long[] requested = byteRange(range, length);
+			if (requested == null) {
+				resp.setHeader("Content-Range", "bytes */" + length);
+				resp.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+				return;
+			}
+			start = requested[0];
+			end = requested[1];
+			if (start > 0 || end < length - 1) {
+				resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				resp.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+			}
+		}
+
 		resp.setContentType("application/zip");
 		resp.setHeader("Content-Disposition", String.format("attachment; filename=\"%s\"",formDirName+".zip"));
-	    String filePath =  ((FORMS_DIR.endsWith("/")||FORMS_DIR.endsWith("\\"))?FORMS_DIR:(FORMS_DIR+"/")) + formDirName;   
-	    try {
-	        File file = new File(filePath);
-	        return zipFiles(file);
-	    } catch (IOException ex) {
-	        System.err.println(ex);
-	        throw new WebServiceException(ex);
-	    }      
+		resp.setHeader("Content-Length", String.valueOf(end - start + 1));
+		zip.transferTo(start, end - start + 1, resp.getOutputStream());
 	}
-    /**
-     * Compress the given directory with all its files.
-     */
-    private byte[] zipFiles(File directory) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ZipOutputStream zos = new ZipOutputStream(baos);
-        byte bytes[] = new byte[2048];
- 
-        String[] fl = directory.list();
-        for (String fileName : fl) {
-        	if(FILES_TO_DOWNLOAD.matches("(.+,)?"+fileName+"(,.+)?$")){
-	            FileInputStream fis = new FileInputStream(directory.getPath() + DS + fileName);
-	            BufferedInputStream bis = new BufferedInputStream(fis);
-	 
-	            zos.putNextEntry(new ZipEntry(fileName));
-	 
-	            int bytesRead;
-	            while ((bytesRead = bis.read(bytes)) != -1) {
-	                zos.write(bytes, 0, bytesRead);
-	            }
-	            zos.closeEntry();
-	            bis.close();
-	            fis.close();
-        	}
-        }
-        zos.flush();
-        baos.flush();
-        zos.close();
-        baos.close();
- 
-        return baos.toByteArray();
-    }	
-    
-	/*
-	 * Utility method read Forms directories 
-	 * recursively find name of available forms 
-	 * and their respective versions and then 
-	 * return as a json string
-	 * */
-	private String  readFormDefinitionFromDirectories(){
-	    String formName_Version_DefinitionJson = "{\"formVersions\" : [";
-	    String formVersionDefinition = "";
-	    File file = new File(FORMS_DIR);
-	    File[] files = file.listFiles();
-	    for (int i = 0; i < files.length; i++) {
-	    	if(new File(files[i].getPath()).isDirectory()){
-		        formVersionDefinition = getFormName_Definition(files[i].getPath()+"/"+FORMS_DEFINITION_FILE_NAME, files[i].getName());        
-		        if (files.length > 0 && i< files.length-1){
-		            formName_Version_DefinitionJson +=  formVersionDefinition + ",";
-		        }else{
-		            formName_Version_DefinitionJson +=  formVersionDefinition;
-		        }
-	    	}
-	    }
-	    formName_Version_DefinitionJson += "]}";
-	    return formName_Version_DefinitionJson;
+
+	private static boolean matchesETag(String ifNoneMatch, String eTag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		for (String candidate : ifNoneMatch.split(",")) {
+			String tag = candidate.trim();
+			if (tag.startsWith("W/")) {
+				tag = tag.substring(2);
+			}
+			if (tag.equals("*") || tag.equals(eTag)) {
+				return true;
+			}
+		}
+		return false;
 	}
+
 	/*
-	 * Utility method read form definition json
-	 * find its name and version 
-	 * and return it as a json string
+	 * Parses a single "bytes=first-last", "bytes=first-" or "bytes=-suffix" range. Returns the whole
+	 * content for ranges it does not handle, like multiple ranges, and null if the range is not satisfiable.
 	 * */
-	private String getFormName_Definition(String filePath, String formDirName) {
-	    String formName = "";
-	    String versionNo = "-1";
-	    String fieldname = "";
-	    JsonFactory jfactory = new JsonFactory();       
-	    JsonParser jParser;
-	    try {
-	        jParser = jfactory.createJsonParser(new File(filePath));
-	        while (jParser.nextToken() != JsonToken.END_OBJECT) {
-	
-	            fieldname = jParser.getCurrentName();
-	            if ("form_data_definition_version".equals(fieldname)) {
-	                jParser.nextToken();
-	                versionNo = jParser.getText();
-	            }
-	            if ("form".equals(fieldname)) {
-	                while (jParser.nextToken() != JsonToken.FIELD_NAME) {
-	                    jParser.nextToken();
-	                    fieldname = jParser.getCurrentName();
-	                    if ("default_bind_path".equals(fieldname)) {
-	                        jParser.nextToken();
-	                        formName = jParser.getText().substring(16,
-	                                jParser.getText().length() - 1);
-	                    }
-	                }
-	
-	            }
-	        }
-	        jParser.close();
-	    } catch (JsonParseException e) {
-	        e.printStackTrace();
-	    } catch (IOException e) {
-	        e.printStackTrace();
-	    }
-	    return "{\"formName\": \"" + formName + "\", \"formDirName\": \"" + formDirName + "\", \"formDataDefinitionVersion\": \""
-	            + versionNo + "\"}";
+	static long[] byteRange(String range, long length) {
+		long[] whole = {0, length - 1};
+		if (!range.startsWith("bytes=") || range.contains(",")) {
+			return whole;
+		}
+		String spec = range.substring("bytes=".length()).trim();
+		int dash = spec.indexOf('-');
+		if (dash < 0) {
+			return whole;
+		}
+		try {
+			String first = spec.substring(0, dash).trim();
+			String last = spec.substring(dash + 1).trim();
+			if (first.isEmpty()) {
+				long suffix = Long.parseLong(last);
+				return suffix <= 0 ? null : new long[]{Math.max(0, length - suffix), length - 1};
+			}
+			long start = Long.parseLong(first);
+			long end = last.isEmpty() ? length - 1 : Long.parseLong(last);
+			if (end < start) {
+				return whole;
+			}
+			return start >= length ? null : new long[]{start, Math.min(end, length - 1)};
+		} catch (NumberFormatException e) {
+			return whole;
+		}
 	}
 }
@@ -0,0 +1,468 @@
+package org.opensrp.web.controller;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Zips of the form directories and the manifest of their versions, built once and kept until the form files change.
+ * Zips are written to the cache directory under the hash of their content, so that they can be streamed straight
+ * from disk and identified by that hash. Whether a form changed is told from the names, sizes and modification
+ * times of its files, without reading them. A zip replaced by a newer one is kept for a grace period, so that
+ * requests which were handed the old zip can still stream it. Unless a cache directory is given, every instance
+ * keeps its zips in a directory of its own under the system temp directory, locked for as long as it runs.
+ * A given cache directory may be shared, so zip names carry the id of the instance which wrote them and an
+ * instance only ever deletes its own zips.
+ */
+public class FormDownloadCache {
+    private static Logger logger = LoggerFactory.getLogger(FormDownloadCache.class.toString());
+    private static final String FORMS_DEFINITION_FILE_NAME = "form_definition.json";
+    private static final String FILE_PREFIX = "form-";
+    private static final String ZIP_EXTENSION = ".zip";
+    private static final String TEMP_EXTENSION = ".tmp";
+    private static final String DEFAULT_CACHE_DIRECTORY = "opensrp-form-downloads";
+    private static final String INSTANCE_DIRECTORY_PREFIX = "instance-";
+    private static final String INSTANCE_LOCK_FILE_NAME = ".lock";
+    private static final long RETIRED_ZIP_GRACE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final long NEW_INSTANCE_DIRECTORY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final File formsDirectory;
+    private final File cacheDirectory;
+    private final Set<String> filesToDownload;
+    private final ConcurrentHashMap<String, FormZip> zips = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Object> locks = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<File, Long> retiredZips = new ConcurrentHashMap<>();
+    private final String instanceId = UUID.randomUUID().toString().substring(0, 8);
+    private volatile Manifest manifest;
+    private RandomAccessFile instanceLockFile;
+
+    public FormDownloadCache(File formsDirectory, File cacheDirectory, Set<String> filesToDownload) {
+        this.formsDirectory = formsDirectory;
+        this.cacheDirectory = cacheDirectory;
+        this.filesToDownload = filesToDownload;
+        if (!cacheDirectory.isDirectory() && !cacheDirectory.mkdirs()) {
+            throw new IllegalStateException("Could not create form download cache directory " + cacheDirectory);
+        }
+    }
+
+    /**
+     * Keeps the zips in a new directory of this instance under the system temp directory, and removes the
+     * directories left there by instances which are no longer running.
+     */
+    public FormDownloadCache(File formsDirectory, Set<String> filesToDownload) throws IOException {
+        this(formsDirectory, newInstanceDirectory(), filesToDownload);
+        instanceLockFile = new RandomAccessFile(new File(cacheDirectory, INSTANCE_LOCK_FILE_NAME), "rw");
+        instanceLockFile.getChannel().lock();
+        removeAbandonedInstanceDirectories(cacheDirectory.getParentFile());
+    }
+
+    /**
+     * @return JSON listing the name, directory and version of every form, rebuilt only if a form definition changed
+     */
+    public String versions() {
+        List<File> formDirectories = formDirectories();
+        String signature = versionsSignature(formDirectories);
+        Manifest current = manifest;
+        if (current != null && current.signature.equals(signature)) {
+            return current.json;
+        }
+        synchronized (this) {
+            current = manifest;
+            if (current == null || !current.signature.equals(signature)) {
+                current = new Manifest(signature, readFormDefinitions(formDirectories));
+                manifest = current;
+            }
+            return current.json;
+        }
+    }
+
+    /**
+     * @return the zip of the downloadable files of given form directory, or null if there is no such form
+     */
+    public FormZip zipOf(String formDirName) throws IOException {
+        File directory = formDirectory(formDirName);
+        if (directory == null) {
+            return null;
+        }
+        List<File> files = downloadableFiles(directory);
+        String signature = filesSignature(files);
+        FormZip zip = zips.get(formDirName);
+        if (isCurrent(zip, signature)) {
+            return zip;
+        }
+        synchronized (lockFor(formDirName)) {
+            zip = zips.get(formDirName);
+            if (isCurrent(zip, signature)) {
+                return zip;
+            }
+            FormZip built = build(formDirName, files, signature);
+            retiredZips.remove(built.file);
+            zips.put(formDirName, built);
+            long now = System.currentTimeMillis();
+            if (zip != null && !zip.file.equals(built.file)) {
+                retiredZips.put(zip.file, now);
+            }
+            deleteRetiredZips(now);
+            return built;
+        }
+    }
+
+    // a zip removed from the cache directory behind our back is rebuilt
+    private boolean isCurrent(FormZip zip, String signature) {
+        return zip != null && zip.signature.equals(signature) && zip.file.isFile();
+    }
+
+    private void deleteRetiredZips(long now) {
+        for (Map.Entry<File, Long> retired : retiredZips.entrySet()) {
+            if (now - retired.getValue() < RETIRED_ZIP_GRACE_MILLIS) {
+                continue;
+            }
+            File file = retired.getKey();
+            if (file.delete() || !file.exists()) {
+                retiredZips.remove(file, retired.getValue());
+            } else {
+                logger.warn(format("Could not delete outdated form zip {0}", file));
+            }
+        }
+    }
+
+    private FormZip build(String formDirName, List<File> files, String signature) throws IOException {
+        MessageDigest digest = sha1();
+        File temp = File.createTempFile(FILE_PREFIX + formDirName + "-", TEMP_EXTENSION, cacheDirectory);
+        try {
+            try (ZipOutputStream zip = new ZipOutputStream(new DigestOutputStream(new BufferedOutputStream(new FileOutputStream(temp)), digest))) {
+                for (File file : files) {
+                    ZipEntry entry = new ZipEntry(file.getName());
+                    // entry times come from the files so that unchanged forms zip to the same bytes
+                    entry.setTime(file.lastModified());
+                    zip.putNextEntry(entry);
+                    Files.copy(file.toPath(), zip);
+                    zip.closeEntry();
+                }
+            }
+            String hash = hex(digest.digest());
+            File target = new File(cacheDirectory, FILE_PREFIX + formDirName + "-" + hash + "-" + instanceId + ZIP_EXTENSION);
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            logger.info(format("Built zip of form {0} with hash {1}", formDirName, hash));
+            return new FormZip(target, target.length(), hash, signature);
+        } finally {
+            if (temp.exists() && !temp.delete()) {
+                logger.warn(format("Could not delete temporary form zip {0}", temp));
+            }
+        }
+    }
+
+    private File formDirectory(String formDirName) {
+        if (formDirName == null || formDirName.isEmpty() || formDirName.contains("/") || formDirName.contains("\\")
+                || formDirName.equals(".") || formDirName.equals("..")) {
+            return null;
+        }
+        File directory = new File(formsDirectory, formDirName);
+        return directory.isDirectory() ? directory : null;
+    }
+
+    private List<File> downloadableFiles(File directory) {
+        List<File> files = new ArrayList<>();
+        File[] children = directory.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                if (child.isFile() && filesToDownload.contains(child.getName())) {
+                    files.add(child);
+                }
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    private List<File> formDirectories() {
+        List<File> directories = new ArrayList<>();
+        File[] children = formsDirectory.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    directories.add(child);
+                }
+            }
+        }
+        Collections.sort(directories);
+        return directories;
+    }
+
+    private String versionsSignature(List<File> formDirectories) {
+        List<File> definitions = new ArrayList<>();
+        for (File directory : formDirectories) {
+            definitions.add(new File(directory, FORMS_DEFINITION_FILE_NAME));
+        }
+        return filesSignature(definitions);
+    }
+
+    private String filesSignature(List<File> files) {
+        StringBuilder signature = new StringBuilder();
+        for (File file : files) {
+            signature.append(file.getPath()).append(':').append(file.lastModified()).append(':').append(file.length()).append(';');
+        }
+        return signature.toString();
+    }
+
+    private String readFormDefinitions(List<File> formDirectories) {
+        StringBuilder json = new StringBuilder("{\"formVersions\" : [");
+        for (int i = 0; i < formDirectories.size(); i++) {
+            if (i > 0) {
+                json.append(",");
+            }
+            File directory = formDirectories.get(i);
+            json.append(formNameAndVersion(new File(directory, FORMS_DEFINITION_FILE_NAME), directory.getName()));
+        }
+        return json.append("]}").toString();
+    }
+
+    /*
+     * Reads form definition json, finds its name and version and returns it as a json string
+     */
+    private String formNameAndVersion(File definition, String formDirName) {
+        String formName = "";
+        String versionNo = "-1";
+        String fieldname;
+        try {
+            JsonParser jParser = new JsonFactory().createJsonParser(definition);
+            while (jParser.nextToken() != JsonToken.END_OBJECT) {
+                fieldname = jParser.getCurrentName();
+                if ("form_data_definition_version".equals(fieldname)) {
+                    jParser.nextToken();
+                    versionNo = jParser.getText();
+                }
+                if ("form".equals(fieldname)) {
+                    while (jParser.nextToken() != JsonToken.FIELD_NAME) {
+                        jParser.nextToken();
+                        fieldname = jParser.getCurrentName();
+                        if ("default_bind_path".equals(fieldname)) {
+                            jParser.nextToken();
+                            formName = jParser.getText().substring(16, jParser.getText().length() - 1);
+                        }
+                    }
+                }
+            }
+            jParser.close();
+        } catch (IOException e) {
+            logger.error(format("Could not read form definition {0}: {1}", definition, e));
+        }
+        return "{\"formName\": \"" + formName + "\", \"formDirName\": \"" + formDirName + "\", \"formDataDefinitionVersion\": \""
+                + versionNo + "\"}";
+    }
+
+    /**
+     * Deletes the zips written by this instance and, for a directory of its own, the directory itself.
+     */
+    public void shutdown() {
+        List<File> files = new ArrayList<>(retiredZips.keySet());
+        for (FormZip zip : zips.values()) {
+            files.add(zip.file);
+        }
+        zips.clear();
+        retiredZips.clear();
+        for (File file : files) {
+            if (file.exists() && !file.delete()) {
+                logger.warn(format("Could not delete cached form zip {0}", file));
+            }
+        }
+        if (instanceLockFile != null) {
+            try {
+                instanceLockFile.close();
+            } catch (IOException e) {
+                logger.warn(format("Could not release lock of form download cache directory {0}: {1}", cacheDirectory, e));
+            }
+            File lockFile = new File(cacheDirectory, INSTANCE_LOCK_FILE_NAME);
+            if (!lockFile.delete() || !cacheDirectory.delete()) {
+                logger.warn(format("Could not delete form download cache directory {0}", cacheDirectory));
+            }
+        }
+    }
+
+    private static File newInstanceDirectory() throws IOException {
+        File parent = new File(System.getProperty("java.io.tmpdir"), DEFAULT_CACHE_DIRECTORY);
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create form download cache directory " + parent);
+        }
+        return Files.createTempDirectory(parent.toPath(), INSTANCE_DIRECTORY_PREFIX).toFile();
+    }
+
+    /*
+     * A directory belongs to a running instance while that instance holds the lock on its lock file. Directories
+     * created moments ago are left alone, as their instance may not have locked them yet.
+     * */
+    private void removeAbandonedInstanceDirectories(File parent) {
+        File[] directories = parent.listFiles();
+        if (directories == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (File directory : directories) {
+            if (!directory.isDirectory() || !directory.getName().startsWith(INSTANCE_DIRECTORY_PREFIX) || directory.equals(cacheDirectory)
+                    || now - directory.lastModified() < NEW_INSTANCE_DIRECTORY_MILLIS || isLocked(directory)) {
+                continue;
+            }
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (!file.delete()) {
+                        logger.warn(format("Could not delete abandoned cached form zip {0}", file));
+                    }
+                }
+            }
+            if (!directory.delete()) {
+                logger.warn(format("Could not delete abandoned form download cache directory {0}", directory));
+            }
+        }
+    }
+
+    private boolean isLocked(File directory) {
+        File lockFile = new File(directory, INSTANCE_LOCK_FILE_NAME);
+        if (!lockFile.isFile()) {
+            return false;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(lockFile, "rw")) {
+            FileLock lock = file.getChannel().tryLock();
+            if (lock == null) {
+                return true;
+            }
+            lock.release();
+            return false;
+        } catch (OverlappingFileLockException e) {
+            return true;
+        } catch (IOException e) {
+            logger.warn(format("Could not check lock of form download cache directory {0}: {1}", directory, e));
+            return true;
+        }
+    }
+
+    private Object lockFor(String formDirName) {
+        Object lock = locks.get(formDirName);
+        if (lock == null) {
+            Object created = new Object();
+            lock = locks.putIfAbsent(formDirName, created);
+            if (lock == null) {
+                lock = created;
+            }
+        }
+        return lock;
+    }
+
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        char[] digits = "0123456789abcdef".toCharArray();
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = digits[(bytes[i] >> 4) & 0xf];
+            hex[2 * i + 1] = digits[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * A built zip of a form directory on disk.
+     */
+    public static class FormZip {
+        private final File file;
+        private final long length;
+        private final String hash;
+        private final String signature;
+
+        FormZip(File file, long length, String hash, String signature) {
+            this.file = file;
+            this.length = length;
+            this.hash = hash;
+            this.signature = signature;
+        }
+
+        File file() {
+            return file;
+        }
+
+        public String hash() {
+            return hash;
+        }
+
+        public String eTag() {
+            return "\"" + hash + "\"";
+        }
+
+        public long length() {
+            return length;
+        }
+
+        /**
+         * Writes count bytes of the zip starting at position to given stream, letting the file channel hand the
+         * bytes to the target channel without copying them through a buffer of our own.
+         */
+        public void transferTo(long position, long count, OutputStream outputStream) throws IOException {
+            WritableByteChannel target = Channels.newChannel(outputStream);
+            try (FileInputStream input = new FileInputStream(file)) {
+                FileChannel channel = input.getChannel();
+                long transferred = 0;
+                while (transferred < count) {
+                    long sent = channel.transferTo(position + transferred, count - transferred, target);
+                    if (sent <= 0) {
+                        throw new IOException(format("Form zip {0} ended after {1} of {2} bytes", file, position + transferred, position + count));
+                    }
+                    transferred += sent;
+                }
+            }
+            outputStream.flush();
+        }
+
+        @Override
+        public String toString() {
+            return file + " (" + hash + ")";
+        }
+    }
+
+    private static class Manifest {
+        private final String signature;
+        private final String json;
+
+        Manifest(String signature, String json) {
+            this.signature = signature;
+            this.json = json;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package org.opensrp.web.controller;
 import static ch.lambdaj.collection.LambdaCollections.with;
 import static java.text.MessageFormat.format;
 import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.CONFLICT;
 import static org.springframework.http.HttpStatus.CREATED;
 import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
 import static org.springframework.web.bind.annotation.RequestMethod.GET;
@@ -10,21 +11,15 @@ import static org.springframework.web.bind.annotation.RequestMethod.POST;
 import static org.springframework.http.HttpStatus.OK;
 
 import java.io.IOException;
-import java.text.ParseException;
-import java.util.Date;
+import java.io.InputStream;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+
+import javax.servlet.http.HttpServletResponse;
 
 import org.apache.http.client.ClientProtocolException;
-import org.json.JSONException;
-import org.json.JSONObject;
-import org.opensrp.api.domain.Client;
-import org.opensrp.api.domain.Event;
-import org.opensrp.connector.openmrs.constants.OpenmrsHouseHold;
-import org.opensrp.connector.openmrs.service.EncounterService;
-import org.opensrp.connector.openmrs.service.HouseholdService;
-import org.opensrp.connector.openmrs.service.PatientService;
-import org.opensrp.domain.ErrorTrace;
+import org.opensrp.connector.openmrs.service.OpenmrsMultimediaPushService;
+import org.opensrp.connector.openmrs.service.OpenmrsPushService;
 import org.opensrp.domain.Multimedia;
 import org.opensrp.dto.form.FormSubmissionDTO;
 import org.opensrp.dto.form.MultimediaDTO;
@@ -32,12 +27,9 @@ import org.opensrp.form.domain.FormSubmission;
 import org.opensrp.form.service.FormSubmissionConverter;
 import org.opensrp.form.service.FormSubmissionService;
 import org.opensrp.OpenSRPConstants.OpenSRPEvent;
-import org.opensrp.repository.MultimediaRepository;
 import org.opensrp.scheduler.SystemEvent;
 import org.opensrp.scheduler.TaskSchedulerService;
-import org.opensrp.service.ErrorTraceService;
 import org.opensrp.service.MultimediaService;
-import org.opensrp.service.formSubmission.FormEntityConverter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -53,35 +45,25 @@ import org.springframework.web.multipart.MultipartFile;
 import ch.lambdaj.function.convert.Converter;
 
 import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
 
 @Controller
 public class FormSubmissionController {
     private static Logger logger = LoggerFactory.getLogger(FormSubmissionController.class.toString());
     private FormSubmissionService formSubmissionService;
     private TaskSchedulerService scheduler;
-    private EncounterService encounterService;
-    private FormEntityConverter formEntityConverter;
-    private PatientService patientService;
-    private HouseholdService householdService;
-    private ErrorTraceService errorTraceService;
+    private OpenmrsPushService openmrsPushService;
+    private OpenmrsMultimediaPushService openmrsMultimediaPushService;
     private MultimediaService multimediaService;
-    private MultimediaRepository multimediaRepository;
     
     @Autowired
     public FormSubmissionController(FormSubmissionService formSubmissionService, TaskSchedulerService scheduler,
-    		EncounterService encounterService, FormEntityConverter formEntityConverter, PatientService patientService, 
-    		HouseholdService householdService,MultimediaService multimediaService, MultimediaRepository multimediaRepository,
-    		ErrorTraceService errorTraceService) {
+    		OpenmrsPushService openmrsPushService, OpenmrsMultimediaPushService openmrsMultimediaPushService,
+    		MultimediaService multimediaService) {
         this.formSubmissionService = formSubmissionService;
         this.scheduler = scheduler;
-        this.errorTraceService=errorTraceService;
-        this.encounterService = encounterService;
-        this.formEntityConverter = formEntityConverter;
-        this.patientService = patientService;
-        this.householdService = householdService;
+        this.openmrsPushService = openmrsPushService;
+        this.openmrsMultimediaPushService = openmrsMultimediaPushService;
         this.multimediaService = multimediaService;
-        this.multimediaRepository = multimediaRepository;
     }
 
     @RequestMapping(method = GET, value = "/form-submissions")
@@ -100,6 +82,18 @@ public class FormSubmissionController {
         });
     }
 
+    @RequestMapping(method = GET, value = "/form-submissions/stream")
+    public void streamNewSubmissionsForANM(@RequestParam("anm-id") String anmIdentifier,
+                                           @RequestParam("timestamp") Long timeStamp,
+                                           @RequestParam(value = "last-doc-id", required = false) String lastDocId,
+                                           @RequestParam(value = "batch-size", required = false) Integer batchSize,
+                                           HttpServletResponse response) throws IOException {
+        response.setContentType("application/json");
+        FormSubmissionJsonStreamWriter writer = new FormSubmissionJsonStreamWriter(response.getOutputStream(), timeStamp, lastDocId);
+        formSubmissionService.streamNewSubmissionsForANM(anmIdentifier, timeStamp, lastDocId, batchSize, writer);
+        writer.close();
+    }
+
     @RequestMapping(method = GET, value="/all-form-submissions")
     @ResponseBody
     private List<FormSubmissionDTO> getAllFormSubmissions(@RequestParam("timestamp") Long timeStamp,
@@ -117,6 +111,17 @@ public class FormSubmissionController {
     
  
 
+    @RequestMapping(method = GET, value = "/all-form-submissions/stream")
+    public void streamAllFormSubmissions(@RequestParam("timestamp") Long timeStamp,
+                                         @RequestParam(value = "last-doc-id", required = false) String lastDocId,
+                                         @RequestParam(value = "batch-size", required = false) Integer batchSize,
+                                         HttpServletResponse response) throws IOException {
+        response.setContentType("application/json");
+        FormSubmissionJsonStreamWriter writer = new FormSubmissionJsonStreamWriter(response.getOutputStream(), timeStamp, lastDocId);
+        formSubmissionService.streamAllSubmissions(timeStamp, lastDocId, batchSize, writer);
+        writer.close();
+    }
+
     @RequestMapping(headers = {"Accept=application/json"}, method = POST, value = "/form-submissions")
     public ResponseEntity<HttpStatus> submitForms(@RequestBody List<FormSubmissionDTO> formSubmissionsDTO) {
         try {
@@ -126,34 +131,14 @@ public class FormSubmissionController {
 
             scheduler.notifyEvent(new SystemEvent<>(OpenSRPEvent.FORM_SUBMISSION, formSubmissionsDTO));
             
-            try{
-          
-            ////////TODO MAIMOONA : SHOULD BE IN EVENT but event needs to be moved to web so for now kept here
-            String json = new Gson().toJson(formSubmissionsDTO);
-            System.out.println("MMMMMMMMMMMYYYYYYYYYYYYYY::"+json);
-            List<FormSubmissionDTO> formSubmissions = new Gson().fromJson(json, new TypeToken<List<FormSubmissionDTO>>() {
-            }.getType());
-            List<FormSubmission> fsl = with(formSubmissions).convert(new Converter<FormSubmissionDTO, FormSubmission>() {
+            List<FormSubmission> formSubmissions = with(formSubmissionsDTO).convert(new Converter<FormSubmissionDTO, FormSubmission>() {
                 @Override
                 public FormSubmission convert(FormSubmissionDTO submission) {
                     return FormSubmissionConverter.toFormSubmission(submission);
                 }
             });
-	            for (FormSubmission formSubmission : fsl) {
-	            	try{
-	            		addFormToOpenMRS(formSubmission);
-	            	}
-	            	catch(Exception e){
-	            		e.printStackTrace();
-	            		ErrorTrace errorTrace=new ErrorTrace(new Date(), "Parse Exception", "", e.getStackTrace().toString(), "Unsolved", formSubmission.formName());
-						errorTrace.setRecordId(formSubmission.instanceId());
-						errorTraceService.addError(errorTrace);
-	            	}
-	    		}
-            }
-            catch(Exception e){
-            	e.printStackTrace();
-            }
+            openmrsPushService.enqueue(formSubmissions);
+
             logger.debug(format("Added Form submissions to queue.\nSubmissions: {0}", formSubmissionsDTO));
         } catch (Exception e) {
             logger.error(format("Form submissions processing failed with exception {0}.\nSubmissions: {1}", e, formSubmissionsDTO));
@@ -162,44 +147,6 @@ public class FormSubmissionController {
         return new ResponseEntity<>(CREATED);
     }
     
-    private void addFormToOpenMRS(FormSubmission formSubmission) throws ParseException, IllegalStateException, JSONException{
-//    	if(formEntityConverter.isOpenmrsForm(formSubmission)){
-    		Client c = formEntityConverter.getClientFromFormSubmission(formSubmission);
-			Event e = formEntityConverter.getEventFromFormSubmission(formSubmission);
-			Map<String, Map<String, Object>> dep = formEntityConverter.getDependentClientsFromFormSubmission(formSubmission);
-
-    		// TODO temporary because not necessarily we register inner entity for Household only
-    		if(formSubmission.formName().toLowerCase().contains("household") 
-    				|| formSubmission.formName().toLowerCase().contains("census") ){
-    			OpenmrsHouseHold hh = new OpenmrsHouseHold(c, e);
-    			for (Map<String, Object> cm : dep.values()) {
-    				hh.addHHMember((Client)cm.get("client"), (Event)cm.get("event"));
-    			}
-    			
-    			householdService.saveHH(hh, true);
-    		}
-    		else {
-    			JSONObject p = patientService.getPatientByIdentifier(c.getBaseEntityId());
-    			if(p == null){
-    				System.out.println(patientService.createPatient(c));
-    			}
-        	
-    			System.out.println(encounterService.createEncounter(e));
-    			
-    			for (Map<String, Object> cm : dep.values()) {
-    				Client cin = (Client)cm.get("client");
-    				Event evin = (Event)cm.get("event");
-    				JSONObject pin = patientService.getPatientByIdentifier(cin.getBaseEntityId());
-        			if(pin == null){
-        				System.out.println(patientService.createPatient(cin));
-        			}
-            	
-        			System.out.println(encounterService.createEncounter(evin));
-    			}
-    		}
-    	//}
-    }
-
     @RequestMapping(headers = {"Accept=application/json"}, method = GET, value = "/multimedia-file")
     @ResponseBody
     public List<MultimediaDTO> getFiles(@RequestParam("anm-id") String providerId) {
@@ -221,9 +168,57 @@ public class FormSubmissionController {
     	
     	if(status.equals("success"))
     	{
-         Multimedia multimedia =   multimediaRepository.findByCaseId(entityId);
-    	 patientService.patientImageUpload(multimedia);
+    	 openmrsMultimediaPushService.pushLater();
     	}
     	 return new ResponseEntity<>(new Gson().toJson(status), OK);
     }
+
+    /**
+     * Returns {"offset": n}, the number of bytes received so far for the upload of the anm, where the next chunk must start.
+     */
+    @RequestMapping(method = GET, value = "/multimedia-file/upload")
+    public ResponseEntity<String> uploadOffset(@RequestParam("upload-id") String uploadId, @RequestParam("anm-id") String providerId) {
+        try {
+            return offset(multimediaService.uploadedBytes(providerId, uploadId), OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(BAD_REQUEST);
+        }
+    }
+
+    /**
+     * Appends the request body to the upload, streaming it to disk. A chunk that does not start at the current
+     * offset gets 409 Conflict with the offset to resume from.
+     */
+    @RequestMapping(method = POST, value = "/multimedia-file/upload")
+    public ResponseEntity<String> uploadChunk(@RequestParam("upload-id") String uploadId, @RequestParam("anm-id") String providerId, @RequestParam("offset") long offset, InputStream chunk) {
+        try {
+            return offset(multimediaService.appendChunk(providerId, uploadId, offset, chunk), OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(BAD_REQUEST);
+        } catch (IllegalStateException e) {
+            return offset(multimediaService.uploadedBytes(providerId, uploadId), CONFLICT);
+        } catch (IOException e) {
+            logger.warn(format("Chunk of upload {0} of provider {1} at offset {2} was cut off: {3}", uploadId, providerId, offset, e));
+            return offset(multimediaService.uploadedBytes(providerId, uploadId), INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @RequestMapping(method = POST, value = "/multimedia-file/upload/complete")
+    public ResponseEntity<String> completeUpload(@RequestParam("upload-id") String uploadId, @RequestParam("anm-id") String providerId, @RequestParam("entity-id") String entityId, @RequestParam("content-type") String contentType, @RequestParam("file-category") String fileCategory) {
+        MultimediaDTO multimediaDTO = new MultimediaDTO(entityId, providerId, contentType, null, fileCategory);
+        String status;
+        try {
+            status = multimediaService.completeUpload(uploadId, multimediaDTO);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(BAD_REQUEST);
+        }
+        if (status.equals("success")) {
+            openmrsMultimediaPushService.pushLater();
+        }
+        return new ResponseEntity<>(new Gson().toJson(status), OK);
+    }
+
+    private ResponseEntity<String> offset(long offset, HttpStatus status) {
+        return new ResponseEntity<>(new Gson().toJson(Collections.singletonMap("offset", offset)), status);
+    }
 }
@@ -0,0 +1,57 @@
+package org.opensrp.web.controller;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.opensrp.form.domain.FormSubmission;
+import org.opensrp.form.repository.FormSubmissionStreamHandler;
+import org.opensrp.form.service.FormSubmissionConverter;
+
+/**
+ * Writes form submissions to the response one at a time as
+ * {"formSubmissions": [...], "continuationToken": {"timestamp": ..., "docId": ...}}.
+ * The continuation token is the position of the last written submission, to be
+ * passed back as timestamp and last-doc-id when fetching the next page.
+ */
+public class FormSubmissionJsonStreamWriter implements FormSubmissionStreamHandler {
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private final JsonGenerator generator;
+    private long lastServerVersion;
+    private String lastDocId;
+
+    public FormSubmissionJsonStreamWriter(OutputStream outputStream, long serverVersion, String lastDocId) throws IOException {
+        this.generator = objectMapper.getJsonFactory().createJsonGenerator(outputStream, JsonEncoding.UTF8);
+        this.lastServerVersion = serverVersion;
+        this.lastDocId = lastDocId;
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("formSubmissions");
+    }
+
+    @Override
+    public void handle(FormSubmission submission) {
+        try {
+            generator.writeObject(FormSubmissionConverter.from(submission));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        lastServerVersion = submission.serverVersion();
+        lastDocId = submission.getId();
+    }
+
+    public void close() throws IOException {
+        generator.writeEndArray();
+        generator.writeObjectFieldStart("continuationToken");
+        generator.writeNumberField("timestamp", lastServerVersion);
+        if (lastDocId == null) {
+            generator.writeNullField("docId");
+        } else {
+            generator.writeStringField("docId", lastDocId);
+        }
+        generator.writeEndObject();
+        generator.writeEndObject();
+        generator.close();
+    }
+}
@@ -0,0 +1,32 @@
+package org.opensrp.web.controller;
+
+import org.opensrp.connector.HttpClientMetrics;
+import org.opensrp.connector.HttpUtil;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Controller
+public class MetricsController {
+    @RequestMapping(method = RequestMethod.GET, value = "/metrics/openmrs-http")
+    @ResponseBody
+    public Map<String, Object> openmrsHttpMetrics() {
+        return asMap(HttpUtil.metrics());
+    }
+
+    private static Map<String, Object> asMap(HttpClientMetrics metrics) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("requests", metrics.requests());
+        map.put("failures", metrics.failures());
+        map.put("averageLatencyInMillis", metrics.averageLatencyInMillis());
+        map.put("maxLatencyInMillis", metrics.maxLatencyInMillis());
+        map.put("connectionsInPool", metrics.connectionsInPool());
+        map.put("maxConnections", metrics.maxConnections());
+        map.put("maxConnectionsPerRoute", metrics.maxConnectionsPerRoute());
+        return map;
+    }
+}
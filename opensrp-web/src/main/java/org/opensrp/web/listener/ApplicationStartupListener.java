@@ -24,17 +24,32 @@ public class ApplicationStartupListener implements ApplicationListener<ContextRe
     private RepeatingSchedule anmReportScheduler;
     private RepeatingSchedule mctsReportScheduler;
     private RepeatingSchedule openmrsScheduleSyncerScheduler;
+    private RepeatingSchedule openmrsPushScheduler;
+    private RepeatingSchedule openmrsLocationCacheScheduler;
+    private RepeatingSchedule anmEntityCountsScheduler;
+    private RepeatingSchedule anmEntityCountsRecomputeScheduler;
+    private RepeatingSchedule reportOutboxScheduler;
     
     @Autowired
     public ApplicationStartupListener(TaskSchedulerService scheduler, 
     		@Value("#{opensrp['form.poll.time.interval']}") int formPollInterval,
     		@Value("#{opensrp['mcts.poll.time.interval.in.minutes']}") int mctsPollIntervalInHours,
-    		@Value("#{opensrp['openmrs.scheduletracker.syncer.interval-min']}") int openmrsSchSyncerMin) {
+    		@Value("#{opensrp['openmrs.scheduletracker.syncer.interval-min']}") int openmrsSchSyncerMin,
+    		@Value("#{opensrp['openmrs.push.interval-sec']}") int openmrsPushIntervalSec,
+    		@Value("#{opensrp['openmrs.location.cache.refresh-min']}") int openmrsLocationRefreshMin,
+    		@Value("#{opensrp['anm.entity.counts.poll.interval-sec']}") int anmEntityCountsPollSec,
+    		@Value("#{opensrp['anm.entity.counts.recompute.interval-hours']}") int anmEntityCountsRecomputeHours,
+    		@Value("#{opensrp['report.outbox.interval-sec']}") int reportOutboxIntervalSec) {
         this.scheduler = scheduler;
         formSchedule = new RepeatingSchedule(OpenSRPConstants.FORM_SCHEDULE_SUBJECT, 2, TimeUnit.MINUTES, formPollInterval, TimeUnit.MINUTES);
         anmReportScheduler = new RepeatingSchedule(DrishtiScheduleConstants.ANM_REPORT_SCHEDULE_SUBJECT, 10, TimeUnit.MINUTES, 6, TimeUnit.HOURS);
         mctsReportScheduler = new RepeatingSchedule(DrishtiScheduleConstants.MCTS_REPORT_SCHEDULE_SUBJECT, 10, TimeUnit.MINUTES, mctsPollIntervalInHours, TimeUnit.HOURS);
         openmrsScheduleSyncerScheduler = new RepeatingSchedule(OpenmrsConstants.SCHEDULER_TRACKER_SYNCER_SUBJECT, 2, TimeUnit.MINUTES, openmrsSchSyncerMin, TimeUnit.MINUTES);
+        openmrsPushScheduler = new RepeatingSchedule(OpenmrsConstants.OPENMRS_PUSH_SUBJECT, 1, TimeUnit.MINUTES, openmrsPushIntervalSec, TimeUnit.SECONDS);
+        openmrsLocationCacheScheduler = new RepeatingSchedule(OpenmrsConstants.LOCATION_CACHE_REFRESH_SUBJECT, 1, TimeUnit.MINUTES, openmrsLocationRefreshMin, TimeUnit.MINUTES);
+        anmEntityCountsScheduler = new RepeatingSchedule(DrishtiScheduleConstants.ANM_ENTITY_COUNTS_SUBJECT, 1, TimeUnit.MINUTES, anmEntityCountsPollSec, TimeUnit.SECONDS);
+        anmEntityCountsRecomputeScheduler = new RepeatingSchedule(DrishtiScheduleConstants.ANM_ENTITY_COUNTS_RECOMPUTE_SUBJECT, anmEntityCountsRecomputeHours, TimeUnit.HOURS, anmEntityCountsRecomputeHours, TimeUnit.HOURS);
+        reportOutboxScheduler = new RepeatingSchedule(DrishtiScheduleConstants.REPORT_OUTBOX_SUBJECT, 1, TimeUnit.MINUTES, reportOutboxIntervalSec, TimeUnit.SECONDS);
     }
 
     @Override
@@ -45,6 +60,11 @@ public class ApplicationStartupListener implements ApplicationListener<ContextRe
             scheduler.startJob(anmReportScheduler);
             scheduler.startJob(mctsReportScheduler);
             scheduler.startJob(openmrsScheduleSyncerScheduler);
+            scheduler.startJob(openmrsPushScheduler);
+            scheduler.startJob(openmrsLocationCacheScheduler);
+            scheduler.startJob(anmEntityCountsScheduler);
+            scheduler.startJob(anmEntityCountsRecomputeScheduler);
+            scheduler.startJob(reportOutboxScheduler);
         	System.out.println("STARTED ALL SCHEDULES");
         }
     }
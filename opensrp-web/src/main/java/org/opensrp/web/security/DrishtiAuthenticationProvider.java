@@ -2,15 +2,20 @@ package org.opensrp.web.security;
 
 import static java.text.MessageFormat.format;
 
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
 import java.util.List;
+import java.util.UUID;
 
 import org.json.JSONException;
 import org.opensrp.api.domain.User;
+import org.opensrp.common.util.TtlCache;
 import org.opensrp.connector.openmrs.service.OpenmrsUserService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -23,8 +28,14 @@ import org.springframework.stereotype.Component;
 import ch.lambdaj.Lambda;
 import ch.lambdaj.function.convert.Converter;
 
+/**
+ * Authenticates users against OpenMRS. Users and the credentials they were last authenticated with are cached
+ * for a while, so that repeated requests of a device do not each cost two calls to OpenMRS. Credentials are
+ * cached only as a hash salted with a random salt of this instance.
+ */
 @Component
 public class DrishtiAuthenticationProvider implements AuthenticationProvider {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
     private static Logger logger = LoggerFactory.getLogger(DrishtiAuthenticationProvider.class.toString());
     public static final String USER_NOT_FOUND = "The username or password you entered is incorrect. Please enter the correct credentials.";
     public static final String USER_NOT_ACTIVATED = "The user has been registered but not activated. Please contact your local administrator.";
@@ -33,12 +44,18 @@ public class DrishtiAuthenticationProvider implements AuthenticationProvider {
     //private AllOpenSRPUsers allOpenSRPUsers;
     private PasswordEncoder passwordEncoder;
     private OpenmrsUserService openmrsUserService;
-
+    private final String credentialSalt = UUID.randomUUID().toString();
+    private TtlCache<String, String> authenticationCache;
+    private TtlCache<String, User> userCache;
 
     @Autowired
-    public DrishtiAuthenticationProvider(OpenmrsUserService openmrsUserService, @Qualifier("shaPasswordEncoder") PasswordEncoder passwordEncoder) {
+    public DrishtiAuthenticationProvider(OpenmrsUserService openmrsUserService, @Qualifier("shaPasswordEncoder") PasswordEncoder passwordEncoder,
+                                         @Value("#{opensrp['auth.cache.max.size']}") int cacheMaxSize,
+                                         @Value("#{opensrp['auth.cache.ttl-sec']}") int cacheTtlSeconds) {
         this.openmrsUserService = openmrsUserService;
         this.passwordEncoder = passwordEncoder;
+        this.authenticationCache = new TtlCache<>(cacheMaxSize, cacheTtlSeconds * 1000L);
+        this.userCache = new TtlCache<>(cacheMaxSize, cacheTtlSeconds * 1000L);
     }
 
     @Override
@@ -49,14 +66,18 @@ public class DrishtiAuthenticationProvider implements AuthenticationProvider {
         }
 
         String credentials = (String) authentication.getCredentials();
-        //String hashedCredentials = passwordEncoder.encodePassword(credentials, user.getSalt());
-        try {
-			if (!openmrsUserService.authenticate(user.getUsername(), credentials)) {
-			    throw new BadCredentialsException(USER_NOT_FOUND);
-			}
-		} catch (JSONException e) {
-			e.printStackTrace();
-		}
+        String hashedCredentials = passwordEncoder.encodePassword(credentials, credentialSalt);
+        if (!isCachedCredentials(user.getUsername(), hashedCredentials)) {
+            try {
+                if (!openmrsUserService.authenticate(user.getUsername(), credentials)) {
+                    authenticationCache.invalidate(user.getUsername());
+                    throw new BadCredentialsException(USER_NOT_FOUND);
+                }
+                authenticationCache.put(user.getUsername(), hashedCredentials);
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+        }
 
         /*if (!user.isActive()) {
             throw new BadCredentialsException(USER_NOT_ACTIVATED);
@@ -64,6 +85,14 @@ public class DrishtiAuthenticationProvider implements AuthenticationProvider {
         return new UsernamePasswordAuthenticationToken(authentication.getName(), credentials, getRolesAsAuthorities(user));
     }
 
+    /**
+     * Compares in constant time, so that the time taken does not tell how much of a guess matched.
+     */
+    private boolean isCachedCredentials(String username, String hashedCredentials) {
+        String cached = authenticationCache.get(username);
+        return cached != null && MessageDigest.isEqual(hashedCredentials.getBytes(UTF_8), cached.getBytes(UTF_8));
+    }
+
     @Override
     public boolean supports(Class<?> authentication) {
         return UsernamePasswordAuthenticationToken.class.isAssignableFrom(authentication)
@@ -80,25 +109,45 @@ public class DrishtiAuthenticationProvider implements AuthenticationProvider {
     }
 
     public User getDrishtiUser(Authentication authentication) {
-        User user;
-        try {
-            user = openmrsUserService.getUser((String) authentication.getPrincipal());
-        } catch (Exception e) {
-            logger.error(format("{0}. Exception: {1}", INTERNAL_ERROR, e));
-            throw new BadCredentialsException(INTERNAL_ERROR);
-        }
-        return user;
+        return getDrishtiUser((String) authentication.getPrincipal());
     }
     
 
     public User getDrishtiUser(String username) {
-        User user;
+        User user = userCache.get(username);
+        if (user != null) {
+            return user;
+        }
         try {
             user = openmrsUserService.getUser(username);
         } catch (Exception e) {
             logger.error(format("{0}. Exception: {1}", INTERNAL_ERROR, e));
             throw new BadCredentialsException(INTERNAL_ERROR);
         }
+        if (user != null) {
+            userCache.put(username, user);
+        }
         return user;
     }
+
+    /**
+     * Forgets the cached profile and credentials of given user, e.g. after the password or roles changed in OpenMRS.
+     */
+    public void invalidate(String username) {
+        userCache.invalidate(username);
+        authenticationCache.invalidate(username);
+    }
+
+    public void invalidateAll() {
+        userCache.invalidateAll();
+        authenticationCache.invalidateAll();
+    }
+
+    public TtlCache<String, String> authenticationCache() {
+        return authenticationCache;
+    }
+
+    public TtlCache<String, User> userCache() {
+        return userCache;
+    }
 }
@@ -0,0 +1,176 @@
+package org.opensrp.web.controller;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opensrp.web.controller.FormDownloadCache.FormZip;
+
+import static java.util.Arrays.asList;
+
+public class FormDownloadCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File formsDirectory;
+    private File cacheDirectory;
+    private FormDownloadCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        formsDirectory = folder.newFolder("forms");
+        File form = new File(formsDirectory, "ec_registration");
+        form.mkdir();
+        write(new File(form, "form.xml"), "<form/>");
+        write(new File(form, "model.xml"), "<model/>");
+        write(new File(form, "notes.txt"), "not downloaded");
+        write(new File(form, "form_definition.json"), definition("1"));
+        cacheDirectory = folder.newFolder("cache");
+        cache = new FormDownloadCache(formsDirectory, cacheDirectory, new HashSet<>(asList("form.xml", "model.xml", "form_definition.json")));
+    }
+
+    @Test
+    public void shouldZipOnlyTheFilesToDownload() throws Exception {
+        FormZip zip = cache.zipOf("ec_registration");
+
+        assertEquals(asList("form.xml", "form_definition.json", "model.xml"), entriesOf(zip));
+    }
+
+    @Test
+    public void shouldReuseZipUntilFormFilesChange() throws Exception {
+        FormZip zip = cache.zipOf("ec_registration");
+
+        assertSame(zip, cache.zipOf("ec_registration"));
+
+        File formXml = new File(formsDirectory, "ec_registration/form.xml");
+        write(formXml, "<form version=\"2\"/>");
+        formXml.setLastModified(formXml.lastModified() + 2000);
+        FormZip rebuilt = cache.zipOf("ec_registration");
+
+        assertNotSame(zip, rebuilt);
+        assertFalse(zip.hash().equals(rebuilt.hash()));
+    }
+
+    @Test
+    public void shouldRebuildZipRemovedFromCacheDirectory() throws Exception {
+        FormZip zip = cache.zipOf("ec_registration");
+        for (File file : cacheDirectory.listFiles()) {
+            assertTrue(file.delete());
+        }
+
+        FormZip rebuilt = cache.zipOf("ec_registration");
+
+        assertNotSame(zip, rebuilt);
+        assertEquals(zip.hash(), rebuilt.hash());
+        assertEquals(asList("form.xml", "form_definition.json", "model.xml"), entriesOf(rebuilt));
+    }
+
+    @Test
+    public void shouldKeepStreamingOutdatedZipRightAfterItIsReplaced() throws Exception {
+        FormZip zip = cache.zipOf("ec_registration");
+
+        File formXml = new File(formsDirectory, "ec_registration/form.xml");
+        write(formXml, "<form version=\"2\"/>");
+        formXml.setLastModified(formXml.lastModified() + 2000);
+        cache.zipOf("ec_registration");
+
+        assertEquals(asList("form.xml", "form_definition.json", "model.xml"), entriesOf(zip));
+        assertEquals(2, cacheDirectory.listFiles().length);
+    }
+
+    @Test
+    public void shouldOnlyDeleteItsOwnZipsFromASharedCacheDirectory() throws Exception {
+        File zipOfOtherInstance = cache.zipOf("ec_registration").file();
+        File otherFile = new File(cacheDirectory, "form-other-file.zip");
+        write(otherFile, "not written by a form download cache");
+
+        FormDownloadCache newCache = new FormDownloadCache(formsDirectory, cacheDirectory, new HashSet<>(asList("form.xml", "model.xml", "form_definition.json")));
+        File zip = newCache.zipOf("ec_registration").file();
+        assertTrue(zipOfOtherInstance.isFile());
+        assertFalse(zip.equals(zipOfOtherInstance));
+
+        newCache.shutdown();
+
+        assertFalse(zip.exists());
+        assertTrue(zipOfOtherInstance.isFile());
+        assertTrue(otherFile.isFile());
+    }
+
+    @Test
+    public void shouldStreamRequestedPartOfZip() throws Exception {
+        FormZip zip = cache.zipOf("ec_registration");
+        ByteArrayOutputStream whole = new ByteArrayOutputStream();
+        ByteArrayOutputStream part = new ByteArrayOutputStream();
+
+        zip.transferTo(0, zip.length(), whole);
+        zip.transferTo(10, 20, part);
+
+        assertEquals(zip.length(), whole.size());
+        byte[] expected = new byte[20];
+        System.arraycopy(whole.toByteArray(), 10, expected, 0, 20);
+        assertTrue(Arrays.equals(expected, part.toByteArray()));
+    }
+
+    @Test
+    public void shouldNotZipDirectoriesOutsideFormsDirectory() throws Exception {
+        assertNull(cache.zipOf(".."));
+        assertNull(cache.zipOf("../forms"));
+        assertNull(cache.zipOf("missing_form"));
+    }
+
+    @Test
+    public void shouldCacheVersionsUntilAFormDefinitionChanges() throws Exception {
+        String versions = cache.versions();
+
+        assertEquals("{\"formVersions\" : [{\"formName\": \"ec_registration\", \"formDirName\": \"ec_registration\", \"formDataDefinitionVersion\": \"1\"}]}", versions);
+        assertSame(versions, cache.versions());
+
+        File definition = new File(formsDirectory, "ec_registration/form_definition.json");
+        write(definition, definition("2"));
+        definition.setLastModified(definition.lastModified() + 2000);
+
+        assertTrue(cache.versions().contains("\"formDataDefinitionVersion\": \"2\""));
+    }
+
+    private List<String> entriesOf(FormZip zip) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        zip.transferTo(0, zip.length(), bytes);
+        List<String> names = new ArrayList<>();
+        try (ZipInputStream input = new ZipInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            for (ZipEntry entry = input.getNextEntry(); entry != null; entry = input.getNextEntry()) {
+                names.add(entry.getName());
+            }
+        }
+        return names;
+    }
+
+    private String definition(String version) {
+        return "{\"form_data_definition_version\": \"" + version + "\", \"form\": {\"bind_type\": \"eligible_couple\", "
+                + "\"default_bind_path\": \"/model/instance/ec_registration/\", \"fields\": []}}";
+    }
+
+    private void write(File file, String content) throws IOException {
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write(content);
+        }
+    }
+}
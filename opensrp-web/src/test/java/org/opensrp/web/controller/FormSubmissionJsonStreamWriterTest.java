@@ -0,0 +1,45 @@
+package org.opensrp.web.controller;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Test;
+import org.opensrp.form.domain.FormSubmission;
+
+public class FormSubmissionJsonStreamWriterTest {
+    @Test
+    public void shouldWriteSubmissionsFollowedByTheContinuationTokenOfTheLastOne() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        FormSubmission firstSubmission = new FormSubmission("anm id 1", "instance id 1", "form name 1", "entity id 1", 0L, "1", null, 1L);
+        firstSubmission.setId("doc id 1");
+        FormSubmission secondSubmission = new FormSubmission("anm id 1", "instance id 2", "form name 1", "entity id 2", 0L, "1", null, 2L);
+        secondSubmission.setId("doc id 2");
+
+        FormSubmissionJsonStreamWriter writer = new FormSubmissionJsonStreamWriter(outputStream, 0L, null);
+        writer.handle(firstSubmission);
+        writer.handle(secondSubmission);
+        writer.close();
+
+        JsonNode response = new ObjectMapper().readTree(outputStream.toString("UTF-8"));
+        assertEquals(2, response.get("formSubmissions").size());
+        assertEquals("instance id 2", response.get("formSubmissions").get(1).get("instanceId").getTextValue());
+        assertEquals(2L, response.get("continuationToken").get("timestamp").getLongValue());
+        assertEquals("doc id 2", response.get("continuationToken").get("docId").getTextValue());
+    }
+
+    @Test
+    public void shouldReturnTheGivenPositionAsContinuationTokenWhenThereAreNoNewSubmissions() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        FormSubmissionJsonStreamWriter writer = new FormSubmissionJsonStreamWriter(outputStream, 5L, "doc id 1");
+        writer.close();
+
+        JsonNode response = new ObjectMapper().readTree(outputStream.toString("UTF-8"));
+        assertEquals(0, response.get("formSubmissions").size());
+        assertEquals(5L, response.get("continuationToken").get("timestamp").getLongValue());
+        assertEquals("doc id 1", response.get("continuationToken").get("docId").getTextValue());
+    }
+}
@@ -0,0 +1,27 @@
+package org.opensrp.web.controller;
+
+import org.junit.Test;
+import org.opensrp.connector.HttpUtil;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsControllerTest {
+    @Test
+    public void shouldServeMetricsOfTheOpenmrsHttpClient() {
+        HttpUtil httpUtil = new HttpUtil(12, 6, 1000, 1000);
+        httpUtil.init();
+        try {
+            Map<String, Object> metrics = new MetricsController().openmrsHttpMetrics();
+
+            assertEquals(12, metrics.get("maxConnections"));
+            assertEquals(6, metrics.get("maxConnectionsPerRoute"));
+            assertTrue(metrics.containsKey("requests"));
+            assertTrue(metrics.containsKey("averageLatencyInMillis"));
+        } finally {
+            httpUtil.destroy();
+        }
+    }
+}
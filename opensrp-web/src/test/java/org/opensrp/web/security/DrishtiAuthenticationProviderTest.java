@@ -1,6 +1,8 @@
 package org.opensrp.web.security;
 
 import com.google.gson.Gson;
+import org.opensrp.api.domain.User;
+import org.opensrp.connector.openmrs.service.OpenmrsUserService;
 import org.opensrp.domain.DrishtiUser;
 import org.opensrp.repository.AllOpenSRPUsers;
 import org.junit.Before;
@@ -20,6 +22,7 @@ import java.util.UUID;
 import static java.util.Arrays.asList;
 import static java.util.UUID.randomUUID;
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.MockitoAnnotations.initMocks;
@@ -30,6 +33,8 @@ public class DrishtiAuthenticationProviderTest {
     private AllOpenSRPUsers allOpenSRPUsers;
     @Mock
     private ShaPasswordEncoder passwordEncoder;
+    @Mock
+    private OpenmrsUserService openmrsUserService;
     @Rule
     public ExpectedException exception = ExpectedException.none();
 
@@ -86,6 +91,50 @@ public class DrishtiAuthenticationProviderTest {
         verify(allOpenSRPUsers).findByUsername("user 1");
     }*/
 
+    @Before
+    public void setUp() throws Exception {
+        initMocks(this);
+        authenticationProvider = new DrishtiAuthenticationProvider(openmrsUserService, new ShaPasswordEncoder(), 100, 300);
+        when(openmrsUserService.getUser("user 1")).thenReturn(new User().withUsername("user 1").withRole("Provider"));
+    }
+
+    @Test
+    public void shouldAuthenticateAgainstOpenmrsOnlyOnceForRepeatedRequests() throws Exception {
+        when(openmrsUserService.authenticate("user 1", "password 1")).thenReturn(true);
+
+        authenticationProvider.authenticate(new UsernamePasswordAuthenticationToken("user 1", "password 1"));
+        Authentication authentication = authenticationProvider.authenticate(new UsernamePasswordAuthenticationToken("user 1", "password 1"));
+
+        assertEquals(asList(new SimpleGrantedAuthority("ROLE_OPENMRS")), authentication.getAuthorities());
+        verify(openmrsUserService, times(1)).getUser("user 1");
+        verify(openmrsUserService, times(1)).authenticate("user 1", "password 1");
+        assertEquals(1, authenticationProvider.authenticationCache().hits());
+    }
+
+    @Test
+    public void shouldNotAuthenticateWithDifferentPasswordThanCached() throws Exception {
+        when(openmrsUserService.authenticate("user 1", "password 1")).thenReturn(true);
+        when(openmrsUserService.authenticate("user 1", "wrong password")).thenReturn(false);
+        authenticationProvider.authenticate(new UsernamePasswordAuthenticationToken("user 1", "password 1"));
+
+        exception.expect(BadCredentialsException.class);
+        exception.expectMessage(DrishtiAuthenticationProvider.USER_NOT_FOUND);
+
+        authenticationProvider.authenticate(new UsernamePasswordAuthenticationToken("user 1", "wrong password"));
+    }
+
+    @Test
+    public void shouldAuthenticateAgainstOpenmrsAfterInvalidation() throws Exception {
+        when(openmrsUserService.authenticate("user 1", "password 1")).thenReturn(true);
+
+        authenticationProvider.authenticate(new UsernamePasswordAuthenticationToken("user 1", "password 1"));
+        authenticationProvider.invalidate("user 1");
+        authenticationProvider.authenticate(new UsernamePasswordAuthenticationToken("user 1", "password 1"));
+
+        verify(openmrsUserService, times(2)).getUser("user 1");
+        verify(openmrsUserService, times(2)).authenticate("user 1", "password 1");
+    }
+
     @Test
     @Ignore
     public void toGenerateUserPasswordsAndSalt() throws Exception {